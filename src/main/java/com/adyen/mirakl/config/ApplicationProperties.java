@@ -38,7 +38,7 @@ import com.google.common.collect.ImmutableMap;
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
     private String miraklPullCron;
-    private String emailRetryCron;
+    private String emailSendCron;
     private String removeSentEmailsCron;
     private String payoutRetryCron;
     private String retryDocsCron;
@@ -49,6 +49,49 @@ public class ApplicationProperties {
     private String basicUsername;
     private String basicPassword;
     private Integer defaultProcessingTier;
+    private Integer verificationCoalescingWindowMillis;
+    private String notificationRetentionCron;
+    private Integer notificationRetentionDays;
+    private Integer notificationRetentionChunkSize;
+    private Integer docDownloadThreads;
+    private Integer docUploadThreads;
+    private Integer docTransferQueueCapacity;
+    private Integer docTransfersPerShop;
+    private boolean batchDocumentDownload;
+    private Integer photoIdTypeCacheTtlSeconds;
+    private Integer photoIdTypeCacheMaxShops;
+    private Integer docRetryBaseDelaySeconds;
+    private Integer docRetryMaxDelaySeconds;
+    private Integer docRetryPageSize;
+    private String mediaDeletionCron;
+    private Integer mediaDeletionThreads;
+    private Integer mediaDeletionPageSize;
+    private Integer mediaDeletionMaxPagesPerRun;
+    private Integer mediaDeletionMaxAttempts;
+    private Integer mediaDeletionBaseDelaySeconds;
+    private Integer mediaDeletionMaxDelaySeconds;
+    private boolean docImageOptimization;
+    private Integer docImageMaxDimension;
+    private Integer docImageMaxBytes;
+    private Integer docImageJpegQuality;
+    private Integer docImageThreads;
+    private Integer payoutThreads;
+    private Double payoutFundRequestsPerSecond;
+    private Integer commissionPageSize;
+    private Integer payoutRetryPageSize;
+    private Integer payoutRetryLeaseSeconds;
+    private Integer payoutRetryBaseDelaySeconds;
+    private Integer payoutRetryMaxDelaySeconds;
+    private Double payoutRetryJitter;
+    private Integer mailPoolSize;
+    private Integer mailMaxMessagesPerConnection;
+    private Integer mailConnectionIdleSeconds;
+    private Integer emailSendPageSize;
+    private Integer emailRetryBaseDelaySeconds;
+    private Integer emailRetryMaxDelaySeconds;
+    private Double emailRetryJitter;
+    private Integer docUploadConnectTimeoutMillis;
+    private Integer docUploadReadTimeoutMillis;
 
     @Bean
     public Map<String, Pattern> houseNumberPatterns() {
@@ -65,12 +108,12 @@ public class ApplicationProperties {
         this.miraklPullCron = miraklPullCron;
     }
 
-    public String getEmailRetryCron() {
-        return emailRetryCron;
+    public String getEmailSendCron() {
+        return emailSendCron;
     }
 
-    public void setEmailRetryCron(final String emailRetryCron) {
-        this.emailRetryCron = emailRetryCron;
+    public void setEmailSendCron(final String emailSendCron) {
+        this.emailSendCron = emailSendCron;
     }
 
     public String getRemoveSentEmailsCron() {
@@ -152,4 +195,348 @@ public class ApplicationProperties {
     public void setDefaultProcessingTier(final Integer defaultProcessingTier) {
         this.defaultProcessingTier = defaultProcessingTier;
     }
+
+    public Integer getVerificationCoalescingWindowMillis() {
+        return verificationCoalescingWindowMillis;
+    }
+
+    public void setVerificationCoalescingWindowMillis(final Integer verificationCoalescingWindowMillis) {
+        this.verificationCoalescingWindowMillis = verificationCoalescingWindowMillis;
+    }
+
+    public String getNotificationRetentionCron() {
+        return notificationRetentionCron;
+    }
+
+    public void setNotificationRetentionCron(final String notificationRetentionCron) {
+        this.notificationRetentionCron = notificationRetentionCron;
+    }
+
+    public Integer getNotificationRetentionDays() {
+        return notificationRetentionDays;
+    }
+
+    public void setNotificationRetentionDays(final Integer notificationRetentionDays) {
+        this.notificationRetentionDays = notificationRetentionDays;
+    }
+
+    public Integer getNotificationRetentionChunkSize() {
+        return notificationRetentionChunkSize;
+    }
+
+    public void setNotificationRetentionChunkSize(final Integer notificationRetentionChunkSize) {
+        this.notificationRetentionChunkSize = notificationRetentionChunkSize;
+    }
+
+    public Integer getDocDownloadThreads() {
+        return docDownloadThreads;
+    }
+
+    public void setDocDownloadThreads(final Integer docDownloadThreads) {
+        this.docDownloadThreads = docDownloadThreads;
+    }
+
+    public Integer getDocUploadThreads() {
+        return docUploadThreads;
+    }
+
+    public void setDocUploadThreads(final Integer docUploadThreads) {
+        this.docUploadThreads = docUploadThreads;
+    }
+
+    public Integer getDocTransferQueueCapacity() {
+        return docTransferQueueCapacity;
+    }
+
+    public void setDocTransferQueueCapacity(final Integer docTransferQueueCapacity) {
+        this.docTransferQueueCapacity = docTransferQueueCapacity;
+    }
+
+    public Integer getDocTransfersPerShop() {
+        return docTransfersPerShop;
+    }
+
+    public void setDocTransfersPerShop(final Integer docTransfersPerShop) {
+        this.docTransfersPerShop = docTransfersPerShop;
+    }
+
+    public boolean isBatchDocumentDownload() {
+        return batchDocumentDownload;
+    }
+
+    public void setBatchDocumentDownload(final boolean batchDocumentDownload) {
+        this.batchDocumentDownload = batchDocumentDownload;
+    }
+
+    public Integer getPhotoIdTypeCacheTtlSeconds() {
+        return photoIdTypeCacheTtlSeconds;
+    }
+
+    public void setPhotoIdTypeCacheTtlSeconds(final Integer photoIdTypeCacheTtlSeconds) {
+        this.photoIdTypeCacheTtlSeconds = photoIdTypeCacheTtlSeconds;
+    }
+
+    public Integer getPhotoIdTypeCacheMaxShops() {
+        return photoIdTypeCacheMaxShops;
+    }
+
+    public void setPhotoIdTypeCacheMaxShops(final Integer photoIdTypeCacheMaxShops) {
+        this.photoIdTypeCacheMaxShops = photoIdTypeCacheMaxShops;
+    }
+
+    public Integer getDocRetryBaseDelaySeconds() {
+        return docRetryBaseDelaySeconds;
+    }
+
+    public void setDocRetryBaseDelaySeconds(final Integer docRetryBaseDelaySeconds) {
+        this.docRetryBaseDelaySeconds = docRetryBaseDelaySeconds;
+    }
+
+    public Integer getDocRetryMaxDelaySeconds() {
+        return docRetryMaxDelaySeconds;
+    }
+
+    public void setDocRetryMaxDelaySeconds(final Integer docRetryMaxDelaySeconds) {
+        this.docRetryMaxDelaySeconds = docRetryMaxDelaySeconds;
+    }
+
+    public Integer getDocRetryPageSize() {
+        return docRetryPageSize;
+    }
+
+    public void setDocRetryPageSize(final Integer docRetryPageSize) {
+        this.docRetryPageSize = docRetryPageSize;
+    }
+
+    public String getMediaDeletionCron() {
+        return mediaDeletionCron;
+    }
+
+    public void setMediaDeletionCron(final String mediaDeletionCron) {
+        this.mediaDeletionCron = mediaDeletionCron;
+    }
+
+    public Integer getMediaDeletionThreads() {
+        return mediaDeletionThreads;
+    }
+
+    public void setMediaDeletionThreads(final Integer mediaDeletionThreads) {
+        this.mediaDeletionThreads = mediaDeletionThreads;
+    }
+
+    public Integer getMediaDeletionPageSize() {
+        return mediaDeletionPageSize;
+    }
+
+    public void setMediaDeletionPageSize(final Integer mediaDeletionPageSize) {
+        this.mediaDeletionPageSize = mediaDeletionPageSize;
+    }
+
+    public Integer getMediaDeletionMaxPagesPerRun() {
+        return mediaDeletionMaxPagesPerRun;
+    }
+
+    public void setMediaDeletionMaxPagesPerRun(final Integer mediaDeletionMaxPagesPerRun) {
+        this.mediaDeletionMaxPagesPerRun = mediaDeletionMaxPagesPerRun;
+    }
+
+    public Integer getMediaDeletionMaxAttempts() {
+        return mediaDeletionMaxAttempts;
+    }
+
+    public void setMediaDeletionMaxAttempts(final Integer mediaDeletionMaxAttempts) {
+        this.mediaDeletionMaxAttempts = mediaDeletionMaxAttempts;
+    }
+
+    public Integer getMediaDeletionBaseDelaySeconds() {
+        return mediaDeletionBaseDelaySeconds;
+    }
+
+    public void setMediaDeletionBaseDelaySeconds(final Integer mediaDeletionBaseDelaySeconds) {
+        this.mediaDeletionBaseDelaySeconds = mediaDeletionBaseDelaySeconds;
+    }
+
+    public Integer getMediaDeletionMaxDelaySeconds() {
+        return mediaDeletionMaxDelaySeconds;
+    }
+
+    public void setMediaDeletionMaxDelaySeconds(final Integer mediaDeletionMaxDelaySeconds) {
+        this.mediaDeletionMaxDelaySeconds = mediaDeletionMaxDelaySeconds;
+    }
+
+    public boolean isDocImageOptimization() {
+        return docImageOptimization;
+    }
+
+    public void setDocImageOptimization(final boolean docImageOptimization) {
+        this.docImageOptimization = docImageOptimization;
+    }
+
+    public Integer getDocImageMaxDimension() {
+        return docImageMaxDimension;
+    }
+
+    public void setDocImageMaxDimension(final Integer docImageMaxDimension) {
+        this.docImageMaxDimension = docImageMaxDimension;
+    }
+
+    public Integer getDocImageMaxBytes() {
+        return docImageMaxBytes;
+    }
+
+    public void setDocImageMaxBytes(final Integer docImageMaxBytes) {
+        this.docImageMaxBytes = docImageMaxBytes;
+    }
+
+    public Integer getDocImageJpegQuality() {
+        return docImageJpegQuality;
+    }
+
+    public void setDocImageJpegQuality(final Integer docImageJpegQuality) {
+        this.docImageJpegQuality = docImageJpegQuality;
+    }
+
+    public Integer getDocImageThreads() {
+        return docImageThreads;
+    }
+
+    public void setDocImageThreads(final Integer docImageThreads) {
+        this.docImageThreads = docImageThreads;
+    }
+
+    public Integer getPayoutThreads() {
+        return payoutThreads;
+    }
+
+    public void setPayoutThreads(final Integer payoutThreads) {
+        this.payoutThreads = payoutThreads;
+    }
+
+    public Double getPayoutFundRequestsPerSecond() {
+        return payoutFundRequestsPerSecond;
+    }
+
+    public void setPayoutFundRequestsPerSecond(final Double payoutFundRequestsPerSecond) {
+        this.payoutFundRequestsPerSecond = payoutFundRequestsPerSecond;
+    }
+
+    public Integer getCommissionPageSize() {
+        return commissionPageSize;
+    }
+
+    public void setCommissionPageSize(final Integer commissionPageSize) {
+        this.commissionPageSize = commissionPageSize;
+    }
+
+    public Integer getPayoutRetryPageSize() {
+        return payoutRetryPageSize;
+    }
+
+    public void setPayoutRetryPageSize(final Integer payoutRetryPageSize) {
+        this.payoutRetryPageSize = payoutRetryPageSize;
+    }
+
+    public Integer getPayoutRetryLeaseSeconds() {
+        return payoutRetryLeaseSeconds;
+    }
+
+    public void setPayoutRetryLeaseSeconds(final Integer payoutRetryLeaseSeconds) {
+        this.payoutRetryLeaseSeconds = payoutRetryLeaseSeconds;
+    }
+
+    public Integer getPayoutRetryBaseDelaySeconds() {
+        return payoutRetryBaseDelaySeconds;
+    }
+
+    public void setPayoutRetryBaseDelaySeconds(final Integer payoutRetryBaseDelaySeconds) {
+        this.payoutRetryBaseDelaySeconds = payoutRetryBaseDelaySeconds;
+    }
+
+    public Integer getPayoutRetryMaxDelaySeconds() {
+        return payoutRetryMaxDelaySeconds;
+    }
+
+    public void setPayoutRetryMaxDelaySeconds(final Integer payoutRetryMaxDelaySeconds) {
+        this.payoutRetryMaxDelaySeconds = payoutRetryMaxDelaySeconds;
+    }
+
+    public Double getPayoutRetryJitter() {
+        return payoutRetryJitter;
+    }
+
+    public void setPayoutRetryJitter(final Double payoutRetryJitter) {
+        this.payoutRetryJitter = payoutRetryJitter;
+    }
+
+    public Integer getMailPoolSize() {
+        return mailPoolSize;
+    }
+
+    public void setMailPoolSize(final Integer mailPoolSize) {
+        this.mailPoolSize = mailPoolSize;
+    }
+
+    public Integer getMailMaxMessagesPerConnection() {
+        return mailMaxMessagesPerConnection;
+    }
+
+    public void setMailMaxMessagesPerConnection(final Integer mailMaxMessagesPerConnection) {
+        this.mailMaxMessagesPerConnection = mailMaxMessagesPerConnection;
+    }
+
+    public Integer getMailConnectionIdleSeconds() {
+        return mailConnectionIdleSeconds;
+    }
+
+    public void setMailConnectionIdleSeconds(final Integer mailConnectionIdleSeconds) {
+        this.mailConnectionIdleSeconds = mailConnectionIdleSeconds;
+    }
+
+    public Integer getEmailSendPageSize() {
+        return emailSendPageSize;
+    }
+
+    public void setEmailSendPageSize(final Integer emailSendPageSize) {
+        this.emailSendPageSize = emailSendPageSize;
+    }
+
+    public Integer getEmailRetryBaseDelaySeconds() {
+        return emailRetryBaseDelaySeconds;
+    }
+
+    public void setEmailRetryBaseDelaySeconds(final Integer emailRetryBaseDelaySeconds) {
+        this.emailRetryBaseDelaySeconds = emailRetryBaseDelaySeconds;
+    }
+
+    public Integer getEmailRetryMaxDelaySeconds() {
+        return emailRetryMaxDelaySeconds;
+    }
+
+    public void setEmailRetryMaxDelaySeconds(final Integer emailRetryMaxDelaySeconds) {
+        this.emailRetryMaxDelaySeconds = emailRetryMaxDelaySeconds;
+    }
+
+    public Double getEmailRetryJitter() {
+        return emailRetryJitter;
+    }
+
+    public void setEmailRetryJitter(final Double emailRetryJitter) {
+        this.emailRetryJitter = emailRetryJitter;
+    }
+
+    public Integer getDocUploadConnectTimeoutMillis() {
+        return docUploadConnectTimeoutMillis;
+    }
+
+    public void setDocUploadConnectTimeoutMillis(final Integer docUploadConnectTimeoutMillis) {
+        this.docUploadConnectTimeoutMillis = docUploadConnectTimeoutMillis;
+    }
+
+    public Integer getDocUploadReadTimeoutMillis() {
+        return docUploadReadTimeoutMillis;
+    }
+
+    public void setDocUploadReadTimeoutMillis(final Integer docUploadReadTimeoutMillis) {
+        this.docUploadReadTimeoutMillis = docUploadReadTimeoutMillis;
+    }
 }
@@ -22,6 +22,7 @@
 
 package com.adyen.mirakl.config;
 
+import com.adyen.mirakl.service.MetricsService;
 import io.github.jhipster.async.ExceptionHandlingAsyncTaskExecutor;
 import io.github.jhipster.config.JHipsterProperties;
 
@@ -35,6 +36,7 @@ import org.springframework.scheduling.annotation.*;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 @EnableAsync
@@ -45,8 +47,14 @@ public class AsyncConfiguration implements AsyncConfigurer {
 
     private final JHipsterProperties jHipsterProperties;
 
-    public AsyncConfiguration(JHipsterProperties jHipsterProperties) {
+    private final MetricsService metricsService;
+
+    private final ApplicationProperties applicationProperties;
+
+    public AsyncConfiguration(JHipsterProperties jHipsterProperties, MetricsService metricsService, ApplicationProperties applicationProperties) {
         this.jHipsterProperties = jHipsterProperties;
+        this.metricsService = metricsService;
+        this.applicationProperties = applicationProperties;
     }
 
     @Override
@@ -58,9 +66,114 @@ public class AsyncConfiguration implements AsyncConfigurer {
         executor.setMaxPoolSize(jHipsterProperties.getAsync().getMaxPoolSize());
         executor.setQueueCapacity(jHipsterProperties.getAsync().getQueueCapacity());
         executor.setThreadNamePrefix("adyen-mirakl-connector-Executor-");
+        metricsService.gauge("taskExecutor.queueSize", () -> executor.getThreadPoolExecutor().getQueue().size());
+        metricsService.gauge("taskExecutor.activeCount", executor::getActiveCount);
         return new ExceptionHandlingAsyncTaskExecutor(executor);
     }
 
+    /**
+     * Downloads documents from Mirakl, a full queue makes the submitting thread do the download itself
+     */
+    @Bean(name = "docDownloadExecutor")
+    public ThreadPoolTaskExecutor docDownloadExecutor() {
+        return createDocTransferExecutor(applicationProperties.getDocDownloadThreads(), "doc-download-");
+    }
+
+    /**
+     * Uploads documents to Adyen, a full queue makes the download thread do the upload itself so downloaded files do not pile up
+     */
+    @Bean(name = "docUploadExecutor")
+    public ThreadPoolTaskExecutor docUploadExecutor() {
+        return createDocTransferExecutor(applicationProperties.getDocUploadThreads(), "doc-upload-");
+    }
+
+    /**
+     * Deletes verified media from Mirakl, one shop per task; the worker submits at most a page of shops at a time
+     */
+    @Bean(name = "mediaDeletionExecutor")
+    public ThreadPoolTaskExecutor mediaDeletionExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(applicationProperties.getMediaDeletionThreads());
+        executor.setMaxPoolSize(applicationProperties.getMediaDeletionThreads());
+        executor.setQueueCapacity(applicationProperties.getMediaDeletionPageSize());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("media-deletion-");
+        return executor;
+    }
+
+    /**
+     * Runs the queued media deletions handed off by the scheduler, one run at a time, so the scheduler thread does not
+     * wait for Mirakl; the run itself spreads its shops over the media deletion executor
+     */
+    @Bean(name = "mediaDeletionWorkerExecutor")
+    public ThreadPoolTaskExecutor mediaDeletionWorkerExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setThreadNamePrefix("media-deletion-worker-");
+        return executor;
+    }
+
+    /**
+     * Downscales document images before upload; the upload threads wait for their image, so the queue never outgrows them
+     */
+    @Bean(name = "docImageExecutor")
+    public ThreadPoolTaskExecutor docImageExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(applicationProperties.getDocImageThreads());
+        executor.setMaxPoolSize(applicationProperties.getDocImageThreads());
+        executor.setThreadNamePrefix("doc-image-");
+        return executor;
+    }
+
+    /**
+     * Pays out voucher entries, one shop per task; a run waits for all its shops, so the queue holds at most one run
+     */
+    @Bean(name = "payoutExecutor")
+    public ThreadPoolTaskExecutor payoutExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(applicationProperties.getPayoutThreads());
+        executor.setMaxPoolSize(applicationProperties.getPayoutThreads());
+        executor.setThreadNamePrefix("payout-");
+        metricsService.gauge("payoutExecutor.queueSize", () -> executor.getThreadPoolExecutor().getQueue().size());
+        return executor;
+    }
+
+    /**
+     * Stores and pays out uploaded payment voucher files one at a time, the payouts themselves run on the payout executor
+     */
+    @Bean(name = "payoutJobExecutor")
+    public ThreadPoolTaskExecutor payoutJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setThreadNamePrefix("payout-job-");
+        metricsService.gauge("payoutJobExecutor.queueSize", () -> executor.getThreadPoolExecutor().getQueue().size());
+        return executor;
+    }
+
+    /**
+     * Sends the due emails of the outbox; a failed email is rescheduled in the database, the thread never waits for a retry
+     */
+    @Bean(name = "emailSenderExecutor")
+    public ThreadPoolTaskExecutor emailSenderExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setThreadNamePrefix("email-sender-");
+        return executor;
+    }
+
+    private ThreadPoolTaskExecutor createDocTransferExecutor(int threads, String threadNamePrefix) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(applicationProperties.getDocTransferQueueCapacity());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix(threadNamePrefix);
+        return executor;
+    }
+
     @Override
     public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
         return new SimpleAsyncUncaughtExceptionHandler();
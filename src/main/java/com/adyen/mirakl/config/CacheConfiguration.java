@@ -70,6 +70,7 @@ public class CacheConfiguration {
             cm.createCache(com.adyen.mirakl.domain.DocRetry.class.getName(), jcacheConfiguration);
             cm.createCache(com.adyen.mirakl.domain.DocError.class.getName(), jcacheConfiguration);
             cm.createCache(com.adyen.mirakl.domain.DocRetry.class.getName() + ".docErrors", jcacheConfiguration);
+            cm.createCache(com.adyen.mirakl.domain.DocUpload.class.getName(), jcacheConfiguration);
             // jhipster-needle-ehcache-add-entry
         };
     }
@@ -36,6 +36,7 @@ public final class Constants {
         public static final String EMAIL_ACCOUNT_HOLDER_PAYOUT_FAILED_TITLE = "email.account.holder.payout.failed.title";
         public static final String EMAIL_TRANSFER_FUND_FAILED_TITLE = "email.transfer.fund.failed.title";
         public static final String EMAIL_MANUAL_CREDIT_DOCUMENT_FAILED_TITLE = "email.manual.credit.document.failed.title";
+        public static final String EMAIL_ACCOUNT_VERIFICATION_SUMMARY_TITLE = "email.account.verification.summary.title";
 
         private Messages() {
         }
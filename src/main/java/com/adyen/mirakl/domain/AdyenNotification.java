@@ -22,12 +22,15 @@
 
 package com.adyen.mirakl.domain;
 
+import com.adyen.mirakl.service.util.GzipUtil;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.CreationTimestamp;
 
 import javax.persistence.*;
 
 import java.io.Serializable;
+import java.time.ZonedDateTime;
 import java.util.Objects;
 
 /**
@@ -44,13 +47,27 @@ public class AdyenNotification implements Serializable {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    /**
+     * Uncompressed payload of notifications stored before compression was introduced
+     */
     @Lob
     @Column(name = "raw_adyen_notification")
-    private String rawAdyenNotification;
+    private String legacyRawAdyenNotification;
+
+    @Lob
+    @Column(name = "raw_adyen_notification_gzip")
+    private byte[] compressedRawAdyenNotification;
+
+    @Column(name = "stored_size")
+    private Integer storedSize;
 
     @Column(name = "processed", nullable = false)
     private boolean processed;
 
+    @Column(name = "created_at")
+    @CreationTimestamp
+    private ZonedDateTime createdAt;
+
     // jhipster-needle-entity-add-field - JHipster will add fields here, do not remove
     public Long getId() {
         return id;
@@ -61,16 +78,28 @@ public class AdyenNotification implements Serializable {
     }
 
     public String getRawAdyenNotification() {
-        return rawAdyenNotification;
+        if (compressedRawAdyenNotification != null) {
+            return GzipUtil.decompress(compressedRawAdyenNotification);
+        }
+        return legacyRawAdyenNotification;
     }
 
     public AdyenNotification rawAdyenNotification(String rawAdyenNotification) {
-        this.rawAdyenNotification = rawAdyenNotification;
+        setRawAdyenNotification(rawAdyenNotification);
         return this;
     }
 
+    /**
+     * The payload is stored gzip-compressed
+     */
     public void setRawAdyenNotification(String rawAdyenNotification) {
-        this.rawAdyenNotification = rawAdyenNotification;
+        this.legacyRawAdyenNotification = null;
+        this.compressedRawAdyenNotification = rawAdyenNotification != null ? GzipUtil.compress(rawAdyenNotification) : null;
+        this.storedSize = compressedRawAdyenNotification != null ? compressedRawAdyenNotification.length : null;
+    }
+
+    public Integer getStoredSize() {
+        return storedSize;
     }
 
     public boolean isProcessed() {
@@ -85,6 +114,14 @@ public class AdyenNotification implements Serializable {
     public void setProcessed(boolean processed) {
         this.processed = processed;
     }
+
+    public ZonedDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(ZonedDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
     // jhipster-needle-entity-add-getters-setters - JHipster will add getters and setters here, do not remove
 
     @Override
@@ -113,6 +150,7 @@ public class AdyenNotification implements Serializable {
             "id=" + getId() +
             ", rawAdyenNotification='" + getRawAdyenNotification() + "'" +
             ", processed='" + isProcessed() + "'" +
+            ", createdAt='" + getCreatedAt() + "'" +
             "}";
     }
 }
@@ -68,6 +68,15 @@ public class AdyenPayoutError implements Serializable {
     @Column(name = "processing")
     private Boolean processing;
 
+    @Column(name = "lease_owner")
+    private String leaseOwner;
+
+    @Column(name = "lease_expires_at")
+    private ZonedDateTime leaseExpiresAt;
+
+    @Column(name = "next_retry_at")
+    private ZonedDateTime nextRetryAt;
+
     @Column(name = "created_at")
     @CreationTimestamp
     private ZonedDateTime createdAt;
@@ -163,6 +172,45 @@ public class AdyenPayoutError implements Serializable {
         this.processing = processing;
     }
 
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public AdyenPayoutError leaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+        return this;
+    }
+
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+    public ZonedDateTime getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public AdyenPayoutError leaseExpiresAt(ZonedDateTime leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+        return this;
+    }
+
+    public void setLeaseExpiresAt(ZonedDateTime leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+
+    public ZonedDateTime getNextRetryAt() {
+        return nextRetryAt;
+    }
+
+    public AdyenPayoutError nextRetryAt(ZonedDateTime nextRetryAt) {
+        this.nextRetryAt = nextRetryAt;
+        return this;
+    }
+
+    public void setNextRetryAt(ZonedDateTime nextRetryAt) {
+        this.nextRetryAt = nextRetryAt;
+    }
+
 
     public void setUpdatedAt(ZonedDateTime updatedAt) {
         this.updatedAt = updatedAt;
@@ -199,6 +247,9 @@ public class AdyenPayoutError implements Serializable {
             ", accountHolderCode='" + getAccountHolderCode() + "'" +
             ", retry=" + getRetry() +
             ", processing='" + isProcessing() + "'" +
+            ", leaseOwner='" + getLeaseOwner() + "'" +
+            ", leaseExpiresAt='" + getLeaseExpiresAt() + "'" +
+            ", nextRetryAt='" + getNextRetryAt() + "'" +
             ", createdAt='" + createdAt + "'" +
             ", updatedAt='" + updatedAt + "'" +
             "}";
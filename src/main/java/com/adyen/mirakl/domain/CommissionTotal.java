@@ -0,0 +1,117 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * A CommissionTotal, the commission of one currency counted so far and not paid out to the liable account yet.
+ */
+@Entity
+@Table(name = "commission_total")
+public class CommissionTotal implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @NotNull
+    @Column(name = "currency_iso_code", nullable = false, unique = true)
+    private String currencyIsoCode;
+
+    @NotNull
+    @Column(name = "amount", precision = 21, scale = 6, nullable = false)
+    private BigDecimal amount;
+
+    // jhipster-needle-entity-add-field - JHipster will add fields here, do not remove
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getCurrencyIsoCode() {
+        return currencyIsoCode;
+    }
+
+    public CommissionTotal currencyIsoCode(String currencyIsoCode) {
+        this.currencyIsoCode = currencyIsoCode;
+        return this;
+    }
+
+    public void setCurrencyIsoCode(String currencyIsoCode) {
+        this.currencyIsoCode = currencyIsoCode;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public CommissionTotal amount(BigDecimal amount) {
+        this.amount = amount;
+        return this;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+    // jhipster-needle-entity-add-getters-setters - JHipster will add getters and setters here, do not remove
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CommissionTotal commissionTotal = (CommissionTotal) o;
+        if (commissionTotal.getId() == null || getId() == null) {
+            return false;
+        }
+        return Objects.equals(getId(), commissionTotal.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getId());
+    }
+
+    @Override
+    public String toString() {
+        return "CommissionTotal{" +
+            "id=" + getId() +
+            ", currencyIsoCode='" + getCurrencyIsoCode() + "'" +
+            ", amount=" + getAmount() +
+            "}";
+    }
+}
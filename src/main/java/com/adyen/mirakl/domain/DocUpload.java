@@ -0,0 +1,211 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.domain;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import javax.persistence.*;
+import javax.validation.constraints.*;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * A DocUpload, the content hash of the document last uploaded to Adyen for an account holder, shareholder and document type.
+ */
+@Entity
+@Table(name = "doc_upload")
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+public class DocUpload implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @NotNull
+    @Column(name = "account_holder_code", nullable = false)
+    private String accountHolderCode;
+
+    /**
+     * Empty for the documents of the account holder itself, so the target stays unique in the database
+     */
+    @NotNull
+    @Column(name = "shareholder_code", nullable = false)
+    private String shareholderCode;
+
+    @NotNull
+    @Column(name = "document_type", nullable = false)
+    private String documentType;
+
+    @Column(name = "doc_id")
+    private String docId;
+
+    @Column(name = "type_code")
+    private String typeCode;
+
+    @NotNull
+    @Column(name = "content_hash", length = 64, nullable = false)
+    private String contentHash;
+
+    @Column(name = "uploaded_at")
+    private ZonedDateTime uploadedAt;
+
+    // jhipster-needle-entity-add-field - JHipster will add fields here, do not remove
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getAccountHolderCode() {
+        return accountHolderCode;
+    }
+
+    public DocUpload accountHolderCode(String accountHolderCode) {
+        this.accountHolderCode = accountHolderCode;
+        return this;
+    }
+
+    public void setAccountHolderCode(String accountHolderCode) {
+        this.accountHolderCode = accountHolderCode;
+    }
+
+    public String getShareholderCode() {
+        return shareholderCode;
+    }
+
+    public DocUpload shareholderCode(String shareholderCode) {
+        this.shareholderCode = shareholderCode;
+        return this;
+    }
+
+    public void setShareholderCode(String shareholderCode) {
+        this.shareholderCode = shareholderCode;
+    }
+
+    public String getDocumentType() {
+        return documentType;
+    }
+
+    public DocUpload documentType(String documentType) {
+        this.documentType = documentType;
+        return this;
+    }
+
+    public void setDocumentType(String documentType) {
+        this.documentType = documentType;
+    }
+
+    public String getDocId() {
+        return docId;
+    }
+
+    public DocUpload docId(String docId) {
+        this.docId = docId;
+        return this;
+    }
+
+    public void setDocId(String docId) {
+        this.docId = docId;
+    }
+
+    public String getTypeCode() {
+        return typeCode;
+    }
+
+    public DocUpload typeCode(String typeCode) {
+        this.typeCode = typeCode;
+        return this;
+    }
+
+    public void setTypeCode(String typeCode) {
+        this.typeCode = typeCode;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public DocUpload contentHash(String contentHash) {
+        this.contentHash = contentHash;
+        return this;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public ZonedDateTime getUploadedAt() {
+        return uploadedAt;
+    }
+
+    public DocUpload uploadedAt(ZonedDateTime uploadedAt) {
+        this.uploadedAt = uploadedAt;
+        return this;
+    }
+
+    public void setUploadedAt(ZonedDateTime uploadedAt) {
+        this.uploadedAt = uploadedAt;
+    }
+    // jhipster-needle-entity-add-getters-setters - JHipster will add getters and setters here, do not remove
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DocUpload docUpload = (DocUpload) o;
+        if (docUpload.getId() == null || getId() == null) {
+            return false;
+        }
+        return Objects.equals(getId(), docUpload.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getId());
+    }
+
+    @Override
+    public String toString() {
+        return "DocUpload{" +
+            "id=" + getId() +
+            ", accountHolderCode='" + getAccountHolderCode() + "'" +
+            ", shareholderCode='" + getShareholderCode() + "'" +
+            ", documentType='" + getDocumentType() + "'" +
+            ", docId='" + getDocId() + "'" +
+            ", typeCode='" + getTypeCode() + "'" +
+            ", contentHash='" + getContentHash() + "'" +
+            ", uploadedAt='" + getUploadedAt() + "'" +
+            "}";
+    }
+}
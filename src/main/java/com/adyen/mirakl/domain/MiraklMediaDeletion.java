@@ -0,0 +1,203 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.*;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * A MiraklMediaDeletion, Mirakl documents of a shop waiting to be deleted once Adyen verified them.
+ */
+@Entity
+@Table(name = "mirakl_media_deletion")
+public class MiraklMediaDeletion implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @NotNull
+    @Column(name = "shop_id", nullable = false)
+    private String shopId;
+
+    @Column(name = "shareholder_codes", length = 1000)
+    private String shareholderCodes;
+
+    @NotNull
+    @Column(name = "individual", nullable = false)
+    private Boolean individual;
+
+    @NotNull
+    @Column(name = "bank_proof", nullable = false)
+    private Boolean bankProof;
+
+    @Column(name = "attempts")
+    private Integer attempts;
+
+    @Column(name = "next_attempt_at")
+    private ZonedDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    // jhipster-needle-entity-add-field - JHipster will add fields here, do not remove
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getShopId() {
+        return shopId;
+    }
+
+    public MiraklMediaDeletion shopId(String shopId) {
+        this.shopId = shopId;
+        return this;
+    }
+
+    public void setShopId(String shopId) {
+        this.shopId = shopId;
+    }
+
+    public String getShareholderCodes() {
+        return shareholderCodes;
+    }
+
+    public MiraklMediaDeletion shareholderCodes(String shareholderCodes) {
+        this.shareholderCodes = shareholderCodes;
+        return this;
+    }
+
+    public void setShareholderCodes(String shareholderCodes) {
+        this.shareholderCodes = shareholderCodes;
+    }
+
+    public Boolean isIndividual() {
+        return individual;
+    }
+
+    public MiraklMediaDeletion individual(Boolean individual) {
+        this.individual = individual;
+        return this;
+    }
+
+    public void setIndividual(Boolean individual) {
+        this.individual = individual;
+    }
+
+    public Boolean isBankProof() {
+        return bankProof;
+    }
+
+    public MiraklMediaDeletion bankProof(Boolean bankProof) {
+        this.bankProof = bankProof;
+        return this;
+    }
+
+    public void setBankProof(Boolean bankProof) {
+        this.bankProof = bankProof;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public MiraklMediaDeletion attempts(Integer attempts) {
+        this.attempts = attempts;
+        return this;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public ZonedDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public MiraklMediaDeletion nextAttemptAt(ZonedDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+        return this;
+    }
+
+    public void setNextAttemptAt(ZonedDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public MiraklMediaDeletion lastError(String lastError) {
+        this.lastError = lastError;
+        return this;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+    // jhipster-needle-entity-add-getters-setters - JHipster will add getters and setters here, do not remove
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MiraklMediaDeletion miraklMediaDeletion = (MiraklMediaDeletion) o;
+        if (miraklMediaDeletion.getId() == null || getId() == null) {
+            return false;
+        }
+        return Objects.equals(getId(), miraklMediaDeletion.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getId());
+    }
+
+    @Override
+    public String toString() {
+        return "MiraklMediaDeletion{" +
+            "id=" + getId() +
+            ", shopId='" + getShopId() + "'" +
+            ", shareholderCodes='" + getShareholderCodes() + "'" +
+            ", individual=" + isIndividual() +
+            ", bankProof=" + isBankProof() +
+            ", attempts=" + getAttempts() +
+            ", nextAttemptAt='" + getNextAttemptAt() + "'" +
+            ", lastError='" + getLastError() + "'" +
+            "}";
+    }
+}
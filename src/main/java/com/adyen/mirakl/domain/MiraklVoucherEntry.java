@@ -28,6 +28,8 @@ import java.time.ZonedDateTime;
 import java.util.Objects;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -37,6 +39,7 @@ import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
+import com.adyen.mirakl.domain.enumeration.VoucherEntryStatus;
 
 /**
  * A MiraklVoucherEntry.
@@ -87,6 +90,22 @@ public class MiraklVoucherEntry implements Serializable {
     @Column(name = "total_charged_amount_vat")
     private String totalChargedAmountVat;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private VoucherEntryStatus status = VoucherEntryStatus.RECEIVED;
+
+    @Column(name = "idempotency_key")
+    private String idempotencyKey;
+
+    @Column(name = "commission_counted", nullable = false)
+    private Boolean commissionCounted = false;
+
+    @Column(name = "payout_job_id")
+    private Long payoutJobId;
+
+    @Column(name = "payout_error_id")
+    private Long payoutErrorId;
+
     // jhipster-needle-entity-add-field - JHipster will add fields here, do not remove
     public Long getId() {
         return id;
@@ -230,6 +249,71 @@ public class MiraklVoucherEntry implements Serializable {
         this.totalChargedAmountVat = totalChargedAmountVat;
     }
 
+    public VoucherEntryStatus getStatus() {
+        return status;
+    }
+
+    public MiraklVoucherEntry status(VoucherEntryStatus status) {
+        this.status = status;
+        return this;
+    }
+
+    public void setStatus(VoucherEntryStatus status) {
+        this.status = status;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public MiraklVoucherEntry idempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+        return this;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public Boolean isCommissionCounted() {
+        return commissionCounted;
+    }
+
+    public MiraklVoucherEntry commissionCounted(Boolean commissionCounted) {
+        this.commissionCounted = commissionCounted;
+        return this;
+    }
+
+    public void setCommissionCounted(Boolean commissionCounted) {
+        this.commissionCounted = commissionCounted;
+    }
+
+    public Long getPayoutJobId() {
+        return payoutJobId;
+    }
+
+    public MiraklVoucherEntry payoutJobId(Long payoutJobId) {
+        this.payoutJobId = payoutJobId;
+        return this;
+    }
+
+    public void setPayoutJobId(Long payoutJobId) {
+        this.payoutJobId = payoutJobId;
+    }
+
+    public Long getPayoutErrorId() {
+        return payoutErrorId;
+    }
+
+    public MiraklVoucherEntry payoutErrorId(Long payoutErrorId) {
+        this.payoutErrorId = payoutErrorId;
+        return this;
+    }
+
+    public void setPayoutErrorId(Long payoutErrorId) {
+        this.payoutErrorId = payoutErrorId;
+    }
+
 
 
     @Override
@@ -290,6 +374,19 @@ public class MiraklVoucherEntry implements Serializable {
             + ", totalChargedAmoutVat='"
             + getTotalChargedAmountVat()
             + "'"
+            + ", status='"
+            + getStatus()
+            + "'"
+            + ", idempotencyKey='"
+            + getIdempotencyKey()
+            + "'"
+            + ", commissionCounted='"
+            + isCommissionCounted()
+            + "'"
+            + ", payoutJobId="
+            + getPayoutJobId()
+            + ", payoutErrorId="
+            + getPayoutErrorId()
             + "}";
     }
 
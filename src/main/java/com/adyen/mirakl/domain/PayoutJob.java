@@ -0,0 +1,252 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.*;
+
+import com.adyen.mirakl.domain.enumeration.PayoutJobStatus;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * A PayoutJob, an uploaded payment voucher file being stored and paid out in the background.
+ */
+@Entity
+@Table(name = "payout_job")
+public class PayoutJob implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "file_name")
+    private String fileName;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private PayoutJobStatus status;
+
+    @Column(name = "rows_parsed")
+    private Integer rowsParsed;
+
+    @Column(name = "payouts_submitted")
+    private Integer payoutsSubmitted;
+
+    @Column(name = "payouts_failed")
+    private Integer payoutsFailed;
+
+    @Column(name = "error", length = 1000)
+    private String error;
+
+    @Column(name = "created_at")
+    @CreationTimestamp
+    private ZonedDateTime createdAt;
+
+    @Column(name = "started_at")
+    private ZonedDateTime startedAt;
+
+    @Column(name = "payout_started_at")
+    private ZonedDateTime payoutStartedAt;
+
+    @Column(name = "finished_at")
+    private ZonedDateTime finishedAt;
+
+    // jhipster-needle-entity-add-field - JHipster will add fields here, do not remove
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public PayoutJob fileName(String fileName) {
+        this.fileName = fileName;
+        return this;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public PayoutJobStatus getStatus() {
+        return status;
+    }
+
+    public PayoutJob status(PayoutJobStatus status) {
+        this.status = status;
+        return this;
+    }
+
+    public void setStatus(PayoutJobStatus status) {
+        this.status = status;
+    }
+
+    public Integer getRowsParsed() {
+        return rowsParsed;
+    }
+
+    public PayoutJob rowsParsed(Integer rowsParsed) {
+        this.rowsParsed = rowsParsed;
+        return this;
+    }
+
+    public void setRowsParsed(Integer rowsParsed) {
+        this.rowsParsed = rowsParsed;
+    }
+
+    public Integer getPayoutsSubmitted() {
+        return payoutsSubmitted;
+    }
+
+    public PayoutJob payoutsSubmitted(Integer payoutsSubmitted) {
+        this.payoutsSubmitted = payoutsSubmitted;
+        return this;
+    }
+
+    public void setPayoutsSubmitted(Integer payoutsSubmitted) {
+        this.payoutsSubmitted = payoutsSubmitted;
+    }
+
+    public Integer getPayoutsFailed() {
+        return payoutsFailed;
+    }
+
+    public PayoutJob payoutsFailed(Integer payoutsFailed) {
+        this.payoutsFailed = payoutsFailed;
+        return this;
+    }
+
+    public void setPayoutsFailed(Integer payoutsFailed) {
+        this.payoutsFailed = payoutsFailed;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public PayoutJob error(String error) {
+        this.error = error;
+        return this;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public ZonedDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(ZonedDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public ZonedDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public PayoutJob startedAt(ZonedDateTime startedAt) {
+        this.startedAt = startedAt;
+        return this;
+    }
+
+    public void setStartedAt(ZonedDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public ZonedDateTime getPayoutStartedAt() {
+        return payoutStartedAt;
+    }
+
+    public PayoutJob payoutStartedAt(ZonedDateTime payoutStartedAt) {
+        this.payoutStartedAt = payoutStartedAt;
+        return this;
+    }
+
+    public void setPayoutStartedAt(ZonedDateTime payoutStartedAt) {
+        this.payoutStartedAt = payoutStartedAt;
+    }
+
+    public ZonedDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public PayoutJob finishedAt(ZonedDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+        return this;
+    }
+
+    public void setFinishedAt(ZonedDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+    // jhipster-needle-entity-add-getters-setters - JHipster will add getters and setters here, do not remove
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PayoutJob payoutJob = (PayoutJob) o;
+        if (payoutJob.getId() == null || getId() == null) {
+            return false;
+        }
+        return Objects.equals(getId(), payoutJob.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getId());
+    }
+
+    @Override
+    public String toString() {
+        return "PayoutJob{" +
+            "id=" + getId() +
+            ", fileName='" + getFileName() + "'" +
+            ", status='" + getStatus() + "'" +
+            ", rowsParsed=" + getRowsParsed() +
+            ", payoutsSubmitted=" + getPayoutsSubmitted() +
+            ", payoutsFailed=" + getPayoutsFailed() +
+            ", error='" + getError() + "'" +
+            ", createdAt='" + getCreatedAt() + "'" +
+            ", startedAt='" + getStartedAt() + "'" +
+            ", payoutStartedAt='" + getPayoutStartedAt() + "'" +
+            ", finishedAt='" + getFinishedAt() + "'" +
+            "}";
+    }
+}
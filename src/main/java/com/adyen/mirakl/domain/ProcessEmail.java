@@ -29,6 +29,7 @@ import org.hibernate.annotations.CacheConcurrencyStrategy;
 import javax.persistence.*;
 
 import java.io.Serializable;
+import java.time.ZonedDateTime;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.Objects;
@@ -72,6 +73,12 @@ public class ProcessEmail implements Serializable {
     @Column(name = "email_identifier")
     private String emailIdentifier;
 
+    @Column(name = "attempts")
+    private Integer attempts;
+
+    @Column(name = "next_attempt_at")
+    private ZonedDateTime nextAttemptAt;
+
     @OneToMany(mappedBy = "processEmail")
     @JsonIgnore
     @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
@@ -177,6 +184,32 @@ public class ProcessEmail implements Serializable {
         this.emailIdentifier = emailIdentifier;
     }
 
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public ProcessEmail attempts(Integer attempts) {
+        this.attempts = attempts;
+        return this;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public ZonedDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public ProcessEmail nextAttemptAt(ZonedDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+        return this;
+    }
+
+    public void setNextAttemptAt(ZonedDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
     public Set<EmailError> getEmailErrors() {
         return emailErrors;
     }
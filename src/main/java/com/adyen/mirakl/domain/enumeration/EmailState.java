@@ -26,5 +26,5 @@ package com.adyen.mirakl.domain.enumeration;
  * The EmailState enumeration.
  */
 public enum EmailState {
-    PROCESSING, SENT, FAILED
+    PENDING, PROCESSING, SENT, FAILED
 }
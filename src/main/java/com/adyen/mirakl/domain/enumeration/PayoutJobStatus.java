@@ -20,19 +20,12 @@
  *
  */
 
-package com.adyen.mirakl.config;
+package com.adyen.mirakl.domain.enumeration;
 
-import com.adyen.mirakl.aop.FailSafeEmailAspect;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.EnableAspectJAutoProxy;
-
-@Configuration
-@EnableAspectJAutoProxy
-public class EmailAspectConfiguration {
-
-    @Bean
-    public FailSafeEmailAspect failSafeEmailAspect() {
-        return new FailSafeEmailAspect();
-    }
+/**
+ * The phases of an uploaded payment voucher file, RECEIVED → PARSING → PAYING_OUT → DONE, or FAILED when it could not be
+ * read or paid out.
+ */
+public enum PayoutJobStatus {
+    RECEIVED, PARSING, PAYING_OUT, DONE, FAILED
 }
@@ -0,0 +1,33 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.domain.enumeration;
+
+/**
+ * The steps a voucher entry goes through during a payout run, RECEIVED → (SUBSCRIPTION_IN_FLIGHT → SUBSCRIPTION_DONE) →
+ * PAYOUT_IN_FLIGHT → PAYOUT_SUBMITTED → DONE, or FAILED once its failed payout is handed over to the payout retries. An
+ * entry still in flight when a run starts was interrupted during its Adyen call and becomes UNCONFIRMED, it is not paid
+ * out again.
+ */
+public enum VoucherEntryStatus {
+    RECEIVED, SUBSCRIPTION_IN_FLIGHT, SUBSCRIPTION_DONE, PAYOUT_IN_FLIGHT, PAYOUT_SUBMITTED, DONE, FAILED, UNCONFIRMED
+}
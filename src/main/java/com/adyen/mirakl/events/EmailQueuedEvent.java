@@ -0,0 +1,42 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.events;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * An email was written to the outbox, it is picked up once the transaction that wrote it commits
+ */
+public class EmailQueuedEvent extends ApplicationEvent {
+
+    private Long processEmailId;
+
+    public EmailQueuedEvent(final Long processEmailId) {
+        super(processEmailId);
+        this.processEmailId = processEmailId;
+    }
+
+    public Long getProcessEmailId() {
+        return processEmailId;
+    }
+}
@@ -23,9 +23,12 @@
 package com.adyen.mirakl.listeners;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
@@ -35,8 +38,9 @@ import org.springframework.util.CollectionUtils;
 import com.adyen.mirakl.domain.AdyenNotification;
 import com.adyen.mirakl.events.AdyenNotifcationEvent;
 import com.adyen.mirakl.repository.AdyenNotificationRepository;
-import com.adyen.mirakl.service.DocService;
 import com.adyen.mirakl.service.MailTemplateService;
+import com.adyen.mirakl.service.MiraklMediaDeletionService;
+import com.adyen.mirakl.service.NotificationMetricsService;
 import com.adyen.mirakl.service.RetryPayoutService;
 import com.adyen.mirakl.service.ShopService;
 import com.adyen.model.Name;
@@ -55,6 +59,7 @@ import com.adyen.model.marketpay.notification.TransferFundsNotification;
 import com.adyen.notification.NotificationHandler;
 import com.adyen.service.Account;
 import com.adyen.service.exception.ApiException;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.mirakl.client.mmp.domain.shop.MiraklShop;
@@ -109,8 +114,10 @@ public class AdyenNotificationListener {
     private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient;
     private RetryPayoutService retryPayoutService;
     private Account adyenAccountService;
-    private DocService docService;
+    private MiraklMediaDeletionService miraklMediaDeletionService;
     private ShopService shopService;
+    private VerificationNotificationCoalescer verificationNotificationCoalescer;
+    private NotificationMetricsService notificationMetricsService;
 
     AdyenNotificationListener(final NotificationHandler notificationHandler,
                               final AdyenNotificationRepository adyenNotificationRepository,
@@ -118,37 +125,55 @@ public class AdyenNotificationListener {
                               final MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient,
                               final Account adyenAccountService,
                               final RetryPayoutService retryPayoutService,
-                              final DocService docService,
-                              final ShopService shopService) {
+                              final MiraklMediaDeletionService miraklMediaDeletionService,
+                              final ShopService shopService,
+                              final VerificationNotificationCoalescer verificationNotificationCoalescer,
+                              final NotificationMetricsService notificationMetricsService) {
         this.notificationHandler = notificationHandler;
         this.adyenNotificationRepository = adyenNotificationRepository;
         this.mailTemplateService = mailTemplateService;
         this.miraklMarketplacePlatformOperatorApiClient = miraklMarketplacePlatformOperatorApiClient;
         this.adyenAccountService = adyenAccountService;
         this.retryPayoutService = retryPayoutService;
-        this.docService = docService;
+        this.miraklMediaDeletionService = miraklMediaDeletionService;
         this.shopService = shopService;
+        this.verificationNotificationCoalescer = verificationNotificationCoalescer;
+        this.notificationMetricsService = notificationMetricsService;
     }
 
     @Async
     @EventListener
     public void handleContextRefresh(AdyenNotifcationEvent event) {
         log.info(String.format("Received notification DB id: [%d]", event.getDbId()));
-        final AdyenNotification notification = adyenNotificationRepository.findOneById(event.getDbId());
-        final GenericNotification genericNotification = notificationHandler.handleMarketpayNotificationJson(notification.getRawAdyenNotification());
         try {
-            processNotification(genericNotification);
+            final AdyenNotification notification = adyenNotificationRepository.findOneById(event.getDbId());
+            final GenericNotification genericNotification = notificationHandler.handleMarketpayNotificationJson(notification.getRawAdyenNotification());
+            if (genericNotification instanceof AccountHolderVerificationNotification && verificationNotificationCoalescer.isEnabled()) {
+                final AccountHolderVerificationNotification verificationNotification = (AccountHolderVerificationNotification) genericNotification;
+                verificationNotificationCoalescer.add(verificationNotification.getContent().getAccountHolderCode(),
+                                                      event.getDbId(),
+                                                      verificationNotification,
+                                                      this::processCoalescedVerificationNotifications);
+                return;
+            }
+            final long startedAt = notificationMetricsService.started(event.getDbId(), genericNotification.getEventType());
+            processNotification(event.getDbId(), genericNotification);
             adyenNotificationRepository.delete(event.getDbId());
+            notificationMetricsService.completed(event.getDbId(), genericNotification.getEventType(), startedAt);
         } catch (ApiException e) {
             log.error("Failed processing notification: {}", e.getError(), e);
+            adyenNotificationRepository.markProcessed(event.getDbId());
+            notificationMetricsService.failed(event.getDbId(), e);
         } catch (Exception e) {
             log.error("Exception: {}", e.getMessage(), e);
+            adyenNotificationRepository.markProcessed(event.getDbId());
+            notificationMetricsService.failed(event.getDbId(), e);
         }
     }
 
-    private void processNotification(final GenericNotification genericNotification) throws Exception {
+    private void processNotification(final Long dbId, final GenericNotification genericNotification) throws Exception {
         if (genericNotification instanceof AccountHolderVerificationNotification) {
-            processAccountholderVerificationNotification((AccountHolderVerificationNotification) genericNotification);
+            processAccountholderVerificationNotification(dbId, (AccountHolderVerificationNotification) genericNotification);
         }
         if (genericNotification instanceof AccountHolderStatusChangeNotification) {
             processAccountHolderStatusChangeNotification((AccountHolderStatusChangeNotification) genericNotification);
@@ -192,34 +217,133 @@ public class AdyenNotificationListener {
         });
     }
 
-    private void processAccountholderVerificationNotification(final AccountHolderVerificationNotification verificationNotification) throws Exception {
-        final CheckStatusEnum verificationStatus = verificationNotification.getContent().getVerificationStatus();
-        final CheckTypeEnum verificationType = verificationNotification.getContent().getVerificationType();
-        final String shopId = verificationNotification.getContent().getAccountHolderCode();
-        if (CheckStatusEnum.RETRY_LIMIT_REACHED.equals(verificationStatus) && CheckTypeEnum.BANK_ACCOUNT_VERIFICATION.equals(verificationType)) {
-            final MiraklShop shop = getShop(shopId);
-            mailTemplateService.sendMiraklShopEmailFromTemplate(shop, Locale.getDefault(), "bankAccountVerificationEmail", "email.bank.verification.title");
-        } else if (awaitingDataForIdentityOrPassport(verificationStatus, verificationType) || invalidDataForIdentityOrPassport(verificationStatus, verificationType)) {
-            final GetAccountHolderResponse accountHolderResponse = getAccountHolder(shopId);
-            if (GetAccountHolderResponse.LegalEntityEnum.BUSINESS.equals(accountHolderResponse.getLegalEntity())) {
-                sendBusinessShareholderAwaitingDataEmail(verificationNotification, verificationStatus, verificationType, shopId, accountHolderResponse);
-            } else if (GetAccountHolderResponse.LegalEntityEnum.INDIVIDUAL.equals(accountHolderResponse.getLegalEntity())) {
-                sendIndividualAwaitingDataEmail(verificationStatus, verificationType, shopId, accountHolderResponse);
+    private void processAccountholderVerificationNotification(final Long dbId, final AccountHolderVerificationNotification verificationNotification) throws Exception {
+        final Map<Long, Exception> failures = processAccountholderVerificationNotifications(verificationNotification.getContent().getAccountHolderCode(),
+                                                                                            ImmutableMap.of(dbId, verificationNotification));
+        if (! failures.isEmpty()) {
+            throw failures.values().iterator().next();
+        }
+    }
+
+    /**
+     * Notifications of a group that failed stay stored like any other failed notification, the rest of the group is completed
+     */
+    private void processCoalescedVerificationNotifications(final String accountHolderCode, final Map<Long, AccountHolderVerificationNotification> verificationNotifications) {
+        log.info("Processing {} verification notification(s) for account holder: [{}]", verificationNotifications.size(), accountHolderCode);
+        final Map<Long, Long> startedAtByDbId = new HashMap<>();
+        verificationNotifications.forEach((dbId, notification) -> startedAtByDbId.put(dbId, notificationMetricsService.started(dbId, notification.getEventType())));
+        final Map<Long, Exception> failures = new HashMap<>();
+        try {
+            failures.putAll(processAccountholderVerificationNotifications(accountHolderCode, verificationNotifications));
+        } catch (Exception e) {
+            verificationNotifications.keySet().forEach(dbId -> failures.put(dbId, e));
+        }
+        verificationNotifications.forEach((dbId, notification) -> {
+            final Exception failure = failures.get(dbId);
+            if (failure == null) {
+                adyenNotificationRepository.delete(dbId);
+                notificationMetricsService.completed(dbId, notification.getEventType(), startedAtByDbId.get(dbId));
+            } else {
+                log.error("Failed processing notification DB id [{}]: {}", dbId, failure instanceof ApiException ? ((ApiException) failure).getError() : failure.getMessage(), failure);
+                adyenNotificationRepository.markProcessed(dbId);
+                notificationMetricsService.failed(dbId, failure);
+            }
+        });
+    }
+
+    /**
+     * Process the verification notifications of one account holder, the account holder and shop are retrieved at most once,
+     * every recipient gets a single email and the Mirakl media is cleaned up once. A failure only fails the notifications
+     * that needed that step, they are returned by DB id.
+     */
+    private Map<Long, Exception> processAccountholderVerificationNotifications(final String shopId,
+                                                                               final Map<Long, AccountHolderVerificationNotification> verificationNotifications) {
+        final Map<Long, Exception> failures = new LinkedHashMap<>();
+        final Map<String, String> shopEmails = new LinkedHashMap<>();
+        final Set<Long> shopEmailDbIds = new LinkedHashSet<>();
+        final Map<String, Map<String, String>> shareholderEmails = new LinkedHashMap<>();
+        final Map<String, Set<Long>> shareholderEmailDbIds = new LinkedHashMap<>();
+        final Set<String> passedShareholderCodes = new LinkedHashSet<>();
+        final Set<Long> accountHolderDbIds = new LinkedHashSet<>();
+        final Set<Long> mediaDbIds = new LinkedHashSet<>();
+        boolean identityOrPassportPassed = false;
+        boolean bankAccountPassed = false;
+
+        for (Map.Entry<Long, AccountHolderVerificationNotification> entry : verificationNotifications.entrySet()) {
+            final Long dbId = entry.getKey();
+            final CheckStatusEnum verificationStatus = entry.getValue().getContent().getVerificationStatus();
+            final CheckTypeEnum verificationType = entry.getValue().getContent().getVerificationType();
+            final String shareholderCode = entry.getValue().getContent().getShareholderCode();
+            if (CheckStatusEnum.RETRY_LIMIT_REACHED.equals(verificationStatus) && CheckTypeEnum.BANK_ACCOUNT_VERIFICATION.equals(verificationType)) {
+                shopEmails.put("bankAccountVerificationEmail", "email.bank.verification.title");
+                shopEmailDbIds.add(dbId);
+            } else if (awaitingDataForIdentityOrPassport(verificationStatus, verificationType) || invalidDataForIdentityOrPassport(verificationStatus, verificationType)) {
+                shareholderEmails.computeIfAbsent(shareholderCode, code -> new LinkedHashMap<>()).put(getTemplate(verificationType, verificationStatus), getSubject(verificationType, verificationStatus));
+                shareholderEmailDbIds.computeIfAbsent(shareholderCode, code -> new LinkedHashSet<>()).add(dbId);
+                accountHolderDbIds.add(dbId);
+            } else if (invalidOrAwaitingCompanyVerificationData(verificationStatus, verificationType)) {
+                shopEmails.put(getTemplate(verificationType, verificationStatus), getSubject(verificationType, verificationStatus));
+                shopEmailDbIds.add(dbId);
+            } else if (dataProvidedForPassportOrIdentity(verificationStatus, verificationType, CheckStatusEnum.PASSED, CheckTypeEnum.PASSPORT_VERIFICATION, CheckTypeEnum.IDENTITY_VERIFICATION)) {
+                identityOrPassportPassed = true;
+                passedShareholderCodes.add(shareholderCode);
+                accountHolderDbIds.add(dbId);
+                mediaDbIds.add(dbId);
+            } else if (CheckStatusEnum.PASSED.equals(verificationStatus) && CheckTypeEnum.BANK_ACCOUNT_VERIFICATION.equals(verificationType)) {
+                bankAccountPassed = true;
+                mediaDbIds.add(dbId);
             }
-        } else if (invalidOrAwaitingCompanyVerificationData(verificationStatus, verificationType)) {
-            final MiraklShop shop = getShop(shopId);
-            mailTemplateService.sendMiraklShopEmailFromTemplate(shop, Locale.getDefault(), getTemplate(verificationType, verificationStatus), getSubject(verificationType, verificationStatus));
-        } else if (dataProvidedForPassportOrIdentity(verificationStatus, verificationType, CheckStatusEnum.PASSED, CheckTypeEnum.PASSPORT_VERIFICATION, CheckTypeEnum.IDENTITY_VERIFICATION)) {
-            final GetAccountHolderResponse accountHolderResponse = getAccountHolder(shopId);
-            if (GetAccountHolderResponse.LegalEntityEnum.BUSINESS.equals(accountHolderResponse.getLegalEntity())) {
-                docService.removeMiraklMediaForShareHolder(verificationNotification.getContent().getShareholderCode());
-            } else if (GetAccountHolderResponse.LegalEntityEnum.INDIVIDUAL.equals(accountHolderResponse.getLegalEntity())) {
-                docService.removeMiraklMediaForIndividual(shopId);
+        }
+
+        boolean individualPassed = false;
+        if (! accountHolderDbIds.isEmpty()) {
+            try {
+                final GetAccountHolderResponse accountHolderResponse = getAccountHolder(shopId);
+                if (GetAccountHolderResponse.LegalEntityEnum.BUSINESS.equals(accountHolderResponse.getLegalEntity())) {
+                    shareholderEmails.forEach((shareholderCode, emails) -> {
+                        try {
+                            sendBusinessShareholderAwaitingDataEmail(shareholderCode, shopId, accountHolderResponse, emails);
+                        } catch (Exception e) {
+                            shareholderEmailDbIds.get(shareholderCode).forEach(dbId -> failures.put(dbId, e));
+                        }
+                    });
+                } else if (GetAccountHolderResponse.LegalEntityEnum.INDIVIDUAL.equals(accountHolderResponse.getLegalEntity())) {
+                    final Map<String, String> individualEmails = new LinkedHashMap<>();
+                    shareholderEmails.values().forEach(individualEmails::putAll);
+                    if (! individualEmails.isEmpty()) {
+                        try {
+                            sendIndividualAwaitingDataEmail(shopId, accountHolderResponse, individualEmails);
+                        } catch (Exception e) {
+                            shareholderEmailDbIds.values().forEach(dbIds -> dbIds.forEach(dbId -> failures.put(dbId, e)));
+                        }
+                    }
+                    individualPassed = identityOrPassportPassed;
+                    passedShareholderCodes.clear();
+                } else {
+                    passedShareholderCodes.clear();
+                }
+            } catch (Exception e) {
+                accountHolderDbIds.forEach(dbId -> failures.put(dbId, e));
+                passedShareholderCodes.clear();
             }
-        } else if (CheckStatusEnum.PASSED.equals(verificationStatus) && CheckTypeEnum.BANK_ACCOUNT_VERIFICATION.equals(verificationType)) {
-            docService.removeMiraklMediaForBankProof(verificationNotification.getContent().getAccountHolderCode());
         }
 
+        if (! shopEmails.isEmpty()) {
+            try {
+                sendMiraklShopEmails(getShop(shopId), shopEmails);
+            } catch (Exception e) {
+                shopEmailDbIds.forEach(dbId -> failures.put(dbId, e));
+            }
+        }
+
+        if (! passedShareholderCodes.isEmpty() || individualPassed || bankAccountPassed) {
+            try {
+                miraklMediaDeletionService.enqueue(shopId, passedShareholderCodes, individualPassed, bankAccountPassed);
+            } catch (Exception e) {
+                mediaDbIds.forEach(dbId -> failures.put(dbId, e));
+            }
+        }
+        return failures;
     }
 
     private GetAccountHolderResponse getAccountHolder(String shopId) throws Exception {
@@ -228,12 +352,10 @@ public class AdyenNotificationListener {
         return adyenAccountService.getAccountHolder(getAccountHolderRequest);
     }
 
-    private void sendBusinessShareholderAwaitingDataEmail(AccountHolderVerificationNotification verificationNotification,
-                                                          CheckStatusEnum verificationStatus,
-                                                          CheckTypeEnum verificationType,
-                                                          String shopId,
-                                                          GetAccountHolderResponse accountHolderResponse) {
-        final String shareholderCode = verificationNotification.getContent().getShareholderCode();
+    private void sendBusinessShareholderAwaitingDataEmail(final String shareholderCode,
+                                                          final String shopId,
+                                                          final GetAccountHolderResponse accountHolderResponse,
+                                                          final Map<String, String> templatesAndSubjects) {
         final ShareholderContact shareholderContact = accountHolderResponse.getAccountHolderDetails()
                                                                            .getBusinessDetails()
                                                                            .getShareholders()
@@ -241,26 +363,34 @@ public class AdyenNotificationListener {
                                                                            .filter(x -> x.getShareholderCode().equals(shareholderCode))
                                                                            .findAny()
                                                                            .orElseThrow(() -> new IllegalStateException("Unable to find shareholder: " + shareholderCode));
-        mailTemplateService.sendShareholderEmailFromTemplate(shareholderContact.getName(),
-                                                             shopId,
-                                                             Locale.getDefault(),
-                                                             getTemplate(verificationType, verificationStatus),
-                                                             getSubject(verificationType, verificationStatus),
-                                                             shareholderContact.getEmail());
+        sendShareholderEmail(shareholderContact.getName(), shopId, templatesAndSubjects, shareholderContact.getEmail());
     }
 
-    private void sendIndividualAwaitingDataEmail(CheckStatusEnum verificationStatus,
-                                                 CheckTypeEnum verificationType,
-                                                 String shopId,
-                                                 GetAccountHolderResponse accountHolderResponse) {
+    private void sendIndividualAwaitingDataEmail(final String shopId, final GetAccountHolderResponse accountHolderResponse, final Map<String, String> templatesAndSubjects) {
         final Name individualName = accountHolderResponse.getAccountHolderDetails().getIndividualDetails().getName();
         final String individualEmail = accountHolderResponse.getAccountHolderDetails().getEmail();
-        mailTemplateService.sendShareholderEmailFromTemplate(individualName,
-                                                             shopId,
-                                                             Locale.getDefault(),
-                                                             getTemplate(verificationType, verificationStatus),
-                                                             getSubject(verificationType, verificationStatus),
-                                                             individualEmail);
+        sendShareholderEmail(individualName, shopId, templatesAndSubjects, individualEmail);
+    }
+
+    /**
+     * A single pending check is sent with its own template, several checks for the same recipient are combined into one summary email
+     */
+    private void sendShareholderEmail(final Name name, final String shopId, final Map<String, String> templatesAndSubjects, final String toEmail) {
+        if (templatesAndSubjects.size() == 1) {
+            final Map.Entry<String, String> templateAndSubject = templatesAndSubjects.entrySet().iterator().next();
+            mailTemplateService.sendShareholderEmailFromTemplate(name, shopId, Locale.getDefault(), templateAndSubject.getKey(), templateAndSubject.getValue(), toEmail);
+        } else {
+            mailTemplateService.sendShareholderVerificationSummaryEmail(name, shopId, Locale.getDefault(), ImmutableList.copyOf(templatesAndSubjects.values()), toEmail);
+        }
+    }
+
+    private void sendMiraklShopEmails(final MiraklShop shop, final Map<String, String> templatesAndSubjects) {
+        if (templatesAndSubjects.size() == 1) {
+            final Map.Entry<String, String> templateAndSubject = templatesAndSubjects.entrySet().iterator().next();
+            mailTemplateService.sendMiraklShopEmailFromTemplate(shop, Locale.getDefault(), templateAndSubject.getKey(), templateAndSubject.getValue());
+        } else {
+            mailTemplateService.sendMiraklShopVerificationSummaryEmail(shop, Locale.getDefault(), ImmutableList.copyOf(templatesAndSubjects.values()));
+        }
     }
 
     private boolean dataProvidedForPassportOrIdentity(final CheckStatusEnum verificationStatus,
@@ -0,0 +1,142 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.listeners;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.model.marketpay.notification.AccountHolderVerificationNotification;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Groups ACCOUNT_HOLDER_VERIFICATION notifications of the same account holder that arrive within a short window
+ * (e.g. one notification per UBO of a business shop), so they can be handled together.
+ * <p>
+ * Notifications stay in the database until the group has been handled, the groups still pending when the application
+ * shuts down are handled straight away.
+ */
+@Component
+public class VerificationNotificationCoalescer {
+
+    private final Logger log = LoggerFactory.getLogger(VerificationNotificationCoalescer.class);
+
+    private final Map<String, PendingGroup> pendingGroups = new HashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("verification-coalescer-%d")
+                                                                                                                            .setDaemon(true)
+                                                                                                                            .build());
+
+    private final ApplicationProperties applicationProperties;
+
+    private final Executor taskExecutor;
+
+    public VerificationNotificationCoalescer(final ApplicationProperties applicationProperties, @Qualifier("taskExecutor") final Executor taskExecutor) {
+        this.applicationProperties = applicationProperties;
+        this.taskExecutor = taskExecutor;
+    }
+
+    public boolean isEnabled() {
+        return getWindowMillis() > 0;
+    }
+
+    /**
+     * Adds the notification to the group of its account holder, the first notification of a group opens the window after which the handler is called with the whole group
+     */
+    public void add(final String accountHolderCode, final Long dbId, final AccountHolderVerificationNotification notification, final GroupHandler handler) {
+        synchronized (pendingGroups) {
+            PendingGroup group = pendingGroups.get(accountHolderCode);
+            if (group == null) {
+                group = new PendingGroup(handler);
+                pendingGroups.put(accountHolderCode, group);
+                scheduler.schedule(() -> flush(accountHolderCode), getWindowMillis(), TimeUnit.MILLISECONDS);
+            }
+            group.notifications.put(dbId, notification);
+        }
+    }
+
+    private void flush(final String accountHolderCode) {
+        final PendingGroup group;
+        synchronized (pendingGroups) {
+            group = pendingGroups.remove(accountHolderCode);
+        }
+        if (group != null) {
+            log.debug("Flushing {} verification notification(s) for account holder: [{}]", group.notifications.size(), accountHolderCode);
+            taskExecutor.execute(() -> group.handler.handle(accountHolderCode, group.notifications));
+        }
+    }
+
+    /**
+     * Handles the pending groups in the closing thread, the context is closed but its beans are not destroyed yet
+     */
+    @EventListener(ContextClosedEvent.class)
+    public void flushPendingGroups() {
+        scheduler.shutdownNow();
+        final Map<String, PendingGroup> groups;
+        synchronized (pendingGroups) {
+            groups = new LinkedHashMap<>(pendingGroups);
+            pendingGroups.clear();
+        }
+        groups.forEach((accountHolderCode, group) -> {
+            log.info("Shutting down, handling {} pending verification notification(s) for account holder: [{}]", group.notifications.size(), accountHolderCode);
+            group.handler.handle(accountHolderCode, group.notifications);
+        });
+    }
+
+    private long getWindowMillis() {
+        final Integer windowMillis = applicationProperties.getVerificationCoalescingWindowMillis();
+        return windowMillis != null ? windowMillis : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private static class PendingGroup {
+
+        private final GroupHandler handler;
+        private final Map<Long, AccountHolderVerificationNotification> notifications = new LinkedHashMap<>();
+
+        private PendingGroup(final GroupHandler handler) {
+            this.handler = handler;
+        }
+    }
+
+    @FunctionalInterface
+    public interface GroupHandler {
+
+        void handle(String accountHolderCode, Map<Long, AccountHolderVerificationNotification> notifications);
+    }
+}
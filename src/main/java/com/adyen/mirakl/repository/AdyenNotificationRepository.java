@@ -23,9 +23,14 @@
 package com.adyen.mirakl.repository;
 
 import com.adyen.mirakl.domain.AdyenNotification;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 
 import org.springframework.data.jpa.repository.*;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.ZonedDateTime;
+import java.util.List;
 
 
 /**
@@ -37,4 +42,23 @@ public interface AdyenNotificationRepository extends JpaRepository<AdyenNotifica
 
     AdyenNotification findOneById(Long id);
 
+    @Query("select n.id from AdyenNotification as n where n.processed = true and n.createdAt < ?1 order by n.id")
+    List<Long> findProcessedIdsCreatedBefore(ZonedDateTime createdBefore, Pageable pageable);
+
+    /**
+     * Marks a notification that failed processing as dead-lettered, it is kept until the retention job purges it
+     */
+    @Modifying
+    @Transactional
+    @Query("update AdyenNotification as n set n.processed = true where n.id = ?1")
+    int markProcessed(Long id);
+
+    @Query("select coalesce(sum(n.storedSize), 0) from AdyenNotification as n where n.id in ?1")
+    Long sumStoredSizeByIdIn(List<Long> ids);
+
+    @Modifying
+    @Transactional
+    @Query("delete from AdyenNotification as n where n.id in ?1")
+    int deleteByIdIn(List<Long> ids);
+
 }
@@ -22,11 +22,14 @@
 
 package com.adyen.mirakl.repository;
 
+import java.time.ZonedDateTime;
 import java.util.List;
 import com.adyen.mirakl.domain.AdyenPayoutError;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 
 import org.springframework.data.jpa.repository.*;
+import org.springframework.transaction.annotation.Transactional;
 
 
 /**
@@ -36,10 +39,65 @@ import org.springframework.data.jpa.repository.*;
 @Repository
 public interface AdyenPayoutErrorRepository extends JpaRepository<AdyenPayoutError, Long> {
 
-    @Query("select e from AdyenPayoutError as e where e.processing = 0 and e.retry < ?1")
-    List<AdyenPayoutError> findByRetry(Integer retry);
+    @Query("select e.id from AdyenPayoutError as e where e.processing = 0 and e.nextRetryAt <= ?1 and e.retry < ?2 and e.id > ?3 order by e.id")
+    List<Long> findDueIdsToRetry(ZonedDateTime now, Integer retry, Long afterId, Pageable pageable);
 
-    @Query("select e from AdyenPayoutError as e where e.processing = 0 and e.accountHolderCode = ?1")
-    List<AdyenPayoutError> findByAccountHolderCode(String accountHolderCode);
+    @Query("select e.id from AdyenPayoutError as e where e.processing = 0 and e.accountHolderCode = ?1")
+    List<Long> findIdsByAccountHolderCode(String accountHolderCode);
+
+    /**
+     * Starts the retry schedule of the failed payouts of an account holder over, e.g. once it can be paid out again
+     */
+    @Modifying
+    @Transactional
+    @Query("update AdyenPayoutError as e set e.retry = 0, e.nextRetryAt = ?2 where e.processing = 0 and e.accountHolderCode = ?1")
+    int resetRetrySchedule(String accountHolderCode, ZonedDateTime nextRetryAt);
+
+    /**
+     * Claims the given failed payouts that nobody is processing with the token of this claim, rows claimed by another
+     * retry in the meantime are skipped
+     */
+    @Modifying
+    @Transactional
+    @Query("update AdyenPayoutError as e set e.processing = true, e.leaseOwner = ?2, e.leaseExpiresAt = ?3 where e.id in ?1 and e.processing = 0")
+    int claim(List<Long> ids, String leaseOwner, ZonedDateTime leaseExpiresAt);
+
+    @Query("select e from AdyenPayoutError as e where e.id in ?1 and e.processing = 1 and e.leaseOwner = ?2 order by e.id")
+    List<AdyenPayoutError> findClaimed(List<Long> ids, String leaseOwner);
+
+    /**
+     * Extends the lease of a failed payout that is still held by the given claim, 0 when the lease was lost
+     */
+    @Modifying
+    @Transactional
+    @Query("update AdyenPayoutError as e set e.leaseExpiresAt = ?3 where e.id = ?1 and e.processing = 1 and e.leaseOwner = ?2")
+    int renewLease(Long id, String leaseOwner, ZonedDateTime leaseExpiresAt);
+
+    /**
+     * Removes a failed payout whose retry went through, 0 when the given claim no longer holds it
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from AdyenPayoutError as e where e.id = ?1 and e.processing = 1 and e.leaseOwner = ?2")
+    int deleteClaimed(Long id, String leaseOwner);
+
+    /**
+     * Schedules the next retry of a failed payout whose retry failed again and releases it, 0 when the given claim no
+     * longer holds it
+     */
+    @Modifying
+    @Transactional
+    @Query("update AdyenPayoutError as e set e.retry = ?3, e.nextRetryAt = ?4, e.rawResponse = ?5, e.rawSubscriptionRequest = ?6, e.updatedAt = ?7, "
+        + "e.processing = false, e.leaseOwner = null, e.leaseExpiresAt = null where e.id = ?1 and e.processing = 1 and e.leaseOwner = ?2")
+    int rescheduleClaimed(Long id, String leaseOwner, Integer retry, ZonedDateTime nextRetryAt, String rawResponse, String rawSubscriptionRequest, ZonedDateTime updatedAt);
+
+    /**
+     * Releases the failed payouts of retries that did not finish before their lease expired, or that were claimed before leases existed
+     */
+    @Modifying
+    @Transactional
+    @Query("update AdyenPayoutError as e set e.processing = false, e.leaseOwner = null, e.leaseExpiresAt = null "
+        + "where e.processing = 1 and (e.leaseExpiresAt is null or e.leaseExpiresAt < ?1)")
+    int releaseExpiredLeases(ZonedDateTime now);
 
 }
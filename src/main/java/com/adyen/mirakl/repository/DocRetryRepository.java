@@ -23,10 +23,13 @@
 package com.adyen.mirakl.repository;
 
 import com.adyen.mirakl.domain.DocRetry;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 
 import org.springframework.data.jpa.repository.*;
 
+import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -40,8 +43,9 @@ public interface DocRetryRepository extends JpaRepository<DocRetry, Long> {
 
     Optional<DocRetry> findOneByDocId(String docId);
 
-    List<DocRetry> findByShopId(String shopId);
+    List<DocRetry> findByShopIdIn(Collection<String> shopIds);
 
-    List<DocRetry> findByTimesFailedLessThanEqual(Integer timesFailed);
+    @Query("select d from DocRetry as d where d.nextRetryAt <= ?1 and d.timesFailed <= ?2 order by d.nextRetryAt")
+    List<DocRetry> findDueBefore(ZonedDateTime now, Integer maxTimesFailed, Pageable pageable);
 
 }
@@ -0,0 +1,45 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.repository;
+
+import com.adyen.mirakl.domain.MiraklMediaDeletion;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+
+import org.springframework.data.jpa.repository.*;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+
+/**
+ * Spring Data JPA repository for the MiraklMediaDeletion entity.
+ */
+@SuppressWarnings("unused")
+@Repository
+public interface MiraklMediaDeletionRepository extends JpaRepository<MiraklMediaDeletion, Long> {
+
+    @Query("select m from MiraklMediaDeletion as m where m.nextAttemptAt <= ?1 and m.attempts < ?2 order by m.nextAttemptAt")
+    List<MiraklMediaDeletion> findDueBefore(ZonedDateTime now, Integer maxAttempts, Pageable pageable);
+
+}
@@ -23,9 +23,15 @@
 package com.adyen.mirakl.repository;
 
 import com.adyen.mirakl.domain.MiraklVoucherEntry;
+import com.adyen.mirakl.domain.enumeration.VoucherEntryStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 
 import org.springframework.data.jpa.repository.*;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
 
 
 /**
@@ -33,6 +39,52 @@ import org.springframework.data.jpa.repository.*;
  */
 @SuppressWarnings("unused")
 @Repository
-public interface MiraklVoucherEntryRepository extends JpaRepository<MiraklVoucherEntry, Long> {
+public interface MiraklVoucherEntryRepository extends JpaRepository<MiraklVoucherEntry, Long>, MiraklVoucherEntryRepositoryCustom {
+
+    List<MiraklVoucherEntry> findByStatusInOrderByIdAsc(Collection<VoucherEntryStatus> statuses);
+
+    @Modifying
+    @Transactional
+    @Query("update MiraklVoucherEntry as e set e.status = ?2 where e.id = ?1")
+    int updateStatus(Long id, VoucherEntryStatus status);
+
+    @Modifying
+    @Transactional
+    @Query("update MiraklVoucherEntry as e set e.status = ?2 where e.id in ?1")
+    int updateStatusByIdIn(List<Long> ids, VoucherEntryStatus status);
+
+    @Modifying
+    @Transactional
+    @Query("update MiraklVoucherEntry as e set e.status = ?2, e.payoutErrorId = ?3 where e.id = ?1")
+    int updateStatusAndPayoutError(Long id, VoucherEntryStatus status, Long payoutErrorId);
+
+    @Modifying
+    @Transactional
+    @Query("delete from MiraklVoucherEntry as e where e.status = ?1")
+    int deleteByStatus(VoucherEntryStatus status);
+
+    /**
+     * Deletes the failed entries whose failed payout was retried successfully, entries without a failed payout to retry
+     * from are kept for investigation
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from MiraklVoucherEntry as e where e.status = ?1 and e.payoutErrorId is not null "
+        + "and not exists (select p.id from AdyenPayoutError as p where p.id = e.payoutErrorId)")
+    int deleteResolvedByStatus(VoucherEntryStatus status);
+
+    @Query("select e from MiraklVoucherEntry as e where e.status in ?1 and e.commissionCounted = false order by e.id")
+    List<MiraklVoucherEntry> findCommissionsToCount(Collection<VoucherEntryStatus> statuses, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("update MiraklVoucherEntry as e set e.commissionCounted = true where e.id in ?1")
+    int markCommissionCounted(List<Long> ids);
+
+    /**
+     * The number of entries of a payout job per status, as pairs of {@link VoucherEntryStatus} and count
+     */
+    @Query("select e.status, count(e) from MiraklVoucherEntry as e where e.payoutJobId = ?1 group by e.status")
+    List<Object[]> countByStatusForPayoutJob(Long payoutJobId);
 
 }
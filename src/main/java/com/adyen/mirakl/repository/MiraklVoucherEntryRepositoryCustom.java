@@ -0,0 +1,38 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.repository;
+
+import java.util.List;
+import com.adyen.mirakl.domain.MiraklVoucherEntry;
+
+/**
+ * Bulk operations on MiraklVoucherEntry which Spring Data JPA cannot batch
+ */
+public interface MiraklVoucherEntryRepositoryCustom {
+
+    /**
+     * Inserts the entries with one JDBC batch, the IDENTITY ids keep Hibernate from batching them itself. The ids of the
+     * given entries are not set, their status and idempotency key are stored as they are
+     */
+    void insertAll(List<MiraklVoucherEntry> miraklVoucherEntries);
+}
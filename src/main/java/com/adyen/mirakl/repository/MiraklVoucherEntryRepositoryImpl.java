@@ -0,0 +1,64 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.repository;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import com.adyen.mirakl.domain.MiraklVoucherEntry;
+
+public class MiraklVoucherEntryRepositoryImpl implements MiraklVoucherEntryRepositoryCustom {
+
+    private static final String INSERT = "insert into mirakl_voucher_entry (created_at, updated_at, shop_id, transfer_amount, currency_iso_code, iban, invoice_number, "
+        + "shop_name, subscription_amount, total_charged_amount, total_charged_amount_vat, status, idempotency_key, commission_counted, payout_job_id) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public MiraklVoucherEntryRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void insertAll(final List<MiraklVoucherEntry> miraklVoucherEntries) {
+        final Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate(INSERT, miraklVoucherEntries, miraklVoucherEntries.size(), (statement, entry) -> {
+            statement.setTimestamp(1, now);
+            statement.setTimestamp(2, now);
+            statement.setString(3, entry.getShopId());
+            statement.setString(4, entry.getTransferAmount());
+            statement.setString(5, entry.getCurrencyIsoCode());
+            statement.setString(6, entry.getIban());
+            statement.setString(7, entry.getInvoiceNumber());
+            statement.setString(8, entry.getShopName());
+            statement.setString(9, entry.getSubscriptionAmount());
+            statement.setString(10, entry.getTotalChargedAmount());
+            statement.setString(11, entry.getTotalChargedAmountVat());
+            statement.setString(12, entry.getStatus().name());
+            statement.setString(13, entry.getIdempotencyKey());
+            statement.setBoolean(14, Boolean.TRUE.equals(entry.isCommissionCounted()));
+            statement.setObject(15, entry.getPayoutJobId(), Types.BIGINT);
+        });
+    }
+}
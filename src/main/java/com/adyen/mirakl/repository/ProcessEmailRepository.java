@@ -24,10 +24,12 @@ package com.adyen.mirakl.repository;
 
 import com.adyen.mirakl.domain.ProcessEmail;
 import com.adyen.mirakl.domain.enumeration.EmailState;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 
 import org.springframework.data.jpa.repository.*;
 
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -45,4 +47,7 @@ public interface ProcessEmailRepository extends JpaRepository<ProcessEmail, Long
     @Query("select distinct e from ProcessEmail as e left join fetch e.emailErrors where e.state = ?1")
     List<ProcessEmail> findByState(EmailState emailState);
 
+    @Query("select e from ProcessEmail as e where e.state in ?1 and e.nextAttemptAt <= ?2 order by e.nextAttemptAt, e.id")
+    List<ProcessEmail> findDue(List<EmailState> emailStates, ZonedDateTime now, Pageable pageable);
+
 }
@@ -24,6 +24,8 @@ package com.adyen.mirakl.scheduling;
 
 
 import com.adyen.mirakl.service.DocService;
+import com.adyen.mirakl.service.MiraklMediaDeletionService;
+import com.adyen.mirakl.service.NotificationRetentionService;
 import com.adyen.mirakl.service.RetryEmailService;
 import com.adyen.mirakl.service.RetryPayoutService;
 import com.adyen.mirakl.service.ShopService;
@@ -53,6 +55,12 @@ public class SchedulerTrigger {
     @Resource
     private RetryPayoutService retryPayoutService;
 
+    @Resource
+    private NotificationRetentionService notificationRetentionService;
+
+    @Resource
+    private MiraklMediaDeletionService miraklMediaDeletionService;
+
     @Scheduled(cron = "${application.miraklPullCron}")
     public void runShopUpdates() {
         log.debug("Pulling shops from Mirakl");
@@ -61,9 +69,9 @@ public class SchedulerTrigger {
         docService.processUpdatedDocuments();
     }
 
-    @Scheduled(cron = "${application.emailRetryCron}")
-    public void retryEmails() {
-        retryEmailService.retryFailedEmails();
+    @Scheduled(cron = "${application.emailSendCron}")
+    public void sendEmails() {
+        retryEmailService.sendDueEmails();
     }
 
     @Scheduled(cron = "${application.removeSentEmailsCron}")
@@ -81,4 +89,14 @@ public class SchedulerTrigger {
         docService.retryFailedDocuments();
     }
 
+    @Scheduled(cron = "${application.notificationRetentionCron}")
+    public void purgeExpiredNotifications() {
+        notificationRetentionService.purgeExpiredNotifications();
+    }
+
+    @Scheduled(cron = "${application.mediaDeletionCron}")
+    public void deleteMiraklMedia() {
+        miraklMediaDeletionService.deleteDueMedia();
+    }
+
 }
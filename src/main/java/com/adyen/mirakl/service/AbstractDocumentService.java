@@ -21,25 +21,21 @@
 
 package com.adyen.mirakl.service;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.stream.Collectors;
 import javax.annotation.Resource;
 import org.apache.commons.lang3.EnumUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import com.adyen.mirakl.service.DocumentTypeCodeClassifier.DocumentTypeCode;
 import com.adyen.mirakl.service.dto.DocumentDTO;
 import com.adyen.model.marketpay.DocumentDetail;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.mirakl.client.mmp.domain.common.MiraklAdditionalFieldValue;
-import com.mirakl.client.mmp.domain.shop.MiraklShop;
-import com.mirakl.client.mmp.domain.shop.MiraklShops;
 import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
-import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
-import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
 
 @Service
 public abstract class AbstractDocumentService<T extends DocumentDTO> {
@@ -47,14 +43,15 @@ public abstract class AbstractDocumentService<T extends DocumentDTO> {
     private final Logger log = LoggerFactory.getLogger(AbstractDocumentService.class);
 
     private static final String ADYEN_PREFIX = "adyen-";
-    private static final String SUFFIX_MIRAKL_PHOTOID = "-photoid";
-    private static final String SUFFIX_MIRAKL_PHOTOID_REAR = "-photoid-rear";
     private static final String SUFFIX_MIRAKL_PHOTOIDTYPE = "-photoidtype";
     private static final String SUFFIX_FRONT = "_FRONT";
     private static final String SUFFIX_BACK = "_BACK";
 
     @Resource
-    private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient;
+    private PhotoIdTypeCache photoIdTypeCache;
+
+    @Resource
+    private DocumentTypeCodeClassifier documentTypeCodeClassifier;
 
     public abstract List<T> extractDocuments(List<MiraklShopDocument> miraklShopDocuments);
 
@@ -63,22 +60,44 @@ public abstract class AbstractDocumentService<T extends DocumentDTO> {
                                  final Integer entitySequence,
                                  final Map<Boolean, DocumentDetail.DocumentTypeEnum> documentTypeEnum);
 
-    void addToBuilder(ImmutableList.Builder<T> builder, Map<String, String> internalMemoryForDocs, MiraklShopDocument miraklShopDocument, String entityType, Integer entitySequence) {
-        String entityName = entityType + Objects.toString(entitySequence, "");
-        String photoIdFront = ADYEN_PREFIX + entityName + SUFFIX_MIRAKL_PHOTOID;
-        String photoIdRear = ADYEN_PREFIX + entityName + SUFFIX_MIRAKL_PHOTOID_REAR;
+    /**
+     * Extracts the photo ids of the given entity type, the photo id types of all their shops are loaded at once
+     */
+    List<T> extractDocuments(List<MiraklShopDocument> miraklShopDocuments, String entityType) {
+        final List<MiraklShopDocument> photoIds = new ArrayList<>();
+        final List<DocumentTypeCode> documentTypeCodes = new ArrayList<>();
+        miraklShopDocuments.forEach(miraklShopDocument -> {
+            final DocumentTypeCode documentTypeCode = documentTypeCodeClassifier.classify(miraklShopDocument.getTypeCode());
+            if (documentTypeCode != null && documentTypeCode.getEntityType().equals(entityType)) {
+                photoIds.add(miraklShopDocument);
+                documentTypeCodes.add(documentTypeCode);
+            }
+        });
+        final Map<String, Map<String, String>> photoIdTypes = photoIdTypeCache.prefetch(photoIds.stream().map(MiraklShopDocument::getShopId).collect(Collectors.toSet()));
+
+        ImmutableList.Builder<T> builder = ImmutableList.builder();
+        for (int i = 0; i < photoIds.size(); i++) {
+            addToBuilder(builder, photoIds.get(i), documentTypeCodes.get(i), photoIdTypes);
+        }
+        return builder.build();
+    }
+
+    private void addToBuilder(ImmutableList.Builder<T> builder,
+                              MiraklShopDocument miraklShopDocument,
+                              DocumentTypeCode documentTypeCode,
+                              Map<String, Map<String, String>> photoIdTypes) {
+        final String entityName = documentTypeCode.getEntityName();
+        final Integer entitySequence = documentTypeCode.getSequence();
 
-        if (miraklShopDocument.getTypeCode().equalsIgnoreCase(photoIdFront)) {
-            final Map<Boolean, DocumentDetail.DocumentTypeEnum> documentTypeEnum = findCorrectEnum(internalMemoryForDocs, miraklShopDocument, entityName, SUFFIX_FRONT);
+        if (documentTypeCode.getSide() == DocumentTypeCodeClassifier.Side.FRONT) {
+            final Map<Boolean, DocumentDetail.DocumentTypeEnum> documentTypeEnum = findCorrectEnum(miraklShopDocument, entityName, SUFFIX_FRONT, photoIdTypes);
             if (documentTypeEnum != null) {
                 addDocumentDTO(builder, miraklShopDocument, entitySequence, documentTypeEnum);
             } else {
                 log.info("DocumentType is not supported for {}, shop: [{}], skipping uboDocument", entityName, miraklShopDocument.getShopId());
             }
-        }
-
-        if (miraklShopDocument.getTypeCode().equalsIgnoreCase(photoIdRear)) {
-            final Map<Boolean, DocumentDetail.DocumentTypeEnum> documentTypeEnum = findCorrectEnum(internalMemoryForDocs, miraklShopDocument, entityName, SUFFIX_BACK);
+        } else {
+            final Map<Boolean, DocumentDetail.DocumentTypeEnum> documentTypeEnum = findCorrectEnum(miraklShopDocument, entityName, SUFFIX_BACK, photoIdTypes);
             // If the enum + BACK_SUFFIX is not found as an enum then do not send it across
             if (documentTypeEnum != null && documentTypeEnum.keySet().iterator().next()) {
                 addDocumentDTO(builder, miraklShopDocument, entitySequence, documentTypeEnum);
@@ -95,11 +114,11 @@ public abstract class AbstractDocumentService<T extends DocumentDTO> {
         }
     }
 
-    private Map<Boolean, DocumentDetail.DocumentTypeEnum> findCorrectEnum(final Map<String, String> internalMemoryForDocs,
-                                                                          final MiraklShopDocument miraklShopDocument,
+    private Map<Boolean, DocumentDetail.DocumentTypeEnum> findCorrectEnum(final MiraklShopDocument miraklShopDocument,
                                                                           final String entityName,
-                                                                          String suffix) {
-        String documentType = retrieveDocumentType(entityName, miraklShopDocument.getShopId(), internalMemoryForDocs);
+                                                                          String suffix,
+                                                                          final Map<String, Map<String, String>> photoIdTypes) {
+        String documentType = retrieveDocumentType(entityName, miraklShopDocument.getShopId(), photoIdTypes);
         if (documentType != null) {
             if (EnumUtils.isValidEnum(DocumentDetail.DocumentTypeEnum.class, documentType + suffix)) {
                 return ImmutableMap.of(true, DocumentDetail.DocumentTypeEnum.valueOf(documentType + suffix));
@@ -110,30 +129,9 @@ public abstract class AbstractDocumentService<T extends DocumentDTO> {
         return null;
     }
 
-    private String retrieveDocumentType(final String entityName, final String shopId, Map<String, String> internalMemory) {
-        String documentTypeEnum = internalMemory.getOrDefault(shopId + "_" + entityName, null);
-        if (documentTypeEnum == null) {
-            String docTypeFromMirakl = getDocTypeFromMirakl(entityName, shopId);
-            if (docTypeFromMirakl != null) {
-                internalMemory.put(shopId + "_" + entityName, docTypeFromMirakl);
-                return docTypeFromMirakl;
-            }
-        }
-        return documentTypeEnum;
-    }
-
-    private String getDocTypeFromMirakl(String entityName, String shopId) {
-        MiraklGetShopsRequest request = new MiraklGetShopsRequest();
-        request.setShopIds(ImmutableList.of(shopId));
-        MiraklShops shops = miraklMarketplacePlatformOperatorApiClient.getShops(request);
-        MiraklShop shop = shops.getShops().iterator().next();
-        String code = ADYEN_PREFIX + entityName + SUFFIX_MIRAKL_PHOTOIDTYPE;
-        Optional<MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue> photoIdType = shop.getAdditionalFieldValues()
-                                                                                                   .stream()
-                                                                                                   .filter(MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue.class::isInstance)
-                                                                                                   .map(MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue.class::cast)
-                                                                                                   .filter(x -> code.equalsIgnoreCase(x.getCode()))
-                                                                                                   .findAny();
-        return photoIdType.map(MiraklAdditionalFieldValue.MiraklAbstractAdditionalFieldWithSingleValue::getValue).orElse(null);
+    private String retrieveDocumentType(final String entityName, final String shopId, final Map<String, Map<String, String>> photoIdTypes) {
+        final String code = ADYEN_PREFIX + entityName + SUFFIX_MIRAKL_PHOTOIDTYPE;
+        final Map<String, String> shopPhotoIdTypes = photoIdTypes.get(shopId);
+        return shopPhotoIdTypes != null ? shopPhotoIdTypes.get(code.toLowerCase()) : photoIdTypeCache.getPhotoIdType(shopId, code);
     }
 }
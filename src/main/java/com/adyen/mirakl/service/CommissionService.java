@@ -0,0 +1,140 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.AdyenPayoutError;
+import com.adyen.mirakl.domain.CommissionTotal;
+import com.adyen.mirakl.domain.MiraklVoucherEntry;
+import com.adyen.mirakl.domain.enumeration.VoucherEntryStatus;
+import com.adyen.mirakl.repository.AdyenPayoutErrorRepository;
+import com.adyen.mirakl.repository.CommissionTotalRepository;
+import com.adyen.mirakl.repository.MiraklVoucherEntryRepository;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Keeps exact running totals per currency of the commission (total charged amount plus VAT) of processed voucher entries,
+ * until they are paid out to the liable account
+ */
+@Service
+@Transactional
+public class CommissionService {
+
+    private final Logger log = LoggerFactory.getLogger(CommissionService.class);
+
+    /**
+     * The commission of an entry is due once its payout was made, whether it was submitted, failed (it is retried) or is unconfirmed
+     */
+    private static final List<VoucherEntryStatus> COMMISSION_DUE_STATUSES = ImmutableList.of(VoucherEntryStatus.PAYOUT_SUBMITTED,
+                                                                                              VoucherEntryStatus.DONE,
+                                                                                              VoucherEntryStatus.FAILED,
+                                                                                              VoucherEntryStatus.UNCONFIRMED);
+
+    @Resource
+    private MiraklVoucherEntryRepository miraklVoucherEntryRepository;
+
+    @Resource
+    private CommissionTotalRepository commissionTotalRepository;
+
+    @Resource
+    private AdyenPayoutErrorRepository adyenPayoutErrorRepository;
+
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    /**
+     * Adds the commission of the next page of uncounted entries to the totals and marks them counted in the same
+     * transaction, so a restarted run never counts an entry twice
+     *
+     * @return the number of entries counted, 0 once all are
+     */
+    public int countCommissionPage() {
+        final List<MiraklVoucherEntry> entries = miraklVoucherEntryRepository.findCommissionsToCount(COMMISSION_DUE_STATUSES,
+                                                                                                     new PageRequest(0, applicationProperties.getCommissionPageSize()));
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        final Map<String, BigDecimal> commissions = new HashMap<>();
+        for (MiraklVoucherEntry entry : entries) {
+            try {
+                final BigDecimal commission = new BigDecimal(entry.getTotalChargedAmount()).add(new BigDecimal(entry.getTotalChargedAmountVat()));
+                commissions.merge(entry.getCurrencyIsoCode(), commission, BigDecimal::add);
+            } catch (NumberFormatException | NullPointerException e) {
+                log.error("total_charged_amount ["
+                              + entry.getTotalChargedAmount()
+                              + "] or total_charged_amount_vat ["
+                              + entry.getTotalChargedAmountVat()
+                              + "]  is not a valid number hence skipping addition of this voucher entry in commission payout"
+                              + e.getMessage());
+            }
+        }
+        commissions.forEach(this::addToTotal);
+        miraklVoucherEntryRepository.markCommissionCounted(entries.stream().map(MiraklVoucherEntry::getId).collect(Collectors.toList()));
+        return entries.size();
+    }
+
+    /**
+     * The totals counted so far, to be paid out. A total stays until its payout is settled
+     */
+    @Transactional(readOnly = true)
+    public List<CommissionTotal> getTotals() {
+        return commissionTotalRepository.findAll();
+    }
+
+    /**
+     * Deducts a commission payout from the total of its currency once it was submitted, or stored to be retried when it
+     * failed, in the same transaction: a crash before leaves the total to be paid out by the next run
+     *
+     * @param failedPayout the failed payout to retry, null if the payout was submitted
+     */
+    public void settle(String currencyIsoCode, BigDecimal amount, AdyenPayoutError failedPayout) {
+        if (failedPayout != null) {
+            adyenPayoutErrorRepository.save(failedPayout);
+        }
+        commissionTotalRepository.findOneByCurrencyIsoCode(currencyIsoCode).ifPresent(total -> {
+            final BigDecimal remaining = total.getAmount().subtract(amount);
+            if (remaining.signum() == 0) {
+                commissionTotalRepository.delete(total);
+            } else {
+                commissionTotalRepository.save(total.amount(remaining));
+            }
+        });
+    }
+
+    private void addToTotal(String currencyIsoCode, BigDecimal commission) {
+        final CommissionTotal total = commissionTotalRepository.findOneByCurrencyIsoCode(currencyIsoCode)
+                                                               .orElseGet(() -> new CommissionTotal().currencyIsoCode(currencyIsoCode).amount(BigDecimal.ZERO));
+        commissionTotalRepository.save(total.amount(total.getAmount().add(commission)));
+    }
+}
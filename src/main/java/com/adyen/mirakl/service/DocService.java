@@ -22,17 +22,32 @@
 
 package com.adyen.mirakl.service;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import javax.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import com.adyen.enums.Environment;
@@ -46,6 +61,7 @@ import com.adyen.mirakl.repository.DocRetryRepository;
 import com.adyen.mirakl.repository.ShareholderMappingRepository;
 import com.adyen.mirakl.service.dto.DocumentDTO;
 import com.adyen.mirakl.service.dto.UboDocumentDTO;
+import com.adyen.mirakl.service.util.BackoffUtil;
 import com.adyen.mirakl.service.util.GetShopDocumentsRequest;
 import com.adyen.model.marketpay.DocumentDetail;
 import com.adyen.model.marketpay.GetAccountHolderRequest;
@@ -55,21 +71,22 @@ import com.adyen.model.marketpay.UploadDocumentResponse;
 import com.adyen.service.Account;
 import com.adyen.service.exception.ApiException;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.mirakl.client.mmp.domain.common.FileWrapper;
 import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
 import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
 import com.mirakl.client.mmp.request.shop.document.MiraklDeleteShopDocumentRequest;
 import com.mirakl.client.mmp.request.shop.document.MiraklDownloadShopsDocumentsRequest;
 import com.mirakl.client.mmp.request.shop.document.MiraklGetShopDocumentsRequest;
-import static com.google.common.io.Files.toByteArray;
 
 @Service
 public class DocService {
 
     private final Logger log = LoggerFactory.getLogger(DocService.class);
 
-    private static final String UBO_ENTITY_TYPE = "ubo";
-    private static final String INDIVIDUAL_ENTITY_TYPE = "individual";
+    private static final int SHOP_IDS_PER_QUERY = 1000;
+    private static final int SHOP_IDS_PER_DOCUMENTS_REQUEST = 100;
 
     @Resource
     private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient;
@@ -98,6 +115,24 @@ public class DocService {
     @Resource
     private ApplicationProperties applicationProperties;
 
+    @Resource
+    private StreamingDocumentUploader streamingDocumentUploader;
+
+    @Resource
+    private DocUploadLedgerService docUploadLedgerService;
+
+    @Resource
+    private DocumentTypeCodeClassifier documentTypeCodeClassifier;
+
+    @Resource
+    private DocumentImageOptimizer documentImageOptimizer;
+
+    @Resource(name = "docDownloadExecutor")
+    private Executor docDownloadExecutor;
+
+    @Resource(name = "docUploadExecutor")
+    private Executor docUploadExecutor;
+
     @Value("${adyenConfig.environment}")
     private String environment;
 
@@ -113,58 +148,233 @@ public class DocService {
     }
 
     private void processDocs(final List<MiraklShopDocument> miraklShopDocumentList) {
+        final List<DocumentTransfer> transfers = new ArrayList<>();
         for (MiraklShopDocument document : miraklShopDocumentList) {
             if (Constants.BANKPROOF.equals(document.getTypeCode())) {
-                updateDocument(document, DocumentDetail.DocumentTypeEnum.BANK_STATEMENT);
+                transfers.add(new DocumentTransfer(document, DocumentDetail.DocumentTypeEnum.BANK_STATEMENT, null));
             }
         }
 
         final List<UboDocumentDTO> uboDocumentDTOS = uboDocumentService.extractDocuments(miraklShopDocumentList);
-        uboDocumentDTOS.forEach(documentDTO -> updateDocument(documentDTO.getMiraklShopDocument(), documentDTO.getDocumentTypeEnum(), documentDTO.getShareholderCode()));
+        uboDocumentDTOS.forEach(documentDTO -> transfers.add(new DocumentTransfer(documentDTO.getMiraklShopDocument(), documentDTO.getDocumentTypeEnum(), documentDTO.getShareholderCode())));
 
         final List<DocumentDTO> individualDocumentDTOS = individualDocumentService.extractDocuments(miraklShopDocumentList);
-        individualDocumentDTOS.forEach(documentDTO -> updateDocument(documentDTO.getMiraklShopDocument(), documentDTO.getDocumentTypeEnum(), null));
+        individualDocumentDTOS.forEach(documentDTO -> transfers.add(new DocumentTransfer(documentDTO.getMiraklShopDocument(), documentDTO.getDocumentTypeEnum(), null)));
+
+        transferDocuments(transfers);
+    }
+
+    /**
+     * Download from Mirakl and upload to Adyen in separate pools, so downloads of the next documents overlap with the uploads of
+     * the previous ones. Returns once every document has been uploaded or stored for retry.
+     */
+    private void transferDocuments(final List<DocumentTransfer> transfers) {
+        final List<CompletableFuture<?>> futures = new ArrayList<>();
+        final Map<String, List<DocumentTransfer>> transfersByShop = transfers.stream()
+                                                                            .collect(Collectors.groupingBy(transfer -> transfer.getDocument().getShopId(),
+                                                                                                           LinkedHashMap::new,
+                                                                                                           Collectors.toList()));
+        transfersByShop.forEach((shopId, shopTransfers) -> {
+            final ShopLanes shopLanes = new ShopLanes(applicationProperties.getDocTransfersPerShop());
+            if (applicationProperties.isBatchDocumentDownload() && shopTransfers.size() > 1) {
+                futures.add(CompletableFuture.supplyAsync(() -> transferShopDocuments(shopTransfers, shopLanes), docDownloadExecutor)
+                                             .thenCompose(uploads -> CompletableFuture.allOf(uploads.toArray(new CompletableFuture[0]))));
+            } else {
+                shopTransfers.forEach(transfer -> futures.add(shopLanes.submit(() -> transferDocument(transfer))));
+            }
+        });
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    private CompletableFuture<?> transferDocument(final DocumentTransfer transfer) {
+        final MiraklShopDocument document = transfer.getDocument();
+        return CompletableFuture.supplyAsync(() -> downloadSelectedDocument(document), docDownloadExecutor).thenAcceptAsync(fileWrapper -> {
+            try {
+                // the Mirakl client wrote the file itself, it is read once to be hashed
+                uploadDocumentIfChanged(transfer, fileWrapper.getFile(), fileWrapper.getFilename(), docUploadLedgerService.hash(fileWrapper.getFile()));
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, docUploadExecutor).handle((result, throwable) -> {
+            settleDocument(document, throwable);
+            return result;
+        });
+    }
+
+    /**
+     * Download the documents of one shop with a single S31 call and start the upload of every zip entry as soon as it is
+     * extracted. An entry is only extracted once a lane of the shop is free, so at most docTransfersPerShop entries are on
+     * disk at the same time. Documents which cannot be matched to an entry by their file name, or all remaining ones if the
+     * batch download fails, fall back to downloading them one by one.
+     */
+    private List<CompletableFuture<?>> transferShopDocuments(final List<DocumentTransfer> shopTransfers, final ShopLanes shopLanes) {
+        final List<CompletableFuture<?>> uploads = new ArrayList<>();
+        final List<DocumentTransfer> singleTransfers = new ArrayList<>();
+        final Map<String, DocumentTransfer> transfersByFileName = new LinkedHashMap<>();
+        shopTransfers.stream().collect(Collectors.groupingBy(transfer -> Objects.toString(transfer.getDocument().getFileName(), ""))).forEach((fileName, sameName) -> {
+            if (sameName.size() == 1 && ! fileName.isEmpty()) {
+                transfersByFileName.put(fileName, sameName.get(0));
+            } else {
+                singleTransfers.addAll(sameName);
+            }
+        });
+
+        if (transfersByFileName.size() > 1) {
+            final List<String> documentIds = transfersByFileName.values().stream().map(transfer -> transfer.getDocument().getId()).collect(Collectors.toList());
+            File zipFile = null;
+            try {
+                zipFile = downloadDocuments(documentIds).getFile();
+                try (ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(zipFile))) {
+                    ZipEntry entry;
+                    while ((entry = zipInputStream.getNextEntry()) != null) {
+                        final String fileName = entry.isDirectory() ? null : Paths.get(entry.getName()).getFileName().toString();
+                        final DocumentTransfer transfer = fileName == null ? null : transfersByFileName.get(fileName);
+                        if (transfer != null) {
+                            shopLanes.awaitFreeLane();
+                            final File entryFile = File.createTempFile("mirakl-document-", ".tmp");
+                            final String contentHash;
+                            try {
+                                contentHash = DocUploadLedgerService.copyAndHash(zipInputStream, entryFile);
+                            } catch (IOException e) {
+                                deleteFile(entryFile, "extracted document");
+                                throw e;
+                            }
+                            transfersByFileName.remove(fileName);
+                            uploads.add(shopLanes.submit(() -> uploadExtractedDocument(transfer, entryFile, contentHash)));
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Interrupted while extracting documents {}, downloading the remaining ones one by one", documentIds);
+            } catch (Exception e) {
+                log.error("Batch download failed for documents {}, downloading them one by one: {}", documentIds, e.getMessage(), e);
+            } finally {
+                deleteFile(zipFile, "downloaded documents");
+            }
+        }
+        singleTransfers.addAll(transfersByFileName.values());
+        singleTransfers.forEach(transfer -> uploads.add(shopLanes.submit(() -> transferDocument(transfer))));
+        return uploads;
     }
 
+    private CompletableFuture<?> uploadExtractedDocument(final DocumentTransfer transfer, final File entryFile, final String contentHash) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                uploadDocumentIfChanged(transfer, entryFile, transfer.getDocument().getFileName(), contentHash);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, docUploadExecutor).handle((result, throwable) -> {
+            deleteFile(entryFile, "extracted document");
+            settleDocument(transfer.getDocument(), throwable);
+            return result;
+        });
+    }
+
+    private void deleteFile(final File file, final String description) {
+        if (file != null && file.exists() && ! file.delete()) {
+            log.warn("Could not delete {} {}", description, file);
+        }
+    }
+
+    /**
+     * Never throws, a transfer that fails to settle must not stop the transfers chained after it on its lane
+     */
+    private void settleDocument(final MiraklShopDocument document, final Throwable throwable) {
+        try {
+            if (throwable == null) {
+                removeDocumentFromRetry(document);
+            } else {
+                handleFailedDocument(document, throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable);
+            }
+        } catch (Exception e) {
+            log.error("Could not settle document {} of shop {}: {}", document.getId(), document.getShopId(), e.getMessage(), e);
+        }
+    }
+
+    private void uploadDocumentIfChanged(final DocumentTransfer transfer, final File file, final String filename, final String contentHash) throws Exception {
+        final MiraklShopDocument document = transfer.getDocument();
+        if (docUploadLedgerService.isAlreadyUploaded(document.getShopId(), transfer.getShareholderCode(), transfer.getType(), contentHash)) {
+            log.info("Skipping upload of document {} for shop {}, the same content was already uploaded as {}", document.getId(), document.getShopId(), transfer.getType());
+            return;
+        }
+        final File uploadFile = documentImageOptimizer.optimize(file);
+        try {
+            uploadDocumentToAdyen(transfer.getType(), uploadFile, filename, document.getShopId(), transfer.getShareholderCode());
+        } finally {
+            if (! uploadFile.equals(file) && ! uploadFile.delete()) {
+                log.warn("Could not delete optimised document {}", uploadFile);
+            }
+        }
+        docUploadLedgerService.recordUpload(document, transfer.getShareholderCode(), transfer.getType(), contentHash);
+    }
+
+    /**
+     * Retry the failed documents of the given shops, e.g. once they are synced, in a single pass through the pipeline
+     */
     @Async
-    public void retryDocumentsForShop(String shopId) {
-        final List<DocRetry> retryDocsByShopId = docRetryRepository.findByShopId(shopId);
-        if (! retryDocsByShopId.isEmpty()) {
-            retryFailedDocuments(retryDocsByShopId);
+    public void retryDocumentsForShops(final Collection<String> shopIds) {
+        final List<DocRetry> docRetries = new ArrayList<>();
+        Iterables.partition(ImmutableSet.copyOf(shopIds), SHOP_IDS_PER_QUERY).forEach(partition -> docRetries.addAll(docRetryRepository.findByShopIdIn(partition)));
+        if (! docRetries.isEmpty()) {
+            retryFailedDocuments(docRetries);
         }
     }
 
+    /**
+     * Retry the documents whose next retry is due, a page at a time. Every document of a page is rescheduled before it is
+     * retried, so the next page only holds documents not seen yet in this run
+     */
     @Async
     public void retryFailedDocuments() {
-        final List<DocRetry> docRetries = docRetryRepository.findByTimesFailedLessThanEqual(applicationProperties.getMaxDocRetries());
-        if (! docRetries.isEmpty()) {
+        final ZonedDateTime now = ZonedDateTime.now();
+        final int pageSize = applicationProperties.getDocRetryPageSize();
+        List<DocRetry> docRetries = docRetryRepository.findDueBefore(now, applicationProperties.getMaxDocRetries(), new PageRequest(0, pageSize));
+        while (! docRetries.isEmpty()) {
+            docRetries.forEach(docRetry -> docRetry.setNextRetryAt(nextRetryAt(docRetry.getTimesFailed())));
+            docRetryRepository.save(docRetries);
             retryFailedDocuments(docRetries);
+            if (docRetries.size() < pageSize) {
+                break;
+            }
+            docRetries = docRetryRepository.findDueBefore(now, applicationProperties.getMaxDocRetries(), new PageRequest(0, pageSize));
         }
     }
 
     private void retryFailedDocuments(final List<DocRetry> docsToRetry) {
-        final Set<String> shopIds = docsToRetry.stream().map(DocRetry::getShopId).collect(Collectors.toSet());
+        final Set<String> shopIds = docsToRetry.stream().map(DocRetry::getShopId).collect(Collectors.toCollection(LinkedHashSet::new));
         final Set<String> docIds = docsToRetry.stream().map(DocRetry::getDocId).collect(Collectors.toSet());
-        final List<MiraklShopDocument> shopDocuments = miraklMarketplacePlatformOperatorApiClient.getShopDocuments(new MiraklGetShopDocumentsRequest(shopIds));
+        final List<MiraklShopDocument> shopDocuments = new ArrayList<>();
+        Iterables.partition(shopIds, SHOP_IDS_PER_DOCUMENTS_REQUEST)
+                 .forEach(partition -> shopDocuments.addAll(miraklMarketplacePlatformOperatorApiClient.getShopDocuments(new MiraklGetShopDocumentsRequest(partition))));
         final List<MiraklShopDocument> filteredShopDocuments = shopDocuments.stream().filter(shopDocument -> docIds.contains(shopDocument.getId())).collect(Collectors.toList());
+
+        // the document was deleted in Mirakl (e.g. replaced by the seller), retrying it would fail forever
+        final Set<String> foundDocIds = filteredShopDocuments.stream().map(MiraklShopDocument::getId).collect(Collectors.toSet());
+        docsToRetry.stream().filter(docRetry -> ! foundDocIds.contains(docRetry.getDocId())).forEach(docRetry -> {
+            log.info("Document {} of shop {} no longer exists in Mirakl, removing it from retry", docRetry.getDocId(), docRetry.getShopId());
+            deleteDocRetry(docRetry);
+        });
         processDocs(filteredShopDocuments);
     }
 
-    private void updateDocument(final MiraklShopDocument document, DocumentDetail.DocumentTypeEnum type, String shareholderCode) {
-        FileWrapper fileWrapper = downloadSelectedDocument(document);
-        try {
-            uploadDocumentToAdyen(type, fileWrapper, document.getShopId(), shareholderCode);
-            docRetryRepository.findOneByDocId(document.getId()).ifPresent(docRetry -> {
-                docErrorRepository.delete(docRetry.getDocErrors());
-                docRetryRepository.delete(docRetry.getId());
-            });
-        } catch (ApiException e) {
-            log.error("MarketPay Api Exception: {}, {}. For the Shop: {}", e.getError(), e, document.getShopId());
-            storeDocumentForRetry(document.getId(), document.getShopId(), e.toString());
-        } catch (Exception e) {
+    private void removeDocumentFromRetry(final MiraklShopDocument document) {
+        docRetryRepository.findOneByDocId(document.getId()).ifPresent(this::deleteDocRetry);
+    }
+
+    private void deleteDocRetry(final DocRetry docRetry) {
+        docErrorRepository.delete(docRetry.getDocErrors());
+        docRetryRepository.delete(docRetry.getId());
+    }
+
+    private void handleFailedDocument(final MiraklShopDocument document, final Throwable e) {
+        if (e instanceof ApiException) {
+            log.error("MarketPay Api Exception: {}, {}. For the Shop: {}", ((ApiException) e).getError(), e, document.getShopId());
+        } else {
             log.error("Exception: {}, {}. For the Shop: {}", e.getMessage(), e, document.getShopId());
-            storeDocumentForRetry(document.getId(), document.getShopId(), e.toString());
         }
+        storeDocumentForRetry(document.getId(), document.getShopId(), e.toString());
     }
 
     private void storeDocumentForRetry(String documentId, String shopId, String error) {
@@ -183,12 +393,13 @@ public class DocService {
         docRetry.addDocError(docError);
         docRetry.setShopId(shopId);
         docRetry.setTimesFailed(timesFailed);
+        docRetry.setNextRetryAt(nextRetryAt(timesFailed));
         docRetryRepository.saveAndFlush(docRetry);
         docErrorRepository.saveAndFlush(docError);
     }
 
-    private void updateDocument(final MiraklShopDocument document, DocumentDetail.DocumentTypeEnum type) {
-        updateDocument(document, type, null);
+    private ZonedDateTime nextRetryAt(int timesFailed) {
+        return BackoffUtil.nextAttemptAt(ZonedDateTime.now(), timesFailed, applicationProperties.getDocRetryBaseDelaySeconds(), applicationProperties.getDocRetryMaxDelaySeconds());
     }
 
     /**
@@ -206,26 +417,29 @@ public class DocService {
      * Download one document from Mirakl(S31), it will always be a single document, this prevents mirakl from returning a zip file, which is not supported on Adyen
      */
     private FileWrapper downloadSelectedDocument(MiraklShopDocument document) {
-        MiraklDownloadShopsDocumentsRequest request = new MiraklDownloadShopsDocumentsRequest();
         List<String> documentIds = new ArrayList<>();
         documentIds.add(document.getId());
+        return downloadDocuments(documentIds);
+    }
+
+    /**
+     * Download documents from Mirakl(S31), when more than one document is requested Mirakl returns a zip file
+     */
+    private FileWrapper downloadDocuments(List<String> documentIds) {
+        MiraklDownloadShopsDocumentsRequest request = new MiraklDownloadShopsDocumentsRequest();
         request.setDocumentIds(documentIds);
         return miraklMarketplacePlatformOperatorApiClient.downloadShopsDocuments(request);
     }
 
     /**
-     * Encode document retrieved from Mirakl in Base64 and push it to Adyen, if the document type is BANK_STATEMENT/adyen-bankproof, a bank account is needed
+     * Push the document retrieved from Mirakl to Adyen, it is Base64 encoded while streaming it from the downloaded file.
+     * If the document type is BANK_STATEMENT/adyen-bankproof, a bank account is needed
      */
-    private void uploadDocumentToAdyen(DocumentDetail.DocumentTypeEnum documentType, FileWrapper fileWrapper, String shopId, String shareholderCode) throws Exception {
+    private void uploadDocumentToAdyen(DocumentDetail.DocumentTypeEnum documentType, File file, String filename, String shopId, String shareholderCode) throws Exception {
         UploadDocumentRequest request = new UploadDocumentRequest();
         request.setAccountHolderCode(shopId);
         request.setShareholderCode(shareholderCode);
 
-        //Encode file Base64
-        byte[] bytes = toByteArray(fileWrapper.getFile());
-        Base64.Encoder encoder = Base64.getEncoder();
-        String encoded = encoder.encodeToString(bytes);
-        request.setDocumentContent(encoded);
         //If document is a bank statement, the bankaccountUUID is required
         if (documentType.equals(DocumentDetail.DocumentTypeEnum.BANK_STATEMENT)) {
             String UUID = retrieveBankAccountUUID(shopId);
@@ -236,7 +450,7 @@ public class DocService {
             }
         }
         DocumentDetail documentDetail = new DocumentDetail();
-        documentDetail.setFilename(fileWrapper.getFilename());
+        documentDetail.setFilename(filename);
         documentDetail.setDocumentType(documentType);
         documentDetail.setShareholderCode(shareholderCode);
         documentDetail.setAccountHolderCode(shopId);
@@ -247,7 +461,7 @@ public class DocService {
         }
 
         request.setDocumentDetail(documentDetail);
-        UploadDocumentResponse response = adyenAccountService.uploadDocument(request);
+        UploadDocumentResponse response = streamingDocumentUploader.uploadDocument(request, file);
         log.debug("Account holder code: {}", shareholderCode);
         log.debug("Shop ID: {}", shopId);
         log.debug("DocumentType: {}", documentType);
@@ -267,45 +481,142 @@ public class DocService {
         return null;
     }
 
-    public void removeMiraklMediaForShareHolder(final String shareHolderCode) {
-        ShareholderMapping shareholderMapping = shareholderMappingRepository.findOneByAdyenShareholderCode(shareHolderCode)
-                                                                            .orElseThrow(() -> new IllegalStateException("No shareholder mapping found for shareholder code: " + shareHolderCode));
-        final List<MiraklShopDocument> shopDocuments = miraklMarketplacePlatformOperatorApiClient.getShopDocuments(new MiraklGetShopDocumentsRequest(ImmutableList.of(shareholderMapping.getMiraklShopId())));
-        List<String> documentIdsToDelete = extractDocumentsToDelete(shopDocuments, UBO_ENTITY_TYPE, shareholderMapping.getMiraklUboNumber());
-
-        documentIdsToDelete.forEach(docIdToDel -> {
-            final MiraklDeleteShopDocumentRequest request = new MiraklDeleteShopDocumentRequest(docIdToDel);
-            miraklMarketplacePlatformOperatorApiClient.deleteShopDocument(request);
+    /**
+     * Remove the Mirakl media of the given shareholders, individual and/or bank proof of a shop with a single retrieval of the shop documents
+     *
+     * @return the shareholder codes without a shareholder mapping, their media are left in place
+     */
+    public Set<String> removeMiraklMedia(final String shopId, final Set<String> shareHolderCodes, final boolean individual, final boolean bankProof) {
+        final Set<String> unmappedShareHolderCodes = new LinkedHashSet<>();
+        final List<Integer> uboNumbers = new ArrayList<>();
+        shareHolderCodes.forEach(shareHolderCode -> {
+            final Optional<ShareholderMapping> shareholderMapping = shareholderMappingRepository.findOneByAdyenShareholderCode(shareHolderCode);
+            if (shareholderMapping.isPresent()) {
+                uboNumbers.add(shareholderMapping.get().getMiraklUboNumber());
+            } else {
+                unmappedShareHolderCodes.add(shareHolderCode);
+            }
         });
-    }
-
-    public void removeMiraklMediaForIndividual(final String shopId) {
+        if (uboNumbers.isEmpty() && ! individual && ! bankProof) {
+            return unmappedShareHolderCodes;
+        }
         final List<MiraklShopDocument> shopDocuments = miraklMarketplacePlatformOperatorApiClient.getShopDocuments(new MiraklGetShopDocumentsRequest(ImmutableList.of(shopId)));
-        List<String> documentIdsToDelete = extractDocumentsToDelete(shopDocuments, INDIVIDUAL_ENTITY_TYPE, null);
+
+        final Set<String> documentIdsToDelete = new LinkedHashSet<>();
+        uboNumbers.forEach(uboNumber -> documentIdsToDelete.addAll(extractDocumentsToDelete(shopDocuments, DocumentTypeCodeClassifier.UBO_ENTITY, uboNumber)));
+        if (individual) {
+            documentIdsToDelete.addAll(extractDocumentsToDelete(shopDocuments, DocumentTypeCodeClassifier.INDIVIDUAL_ENTITY, null));
+        }
+        if (bankProof) {
+            documentIdsToDelete.addAll(extractBankProofDocumentsToDelete(shopDocuments));
+        }
 
         documentIdsToDelete.forEach(docIdToDel -> {
             final MiraklDeleteShopDocumentRequest request = new MiraklDeleteShopDocumentRequest(docIdToDel);
             miraklMarketplacePlatformOperatorApiClient.deleteShopDocument(request);
         });
+        return unmappedShareHolderCodes;
     }
 
     private List<String> extractDocumentsToDelete(final List<MiraklShopDocument> shopDocuments, String entityType, Integer uboNumber) {
-        String uboStartingTypeCode = "adyen-" + entityType + Objects.toString(uboNumber, "");
-        return shopDocuments.stream().filter(x -> x.getTypeCode().startsWith(uboStartingTypeCode)).map(MiraklShopDocument::getId).collect(Collectors.toList());
+        return shopDocuments.stream().filter(x -> {
+            final DocumentTypeCodeClassifier.DocumentTypeCode documentTypeCode = documentTypeCodeClassifier.classify(x.getTypeCode());
+            return documentTypeCode != null && documentTypeCode.isEntity(entityType, uboNumber);
+        }).map(MiraklShopDocument::getId).collect(Collectors.toList());
+    }
+
+    private List<String> extractBankProofDocumentsToDelete(final List<MiraklShopDocument> shopDocuments) {
+        return shopDocuments.stream().filter(x -> x.getTypeCode().contentEquals(Constants.BANKPROOF)).map(MiraklShopDocument::getId).collect(Collectors.toList());
     }
 
-    public void removeMiraklMediaForBankProof(final String accountHolderCode) {
-        final List<MiraklShopDocument> shopDocuments = miraklMarketplacePlatformOperatorApiClient.getShopDocuments(new MiraklGetShopDocumentsRequest(ImmutableList.of(accountHolderCode)));
-        List<String> documentIdsToDelete = extractBankProofDocumentsToDelete(shopDocuments);
+    private static class DocumentTransfer {
 
-        documentIdsToDelete.forEach(docIdToDel -> {
-            final MiraklDeleteShopDocumentRequest request = new MiraklDeleteShopDocumentRequest(docIdToDel);
-            miraklMarketplacePlatformOperatorApiClient.deleteShopDocument(request);
-        });
+        private final MiraklShopDocument document;
+        private final DocumentDetail.DocumentTypeEnum type;
+        private final String shareholderCode;
+
+        DocumentTransfer(final MiraklShopDocument document, final DocumentDetail.DocumentTypeEnum type, final String shareholderCode) {
+            this.document = document;
+            this.type = type;
+            this.shareholderCode = shareholderCode;
+        }
+
+        MiraklShopDocument getDocument() {
+            return document;
+        }
+
+        DocumentDetail.DocumentTypeEnum getType() {
+            return type;
+        }
 
+        String getShareholderCode() {
+            return shareholderCode;
+        }
     }
 
-    private List<String> extractBankProofDocumentsToDelete(final List<MiraklShopDocument> shopDocuments) {
-        return shopDocuments.stream().filter(x -> x.getTypeCode().contentEquals(Constants.BANKPROOF)).map(MiraklShopDocument::getId).collect(Collectors.toList());
+    /**
+     * Limits how many documents of one shop are transferred at the same time without blocking a pool thread: every transfer
+     * is chained after the previous one of its lane, so a shop has at most one transfer in flight per lane
+     */
+    private class ShopLanes {
+
+        private final CompletableFuture<?>[] lanes;
+        private final int[] queued;
+
+        ShopLanes(final int size) {
+            lanes = new CompletableFuture<?>[Math.max(1, size)];
+            queued = new int[lanes.length];
+            for (int i = 0; i < lanes.length; i++) {
+                lanes[i] = CompletableFuture.completedFuture(null);
+            }
+        }
+
+        /**
+         * Chains the transfer on the lane with the fewest transfers queued, so one slow document only holds back its own
+         * lane. The returned future never completes exceptionally, whatever the transfer does
+         */
+        synchronized CompletableFuture<?> submit(final Supplier<CompletableFuture<?>> transfer) {
+            int lane = 0;
+            for (int i = 1; i < lanes.length; i++) {
+                if (queued[i] < queued[lane]) {
+                    lane = i;
+                }
+            }
+            final int submittedLane = lane;
+            queued[submittedLane]++;
+            lanes[submittedLane] = lanes[submittedLane].handle((result, throwable) -> null)
+                                                       .thenCompose(ignored -> transfer.get())
+                                                       .handle((result, throwable) -> {
+                                                           if (throwable != null) {
+                                                               log.error("Document transfer failed: {}", throwable.getMessage(), throwable);
+                                                           }
+                                                           done(submittedLane);
+                                                           return null;
+                                                       });
+            return lanes[submittedLane];
+        }
+
+        /**
+         * Blocks until a lane has nothing queued, so a transfer submitted next starts straight away
+         */
+        synchronized void awaitFreeLane() throws InterruptedException {
+            while (! hasFreeLane()) {
+                wait();
+            }
+        }
+
+        private boolean hasFreeLane() {
+            for (int count : queued) {
+                if (count == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private synchronized void done(final int lane) {
+            queued[lane]--;
+            notifyAll();
+        }
     }
 }
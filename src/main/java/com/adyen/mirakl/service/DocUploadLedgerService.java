@@ -0,0 +1,132 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.ZonedDateTime;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import com.adyen.mirakl.domain.DocUpload;
+import com.adyen.mirakl.repository.DocUploadRepository;
+import com.adyen.model.marketpay.DocumentDetail;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
+
+/**
+ * Remembers the SHA-256 of the document last uploaded per account holder, shareholder and document type, so documents
+ * Adyen already has byte for byte are not uploaded again
+ */
+@Service
+public class DocUploadLedgerService {
+
+    private static final Logger log = LoggerFactory.getLogger(DocUploadLedgerService.class);
+
+    private static final String NO_SHAREHOLDER = "";
+    private static final String HITS = "documents.ledger.hits";
+    private static final String MISSES = "documents.ledger.misses";
+
+    @Resource
+    private DocUploadRepository docUploadRepository;
+
+    @Resource
+    private MetricsService metricsService;
+
+    @PostConstruct
+    public void registerGauges() {
+        metricsService.gauge("documents.ledger.hitRate", () -> {
+            final long hits = metricsService.getCount(HITS);
+            final long total = hits + metricsService.getCount(MISSES);
+            return total == 0 ? 0 : (double) hits / total;
+        });
+    }
+
+    /**
+     * Hash a document written by the Mirakl client, reading it in chunks
+     */
+    public String hash(final File file) throws IOException {
+        return Files.asByteSource(file).hash(Hashing.sha256()).toString();
+    }
+
+    /**
+     * Write a document to the target file and hash it on the way, so it does not have to be read again to be hashed
+     */
+    public static String copyAndHash(final InputStream inputStream, final File target) throws IOException {
+        final HashingInputStream hashingInputStream = new HashingInputStream(Hashing.sha256(), inputStream);
+        try (OutputStream outputStream = new FileOutputStream(target)) {
+            ByteStreams.copy(hashingInputStream, outputStream);
+        }
+        return hashingInputStream.hash().toString();
+    }
+
+    public boolean isAlreadyUploaded(final String accountHolderCode, final String shareholderCode, final DocumentDetail.DocumentTypeEnum documentType, final String contentHash) {
+        final boolean alreadyUploaded = docUploadRepository.findOneByAccountHolderCodeAndShareholderCodeAndDocumentType(accountHolderCode,
+                                                                                                                            toShareholderKey(shareholderCode),
+                                                                                                                            documentType.toString())
+                                                           .map(DocUpload::getContentHash)
+                                                           .filter(contentHash::equals)
+                                                           .isPresent();
+        metricsService.increment(alreadyUploaded ? HITS : MISSES);
+        return alreadyUploaded;
+    }
+
+    /**
+     * Insert or update the upload of the target, when another instance inserted the same target in the meantime its row
+     * is updated instead
+     */
+    public synchronized void recordUpload(final MiraklShopDocument document, final String shareholderCode, final DocumentDetail.DocumentTypeEnum documentType, final String contentHash) {
+        try {
+            saveUpload(document, shareholderCode, documentType, contentHash);
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Upload of shop {} {} was recorded concurrently, updating it: {}", document.getShopId(), documentType, e.getMessage());
+            saveUpload(document, shareholderCode, documentType, contentHash);
+        }
+    }
+
+    private void saveUpload(final MiraklShopDocument document, final String shareholderCode, final DocumentDetail.DocumentTypeEnum documentType, final String contentHash) {
+        final String shareholderKey = toShareholderKey(shareholderCode);
+        final DocUpload docUpload = docUploadRepository.findOneByAccountHolderCodeAndShareholderCodeAndDocumentType(document.getShopId(), shareholderKey, documentType.toString())
+                                                       .orElseGet(() -> new DocUpload().accountHolderCode(document.getShopId())
+                                                                                       .shareholderCode(shareholderKey)
+                                                                                       .documentType(documentType.toString()));
+        docUpload.setDocId(document.getId());
+        docUpload.setTypeCode(document.getTypeCode());
+        docUpload.setContentHash(contentHash);
+        docUpload.setUploadedAt(ZonedDateTime.now());
+        docUploadRepository.saveAndFlush(docUpload);
+    }
+
+    private static String toShareholderKey(final String shareholderCode) {
+        return shareholderCode == null ? NO_SHAREHOLDER : shareholderCode;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import javax.annotation.Resource;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Node;
+import com.adyen.mirakl.config.ApplicationProperties;
+
+/**
+ * Downscales and recompresses oversized JPEG and PNG documents before they are uploaded to Adyen, e.g. phone photos of
+ * passports. PDFs and other formats are passed through untouched
+ */
+@Service
+public class DocumentImageOptimizer {
+
+    private final Logger log = LoggerFactory.getLogger(DocumentImageOptimizer.class);
+
+    private static final String JPEG = "jpeg";
+    private static final String PNG = "png";
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+    private static final int EXIF_MARKER = 0xE1;
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+    private static final float JPEG_QUALITY_STEP = 0.1f;
+    private static final float MIN_JPEG_QUALITY = 0.5f;
+
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    @Resource
+    private MetricsService metricsService;
+
+    @Resource(name = "docImageExecutor")
+    private Executor docImageExecutor;
+
+    /**
+     * @return a temporary file holding the optimised image, or the given file itself if it is not a supported image, is
+     * already small enough or could not be made smaller
+     */
+    public File optimize(final File file) {
+        if (! applicationProperties.isDocImageOptimization()) {
+            return file;
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> optimizeImage(file), docImageExecutor).join();
+        } catch (CompletionException e) {
+            log.warn("Could not optimise document {}, uploading it unchanged: {}", file, e.getMessage(), e);
+            return file;
+        }
+    }
+
+    private File optimizeImage(final File file) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            final Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || ! readers.hasNext()) {
+                return file;
+            }
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, false);
+                return optimizeImage(file, reader);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private File optimizeImage(final File file, final ImageReader reader) throws IOException {
+        final String format = reader.getFormatName().toLowerCase(Locale.ROOT);
+        if (! JPEG.equals(format) && ! PNG.equals(format)) {
+            return file;
+        }
+        final int maxDimension = applicationProperties.getDocImageMaxDimension();
+        final int longestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+        if (longestSide <= maxDimension && file.length() <= applicationProperties.getDocImageMaxBytes()) {
+            return file;
+        }
+
+        // decode only every n-th pixel of huge photos, the scaling below takes care of the rest
+        final ImageReadParam readParam = reader.getDefaultReadParam();
+        final int subsampling = Math.max(1, longestSide / maxDimension);
+        readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        final int orientation = JPEG.equals(format) ? exifOrientation(reader.getImageMetadata(0)) : 1;
+        final BufferedImage image = rotate(scale(reader.read(0, readParam), maxDimension, JPEG.equals(format)), orientation);
+
+        final byte[] optimized = JPEG.equals(format) ? writeJpeg(image) : writePng(image);
+        if (optimized.length >= file.length()) {
+            return file;
+        }
+        final File optimizedFile = File.createTempFile("mirakl-document-", "." + format);
+        Files.write(optimizedFile.toPath(), optimized);
+        metricsService.increment("documents.images.optimized");
+        metricsService.increment("documents.images.savedBytes", file.length() - optimized.length);
+        log.debug("Optimised document {} from {} to {} bytes", file, file.length(), optimized.length);
+        return optimizedFile;
+    }
+
+    private static BufferedImage scale(final BufferedImage image, final int maxDimension, final boolean opaque) {
+        final double factor = Math.min(1d, (double) maxDimension / Math.max(image.getWidth(), image.getHeight()));
+        final int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        final int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        final boolean alpha = ! opaque && image.getColorModel().hasAlpha();
+        final BufferedImage scaled = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    /**
+     * Re-encoding drops the EXIF data, so phone photos are turned upright first (orientations 3, 6 and 8; mirrored ones are
+     * left as they are)
+     */
+    private static BufferedImage rotate(final BufferedImage image, final int orientation) {
+        if (orientation != 3 && orientation != 6 && orientation != 8) {
+            return image;
+        }
+        final boolean quarterTurn = orientation != 3;
+        final int width = quarterTurn ? image.getHeight() : image.getWidth();
+        final int height = quarterTurn ? image.getWidth() : image.getHeight();
+        final AffineTransform transform = new AffineTransform();
+        transform.translate(width / 2d, height / 2d);
+        transform.rotate(orientation == 3 ? Math.PI : orientation == 6 ? Math.PI / 2 : - Math.PI / 2);
+        transform.translate(- image.getWidth() / 2d, - image.getHeight() / 2d);
+        final BufferedImage rotated = new BufferedImage(width, height, image.getType());
+        final Graphics2D graphics = rotated.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rotated;
+    }
+
+    private static int exifOrientation(final IIOMetadata metadata) {
+        if (metadata == null || ! JPEG_METADATA_FORMAT.equals(metadata.getNativeMetadataFormatName())) {
+            return 1;
+        }
+        final Node root = metadata.getAsTree(JPEG_METADATA_FORMAT);
+        for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (! "markerSequence".equals(node.getNodeName())) {
+                continue;
+            }
+            for (Node marker = node.getFirstChild(); marker != null; marker = marker.getNextSibling()) {
+                final Node markerTag = marker.getAttributes() == null ? null : marker.getAttributes().getNamedItem("MarkerTag");
+                if (markerTag != null && String.valueOf(EXIF_MARKER).equals(markerTag.getNodeValue())) {
+                    final Object exif = ((IIOMetadataNode) marker).getUserObject();
+                    if (exif instanceof byte[]) {
+                        return exifOrientation((byte[]) exif);
+                    }
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Reads the orientation tag from the first IFD of an APP1 EXIF segment, 1 (upright) if there is none
+     */
+    static int exifOrientation(final byte[] exif) {
+        if (exif.length < 14 || exif[0] != 'E' || exif[1] != 'x' || exif[2] != 'i' || exif[3] != 'f') {
+            return 1;
+        }
+        final ByteBuffer tiff = ByteBuffer.wrap(exif, 6, exif.length - 6).slice();
+        tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        final int ifd = tiff.getInt(4);
+        if (ifd < 0 || ifd + 2 > tiff.limit()) {
+            return 1;
+        }
+        final int entries = tiff.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < entries && ifd + 2 + (i + 1) * 12 <= tiff.limit(); i++) {
+            final int entry = ifd + 2 + i * 12;
+            if ((tiff.getShort(entry) & 0xFFFF) == EXIF_ORIENTATION_TAG) {
+                return tiff.getShort(entry + 8) & 0xFFFF;
+            }
+        }
+        return 1;
+    }
+
+    private byte[] writeJpeg(final BufferedImage image) throws IOException {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName(JPEG).next();
+        try {
+            float quality = applicationProperties.getDocImageJpegQuality() / 100f;
+            byte[] bytes = writeJpeg(writer, image, quality);
+            while (bytes.length > applicationProperties.getDocImageMaxBytes() && quality - JPEG_QUALITY_STEP >= MIN_JPEG_QUALITY) {
+                quality -= JPEG_QUALITY_STEP;
+                bytes = writeJpeg(writer, image, quality);
+            }
+            return bytes;
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static byte[] writeJpeg(final ImageWriter writer, final BufferedImage image, final float quality) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            final ImageWriteParam writeParam = writer.getDefaultWriteParam();
+            writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            writeParam.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), writeParam);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] writePng(final BufferedImage image) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, PNG, bytes);
+        return bytes.toByteArray();
+    }
+}
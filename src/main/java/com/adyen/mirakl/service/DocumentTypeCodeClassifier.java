@@ -0,0 +1,123 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Classifies the type code of a Mirakl shop document into the entity, its sequence and the side of the photo id, through a
+ * table of every photo id type code built once for the configured number of ubos
+ */
+@Service
+public class DocumentTypeCodeClassifier {
+
+    public static final String UBO_ENTITY = "ubo";
+    public static final String INDIVIDUAL_ENTITY = "individual";
+
+    private static final String ADYEN_PREFIX = "adyen-";
+    private static final String SUFFIX_MIRAKL_PHOTOID = "-photoid";
+    private static final String SUFFIX_MIRAKL_PHOTOID_REAR = "-photoid-rear";
+
+    public enum Side {
+        FRONT, REAR
+    }
+
+    private final Map<String, DocumentTypeCode> typeCodes;
+
+    public DocumentTypeCodeClassifier(@Value("${shopService.maxUbos}") Integer maxUbos) {
+        ImmutableMap.Builder<String, DocumentTypeCode> builder = ImmutableMap.builder();
+        addEntity(builder, INDIVIDUAL_ENTITY, null);
+        for (int uboNumber = 1; uboNumber <= maxUbos; uboNumber++) {
+            addEntity(builder, UBO_ENTITY, uboNumber);
+        }
+        this.typeCodes = builder.build();
+    }
+
+    /**
+     * Returns the classification of the type code, or null when it is not a photo id of an individual or a ubo
+     */
+    public DocumentTypeCode classify(String typeCode) {
+        if (typeCode == null) {
+            return null;
+        }
+        DocumentTypeCode documentTypeCode = typeCodes.get(typeCode);
+        if (documentTypeCode == null) {
+            documentTypeCode = typeCodes.get(typeCode.toLowerCase(Locale.ROOT));
+        }
+        return documentTypeCode;
+    }
+
+    private static void addEntity(ImmutableMap.Builder<String, DocumentTypeCode> builder, String entityType, Integer sequence) {
+        final String entityName = entityType + (sequence == null ? "" : sequence);
+        builder.put(ADYEN_PREFIX + entityName + SUFFIX_MIRAKL_PHOTOID, new DocumentTypeCode(entityType, sequence, Side.FRONT));
+        builder.put(ADYEN_PREFIX + entityName + SUFFIX_MIRAKL_PHOTOID_REAR, new DocumentTypeCode(entityType, sequence, Side.REAR));
+    }
+
+    public static final class DocumentTypeCode {
+
+        private final String entityType;
+        private final Integer sequence;
+        private final Side side;
+        private final String entityName;
+
+        private DocumentTypeCode(String entityType, Integer sequence, Side side) {
+            this.entityType = entityType;
+            this.sequence = sequence;
+            this.side = side;
+            this.entityName = entityType + (sequence == null ? "" : sequence);
+        }
+
+        public String getEntityType() {
+            return entityType;
+        }
+
+        public Integer getSequence() {
+            return sequence;
+        }
+
+        public Side getSide() {
+            return side;
+        }
+
+        /**
+         * Entity type followed by its sequence, as used in the Mirakl custom field codes e.g. ubo1
+         */
+        public String getEntityName() {
+            return entityName;
+        }
+
+        public boolean isEntity(String entityType, Integer sequence) {
+            return this.entityType.equals(entityType) && Objects.equals(this.sequence, sequence);
+        }
+
+        @Override
+        public String toString() {
+            return "DocumentTypeCode{" + "entityType='" + entityType + '\'' + ", sequence=" + sequence + ", side=" + side + '}';
+        }
+    }
+}
@@ -21,7 +21,6 @@
 
 package com.adyen.mirakl.service;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.springframework.stereotype.Service;
@@ -33,16 +32,9 @@ import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
 @Service
 public class IndividualDocumentService extends AbstractDocumentService<DocumentDTO> {
 
-    private static final String INDIVIDUAL_ENTITY = "individual";
-
     @Override
     public List<DocumentDTO> extractDocuments(List<MiraklShopDocument> miraklShopDocuments) {
-        ImmutableList.Builder<DocumentDTO> builder = ImmutableList.builder();
-
-        Map<String, String> internalMemoryForDocs = new HashMap<>();
-        miraklShopDocuments.forEach(miraklShopDocument -> addToBuilder(builder, internalMemoryForDocs, miraklShopDocument, INDIVIDUAL_ENTITY, null));
-
-        return builder.build();
+        return extractDocuments(miraklShopDocuments, DocumentTypeCodeClassifier.INDIVIDUAL_ENTITY);
     }
 
     @Override
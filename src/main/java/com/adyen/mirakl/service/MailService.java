@@ -22,23 +22,33 @@
 
 package com.adyen.mirakl.service;
 
+import com.adyen.mirakl.domain.ProcessEmail;
+import com.adyen.mirakl.domain.enumeration.EmailState;
+import com.adyen.mirakl.events.EmailQueuedEvent;
 import com.adyen.mirakl.exceptions.UnexpectedMailFailureException;
+import com.adyen.mirakl.repository.ProcessEmailRepository;
 import io.github.jhipster.config.JHipsterProperties;
+import liquibase.util.MD5Util;
 import org.apache.commons.lang3.CharEncoding;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.Resource;
 import javax.mail.internet.MimeMessage;
+import java.time.ZonedDateTime;
+import java.util.Optional;
 
 /**
  * Service for sending emails.
  * <p>
- * We use the @Async annotation to send emails asynchronously.
+ * Emails are written to the process_email outbox in the transaction of the caller and sent by the {@link RetryEmailService}
+ * once that transaction commits, so an email is never sent for work that was rolled back and never lost when sending fails.
  */
 @Service
 public class MailService {
@@ -49,6 +59,12 @@ public class MailService {
 
     private final JavaMailSender javaMailSender;
 
+    @Resource
+    private ProcessEmailRepository processEmailRepository;
+
+    @Resource
+    private ApplicationEventPublisher applicationEventPublisher;
+
     @Value("${miraklOperator.miraklOperatorEmail}")
     private String bccEmail;
 
@@ -57,24 +73,58 @@ public class MailService {
         this.javaMailSender = javaMailSender;
     }
 
-    @Async
+    /**
+     * Queues the email, the same email that is still waiting to be sent is queued only once
+     */
+    @Transactional
     public void sendEmail(String to, String subject, String content, boolean isMultipart, boolean isHtml) {
-        log.debug("Send email[multipart '{}' and html '{}'] to '{}' with subject '{}' and content={}",
+        log.debug("Queue email[multipart '{}' and html '{}'] to '{}' with subject '{}' and content={}",
             isMultipart, isHtml, to, subject, content);
 
+        final String emailIdentifier = MD5Util.computeMD5(to + subject + content + isMultipart + isHtml);
+        final Optional<ProcessEmail> existing = processEmailRepository.findOneByEmailIdentifier(emailIdentifier);
+        if (existing.isPresent() && existing.get().getState() != EmailState.SENT) {
+            log.debug("Email to '{}' with subject '{}' is already queued", to, subject);
+            return;
+        }
+
+        final ProcessEmail email = existing.orElseGet(() -> {
+            final ProcessEmail processEmail = new ProcessEmail();
+            processEmail.setEmailIdentifier(emailIdentifier);
+            processEmail.setTo(to);
+            processEmail.setSubject(subject);
+            processEmail.setContent(content);
+            processEmail.setMultipart(isMultipart);
+            processEmail.setHtml(isHtml);
+            return processEmail;
+        });
+        email.setState(EmailState.PENDING);
+        email.setAttempts(0);
+        email.setNextAttemptAt(ZonedDateTime.now());
+        processEmailRepository.save(email);
+        applicationEventPublisher.publishEvent(new EmailQueuedEvent(email.getId()));
+    }
+
+    /**
+     * Sends a queued email over SMTP
+     */
+    public void deliverEmail(ProcessEmail email) {
+        log.debug("Send email[multipart '{}' and html '{}'] to '{}' with subject '{}'",
+            email.isMultipart(), email.isHtml(), email.getTo(), email.getSubject());
+
         // Prepare message using a Spring helper
         MimeMessage mimeMessage = javaMailSender.createMimeMessage();
         try {
-            MimeMessageHelper message = new MimeMessageHelper(mimeMessage, isMultipart, CharEncoding.UTF_8);
-            message.setTo(to);
+            MimeMessageHelper message = new MimeMessageHelper(mimeMessage, Boolean.TRUE.equals(email.isMultipart()), CharEncoding.UTF_8);
+            message.setTo(email.getTo());
             message.setBcc(bccEmail);
             message.setFrom(jHipsterProperties.getMail().getFrom());
-            message.setSubject(subject);
-            message.setText(content, isHtml);
+            message.setSubject(email.getSubject());
+            message.setText(email.getContent(), Boolean.TRUE.equals(email.isHtml()));
             javaMailSender.send(mimeMessage);
-            log.debug("Sent email to User '{}'", to);
+            log.debug("Sent email to User '{}'", email.getTo());
         } catch (Exception e) {
-            log.warn("Email could not be sent to user '{}': {}", to, e.getMessage());
+            log.warn("Email could not be sent to user '{}': {}", email.getTo(), e.getMessage());
             throw new UnexpectedMailFailureException("Failure to send email", e);
         }
     }
@@ -45,6 +45,7 @@ import org.thymeleaf.spring4.SpringTemplateEngine;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.stream.Collectors;
 import javax.annotation.Resource;
 
 @Service
@@ -63,6 +64,8 @@ public class MailTemplateService {
     private static final String DESTINATION = "destination";
     private static final String MANUAL_CREDIT_AMOUNT = "manualCreditAmount";
     private static final String PSPREFERENCE = "pspreference";
+    private static final String GREETING_NAME = "greetingName";
+    private static final String ITEMS = "items";
 
 
     @Value("${miraklOperator.miraklEnvUrl}")
@@ -117,6 +120,30 @@ public class MailTemplateService {
         mailService.sendEmail(toEmail, subject, content, false, true);
     }
 
+    @Async
+    public void sendShareholderVerificationSummaryEmail(final Name name, String shopId, Locale locale, List<String> itemKeys, String toEmail) {
+        Context context = new Context(locale);
+        context.setVariable(GREETING_NAME, name.getFirstName() + " " + name.getLastName());
+        context.setVariable(ITEMS, getMessages(itemKeys, locale));
+        context.setVariable(BASE_URL, jHipsterProperties.getMail().getBaseUrl());
+        context.setVariable(MIRAKL_CALL_BACK_SHOP_URL, getMiraklShopUrl(shopId));
+        String content = templateEngine.process("accountHolderVerificationSummaryEmail", context);
+        String subject = messageSource.getMessage(Constants.Messages.EMAIL_ACCOUNT_VERIFICATION_SUMMARY_TITLE, null, locale);
+        mailService.sendEmail(toEmail, subject, content, false, true);
+    }
+
+    @Async
+    public void sendMiraklShopVerificationSummaryEmail(MiraklShop miraklShop, Locale locale, List<String> itemKeys) {
+        Context context = new Context(locale);
+        context.setVariable(GREETING_NAME, miraklShop.getContactInformation().getFirstname() + " " + miraklShop.getContactInformation().getLastname());
+        context.setVariable(ITEMS, getMessages(itemKeys, locale));
+        context.setVariable(BASE_URL, jHipsterProperties.getMail().getBaseUrl());
+        context.setVariable(MIRAKL_CALL_BACK_SHOP_URL, getMiraklShopUrl(miraklShop.getId()));
+        String content = templateEngine.process("accountHolderVerificationSummaryEmail", context);
+        String subject = messageSource.getMessage(Constants.Messages.EMAIL_ACCOUNT_VERIFICATION_SUMMARY_TITLE, null, locale);
+        mailService.sendEmail(miraklShop.getContactInformation().getEmail(), subject, content, false, true);
+    }
+
     @Async
     public void sendSellerEmailWithErrors(MiraklShop miraklShop, List<String> errors) {
         Context context = new Context(Locale.getDefault());
@@ -226,6 +253,10 @@ public class MailTemplateService {
         return shops.getShops().iterator().next();
     }
 
+    private List<String> getMessages(List<String> keys, Locale locale) {
+        return keys.stream().map(key -> messageSource.getMessage(key, null, locale)).collect(Collectors.toList());
+    }
+
     private String getMiraklShopUrl(String miraklShopId) {
         return String.format("%s/mmp/shop/account/shop/%s", miraklEnvUrl, miraklShopId);
     }
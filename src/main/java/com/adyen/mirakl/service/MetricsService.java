@@ -0,0 +1,134 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+/**
+ * Connector metrics, published on the actuator metrics endpoint (/management/metrics) next to the system metrics.
+ */
+@Service
+public class MetricsService implements PublicMetrics {
+
+    private static final String COUNTER_PREFIX = "counter.";
+    private static final String GAUGE_PREFIX = "gauge.";
+    private static final String HISTOGRAM_PREFIX = "histogram.";
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public void increment(String name) {
+        increment(name, 1);
+    }
+
+    public void increment(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Publish the last known value of a metric
+     */
+    public void submit(String name, Number value) {
+        gauges.put(name, () -> value);
+    }
+
+    /**
+     * Publish a metric of which the value is read every time the metrics are requested
+     */
+    public void gauge(String name, Supplier<? extends Number> supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * Add a sample to a histogram, e.g. a duration in milliseconds
+     */
+    public void record(String name, long value) {
+        histograms.computeIfAbsent(name, key -> new Histogram()).update(value);
+    }
+
+    public long getCount(String name) {
+        final LongAdder counter = counters.get(name);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>();
+        counters.forEach((name, counter) -> metrics.add(new Metric<>(COUNTER_PREFIX + name, counter.sum())));
+        gauges.forEach((name, supplier) -> {
+            final Number value = supplier.get();
+            if (value != null) {
+                metrics.add(new Metric<>(GAUGE_PREFIX + name, value));
+            }
+        });
+        histograms.forEach((name, histogram) -> histogram.addTo(HISTOGRAM_PREFIX + name, metrics));
+        return metrics;
+    }
+
+    /**
+     * Keeps the total count and the most recent samples, percentiles are calculated over the recent samples only
+     */
+    static class Histogram {
+
+        private static final int RESERVOIR_SIZE = 1024;
+
+        private final long[] samples = new long[RESERVOIR_SIZE];
+        private long count;
+        private long max;
+
+        synchronized void update(long value) {
+            samples[(int) (count % RESERVOIR_SIZE)] = value;
+            count++;
+            max = Math.max(max, value);
+        }
+
+        synchronized void addTo(String name, List<Metric<?>> metrics) {
+            if (count == 0) {
+                return;
+            }
+            final long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, RESERVOIR_SIZE));
+            Arrays.sort(sorted);
+            metrics.add(new Metric<>(name + ".count", count));
+            metrics.add(new Metric<>(name + ".max", max));
+            metrics.add(new Metric<>(name + ".mean", Arrays.stream(sorted).average().orElse(0)));
+            metrics.add(new Metric<>(name + ".p50", percentile(sorted, 0.50)));
+            metrics.add(new Metric<>(name + ".p95", percentile(sorted, 0.95)));
+            metrics.add(new Metric<>(name + ".p99", percentile(sorted, 0.99)));
+        }
+
+        private static long percentile(long[] sorted, double quantile) {
+            return sorted[(int) Math.ceil(quantile * sorted.length) - 1];
+        }
+    }
+}
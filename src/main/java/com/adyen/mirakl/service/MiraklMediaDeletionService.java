@@ -0,0 +1,165 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.MiraklMediaDeletion;
+import com.adyen.mirakl.repository.MiraklMediaDeletionRepository;
+import com.adyen.mirakl.service.util.BackoffUtil;
+import com.google.common.base.Splitter;
+
+/**
+ * Queues the deletion of Mirakl media once Adyen verified them, so notifications do not wait for Mirakl. The queued
+ * deletions are grouped per shop and run on the media deletion executor, failed ones are retried with a backoff.
+ */
+@Service
+public class MiraklMediaDeletionService {
+
+    private final Logger log = LoggerFactory.getLogger(MiraklMediaDeletionService.class);
+
+    private static final Splitter SHAREHOLDER_CODES_SPLITTER = Splitter.on(',').omitEmptyStrings();
+
+    @Resource
+    private MiraklMediaDeletionRepository miraklMediaDeletionRepository;
+
+    @Resource
+    private DocService docService;
+
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    @Resource
+    private MetricsService metricsService;
+
+    @Resource(name = "mediaDeletionExecutor")
+    private Executor mediaDeletionExecutor;
+
+    @Resource(name = "mediaDeletionWorkerExecutor")
+    private Executor mediaDeletionWorkerExecutor;
+
+    private final AtomicBoolean deletionRequested = new AtomicBoolean();
+
+    @PostConstruct
+    public void registerGauges() {
+        metricsService.gauge("media.deletion.backlog", miraklMediaDeletionRepository::count);
+    }
+
+    public void enqueue(final String shopId, final Set<String> shareholderCodes, final boolean individual, final boolean bankProof) {
+        final MiraklMediaDeletion miraklMediaDeletion = new MiraklMediaDeletion().shopId(shopId)
+                                                                                 .shareholderCodes(String.join(",", shareholderCodes))
+                                                                                 .individual(individual)
+                                                                                 .bankProof(bankProof)
+                                                                                 .attempts(0)
+                                                                                 .nextAttemptAt(ZonedDateTime.now());
+        miraklMediaDeletionRepository.save(miraklMediaDeletion);
+        metricsService.increment("media.deletion.queued");
+    }
+
+    /**
+     * Hands the due deletions to the media deletion worker thread, a request while one is still waiting is covered by that one
+     */
+    public void deleteDueMedia() {
+        if (deletionRequested.compareAndSet(false, true)) {
+            mediaDeletionWorkerExecutor.execute(this::processDueDeletions);
+        }
+    }
+
+    /**
+     * Run the due deletions a page at a time, each page waits for all its shops, up to mediaDeletionMaxPagesPerRun pages.
+     * Deletions are removed from the queue or rescheduled once run, so the next page only holds deletions not seen yet in
+     * this run
+     */
+    public void processDueDeletions() {
+        deletionRequested.set(false);
+        final ZonedDateTime now = ZonedDateTime.now();
+        final int pageSize = applicationProperties.getMediaDeletionPageSize();
+        int pages = 0;
+        List<MiraklMediaDeletion> deletions = miraklMediaDeletionRepository.findDueBefore(now, applicationProperties.getMediaDeletionMaxAttempts(), new PageRequest(0, pageSize));
+        while (! deletions.isEmpty()) {
+            final Map<String, List<MiraklMediaDeletion>> deletionsPerShop = deletions.stream()
+                                                                                     .collect(Collectors.groupingBy(MiraklMediaDeletion::getShopId,
+                                                                                                                    LinkedHashMap::new,
+                                                                                                                    Collectors.toList()));
+            CompletableFuture.allOf(deletionsPerShop.values()
+                                                    .stream()
+                                                    .map(shopDeletions -> CompletableFuture.runAsync(() -> deleteShopMedia(shopDeletions), mediaDeletionExecutor))
+                                                    .toArray(CompletableFuture[]::new)).join();
+            if (deletions.size() < pageSize || ++pages >= applicationProperties.getMediaDeletionMaxPagesPerRun()) {
+                break;
+            }
+            deletions = miraklMediaDeletionRepository.findDueBefore(now, applicationProperties.getMediaDeletionMaxAttempts(), new PageRequest(0, pageSize));
+        }
+    }
+
+    private void deleteShopMedia(final List<MiraklMediaDeletion> shopDeletions) {
+        final String shopId = shopDeletions.get(0).getShopId();
+        final Set<String> shareholderCodes = new LinkedHashSet<>();
+        shopDeletions.forEach(deletion -> shareholderCodes.addAll(SHAREHOLDER_CODES_SPLITTER.splitToList(StringUtils.defaultString(deletion.getShareholderCodes()))));
+        final boolean individual = shopDeletions.stream().anyMatch(MiraklMediaDeletion::isIndividual);
+        final boolean bankProof = shopDeletions.stream().anyMatch(MiraklMediaDeletion::isBankProof);
+
+        try {
+            final Set<String> unmappedShareholderCodes = docService.removeMiraklMedia(shopId, shareholderCodes, individual, bankProof);
+            if (! unmappedShareholderCodes.isEmpty()) {
+                // retrying will not find a mapping either, the media of the other shareholders are deleted all the same
+                log.warn("No shareholder mapping found for shareholders {} of shop {}, their Mirakl media are not deleted", unmappedShareholderCodes, shopId);
+                metricsService.increment("media.deletion.unmappedShareholders", unmappedShareholderCodes.size());
+            }
+            miraklMediaDeletionRepository.delete(shopDeletions);
+            metricsService.increment("media.deletion.completed", shopDeletions.size());
+        } catch (Exception e) {
+            log.error("Unable to delete the Mirakl media of shop {}: {}", shopId, e.getMessage(), e);
+            shopDeletions.forEach(deletion -> {
+                final int attempts = deletion.getAttempts() + 1;
+                deletion.setAttempts(attempts);
+                deletion.setLastError(StringUtils.abbreviate(e.toString(), 1000));
+                deletion.setNextAttemptAt(BackoffUtil.nextAttemptAt(ZonedDateTime.now(),
+                                                                    attempts,
+                                                                    applicationProperties.getMediaDeletionBaseDelaySeconds(),
+                                                                    applicationProperties.getMediaDeletionMaxDelaySeconds()));
+                if (attempts >= applicationProperties.getMediaDeletionMaxAttempts()) {
+                    log.warn("Giving up on deleting the Mirakl media of shop {} after {} attempts", shopId, attempts);
+                }
+            });
+            miraklMediaDeletionRepository.save(shopDeletions);
+            metricsService.increment("media.deletion.failed");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Tracks the notifications from the moment they are received until their processing ended, to expose the notification lag
+ */
+@Service
+public class NotificationMetricsService {
+
+    private static final String INGEST_TO_START = "notifications.latency.ingestToStartMs.";
+    private static final String PROCESSING = "notifications.latency.processingMs.";
+    private static final String END_TO_END = "notifications.latency.endToEndMs.";
+    private static final String FAILURES = "notifications.failures.";
+
+    @Resource
+    private MetricsService metricsService;
+
+    private final Map<Long, Long> receivedAtByDbId = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void registerGauges() {
+        metricsService.gauge("notifications.backlog", receivedAtByDbId::size);
+        metricsService.gauge("notifications.oldestUnprocessedAgeMs", this::getOldestUnprocessedAge);
+    }
+
+    public void received(Long dbId) {
+        receivedAtByDbId.put(dbId, System.currentTimeMillis());
+    }
+
+    /**
+     * @return the start time of the processing, to be passed on to {@link #completed(Long, String, long)}
+     */
+    public long started(Long dbId, String eventType) {
+        final long now = System.currentTimeMillis();
+        final Long receivedAt = receivedAtByDbId.get(dbId);
+        if (receivedAt != null) {
+            metricsService.record(INGEST_TO_START + eventType, now - receivedAt);
+        }
+        return now;
+    }
+
+    public void completed(Long dbId, String eventType, long startedAt) {
+        final long now = System.currentTimeMillis();
+        metricsService.record(PROCESSING + eventType, now - startedAt);
+        final Long receivedAt = receivedAtByDbId.remove(dbId);
+        if (receivedAt != null) {
+            metricsService.record(END_TO_END + eventType, now - receivedAt);
+        }
+    }
+
+    public void failed(Long dbId, Exception e) {
+        receivedAtByDbId.remove(dbId);
+        metricsService.increment(FAILURES + e.getClass().getSimpleName());
+    }
+
+    private long getOldestUnprocessedAge() {
+        return receivedAtByDbId.values().stream().mapToLong(receivedAt -> System.currentTimeMillis() - receivedAt).max().orElse(0);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import javax.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.repository.AdyenNotificationRepository;
+
+/**
+ * Successfully processed notifications are removed straight away, the ones that failed processing are marked processed
+ * and kept for investigation until they are older than the retention period. Notifications still waiting to be processed
+ * are never purged.
+ */
+@Service
+public class NotificationRetentionService {
+
+    private final Logger log = LoggerFactory.getLogger(NotificationRetentionService.class);
+
+    @Resource
+    private AdyenNotificationRepository adyenNotificationRepository;
+
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    @Resource
+    private MetricsService metricsService;
+
+    /**
+     * Delete processed notifications older than the retention period, one chunk per transaction so the table is never locked for long
+     */
+    public void purgeExpiredNotifications() {
+        final long start = System.currentTimeMillis();
+        final ZonedDateTime createdBefore = ZonedDateTime.now().minusDays(applicationProperties.getNotificationRetentionDays());
+        final int chunkSize = applicationProperties.getNotificationRetentionChunkSize();
+
+        long purgedRows = 0;
+        long purgedBytes = 0;
+        List<Long> ids;
+        do {
+            ids = adyenNotificationRepository.findProcessedIdsCreatedBefore(createdBefore, new PageRequest(0, chunkSize));
+            if (! ids.isEmpty()) {
+                purgedBytes += adyenNotificationRepository.sumStoredSizeByIdIn(ids);
+                purgedRows += adyenNotificationRepository.deleteByIdIn(ids);
+            }
+        } while (ids.size() == chunkSize);
+
+        final long duration = System.currentTimeMillis() - start;
+        metricsService.increment("notifications.retention.purgedRows", purgedRows);
+        metricsService.increment("notifications.retention.purgedBytes", purgedBytes);
+        metricsService.submit("notifications.retention.lastPurgeDurationMs", duration);
+        log.info("Purged {} notification(s) created before {}, {} bytes, in {} ms", purgedRows, createdBefore, purgedBytes, duration);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.MiraklVoucherEntry;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Runs the payouts of voucher entries concurrently, one task per shop so the entries of a shop are still paid out one
+ * after the other in the given order. Calls to the Fund API of all runs and retries share one rate limit
+ */
+@Service
+public class PayoutEngine {
+
+    private final Logger log = LoggerFactory.getLogger(PayoutEngine.class);
+
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    @Resource
+    private MetricsService metricsService;
+
+    @Resource(name = "payoutExecutor")
+    private Executor payoutExecutor;
+
+    private RateLimiter fundApiRateLimiter;
+
+    @PostConstruct
+    void createFundApiRateLimiter() {
+        fundApiRateLimiter = RateLimiter.create(applicationProperties.getPayoutFundRequestsPerSecond());
+    }
+
+    /**
+     * Blocks until the Fund API may be called
+     */
+    public void acquireFundApiPermit() {
+        fundApiRateLimiter.acquire();
+    }
+
+    /**
+     * Returns once every entry is paid out or failed. When paying out an entry throws, the remaining entries of that shop are
+     * skipped to keep their order, and counted as failed
+     *
+     * @param shopPayout called once per shop at the start of its task, e.g. to look up what all entries of the shop need;
+     *                   the returned payout is applied to every entry of the shop and returns false if it failed
+     * @return the number of failed entries
+     */
+    public int run(final List<MiraklVoucherEntry> entries, final Function<String, Predicate<MiraklVoucherEntry>> shopPayout) {
+        final long start = System.currentTimeMillis();
+        final AtomicInteger failures = new AtomicInteger();
+        final Map<String, List<MiraklVoucherEntry>> entriesByShop = entries.stream()
+                                                                          .collect(Collectors.groupingBy(entry -> Objects.toString(entry.getShopId(), ""),
+                                                                                                         LinkedHashMap::new,
+                                                                                                         Collectors.toList()));
+        final List<CompletableFuture<Void>> shopRuns = new ArrayList<>();
+        entriesByShop.forEach((shopId, shopEntries) -> shopRuns.add(CompletableFuture.runAsync(() -> payoutShop(shopId, shopEntries, shopPayout, failures),
+                                                                                                              payoutExecutor)));
+        CompletableFuture.allOf(shopRuns.toArray(new CompletableFuture[0])).join();
+
+        final long duration = System.currentTimeMillis() - start;
+        metricsService.increment("payout.run.entries", entries.size());
+        metricsService.increment("payout.run.failures", failures.get());
+        metricsService.record("payout.run.duration", duration);
+        metricsService.submit("payout.run.entriesPerSecond", duration > 0 ? entries.size() * 1000d / duration : entries.size());
+        log.info("Payout run of {} entries for {} shops took {} ms, {} failed", entries.size(), entriesByShop.size(), duration, failures.get());
+        return failures.get();
+    }
+
+    private void payoutShop(final String shopId,
+                            final List<MiraklVoucherEntry> shopEntries,
+                            final Function<String, Predicate<MiraklVoucherEntry>> shopPayout,
+                            final AtomicInteger failures) {
+        final Predicate<MiraklVoucherEntry> payout;
+        try {
+            payout = shopPayout.apply(shopId);
+        } catch (RuntimeException e) {
+            log.error("Payout of shop {} skipped, {} entries left: {}", shopId, shopEntries.size(), e.getMessage(), e);
+            failures.addAndGet(shopEntries.size());
+            return;
+        }
+        for (int i = 0; i < shopEntries.size(); i++) {
+            try {
+                if (! payout.test(shopEntries.get(i))) {
+                    failures.incrementAndGet();
+                }
+            } catch (RuntimeException e) {
+                log.error("Payout of shop {} stopped, {} entries left: {}", shopId, shopEntries.size() - i, e.getMessage(), e);
+                failures.addAndGet(shopEntries.size() - i);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import javax.annotation.Resource;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import com.adyen.mirakl.domain.PayoutJob;
+import com.adyen.mirakl.domain.enumeration.PayoutJobStatus;
+import com.adyen.mirakl.domain.enumeration.VoucherEntryStatus;
+import com.adyen.mirakl.repository.MiraklVoucherEntryRepository;
+import com.adyen.mirakl.repository.PayoutJobRepository;
+import com.adyen.mirakl.service.dto.PayoutJobDTO;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Stores and pays out uploaded payment voucher files in the background on the payout job executor, one file at a time,
+ * and reports their progress
+ */
+@Service
+public class PayoutJobService {
+
+    private final Logger log = LoggerFactory.getLogger(PayoutJobService.class);
+
+    @Resource
+    private PayoutJobRepository payoutJobRepository;
+
+    @Resource
+    private MiraklVoucherEntryRepository miraklVoucherEntryRepository;
+
+    @Resource
+    private PayoutService payoutService;
+
+    @Resource
+    private MetricsService metricsService;
+
+    @Resource(name = "payoutJobExecutor")
+    private Executor payoutJobExecutor;
+
+    /**
+     * Copies the uploaded file aside and queues it, the job is committed before it is queued so its id can be returned
+     * straight away
+     */
+    public PayoutJob submit(MultipartFile csvData) throws IOException {
+        final File file = File.createTempFile("payout-job-", ".csv");
+        try {
+            csvData.transferTo(file);
+        } catch (IOException | RuntimeException e) {
+            deleteFile(file);
+            throw e;
+        }
+        final PayoutJob payoutJob = payoutJobRepository.save(new PayoutJob().fileName(csvData.getOriginalFilename()).status(PayoutJobStatus.RECEIVED));
+        metricsService.increment("payout.jobs.submitted");
+        final Long payoutJobId = payoutJob.getId();
+        payoutJobExecutor.execute(() -> run(payoutJobId, file));
+        return payoutJob;
+    }
+
+    public Optional<PayoutJobDTO> getProgress(Long id) {
+        return Optional.ofNullable(payoutJobRepository.findOne(id)).map(this::toProgress);
+    }
+
+    /**
+     * Jobs interrupted by a restart whose entries were all stored are paid out again, the payout runs resume every entry
+     * from its last step. Jobs interrupted before that lost their file and fail
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedJobs() {
+        for (PayoutJob payoutJob : payoutJobRepository.findByStatusIn(ImmutableList.of(PayoutJobStatus.RECEIVED,
+                                                                                        PayoutJobStatus.PARSING,
+                                                                                        PayoutJobStatus.PAYING_OUT))) {
+            if (payoutJob.getStatus() == PayoutJobStatus.PAYING_OUT) {
+                log.info("Resuming payout job {}", payoutJob.getId());
+                payoutJobExecutor.execute(() -> payOut(payoutJob));
+            } else {
+                fail(payoutJob, "Interrupted by a restart before its file was stored");
+            }
+        }
+    }
+
+    protected void run(Long payoutJobId, File file) {
+        PayoutJob job = payoutJobRepository.save(payoutJobRepository.findOne(payoutJobId).status(PayoutJobStatus.PARSING).startedAt(ZonedDateTime.now()));
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            final int rows = payoutService.parseMiraklCsv(reader, job.getId());
+            job = payoutJobRepository.save(job.rowsParsed(rows).status(PayoutJobStatus.PAYING_OUT).payoutStartedAt(ZonedDateTime.now()));
+        } catch (Exception e) {
+            log.error("Could not store the voucher entries of payout job {}: {}", job.getId(), e.getMessage(), e);
+            fail(job, e.toString());
+            return;
+        } finally {
+            deleteFile(file);
+        }
+        payOut(job);
+    }
+
+    protected void payOut(PayoutJob payoutJob) {
+        try {
+            payoutService.processMiraklVoucherEntries();
+        } catch (Exception e) {
+            log.error("Could not pay out payout job {}: {}", payoutJob.getId(), e.getMessage(), e);
+            fail(payoutJob, e.toString());
+            return;
+        }
+        final PayoutJobDTO progress = toProgress(payoutJob);
+        payoutJobRepository.save(payoutJob.payoutsSubmitted(progress.getPayoutsSubmitted())
+                                          .payoutsFailed(progress.getPayoutsFailed())
+                                          .status(PayoutJobStatus.DONE)
+                                          .finishedAt(ZonedDateTime.now()));
+        metricsService.increment("payout.jobs.done");
+        log.info("Payout job {} done, {} payouts submitted and {} failed", payoutJob.getId(), progress.getPayoutsSubmitted(), progress.getPayoutsFailed());
+    }
+
+    /**
+     * Finished jobs report their stored counts. Running jobs count their entries per status: paid out entries are removed
+     * at the end of a run, so the ones submitted are the rows parsed less the failed and remaining ones
+     */
+    public PayoutJobDTO toProgress(PayoutJob payoutJob) {
+        final PayoutJobDTO progress = new PayoutJobDTO();
+        progress.setId(payoutJob.getId());
+        progress.setFileName(payoutJob.getFileName());
+        progress.setStatus(payoutJob.getStatus());
+        progress.setError(payoutJob.getError());
+        progress.setCreatedAt(payoutJob.getCreatedAt());
+        progress.setStartedAt(payoutJob.getStartedAt());
+        progress.setFinishedAt(payoutJob.getFinishedAt());
+
+        if (payoutJob.getStatus() == PayoutJobStatus.DONE) {
+            progress.setRowsParsed(payoutJob.getRowsParsed());
+            progress.setPayoutsSubmitted(payoutJob.getPayoutsSubmitted());
+            progress.setPayoutsFailed(payoutJob.getPayoutsFailed());
+        } else {
+            final Map<VoucherEntryStatus, Long> entries = countEntries(payoutJob.getId());
+            final int stored = (int) entries.values().stream().mapToLong(Long::longValue).sum();
+            final int remaining = (int) (entries.getOrDefault(VoucherEntryStatus.RECEIVED, 0L)
+                + entries.getOrDefault(VoucherEntryStatus.SUBSCRIPTION_IN_FLIGHT, 0L)
+                + entries.getOrDefault(VoucherEntryStatus.SUBSCRIPTION_DONE, 0L)
+                + entries.getOrDefault(VoucherEntryStatus.PAYOUT_IN_FLIGHT, 0L));
+            final int failed = (int) (entries.getOrDefault(VoucherEntryStatus.FAILED, 0L) + entries.getOrDefault(VoucherEntryStatus.UNCONFIRMED, 0L));
+            final int rowsParsed = payoutJob.getRowsParsed() != null ? payoutJob.getRowsParsed() : stored;
+            progress.setRowsParsed(rowsParsed);
+            progress.setRemaining(remaining);
+            progress.setPayoutsFailed(failed);
+            progress.setPayoutsSubmitted(payoutJob.getPayoutStartedAt() == null ? 0 : Math.max(rowsParsed - failed - remaining, 0));
+        }
+
+        if (payoutJob.getPayoutStartedAt() != null) {
+            final ZonedDateTime until = payoutJob.getFinishedAt() != null ? payoutJob.getFinishedAt() : ZonedDateTime.now();
+            final long millis = Math.max(Duration.between(payoutJob.getPayoutStartedAt(), until).toMillis(), 1);
+            progress.setPayoutsPerSecond((progress.getPayoutsSubmitted() + progress.getPayoutsFailed()) * 1000d / millis);
+        }
+        return progress;
+    }
+
+    private Map<VoucherEntryStatus, Long> countEntries(Long payoutJobId) {
+        final Map<VoucherEntryStatus, Long> entries = new EnumMap<>(VoucherEntryStatus.class);
+        final List<Object[]> counts = miraklVoucherEntryRepository.countByStatusForPayoutJob(payoutJobId);
+        counts.forEach(count -> entries.put((VoucherEntryStatus) count[0], (Long) count[1]));
+        return entries;
+    }
+
+    private void fail(PayoutJob payoutJob, String error) {
+        payoutJobRepository.save(payoutJob.status(PayoutJobStatus.FAILED).error(StringUtils.abbreviate(error, 1000)).finishedAt(ZonedDateTime.now()));
+        metricsService.increment("payout.jobs.failed");
+    }
+
+    private void deleteFile(File file) {
+        if (! file.delete()) {
+            log.warn("Could not delete payout job file {}", file);
+        }
+    }
+}
@@ -23,7 +23,14 @@
 package com.adyen.mirakl.service;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import javax.annotation.Resource;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -31,12 +38,16 @@ import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import com.adyen.Util.Util;
 import com.adyen.mirakl.domain.AdyenPayoutError;
+import com.adyen.mirakl.domain.CommissionTotal;
 import com.adyen.mirakl.domain.MiraklVoucherEntry;
+import com.adyen.mirakl.domain.enumeration.VoucherEntryStatus;
 import com.adyen.mirakl.repository.AdyenPayoutErrorRepository;
 import com.adyen.mirakl.repository.MiraklVoucherEntryRepository;
 import com.adyen.model.Amount;
@@ -50,6 +61,8 @@ import com.adyen.model.marketpay.TransferFundsResponse;
 import com.adyen.service.Account;
 import com.adyen.service.Fund;
 import com.adyen.service.exception.ApiException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.gson.Gson;
 
 @Service
@@ -70,6 +83,12 @@ public class PayoutService {
     @Resource
     private MiraklVoucherEntryRepository miraklVoucherEntryRepository;
 
+    @Resource
+    private PayoutEngine payoutEngine;
+
+    @Resource
+    private CommissionService commissionService;
+
     @Value("${payoutService.subscriptionTransferCode}")
     private String subscriptionTransferCode;
 
@@ -79,123 +98,238 @@ public class PayoutService {
     @Value("${payoutService.payoutToLiableAccountByVoucher}")
     private Boolean payoutToLiableAccountByVoucher;
 
+    @Value("${payoutService.voucherInsertBatchSize}")
+    private Integer voucherInsertBatchSize;
+
+    private volatile String liableAccountHolderCode;
+
     protected final static Gson GSON = new Gson();
 
+    private static final List<VoucherEntryStatus> UNFINISHED_STATUSES = ImmutableList.of(VoucherEntryStatus.RECEIVED,
+                                                                                         VoucherEntryStatus.SUBSCRIPTION_DONE,
+                                                                                         VoucherEntryStatus.PAYOUT_SUBMITTED);
+    private static final List<VoucherEntryStatus> IN_FLIGHT_STATUSES = ImmutableList.of(VoucherEntryStatus.SUBSCRIPTION_IN_FLIGHT,
+                                                                                        VoucherEntryStatus.PAYOUT_IN_FLIGHT);
+    private static final int ENTRY_IDS_PER_UPDATE = 1000;
 
-    public void parseMiraklCsv(String csvData) throws IOException {
-        Iterable<CSVRecord> records = CSVParser.parse(csvData, CSVFormat.DEFAULT.withFirstRecordAsHeader().withDelimiter(';'));
-        for (CSVRecord record : records) {
-            MiraklVoucherEntry miraklVoucherEntry = new MiraklVoucherEntry();
 
-            miraklVoucherEntry.setShopId(record.get("shop-id"));
-            miraklVoucherEntry.setTransferAmount(record.get("transfer-amount"));
-            miraklVoucherEntry.setCurrencyIsoCode(record.get("currency-iso-code"));
-            miraklVoucherEntry.setIban(record.get("payment-info-ibantype-iban"));
-            miraklVoucherEntry.setInvoiceNumber(record.get("invoice-number"));
-            miraklVoucherEntry.setShopName(record.get("shop-name"));
-            miraklVoucherEntry.setSubscriptionAmount(record.get("subscription-amount"));
-            miraklVoucherEntry.setTotalChargedAmount(record.get("total-charged-amount"));
-            miraklVoucherEntry.setTotalChargedAmountVat(record.get("total-charged-amount-vat"));
-            miraklVoucherEntryRepository.save(miraklVoucherEntry);
-        }
+    public int parseMiraklCsv(Reader csvData) throws IOException {
+        return parseMiraklCsv(csvData, null);
+    }
 
-        miraklVoucherEntryRepository.flush();
+    /**
+     * Reads a payment voucher file record by record and inserts its entries in batches of voucherInsertBatchSize
+     *
+     * @param payoutJobId the payout job the entries belong to, if any
+     * @return the number of voucher entries stored
+     */
+    public int parseMiraklCsv(Reader csvData, Long payoutJobId) throws IOException {
+        int count = 0;
+        try (CSVParser parser = new CSVParser(csvData, CSVFormat.DEFAULT.withFirstRecordAsHeader().withDelimiter(';'))) {
+            final VoucherColumns columns = new VoucherColumns(parser.getHeaderMap());
+            List<MiraklVoucherEntry> batch = new ArrayList<>(voucherInsertBatchSize);
+            for (CSVRecord record : parser) {
+                batch.add(columns.toVoucherEntry(record).payoutJobId(payoutJobId));
+                if (batch.size() == voucherInsertBatchSize) {
+                    miraklVoucherEntryRepository.insertAll(batch);
+                    count += batch.size();
+                    batch = new ArrayList<>(voucherInsertBatchSize);
+                }
+            }
+            if (! batch.isEmpty()) {
+                miraklVoucherEntryRepository.insertAll(batch);
+                count += batch.size();
+            }
+        }
+        log.info("Stored {} voucher entries", count);
+        return count;
     }
 
-    @Async
+    /**
+     * Pays out the unfinished voucher entries, shops concurrently through the payout engine, resuming every entry from the
+     * last step it completed. Runs do not overlap, and no transaction is held open for the length of a run; callers run
+     * it on the payout job executor
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public synchronized void processMiraklVoucherEntries() {
-        List<MiraklVoucherEntry> miraklVoucherEntries = miraklVoucherEntryRepository.findAll();
-        if (! payoutToLiableAccountByVoucher) {
-            for (MiraklVoucherEntry miraklVoucherEntry : miraklVoucherEntries) {
-                processMiraklVoucherEntry(miraklVoucherEntry);
-                miraklVoucherEntryRepository.delete(miraklVoucherEntry);
-                miraklVoucherEntryRepository.flush();
-            }
-        } else {
-            Double totalCommissionAmount = null;
-            String commissionPayoutCurrency = null;
-            //get the commission currency from first voucher entry
-            if (miraklVoucherEntries != null && miraklVoucherEntries.size() > 0) {
-                commissionPayoutCurrency = miraklVoucherEntries.get(0).getCurrencyIsoCode();
-                totalCommissionAmount = new Double(0);
-
-                for (MiraklVoucherEntry miraklVoucherEntry : miraklVoucherEntries) {
-                    processMiraklVoucherEntry(miraklVoucherEntry);
-                    try {
-                        totalCommissionAmount = totalCommissionAmount
-                                + Double.parseDouble(miraklVoucherEntry.getTotalChargedAmount())
-                                + Double.parseDouble(miraklVoucherEntry.getTotalChargedAmountVat());
-                    } catch (NumberFormatException e) {
-                        log.error("total_charged_amount ["
-                                          + miraklVoucherEntry.getTotalChargedAmount()
-                                          + "] or total_charged_amount_vat ["
-                                          + miraklVoucherEntry.getTotalChargedAmountVat()
-                                          + "]  is not a valid number hence skipping addition of this voucher entry in commission payout"
-                                          + e.getMessage());
-                    }
-                    miraklVoucherEntryRepository.delete(miraklVoucherEntry);
-                    miraklVoucherEntryRepository.flush();
-                }
-                processCommissions(Util.createAmount(totalCommissionAmount.toString(), commissionPayoutCurrency));
+        markInterruptedEntriesUnconfirmed();
+        final int resolved = miraklVoucherEntryRepository.deleteResolvedByStatus(VoucherEntryStatus.FAILED);
+        if (resolved > 0) {
+            log.info("Removed {} failed voucher entries whose payout was retried successfully", resolved);
+        }
+
+        List<MiraklVoucherEntry> miraklVoucherEntries = miraklVoucherEntryRepository.findByStatusInOrderByIdAsc(UNFINISHED_STATUSES);
+        if (miraklVoucherEntries.isEmpty()) {
+            return;
+        }
+        payoutEngine.run(miraklVoucherEntries.stream().filter(entry -> entry.getStatus() != VoucherEntryStatus.PAYOUT_SUBMITTED).collect(Collectors.toList()),
+                         this::shopPayout);
+
+        if (payoutToLiableAccountByVoucher) {
+            payoutCommissions();
+        }
+
+        final List<Long> paidOutIds = miraklVoucherEntries.stream()
+                                                          .filter(entry -> entry.getStatus() == VoucherEntryStatus.PAYOUT_SUBMITTED)
+                                                          .map(MiraklVoucherEntry::getId)
+                                                          .collect(Collectors.toList());
+        Iterables.partition(paidOutIds, ENTRY_IDS_PER_UPDATE).forEach(ids -> miraklVoucherEntryRepository.updateStatusByIdIn(ids, VoucherEntryStatus.DONE));
+        miraklVoucherEntryRepository.deleteByStatus(VoucherEntryStatus.DONE);
+    }
+
+    /**
+     * Entries still in flight were interrupted by a crash during their Adyen call, so whether Adyen executed it is unknown.
+     * The library cannot send their idempotency key, so instead of being sent again they are logged with it to be
+     * reconciled with the Adyen payout report
+     */
+    private void markInterruptedEntriesUnconfirmed() {
+        final List<MiraklVoucherEntry> interruptedEntries = miraklVoucherEntryRepository.findByStatusInOrderByIdAsc(IN_FLIGHT_STATUSES);
+        interruptedEntries.forEach(entry -> log.warn("Voucher entry {} of shop {} was interrupted in status {}, check invoice number [{}] + Idempotency key: [{}] in Adyen",
+                                                     entry.getId(),
+                                                     entry.getShopId(),
+                                                     entry.getStatus(),
+                                                     entry.getInvoiceNumber(),
+                                                     entry.getIdempotencyKey()));
+        final List<Long> interruptedIds = interruptedEntries.stream().map(MiraklVoucherEntry::getId).collect(Collectors.toList());
+        Iterables.partition(interruptedIds, ENTRY_IDS_PER_UPDATE).forEach(ids -> miraklVoucherEntryRepository.updateStatusByIdIn(ids, VoucherEntryStatus.UNCONFIRMED));
+    }
+
+    /**
+     * Adds the commission of the processed entries to the totals per currency, then pays out one commission per currency
+     */
+    private void payoutCommissions() {
+        int counted = 0;
+        int page;
+        while ((page = commissionService.countCommissionPage()) > 0) {
+            counted += page;
+        }
+        log.info("Counted the commission of {} voucher entries", counted);
+        for (CommissionTotal total : commissionService.getTotals()) {
+            if (total.getAmount().signum() != 0) {
+                processCommissions(total);
             }
         }
     }
 
-    public void processCommissions(Amount amount) {
+    /**
+     * Pays out a commission total to the liable account. The total is deducted once the payout is submitted or stored to be
+     * retried, a payout that could not even be made stays in the total for the next run
+     */
+    public void processCommissions(CommissionTotal total) {
+        final Amount amount = Util.createAmount(total.getAmount().toPlainString(), total.getCurrencyIsoCode());
         PayoutAccountHolderRequest payoutAccountHolderRequest = null;
         PayoutAccountHolderResponse payoutAccountHolderResponse = null;
+        AdyenPayoutError failedPayout = null;
         try {
             payoutAccountHolderRequest = createPayoutAccountHolderRequestForLiableAccount(amount);
+            payoutEngine.acquireFundApiPermit();
             payoutAccountHolderResponse = adyenFundService.payoutAccountHolder(payoutAccountHolderRequest);
             log.info("Payout submitted for commission for accountHolder: [{}] + Psp ref: [{}]", payoutAccountHolderResponse.toString(), payoutAccountHolderResponse.getPspReference());
         } catch (ApiException e) {
             log.error("MarketPay Api Exception for commission payout: {}, {}. For the LiableAccount: {} ", e.getError(),e, liableAccountCode);
+            liableAccountHolderCode = null;
             if (isAllowedToRetryAfterApiException(e)) {
-                storeAdyenPayoutError(payoutAccountHolderRequest, payoutAccountHolderResponse, null);
+                failedPayout = createAdyenPayoutError(payoutAccountHolderRequest, payoutAccountHolderResponse, null);
             }
         } catch (Exception e) {
             log.error("Exception: {}, {}. For the LiableAccount: {} ", e.getMessage(), e, liableAccountCode);
-            storeAdyenPayoutError(payoutAccountHolderRequest, payoutAccountHolderResponse, null);
+            liableAccountHolderCode = null;
+            failedPayout = createAdyenPayoutError(payoutAccountHolderRequest, payoutAccountHolderResponse, null);
         }
+        if (payoutAccountHolderRequest == null) {
+            // the payout was not made, the total stays for the next run
+            return;
+        }
+        commissionService.settle(total.getCurrencyIsoCode(), total.getAmount(), failedPayout);
     }
 
-    public void processMiraklVoucherEntry(MiraklVoucherEntry miraklVoucherEntry) {
+    /**
+     * Looks up the account holder of a shop once for all its entries of a run. If the lookup fails the entries fail too
+     */
+    protected Predicate<MiraklVoucherEntry> shopPayout(String shopId) {
+        GetAccountHolderResponse accountHolderResponse = null;
+        try {
+            accountHolderResponse = getAccountHolderResponse(shopId);
+        } catch (Exception e) {
+            log.error("Could not retrieve the account holder of shop {} for its payouts: {}", shopId, e.getMessage(), e);
+        }
+        final GetAccountHolderResponse shopAccountHolder = accountHolderResponse;
+        return miraklVoucherEntry -> processMiraklVoucherEntry(miraklVoucherEntry, shopAccountHolder);
+    }
+
+    /**
+     * Makes the subscription transfer, unless an earlier run already did, and the payout of an entry. The status of the entry
+     * is stored before and after every Adyen call
+     *
+     * @param accountHolderResponse the account holder of the entry's shop, null if it could not be retrieved
+     * @return false if the payout or subscription transfer failed
+     */
+    protected boolean processMiraklVoucherEntry(MiraklVoucherEntry miraklVoucherEntry, GetAccountHolderResponse accountHolderResponse) {
         String accountHolderCode = miraklVoucherEntry.getShopId();
 
         PayoutAccountHolderRequest payoutAccountHolderRequest = null;
         PayoutAccountHolderResponse payoutAccountHolderResponse = null;
         TransferFundsRequest transferFundsRequest = null;
+        AdyenPayoutError payoutError = null;
 
         try {
-            //Call Adyen to retrieve the accountCode from the accountHolderCode
-            GetAccountHolderResponse accountHolderResponse = getAccountHolderResponse(accountHolderCode);
-
+            if (accountHolderResponse == null) {
+                throw new IllegalStateException("Account holder not retrieved");
+            }
             payoutAccountHolderRequest = createPayoutAccountHolderRequest(accountHolderResponse, miraklVoucherEntry);
 
-            if (miraklVoucherEntry.hasSubscription()) {
+            if (miraklVoucherEntry.hasSubscription() && miraklVoucherEntry.getStatus() != VoucherEntryStatus.SUBSCRIPTION_DONE) {
                 transferFundsRequest = createTransferFundsSubscription(accountHolderResponse, miraklVoucherEntry);
+                payoutEngine.acquireFundApiPermit();
+                updateStatus(miraklVoucherEntry, VoucherEntryStatus.SUBSCRIPTION_IN_FLIGHT);
                 TransferFundsResponse transferFundsResponse = adyenFundService.transferFunds(transferFundsRequest);
-                log.info("Subscription submitted for accountHolder: [{}] + Response: [{}]", accountHolderCode, transferFundsResponse);
+                log.info("Subscription submitted for accountHolder: [{}] + Idempotency key: [{}] + Response: [{}]",
+                         accountHolderCode,
+                         miraklVoucherEntry.getIdempotencyKey(),
+                         transferFundsResponse);
                 transferFundsRequest = null;
+                updateStatus(miraklVoucherEntry, VoucherEntryStatus.SUBSCRIPTION_DONE);
             }
+            payoutEngine.acquireFundApiPermit();
+            updateStatus(miraklVoucherEntry, VoucherEntryStatus.PAYOUT_IN_FLIGHT);
             payoutAccountHolderResponse = adyenFundService.payoutAccountHolder(payoutAccountHolderRequest);
-            log.info("Payout submitted for accountHolder: [{}] + Psp ref: [{}]", accountHolderCode, payoutAccountHolderResponse.getPspReference());
+            log.info("Payout submitted for accountHolder: [{}] + Idempotency key: [{}] + Psp ref: [{}]",
+                     accountHolderCode,
+                     miraklVoucherEntry.getIdempotencyKey(),
+                     payoutAccountHolderResponse.getPspReference());
+            updateStatus(miraklVoucherEntry, VoucherEntryStatus.PAYOUT_SUBMITTED);
+            return true;
         } catch (ApiException e) {
             log.error("MarketPay Api Exception: {}, {}. For the Shop: {}", e.getError(), e, accountHolderCode);
             if (isAllowedToRetryAfterApiException(e)) {
-                storeAdyenPayoutError(payoutAccountHolderRequest, payoutAccountHolderResponse, transferFundsRequest);
+                payoutError = storeAdyenPayoutError(payoutAccountHolderRequest, payoutAccountHolderResponse, transferFundsRequest);
             }
         } catch (Exception e) {
             log.error("Exception: {}, {}. For the Shop: {}", e.getMessage(), e, accountHolderCode);
-            storeAdyenPayoutError(payoutAccountHolderRequest, payoutAccountHolderResponse, transferFundsRequest);
+            payoutError = storeAdyenPayoutError(payoutAccountHolderRequest, payoutAccountHolderResponse, transferFundsRequest);
         }
+        miraklVoucherEntry.setStatus(VoucherEntryStatus.FAILED);
+        miraklVoucherEntry.setPayoutErrorId(payoutError != null ? payoutError.getId() : null);
+        miraklVoucherEntryRepository.updateStatusAndPayoutError(miraklVoucherEntry.getId(), VoucherEntryStatus.FAILED, miraklVoucherEntry.getPayoutErrorId());
+        return false;
+    }
 
+    private void updateStatus(MiraklVoucherEntry miraklVoucherEntry, VoucherEntryStatus status) {
+        miraklVoucherEntry.setStatus(status);
+        miraklVoucherEntryRepository.updateStatus(miraklVoucherEntry.getId(), status);
     }
 
     /**
      * Store Payout request into database so we can do retries
+     *
+     * @return the stored failed payout, null if there was no payout request to store
      */
-    protected void storeAdyenPayoutError(PayoutAccountHolderRequest payoutAccountHolderRequest, PayoutAccountHolderResponse payoutAccountHolderResponse, TransferFundsRequest transferFundsRequest) {
+    protected AdyenPayoutError storeAdyenPayoutError(PayoutAccountHolderRequest payoutAccountHolderRequest, PayoutAccountHolderResponse payoutAccountHolderResponse, TransferFundsRequest transferFundsRequest) {
+        final AdyenPayoutError adyenPayoutError = createAdyenPayoutError(payoutAccountHolderRequest, payoutAccountHolderResponse, transferFundsRequest);
+        return adyenPayoutError != null ? adyenPayoutErrorRepository.save(adyenPayoutError) : null;
+    }
+
+    private AdyenPayoutError createAdyenPayoutError(PayoutAccountHolderRequest payoutAccountHolderRequest, PayoutAccountHolderResponse payoutAccountHolderResponse, TransferFundsRequest transferFundsRequest) {
         if (payoutAccountHolderRequest != null) {
             String rawRequest = GSON.toJson(payoutAccountHolderRequest);
             AdyenPayoutError adyenPayoutError = new AdyenPayoutError();
@@ -217,20 +351,51 @@ public class PayoutService {
 
             adyenPayoutError.setProcessing(false);
             adyenPayoutError.setRetry(0);
-            adyenPayoutErrorRepository.save(adyenPayoutError);
+            adyenPayoutError.setNextRetryAt(ZonedDateTime.now());
+            return adyenPayoutError;
         }
+        return null;
     }
 
-    protected PayoutAccountHolderRequest createPayoutAccountHolderRequestForLiableAccount(Amount amount) throws Exception {
+    /**
+     * Resolve the liable account holder when the connector starts if commission is paid out to it, so payout runs do not
+     * have to
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resolveLiableAccountHolder() {
+        if (! Boolean.TRUE.equals(payoutToLiableAccountByVoucher)) {
+            return;
+        }
+        try {
+            log.info("Liable account {} belongs to account holder {}", liableAccountCode, getLiableAccountHolderCode());
+        } catch (Exception e) {
+            log.warn("Could not resolve the account holder of the liable account {}, retrying on the first commission payout: {}", liableAccountCode, e.getMessage());
+        }
+    }
 
-        //Call Adyen to retrieve the accountCode from the accountHolderCode
-        GetAccountHolderRequest getAccountHolderRequest = new GetAccountHolderRequest();
-        getAccountHolderRequest.setAccountCode(liableAccountCode);
-        GetAccountHolderResponse accountHolderResponse = adyenAccountService.getAccountHolder(getAccountHolderRequest);
-        PayoutAccountHolderRequest payoutAccountHolderRequest = new PayoutAccountHolderRequest();
+    /**
+     * The account holder of the configured liable account, looked up once and again after a commission payout failed
+     */
+    protected String getLiableAccountHolderCode() throws Exception {
+        String accountHolderCode = liableAccountHolderCode;
+        if (accountHolderCode == null) {
+            //Call Adyen to retrieve the accountCode from the accountHolderCode
+            GetAccountHolderRequest getAccountHolderRequest = new GetAccountHolderRequest();
+            getAccountHolderRequest.setAccountCode(liableAccountCode);
+            GetAccountHolderResponse accountHolderResponse = adyenAccountService.getAccountHolder(getAccountHolderRequest);
+            if (accountHolderResponse != null) {
+                accountHolderCode = accountHolderResponse.getAccountHolderCode();
+                liableAccountHolderCode = accountHolderCode;
+            }
+        }
+        return accountHolderCode;
+    }
 
-        if (accountHolderResponse != null) {
-            payoutAccountHolderRequest.setAccountHolderCode(accountHolderResponse.getAccountHolderCode());
+    protected PayoutAccountHolderRequest createPayoutAccountHolderRequestForLiableAccount(Amount amount) throws Exception {
+        PayoutAccountHolderRequest payoutAccountHolderRequest = new PayoutAccountHolderRequest();
+        String accountHolderCode = getLiableAccountHolderCode();
+        if (accountHolderCode != null) {
+            payoutAccountHolderRequest.setAccountHolderCode(accountHolderCode);
         }
         payoutAccountHolderRequest.setAccountCode(liableAccountCode);
         payoutAccountHolderRequest.setAmount(amount);
@@ -303,4 +468,56 @@ public class PayoutService {
         // Exception case: if Adyen responds with HTTP 500 (Internal Server Error), never retry the payout; Adyen will retry internally automatically.
         return apiException.getStatusCode() != 500;
     }
+
+    /**
+     * Positions of the voucher columns, resolved once from the header instead of by name for every record
+     */
+    private static class VoucherColumns {
+
+        private final int shopId;
+        private final int transferAmount;
+        private final int currencyIsoCode;
+        private final int iban;
+        private final int invoiceNumber;
+        private final int shopName;
+        private final int subscriptionAmount;
+        private final int totalChargedAmount;
+        private final int totalChargedAmountVat;
+
+        VoucherColumns(final Map<String, Integer> header) {
+            shopId = position(header, "shop-id");
+            transferAmount = position(header, "transfer-amount");
+            currencyIsoCode = position(header, "currency-iso-code");
+            iban = position(header, "payment-info-ibantype-iban");
+            invoiceNumber = position(header, "invoice-number");
+            shopName = position(header, "shop-name");
+            subscriptionAmount = position(header, "subscription-amount");
+            totalChargedAmount = position(header, "total-charged-amount");
+            totalChargedAmountVat = position(header, "total-charged-amount-vat");
+        }
+
+        private static int position(final Map<String, Integer> header, final String name) {
+            final Integer position = header.get(name);
+            if (position == null) {
+                throw new IllegalArgumentException(String.format("Mapping for %s not found, expected one of %s", name, header.keySet()));
+            }
+            return position;
+        }
+
+        MiraklVoucherEntry toVoucherEntry(final CSVRecord record) {
+            MiraklVoucherEntry miraklVoucherEntry = new MiraklVoucherEntry();
+            miraklVoucherEntry.setShopId(record.get(shopId));
+            miraklVoucherEntry.setTransferAmount(record.get(transferAmount));
+            miraklVoucherEntry.setCurrencyIsoCode(record.get(currencyIsoCode));
+            miraklVoucherEntry.setIban(record.get(iban));
+            miraklVoucherEntry.setInvoiceNumber(record.get(invoiceNumber));
+            miraklVoucherEntry.setShopName(record.get(shopName));
+            miraklVoucherEntry.setSubscriptionAmount(record.get(subscriptionAmount));
+            miraklVoucherEntry.setTotalChargedAmount(record.get(totalChargedAmount));
+            miraklVoucherEntry.setTotalChargedAmountVat(record.get(totalChargedAmountVat));
+            miraklVoucherEntry.setStatus(VoucherEntryStatus.RECEIVED);
+            miraklVoucherEntry.setIdempotencyKey(UUID.randomUUID().toString());
+            return miraklVoucherEntry;
+        }
+    }
 }
@@ -0,0 +1,168 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.mirakl.client.mmp.domain.common.MiraklAdditionalFieldValue;
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+import com.mirakl.client.mmp.domain.shop.MiraklShops;
+import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
+import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
+
+/**
+ * Keeps the adyen-*-photoidtype custom fields of a bounded number of shops for a limited time, so the document services resolve the photo id
+ * type of a whole batch of documents with one S20 call instead of one call per document
+ */
+@Service
+public class PhotoIdTypeCache {
+
+    private final Logger log = LoggerFactory.getLogger(PhotoIdTypeCache.class);
+
+    private static final int MAX_SHOP_IDS_PER_REQUEST = 100;
+    private static final String SUFFIX_MIRAKL_PHOTOIDTYPE = "-photoidtype";
+
+    @Resource
+    private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient;
+
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    @Resource
+    private MetricsService metricsService;
+
+    private Cache<String, Map<String, String>> shops;
+
+    @PostConstruct
+    public void init() {
+        shops = CacheBuilder.newBuilder()
+                            .maximumSize(applicationProperties.getPhotoIdTypeCacheMaxShops())
+                            .expireAfterWrite(applicationProperties.getPhotoIdTypeCacheTtlSeconds(), TimeUnit.SECONDS)
+                            .build();
+        metricsService.gauge("documents.photoIdTypes.cachedShops", shops::size);
+    }
+
+    /**
+     * Loads the photo id types of every shop not cached yet, in as few S20 calls as possible
+     *
+     * @return the photo id types of all the given shops, for the rest of the batch even if the cache evicts some of them
+     */
+    public Map<String, Map<String, String>> prefetch(Collection<String> shopIds) {
+        final Map<String, Map<String, String>> photoIdTypes = new HashMap<>();
+        final List<String> missing = new ArrayList<>();
+        shopIds.stream().distinct().forEach(shopId -> {
+            final Map<String, String> cached = shops.getIfPresent(shopId);
+            if (cached != null) {
+                photoIdTypes.put(shopId, cached);
+            } else {
+                missing.add(shopId);
+            }
+        });
+        photoIdTypes.putAll(load(missing));
+        return photoIdTypes;
+    }
+
+    /**
+     * Returns the value of the given adyen-*-photoidtype field of the shop, or null when it is not set
+     */
+    public String getPhotoIdType(String shopId, String code) {
+        Map<String, String> photoIdTypes = shops.getIfPresent(shopId);
+        if (photoIdTypes != null) {
+            metricsService.increment("documents.photoIdTypes.hits");
+        } else {
+            photoIdTypes = load(ImmutableList.of(shopId)).get(shopId);
+        }
+        return photoIdTypes.get(code.toLowerCase());
+    }
+
+    /**
+     * Replaces the cached photo id types of a shop just read from Mirakl, e.g. by the shop update job
+     */
+    public void refresh(MiraklShop shop) {
+        shops.put(shop.getId(), photoIdTypes(shop));
+    }
+
+    /**
+     * Fetches and caches the photo id types of the given shops, whether another thread cached them in the meantime or not
+     *
+     * @return the photo id types of every given shop
+     */
+    private Map<String, Map<String, String>> load(List<String> missing) {
+        final Map<String, Map<String, String>> loaded = new HashMap<>();
+        if (missing.isEmpty()) {
+            return loaded;
+        }
+        metricsService.increment("documents.photoIdTypes.fetchedShops", missing.size());
+        for (List<String> partition : Iterables.partition(missing, MAX_SHOP_IDS_PER_REQUEST)) {
+            final Map<String, Map<String, String>> fetched = fetch(partition);
+            // shops unknown to Mirakl are remembered too, so they are not requested for every document
+            partition.forEach(shopId -> loaded.put(shopId, fetched.getOrDefault(shopId, new HashMap<>())));
+        }
+        shops.putAll(loaded);
+        return loaded;
+    }
+
+    private Map<String, Map<String, String>> fetch(List<String> shopIds) {
+        final Map<String, Map<String, String>> fetched = new HashMap<>();
+        int offset = 0;
+        long totalCount = 1L;
+        while (offset < totalCount) {
+            MiraklGetShopsRequest request = new MiraklGetShopsRequest();
+            request.setShopIds(shopIds);
+            request.setOffset(offset);
+            MiraklShops miraklShops = miraklMarketplacePlatformOperatorApiClient.getShops(request);
+            miraklShops.getShops().forEach(shop -> fetched.put(shop.getId(), photoIdTypes(shop)));
+
+            offset += miraklShops.getShops().size();
+            totalCount = miraklShops.getTotalCount() == null || miraklShops.getShops().isEmpty() ? offset : miraklShops.getTotalCount();
+        }
+        log.debug("Retrieved photo id types of {} shops out of {} requested", fetched.size(), shopIds.size());
+        return fetched;
+    }
+
+    private static Map<String, String> photoIdTypes(MiraklShop shop) {
+        final Map<String, String> photoIdTypes = new HashMap<>();
+        shop.getAdditionalFieldValues()
+            .stream()
+            .filter(MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue.class::isInstance)
+            .map(MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue.class::cast)
+            .filter(field -> field.getCode() != null && field.getValue() != null)
+            .filter(field -> field.getCode().toLowerCase().endsWith(SUFFIX_MIRAKL_PHOTOIDTYPE))
+            .forEach(field -> photoIdTypes.put(field.getCode().toLowerCase(), field.getValue()));
+        return photoIdTypes;
+    }
+}
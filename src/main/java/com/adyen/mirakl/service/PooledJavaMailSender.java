@@ -0,0 +1,268 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.mail.Address;
+import javax.mail.AuthenticationFailedException;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+/**
+ * JavaMailSender that keeps a few authenticated SMTP sessions open and sends the next messages over them instead of
+ * connecting (and doing the TLS handshake) for every message.
+ * <p>
+ * A session is checked with a NOOP before it is reused, dropped after it has been idle too long or has sent the maximum
+ * number of messages, and a message that fails because its session was dropped is sent once more over a new session.
+ */
+public class PooledJavaMailSender extends JavaMailSenderImpl implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledJavaMailSender.class);
+
+    private static final String HEADER_MESSAGE_ID = "Message-ID";
+
+    private final BlockingDeque<PooledTransport> idleTransports;
+    private final int maxMessagesPerConnection;
+    private final long maxIdleMillis;
+    private final MetricsService metricsService;
+    private final SendRate sendRate = new SendRate();
+
+    public PooledJavaMailSender(final int poolSize, final int maxMessagesPerConnection, final int maxIdleSeconds, final MetricsService metricsService) {
+        this.idleTransports = new LinkedBlockingDeque<>(poolSize);
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.maxIdleMillis = TimeUnit.SECONDS.toMillis(maxIdleSeconds);
+        this.metricsService = metricsService;
+        metricsService.gauge("mail.sessions.idle", idleTransports::size);
+        metricsService.gauge("mail.messagesPerSecond", sendRate::perSecond);
+    }
+
+    @Override
+    protected void doSend(final MimeMessage[] mimeMessages, final Object[] originalMessages) throws MailException {
+        final Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        PooledTransport transport = null;
+        try {
+            for (int i = 0; i < mimeMessages.length; i++) {
+                final Object original = originalMessages != null ? originalMessages[i] : mimeMessages[i];
+                try {
+                    prepare(mimeMessages[i]);
+                } catch (MessagingException e) {
+                    failedMessages.put(original, e);
+                    continue;
+                }
+
+                if (transport != null && transport.messages >= maxMessagesPerConnection) {
+                    release(transport);
+                    transport = null;
+                }
+                if (transport == null) {
+                    try {
+                        transport = borrow();
+                    } catch (AuthenticationFailedException e) {
+                        throw new MailAuthenticationException(e);
+                    } catch (MessagingException e) {
+                        for (int j = i; j < mimeMessages.length; j++) {
+                            failedMessages.put(originalMessages != null ? originalMessages[j] : mimeMessages[j], e);
+                        }
+                        throw new MailSendException("Mail server connection failed", e, failedMessages);
+                    }
+                }
+
+                try {
+                    send(transport, mimeMessages[i]);
+                } catch (MessagingException e) {
+                    if (transport.transport.isConnected()) {
+                        // the server rejected this message, the session itself is fine
+                        metricsService.increment("mail.failed");
+                        failedMessages.put(original, e);
+                        continue;
+                    }
+                    log.warn("SMTP session was dropped, reconnecting: {}", e.getMessage());
+                    close(transport);
+                    transport = null;
+                    try {
+                        transport = open();
+                        metricsService.increment("mail.sessions.reconnected");
+                        send(transport, mimeMessages[i]);
+                    } catch (MessagingException retryFailure) {
+                        metricsService.increment("mail.failed");
+                        failedMessages.put(original, retryFailure);
+                    }
+                }
+            }
+        } finally {
+            if (transport != null) {
+                release(transport);
+            }
+        }
+
+        if (! failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
+
+    /**
+     * Checks a pooled session (or opens one) and gives it back, so health checks do not open a session of their own
+     */
+    @Override
+    public void testConnection() throws MessagingException {
+        release(borrow());
+    }
+
+    @Override
+    public void destroy() {
+        PooledTransport transport;
+        while ((transport = idleTransports.pollFirst()) != null) {
+            close(transport);
+        }
+    }
+
+    private void prepare(final MimeMessage mimeMessage) throws MessagingException {
+        if (mimeMessage.getSentDate() == null) {
+            mimeMessage.setSentDate(new Date());
+        }
+        final String messageId = mimeMessage.getMessageID();
+        mimeMessage.saveChanges();
+        if (messageId != null) {
+            // preserve the explicitly specified message id, saveChanges replaces it
+            mimeMessage.setHeader(HEADER_MESSAGE_ID, messageId);
+        }
+    }
+
+    private void send(final PooledTransport transport, final MimeMessage mimeMessage) throws MessagingException {
+        final long start = System.currentTimeMillis();
+        final Address[] addresses = mimeMessage.getAllRecipients();
+        transport.messages++;
+        transport.transport.sendMessage(mimeMessage, addresses != null ? addresses : new Address[0]);
+        metricsService.increment("mail.sent");
+        metricsService.record("mail.sendMillis", System.currentTimeMillis() - start);
+        sendRate.mark();
+    }
+
+    /**
+     * Most recently used session first, a session that is no longer usable is closed and the next one is tried
+     */
+    private PooledTransport borrow() throws MessagingException {
+        PooledTransport transport;
+        while ((transport = idleTransports.pollFirst()) != null) {
+            if (isUsable(transport)) {
+                metricsService.increment("mail.sessions.reused");
+                return transport;
+            }
+            close(transport);
+        }
+        return open();
+    }
+
+    private boolean isUsable(final PooledTransport transport) {
+        return transport.messages < maxMessagesPerConnection
+            && System.currentTimeMillis() - transport.lastUsed < maxIdleMillis
+            // for SMTP this sends a NOOP
+            && transport.transport.isConnected();
+    }
+
+    private void release(final PooledTransport transport) {
+        transport.lastUsed = System.currentTimeMillis();
+        if (transport.messages >= maxMessagesPerConnection || ! idleTransports.offerFirst(transport)) {
+            close(transport);
+        }
+        // the least recently used sessions are at the end
+        PooledTransport oldest;
+        while ((oldest = idleTransports.peekLast()) != null && System.currentTimeMillis() - oldest.lastUsed >= maxIdleMillis) {
+            if (idleTransports.removeLastOccurrence(oldest)) {
+                close(oldest);
+            }
+        }
+    }
+
+    private PooledTransport open() throws MessagingException {
+        final PooledTransport transport = new PooledTransport(connectTransport());
+        metricsService.increment("mail.sessions.opened");
+        return transport;
+    }
+
+    private void close(final PooledTransport transport) {
+        try {
+            transport.transport.close();
+        } catch (MessagingException e) {
+            log.debug("Failed to close SMTP session: {}", e.getMessage());
+        }
+        metricsService.increment("mail.sessions.closed");
+    }
+
+    private static class PooledTransport {
+
+        private final Transport transport;
+        private int messages;
+        private long lastUsed = System.currentTimeMillis();
+
+        private PooledTransport(final Transport transport) {
+            this.transport = transport;
+        }
+    }
+
+    /**
+     * Messages sent per second, averaged over the last minute
+     */
+    static class SendRate {
+
+        private static final int WINDOW_SECONDS = 60;
+
+        private final AtomicLongArray seconds = new AtomicLongArray(WINDOW_SECONDS);
+        private final AtomicLongArray counts = new AtomicLongArray(WINDOW_SECONDS);
+
+        void mark() {
+            final long second = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+            final int bucket = (int) (second % WINDOW_SECONDS);
+            final long bucketSecond = seconds.get(bucket);
+            if (bucketSecond != second && seconds.compareAndSet(bucket, bucketSecond, second)) {
+                counts.set(bucket, 0);
+            }
+            counts.incrementAndGet(bucket);
+        }
+
+        double perSecond() {
+            final long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+            long total = 0;
+            for (int i = 0; i < WINDOW_SECONDS; i++) {
+                if (now - seconds.get(i) < WINDOW_SECONDS) {
+                    total += counts.get(i);
+                }
+            }
+            return (double) total / WINDOW_SECONDS;
+        }
+    }
+}
@@ -22,32 +22,116 @@
 
 package com.adyen.mirakl.service;
 
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.EmailError;
 import com.adyen.mirakl.domain.ProcessEmail;
 import com.adyen.mirakl.domain.enumeration.EmailState;
+import com.adyen.mirakl.events.EmailQueuedEvent;
 import com.adyen.mirakl.repository.EmailErrorsRepository;
 import com.adyen.mirakl.repository.ProcessEmailRepository;
+import com.adyen.mirakl.service.util.BackoffUtil;
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 import org.springframework.util.CollectionUtils;
 
 import javax.annotation.Resource;
+import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Sends the emails of the process_email outbox on the email sender thread. A failed email gets its next attempt
+ * scheduled with a backoff in the database instead of the thread waiting for it.
+ */
 @Service
 public class RetryEmailService {
 
+    private static final Logger log = LoggerFactory.getLogger(RetryEmailService.class);
+
+    private static final List<EmailState> DUE_STATES = ImmutableList.of(EmailState.PENDING, EmailState.FAILED);
+
     @Resource
     private ProcessEmailRepository processEmailRepository;
     @Resource
     private EmailErrorsRepository emailErrorsRepository;
     @Resource
     private MailService mailService;
+    @Resource
+    private ApplicationProperties applicationProperties;
+    @Resource(name = "emailSenderExecutor")
+    private Executor emailSenderExecutor;
 
-    public void retryFailedEmails(){
-        final List<ProcessEmail> failedEmails = processEmailRepository.findByState(EmailState.FAILED);
-        if(CollectionUtils.isEmpty(failedEmails)){
-           return;
+    private final AtomicBoolean sendRequested = new AtomicBoolean();
+
+    /**
+     * Sends the queued email as soon as the transaction that queued it has committed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmailQueued(EmailQueuedEvent event) {
+        sendDueEmails();
+    }
+
+    /**
+     * Hands the due emails to the email sender thread, a request while one is still waiting is covered by that one
+     */
+    public void sendDueEmails() {
+        if (sendRequested.compareAndSet(false, true)) {
+            emailSenderExecutor.execute(this::processDueEmails);
         }
-        failedEmails.forEach(email -> mailService.sendEmail(email.getTo(), email.getSubject(), email.getContent(), email.isMultipart(), email.isHtml()));
+    }
+
+    /**
+     * Sends the emails that are due, a page at a time; failed emails are rescheduled so they drop out of the next pages
+     */
+    public int processDueEmails() {
+        sendRequested.set(false);
+        final int pageSize = applicationProperties.getEmailSendPageSize();
+        int sent = 0;
+        List<ProcessEmail> dueEmails;
+        do {
+            dueEmails = processEmailRepository.findDue(DUE_STATES, ZonedDateTime.now(), new PageRequest(0, pageSize));
+            for (ProcessEmail email : dueEmails) {
+                if (send(email)) {
+                    sent++;
+                }
+            }
+        } while (dueEmails.size() == pageSize);
+        return sent;
+    }
+
+    private boolean send(ProcessEmail email) {
+        try {
+            mailService.deliverEmail(email);
+        } catch (Exception e) {
+            final int attempts = (email.getAttempts() != null ? email.getAttempts() : 0) + 1;
+            final ZonedDateTime nextAttemptAt = BackoffUtil.nextAttemptAt(ZonedDateTime.now(),
+                                                                          attempts,
+                                                                          applicationProperties.getEmailRetryBaseDelaySeconds(),
+                                                                          applicationProperties.getEmailRetryMaxDelaySeconds(),
+                                                                          applicationProperties.getEmailRetryJitter());
+            log.warn("Unable to send email {}, attempt {}, next attempt at {}", email.getId(), attempts, nextAttemptAt);
+
+            final EmailError emailError = new EmailError();
+            emailError.setError(e.getMessage());
+            emailError.setProcessEmail(email);
+            emailErrorsRepository.save(emailError);
+
+            email.setState(EmailState.FAILED);
+            email.setAttempts(attempts);
+            email.setNextAttemptAt(nextAttemptAt);
+            processEmailRepository.save(email);
+            return false;
+        }
+
+        email.setState(EmailState.SENT);
+        email.setNextAttemptAt(null);
+        processEmailRepository.save(email);
+        return true;
     }
 
     public void removeSentEmails(){
@@ -22,22 +22,33 @@
 
 package com.adyen.mirakl.service;
 
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 import javax.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 import com.adyen.mirakl.config.ApplicationProperties;
 import com.adyen.mirakl.domain.AdyenPayoutError;
 import com.adyen.mirakl.repository.AdyenPayoutErrorRepository;
+import com.adyen.mirakl.service.util.BackoffUtil;
 import com.adyen.model.marketpay.PayoutAccountHolderRequest;
 import com.adyen.model.marketpay.PayoutAccountHolderResponse;
 import com.adyen.model.marketpay.TransferFundsRequest;
 import com.adyen.model.marketpay.TransferFundsResponse;
 import com.adyen.service.Fund;
 import com.adyen.service.exception.ApiException;
+import com.google.common.collect.ImmutableList;
 import com.google.common.reflect.TypeToken;
 import liquibase.util.StringUtils;
 import static com.adyen.mirakl.service.PayoutService.GSON;
@@ -57,81 +68,197 @@ public class RetryPayoutService {
     @Resource
     private Fund adyenFundService;
 
+    @Resource
+    private PayoutEngine payoutEngine;
+
+
+    @Resource
+    private MetricsService metricsService;
+
+    @Resource(name = "payoutExecutor")
+    private Executor payoutExecutor;
 
+    /**
+     * Retries the failed payouts of an account holder straight away, whatever their schedule, after starting their
+     * schedule over
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void retryFailedPayoutsForAccountHolder(String accountHolderCode) {
-        final List<AdyenPayoutError> failedPayouts = adyenPayoutErrorRepository.findByAccountHolderCode(accountHolderCode);
-        if (CollectionUtils.isEmpty(failedPayouts)) {
+        adyenPayoutErrorRepository.resetRetrySchedule(accountHolderCode, ZonedDateTime.now());
+        final List<Long> ids = adyenPayoutErrorRepository.findIdsByAccountHolderCode(accountHolderCode);
+        if (CollectionUtils.isEmpty(ids)) {
             log.info("No failed payouts found for this accountHolder with accountHolderCode: " + accountHolderCode);
             return;
         }
-        processFailedPayout(failedPayouts);
+        processFailedPayout(claim(ids));
     }
 
+    /**
+     * Releases the leases that expired, then claims and retries the failed payouts that are due a page at a time. Claims
+     * are committed before the retries start, so other nodes skip them while they run
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void retryFailedPayouts() {
-        final List<AdyenPayoutError> failedPayouts = adyenPayoutErrorRepository.findByRetry(applicationProperties.getMaxPayoutFailed());
-        if (CollectionUtils.isEmpty(failedPayouts)) {
-            log.info("No failed payouts found");
-            return;
+        releaseExpiredLeases();
+
+        final ZonedDateTime now = ZonedDateTime.now();
+        final int pageSize = applicationProperties.getPayoutRetryPageSize();
+        int retried = 0;
+        List<Long> ids = adyenPayoutErrorRepository.findDueIdsToRetry(now, applicationProperties.getMaxPayoutFailed(), 0L, new PageRequest(0, pageSize));
+        while (! ids.isEmpty()) {
+            final List<AdyenPayoutError> claimed = claim(ids);
+            processFailedPayout(claimed);
+            retried += claimed.size();
+            if (ids.size() < pageSize) {
+                break;
+            }
+            ids = adyenPayoutErrorRepository.findDueIdsToRetry(now, applicationProperties.getMaxPayoutFailed(), ids.get(ids.size() - 1), new PageRequest(0, pageSize));
         }
-        processFailedPayout(failedPayouts);
+        if (retried == 0) {
+            log.info("No failed payouts due for a retry");
+        }
+    }
+
+    /**
+     * Releases the failed payouts claimed by a retry that did not finish in time, e.g. because its node stopped
+     */
+    public int releaseExpiredLeases() {
+        final int released = adyenPayoutErrorRepository.releaseExpiredLeases(ZonedDateTime.now());
+        if (released > 0) {
+            log.warn("Released {} failed payouts whose retry lease expired", released);
+            metricsService.increment("payout.retry.leasesReleased", released);
+        }
+        return released;
     }
 
+    /**
+     * Retries the failed payouts concurrently per account holder on the payout executor, in order within an account holder
+     */
     public void processFailedPayout(List<AdyenPayoutError> failedPayouts) {
-        putFailedPayoutInProcessing(failedPayouts);
+        final Map<String, List<AdyenPayoutError>> failedPayoutsPerAccountHolder = failedPayouts.stream()
+                                                                                               .collect(Collectors.groupingBy(adyenPayoutError -> String.valueOf(adyenPayoutError.getAccountHolderCode()),
+                                                                                                                              LinkedHashMap::new,
+                                                                                                                              Collectors.toList()));
+        CompletableFuture.allOf(failedPayoutsPerAccountHolder.values()
+                                                             .stream()
+                                                             .map(accountHolderPayouts -> CompletableFuture.runAsync(() -> accountHolderPayouts.forEach(this::retryFailedPayout),
+                                                                                                                     payoutExecutor))
+                                                             .toArray(CompletableFuture[]::new)).join();
+    }
 
-        failedPayouts.forEach(adyenPayoutError -> {
-            PayoutAccountHolderResponse payoutAccountHolderResponse = null;
-            TransferFundsResponse transferFundsResponse = null;
-            try {
+    /**
+     * Claims the given failed payouts with a single update under a token of their own, so a concurrent claim (on this
+     * node or another) never picks up these rows, and the ones claimed first elsewhere are left out. The lease lasts
+     * long enough for all of them to wait their turn for the fund API
+     */
+    protected List<AdyenPayoutError> claim(List<Long> ids) {
+        final String leaseToken = UUID.randomUUID().toString();
+        final int claimed = adyenPayoutErrorRepository.claim(ids, leaseToken, ZonedDateTime.now().plusSeconds(claimLeaseSeconds(ids.size())));
+        metricsService.increment("payout.retry.claimed", claimed);
+        if (claimed == 0) {
+            return ImmutableList.of();
+        }
+        return adyenPayoutErrorRepository.findClaimed(ids, leaseToken);
+    }
+
+    /**
+     * The configured lease plus the time the claimed payouts (a subscription and a payout call each) need to get through
+     * the fund API rate limit
+     */
+    protected long claimLeaseSeconds(int claimed) {
+        final long queuedSeconds = (long) Math.ceil(2 * claimed / applicationProperties.getPayoutFundRequestsPerSecond());
+        return applicationProperties.getPayoutRetryLeaseSeconds() + queuedSeconds;
+    }
+
+    /**
+     * Renews the lease right before a failed payout is retried, a payout whose lease expired and was released in the
+     * meantime is left to whoever claimed it next
+     */
+    private boolean renewLease(AdyenPayoutError adyenPayoutError) {
+        final int renewed = adyenPayoutErrorRepository.renewLease(adyenPayoutError.getId(),
+                                                                  adyenPayoutError.getLeaseOwner(),
+                                                                  ZonedDateTime.now().plusSeconds(applicationProperties.getPayoutRetryLeaseSeconds()));
+        if (renewed == 0) {
+            log.warn("Lease of failed payout {} expired before its retry, skipping it", adyenPayoutError.getId());
+            metricsService.increment("payout.retry.leasesLost");
+            return false;
+        }
+        return true;
+    }
 
-                if (! StringUtils.isEmpty(adyenPayoutError.getRawSubscriptionRequest())) {
-                    TransferFundsRequest transferFundsRequest = GSON.fromJson(adyenPayoutError.getRawSubscriptionRequest(), new TypeToken<TransferFundsRequest>() {
-                    }.getType());
-                    transferFundsResponse = adyenFundService.transferFunds(transferFundsRequest);
-                    log.info("Subscription submitted for accountHolder: [{}] + Response: [{}]", adyenPayoutError.getAccountHolderCode(), transferFundsResponse);
-                }
+    private void retryFailedPayout(AdyenPayoutError adyenPayoutError) {
+        if (! renewLease(adyenPayoutError)) {
+            return;
+        }
+        PayoutAccountHolderResponse payoutAccountHolderResponse = null;
+        TransferFundsResponse transferFundsResponse = null;
+        try {
 
-                PayoutAccountHolderRequest payoutAccountHolderRequest = GSON.fromJson(adyenPayoutError.getRawRequest(), new TypeToken<PayoutAccountHolderRequest>() {
+            if (! StringUtils.isEmpty(adyenPayoutError.getRawSubscriptionRequest())) {
+                TransferFundsRequest transferFundsRequest = GSON.fromJson(adyenPayoutError.getRawSubscriptionRequest(), new TypeToken<TransferFundsRequest>() {
                 }.getType());
+                payoutEngine.acquireFundApiPermit();
+                transferFundsResponse = adyenFundService.transferFunds(transferFundsRequest);
+                log.info("Subscription submitted for accountHolder: [{}] + Response: [{}]", adyenPayoutError.getAccountHolderCode(), transferFundsResponse);
+            }
 
-                payoutAccountHolderResponse = adyenFundService.payoutAccountHolder(payoutAccountHolderRequest);
-                log.info("Payout submitted for accountHolder: [{}] + Psp ref: [{}]", payoutAccountHolderRequest.getAccountHolderCode(), payoutAccountHolderResponse.getPspReference());
-
-                // remove from database
-                adyenPayoutErrorRepository.delete(adyenPayoutError);
-            } catch (ApiException e) {
-                log.error("Failed retry payout exception: {}, {}. For the Shop: {}", e.getError(), e, adyenPayoutError.getAccountHolderCode());
-                updateFailedPayout(adyenPayoutError, payoutAccountHolderResponse, transferFundsResponse);
-            } catch (Exception e) {
-                log.error("Failed retry payout exception: {}, {}. For the Shop: {}", e.getMessage(), e, adyenPayoutError.getAccountHolderCode());
-                updateFailedPayout(adyenPayoutError, payoutAccountHolderResponse, transferFundsResponse);
+            PayoutAccountHolderRequest payoutAccountHolderRequest = GSON.fromJson(adyenPayoutError.getRawRequest(), new TypeToken<PayoutAccountHolderRequest>() {
+            }.getType());
+
+            payoutEngine.acquireFundApiPermit();
+            payoutAccountHolderResponse = adyenFundService.payoutAccountHolder(payoutAccountHolderRequest);
+            log.info("Payout submitted for accountHolder: [{}] + Psp ref: [{}]", payoutAccountHolderRequest.getAccountHolderCode(), payoutAccountHolderResponse.getPspReference());
+
+            // remove from database, unless the lease expired and another retry holds the payout by now
+            if (adyenPayoutErrorRepository.deleteClaimed(adyenPayoutError.getId(), adyenPayoutError.getLeaseOwner()) == 0) {
+                leaseLostAfterRetry(adyenPayoutError);
             }
-        });
+        } catch (ApiException e) {
+            log.error("Failed retry payout exception: {}, {}. For the Shop: {}", e.getError(), e, adyenPayoutError.getAccountHolderCode());
+            updateFailedPayout(adyenPayoutError, payoutAccountHolderResponse, transferFundsResponse);
+        } catch (Exception e) {
+            log.error("Failed retry payout exception: {}, {}. For the Shop: {}", e.getMessage(), e, adyenPayoutError.getAccountHolderCode());
+            updateFailedPayout(adyenPayoutError, payoutAccountHolderResponse, transferFundsResponse);
+        }
     }
 
     /**
-     * to solve possible race-condition between cronjob update and notification update
+     * Schedules the next retry and releases the failed payout, only if this claim still holds it
      */
-    protected void putFailedPayoutInProcessing(List<AdyenPayoutError> failedPayouts) {
-        failedPayouts.forEach(adyenPayoutError -> {
-            adyenPayoutError.setProcessing(true);
-            adyenPayoutErrorRepository.save(adyenPayoutError);
-        });
-    }
-
     protected void updateFailedPayout(AdyenPayoutError adyenPayoutError, PayoutAccountHolderResponse payoutAccountHolderResponse, TransferFundsResponse transferFundsResponse) {
-        adyenPayoutError.setRetry(adyenPayoutError.getRetry() + 1);
-        adyenPayoutError.setProcessing(false);
+        final int retry = adyenPayoutError.getRetry() + 1;
+        final ZonedDateTime nextRetryAt = BackoffUtil.nextAttemptAt(ZonedDateTime.now(),
+                                                                    retry,
+                                                                    applicationProperties.getPayoutRetryBaseDelaySeconds(),
+                                                                    applicationProperties.getPayoutRetryMaxDelaySeconds(),
+                                                                    applicationProperties.getPayoutRetryJitter());
 
+        String rawResponse = adyenPayoutError.getRawResponse();
         if (payoutAccountHolderResponse != null) {
-            String rawResponse = GSON.toJson(payoutAccountHolderResponse);
-            adyenPayoutError.setRawResponse(rawResponse);
+            rawResponse = GSON.toJson(payoutAccountHolderResponse);
         }
 
         //Subscription went well but payout failed
+        String rawSubscriptionRequest = adyenPayoutError.getRawSubscriptionRequest();
         if (transferFundsResponse != null) {
-            adyenPayoutError.setRawSubscriptionRequest(null);
+            rawSubscriptionRequest = null;
+        }
+        final int updated = adyenPayoutErrorRepository.rescheduleClaimed(adyenPayoutError.getId(),
+                                                                         adyenPayoutError.getLeaseOwner(),
+                                                                         retry,
+                                                                         nextRetryAt,
+                                                                         rawResponse,
+                                                                         rawSubscriptionRequest,
+                                                                         ZonedDateTime.now());
+        if (updated == 0) {
+            leaseLostAfterRetry(adyenPayoutError);
         }
-        adyenPayoutErrorRepository.save(adyenPayoutError);
+    }
+
+    private void leaseLostAfterRetry(AdyenPayoutError adyenPayoutError) {
+        log.warn("Lease of failed payout {} of shop {} expired during its retry, leaving it to the retry that holds it now",
+                 adyenPayoutError.getId(),
+                 adyenPayoutError.getAccountHolderCode());
+        metricsService.increment("payout.retry.leasesLost");
     }
 }
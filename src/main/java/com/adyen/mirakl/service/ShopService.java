@@ -115,6 +115,9 @@ public class ShopService {
     @Resource
     private DocService docService;
 
+    @Resource
+    private PhotoIdTypeCache photoIdTypeCache;
+
     @Value("${payoutService.liableAccountCode}")
     private String liableAccountCode;
 
@@ -140,7 +143,8 @@ public class ShopService {
                 log.error("Exception: {}, {}. For the Shop: {}", e.getMessage(), e, shop.getId());
             }
         }
-        shops.forEach(shop -> docService.retryDocumentsForShop(shop.getId()));
+        shops.forEach(photoIdTypeCache::refresh);
+        docService.retryDocumentsForShops(shops.stream().map(MiraklShop::getId).collect(Collectors.toList()));
         deltaService.updateShopDelta(beforeProcessing);
     }
 
@@ -0,0 +1,164 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import javax.annotation.Resource;
+import org.springframework.stereotype.Service;
+import com.adyen.Client;
+import com.adyen.Config;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.model.ApiError;
+import com.adyen.model.marketpay.UploadDocumentRequest;
+import com.adyen.model.marketpay.UploadDocumentResponse;
+import com.adyen.service.exception.ApiException;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * Uploads documents to Adyen (uploadDocument) encoding the file in Base64 while it is written to the request body, the
+ * Adyen library needs the whole encoded document as a String which costs several times the file size on heap
+ */
+@Service
+public class StreamingDocumentUploader {
+
+    private static final Gson GSON = AdyenGson.GSON;
+    private static final int CHUNK_SIZE = 8192;
+
+    @Resource
+    private Client adyenClient;
+
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    /**
+     * @param request      the upload request without document content
+     * @param documentFile the file to send as document content
+     */
+    public UploadDocumentResponse uploadDocument(final UploadDocumentRequest request, final File documentFile) throws IOException, ApiException {
+        final Config config = adyenClient.getConfig();
+        final HttpURLConnection connection = (HttpURLConnection) new URL(config.getMarketPayEndpoint() + "/Account/" + Client.MARKETPAY_ACCOUNT_API_VERSION + "/uploadDocument").openConnection();
+        connection.setConnectTimeout(applicationProperties.getDocUploadConnectTimeoutMillis());
+        connection.setReadTimeout(applicationProperties.getDocUploadReadTimeoutMillis());
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setChunkedStreamingMode(CHUNK_SIZE);
+        connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+        connection.setRequestProperty("Accept-Charset", StandardCharsets.UTF_8.name());
+        connection.setRequestProperty("User-Agent", config.getApplicationName() + " " + Client.USER_AGENT_SUFFIX + Client.LIB_VERSION);
+        connection.setRequestProperty("Authorization",
+                                      "Basic " + Base64.getEncoder().encodeToString((config.getUsername() + ":" + config.getPassword()).getBytes(StandardCharsets.UTF_8)));
+
+        try {
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                writeRequest(request, documentFile, outputStream);
+            }
+            final int status = connection.getResponseCode();
+            if (status < 200 || status >= 300) {
+                throw apiException(readBody(connection.getErrorStream()), status);
+            }
+            return GSON.fromJson(readBody(connection.getInputStream()), UploadDocumentResponse.class);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    static void writeRequest(final UploadDocumentRequest request, final File documentFile, final OutputStream outputStream) throws IOException {
+        final String envelope = GSON.toJson(request);
+        final String fields = envelope.substring(1, envelope.lastIndexOf('}'));
+        outputStream.write('{');
+        if (! fields.isEmpty()) {
+            outputStream.write(fields.getBytes(StandardCharsets.UTF_8));
+            outputStream.write(',');
+        }
+        outputStream.write("\"documentContent\":\"".getBytes(StandardCharsets.UTF_8));
+        try (InputStream inputStream = new FileInputStream(documentFile); OutputStream encoder = Base64.getEncoder().wrap(new NonClosingOutputStream(outputStream))) {
+            ByteStreams.copy(inputStream, encoder);
+        }
+        outputStream.write("\"}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Same as the Adyen library, the error body is parsed into the ApiError of the exception
+     */
+    static ApiException apiException(final String errorBody, final int status) {
+        final ApiException apiException = new ApiException(errorBody, status);
+        try {
+            apiException.setError(GSON.fromJson(errorBody, ApiError.class));
+        } catch (JsonParseException e) {
+            // not a MarketPay error response (e.g. from a proxy), the body stays in the message
+        }
+        return apiException;
+    }
+
+    private static String readBody(final InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            return "";
+        }
+        try (InputStream body = inputStream) {
+            return new String(ByteStreams.toByteArray(body), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Closing the Base64 encoder writes the padding, the request body itself must stay open
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Gives access to the Gson instance the Adyen library (de)serializes its requests and responses with
+     */
+    private static final class AdyenGson extends com.adyen.Service {
+
+        private static final Gson GSON = com.adyen.Service.GSON;
+
+        private AdyenGson() {
+            super(null);
+        }
+    }
+}
@@ -21,15 +21,15 @@
 
 package com.adyen.mirakl.service;
 
-import java.util.HashMap;
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import javax.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import com.adyen.mirakl.config.ApplicationProperties;
 import com.adyen.mirakl.domain.DocError;
 import com.adyen.mirakl.domain.DocRetry;
 import com.adyen.mirakl.domain.ShareholderMapping;
@@ -37,6 +37,7 @@ import com.adyen.mirakl.repository.DocErrorRepository;
 import com.adyen.mirakl.repository.DocRetryRepository;
 import com.adyen.mirakl.repository.ShareholderMappingRepository;
 import com.adyen.mirakl.service.dto.UboDocumentDTO;
+import com.adyen.mirakl.service.util.BackoffUtil;
 import com.adyen.model.marketpay.DocumentDetail;
 import com.google.common.collect.ImmutableList;
 import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
@@ -46,8 +47,6 @@ public class UboDocumentService extends AbstractDocumentService<UboDocumentDTO>
 
     private final Logger log = LoggerFactory.getLogger(UboDocumentService.class);
 
-    private static final String UBO_ENTITY = "ubo";
-
     @Resource
     private DocRetryRepository docRetryRepository;
 
@@ -57,21 +56,12 @@ public class UboDocumentService extends AbstractDocumentService<UboDocumentDTO>
     @Resource
     private ShareholderMappingRepository shareholderMappingRepository;
 
-    @Value("${shopService.maxUbos}")
-    private Integer maxUbos = 4;
+    @Resource
+    private ApplicationProperties applicationProperties;
 
     @Override
     public List<UboDocumentDTO> extractDocuments(List<MiraklShopDocument> miraklShopDocuments) {
-        ImmutableList.Builder<UboDocumentDTO> builder = ImmutableList.builder();
-
-        Map<String, String> internalMemoryForDocs = new HashMap<>();
-        miraklShopDocuments.forEach(miraklShopDocument -> {
-            for (Integer uboNumber = 1; uboNumber <= maxUbos; uboNumber++) {
-                addToBuilder(builder, internalMemoryForDocs, miraklShopDocument, UBO_ENTITY, uboNumber);
-            }
-        });
-
-        return builder.build();
+        return extractDocuments(miraklShopDocuments, DocumentTypeCodeClassifier.UBO_ENTITY);
     }
 
     @Override
@@ -93,10 +83,6 @@ public class UboDocumentService extends AbstractDocumentService<UboDocumentDTO>
 
     }
 
-    public void setMaxUbos(Integer maxUbos) {
-        this.maxUbos = maxUbos;
-    }
-
     private void storeDocumentForRetry(String documentId, String shopId) {
         DocRetry docRetry = docRetryRepository.findOneByDocId(documentId).orElse(null);
         Integer timesFailed;
@@ -113,6 +99,10 @@ public class UboDocumentService extends AbstractDocumentService<UboDocumentDTO>
         docRetry.addDocError(docError);
         docRetry.setShopId(shopId);
         docRetry.setTimesFailed(timesFailed);
+        docRetry.setNextRetryAt(BackoffUtil.nextAttemptAt(ZonedDateTime.now(),
+                                                          timesFailed,
+                                                          applicationProperties.getDocRetryBaseDelaySeconds(),
+                                                          applicationProperties.getDocRetryMaxDelaySeconds()));
         docRetryRepository.saveAndFlush(docRetry);
         docErrorRepository.saveAndFlush(docError);
     }
@@ -0,0 +1,141 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service.dto;
+
+import java.time.ZonedDateTime;
+import com.adyen.mirakl.domain.enumeration.PayoutJobStatus;
+
+/**
+ * Progress of a payout job: the rows of its file parsed so far and how many of them were paid out, failed or are left
+ */
+public class PayoutJobDTO {
+
+    private Long id;
+    private String fileName;
+    private PayoutJobStatus status;
+    private int rowsParsed;
+    private int payoutsSubmitted;
+    private int payoutsFailed;
+    private int remaining;
+    private Double payoutsPerSecond;
+    private String error;
+    private ZonedDateTime createdAt;
+    private ZonedDateTime startedAt;
+    private ZonedDateTime finishedAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(final Long id) {
+        this.id = id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(final String fileName) {
+        this.fileName = fileName;
+    }
+
+    public PayoutJobStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(final PayoutJobStatus status) {
+        this.status = status;
+    }
+
+    public int getRowsParsed() {
+        return rowsParsed;
+    }
+
+    public void setRowsParsed(final int rowsParsed) {
+        this.rowsParsed = rowsParsed;
+    }
+
+    public int getPayoutsSubmitted() {
+        return payoutsSubmitted;
+    }
+
+    public void setPayoutsSubmitted(final int payoutsSubmitted) {
+        this.payoutsSubmitted = payoutsSubmitted;
+    }
+
+    public int getPayoutsFailed() {
+        return payoutsFailed;
+    }
+
+    public void setPayoutsFailed(final int payoutsFailed) {
+        this.payoutsFailed = payoutsFailed;
+    }
+
+    public int getRemaining() {
+        return remaining;
+    }
+
+    public void setRemaining(final int remaining) {
+        this.remaining = remaining;
+    }
+
+    public Double getPayoutsPerSecond() {
+        return payoutsPerSecond;
+    }
+
+    public void setPayoutsPerSecond(final Double payoutsPerSecond) {
+        this.payoutsPerSecond = payoutsPerSecond;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(final String error) {
+        this.error = error;
+    }
+
+    public ZonedDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(final ZonedDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public ZonedDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(final ZonedDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public ZonedDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(final ZonedDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+}
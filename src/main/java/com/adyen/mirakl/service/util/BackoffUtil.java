@@ -0,0 +1,54 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service.util;
+
+import java.time.ZonedDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+
+public final class BackoffUtil {
+
+    private static final int MAX_DOUBLINGS = 30;
+
+    private BackoffUtil() {
+        //utility class
+    }
+
+    /**
+     * Time of the next attempt after the given number of failures: the base delay doubled for every failure after the
+     * first one, capped at the max delay and never less than a second
+     */
+    public static ZonedDateTime nextAttemptAt(ZonedDateTime now, int failures, long baseDelaySeconds, long maxDelaySeconds) {
+        final int doublings = Math.min(Math.max(failures - 1, 0), MAX_DOUBLINGS);
+        return now.plusSeconds(Math.max(Math.min(baseDelaySeconds << doublings, maxDelaySeconds), 1));
+    }
+
+    /**
+     * Same as {@link #nextAttemptAt(ZonedDateTime, int, long, long)}, with up to the given fraction of the delay taken off
+     * at random so attempts that failed together do not all come back at the same time
+     */
+    public static ZonedDateTime nextAttemptAt(ZonedDateTime now, int failures, long baseDelaySeconds, long maxDelaySeconds, double jitter) {
+        final long delaySeconds = nextAttemptAt(now, failures, baseDelaySeconds, maxDelaySeconds).toEpochSecond() - now.toEpochSecond();
+        final long jitterSeconds = (long) (delaySeconds * Math.min(Math.max(jitter, 0), 1) * ThreadLocalRandom.current().nextDouble());
+        return now.plusSeconds(Math.max(delaySeconds - jitterSeconds, 1));
+    }
+}
@@ -32,6 +32,7 @@ import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.time.ZonedDateTime;
 import java.util.List;
 
 @Component
@@ -52,6 +53,7 @@ public class ResetEmailsAtStartup implements ApplicationListener<ContextRefreshe
             emailErrorsRepository.save(emailError);
             email.addEmailError(emailError);
             email.setState(EmailState.FAILED);
+            email.setNextAttemptAt(ZonedDateTime.now());
 
         });
         processEmailRepository.save(processingEmails);
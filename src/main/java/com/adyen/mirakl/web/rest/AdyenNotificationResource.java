@@ -24,6 +24,7 @@ package com.adyen.mirakl.web.rest;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationEventPublisher;
@@ -35,6 +36,8 @@ import org.springframework.web.bind.annotation.RestController;
 import com.adyen.mirakl.domain.AdyenNotification;
 import com.adyen.mirakl.events.AdyenNotifcationEvent;
 import com.adyen.mirakl.repository.AdyenNotificationRepository;
+import com.adyen.mirakl.service.MetricsService;
+import com.adyen.mirakl.service.NotificationMetricsService;
 import com.adyen.mirakl.web.rest.util.HeaderUtil;
 
 /**
@@ -52,9 +55,18 @@ public class AdyenNotificationResource {
 
     private final ApplicationEventPublisher publisher;
 
-    public AdyenNotificationResource(AdyenNotificationRepository adyenNotificationRepository, ApplicationEventPublisher publisher) {
+    private final MetricsService metricsService;
+
+    private final NotificationMetricsService notificationMetricsService;
+
+    public AdyenNotificationResource(AdyenNotificationRepository adyenNotificationRepository,
+                                     ApplicationEventPublisher publisher,
+                                     MetricsService metricsService,
+                                     NotificationMetricsService notificationMetricsService) {
         this.adyenNotificationRepository = adyenNotificationRepository;
         this.publisher = publisher;
+        this.metricsService = metricsService;
+        this.notificationMetricsService = notificationMetricsService;
     }
 
     /**
@@ -69,6 +81,8 @@ public class AdyenNotificationResource {
         final AdyenNotification entity = new AdyenNotification();
         entity.setRawAdyenNotification(adyenNotification);
         AdyenNotification result = adyenNotificationRepository.save(entity);
+        metricsService.increment("notifications.payload.bytesSaved", adyenNotification.getBytes(StandardCharsets.UTF_8).length - result.getStoredSize());
+        notificationMetricsService.received(result.getId());
         publisher.publishEvent(new AdyenNotifcationEvent(result.getId()));
 
         return ResponseEntity.created(new URI("/api/adyen-notifications/" + result.getId()))
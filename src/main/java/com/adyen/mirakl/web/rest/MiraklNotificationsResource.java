@@ -23,12 +23,20 @@
 package com.adyen.mirakl.web.rest;
 
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
-import com.adyen.mirakl.service.PayoutService;
+import com.adyen.mirakl.domain.PayoutJob;
+import com.adyen.mirakl.service.PayoutJobService;
+import com.adyen.mirakl.service.dto.PayoutJobDTO;
+import io.github.jhipster.web.util.ResponseUtil;
 
 /**
  * MiraklNotifications controller
@@ -37,22 +45,35 @@ import com.adyen.mirakl.service.PayoutService;
 @RequestMapping("/api/mirakl-notifications")
 public class MiraklNotificationsResource {
 
-    private final PayoutService payoutService;
+    private final PayoutJobService payoutJobService;
 
-    public MiraklNotificationsResource(PayoutService payoutService) {
-        this.payoutService = payoutService;
+    public MiraklNotificationsResource(PayoutJobService payoutJobService) {
+        this.payoutJobService = payoutJobService;
     }
 
     /**
-     * POST payout
+     * POST payout : accept a payment voucher file, it is stored and paid out in the background
+     *
+     * @return the ResponseEntity with status 202 (Accepted) and with body the progress of the new payout job, or with status 200 (OK) if the file is empty
+     * @throws URISyntaxException if the Location URI syntax is incorrect
      */
     @PostMapping("/payout")
-    public void receiveNotifications(@RequestPart("file") MultipartFile csvdata) throws IOException {
-        String content = new String(csvdata.getBytes());
-        if (! content.isEmpty()) {
-            payoutService.parseMiraklCsv(content);
-            payoutService.processMiraklVoucherEntries();
+    public ResponseEntity<PayoutJobDTO> receiveNotifications(@RequestPart("file") MultipartFile csvdata) throws IOException, URISyntaxException {
+        if (csvdata.isEmpty()) {
+            return ResponseEntity.ok().build();
         }
+        final PayoutJob payoutJob = payoutJobService.submit(csvdata);
+        return ResponseEntity.accepted().location(new URI("/api/mirakl-notifications/payout/" + payoutJob.getId())).body(payoutJobService.toProgress(payoutJob));
+    }
+
+    /**
+     * GET payout/:id : the progress of a payout job
+     *
+     * @return the ResponseEntity with status 200 (OK) and with body the progress, or with status 404 (Not Found)
+     */
+    @GetMapping("/payout/{id}")
+    public ResponseEntity<PayoutJobDTO> getPayoutJob(@PathVariable Long id) {
+        return ResponseUtil.wrapOrNotFound(payoutJobService.getProgress(id));
     }
 
 }
@@ -0,0 +1,103 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.adyen.mirakl.service.DocumentTypeCodeClassifier;
+
+/**
+ * Compares matching the type codes of a batch of shop documents by building and comparing the photo id codes of every ubo,
+ * as the document services used to, with a lookup in {@link DocumentTypeCodeClassifier}.
+ *
+ * Run with ./gradlew jmh -Pjmh.args="DocumentTypeCodeBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentTypeCodeBenchmark {
+
+    private static final int DOCUMENTS = 1000;
+
+    @Param({"1", "4", "10", "50"})
+    private int maxUbos;
+
+    private List<String> typeCodes;
+    private DocumentTypeCodeClassifier documentTypeCodeClassifier;
+
+    @Setup
+    public void setUp() {
+        documentTypeCodeClassifier = new DocumentTypeCodeClassifier(maxUbos);
+        final Random random = new Random(42);
+        typeCodes = new ArrayList<>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            switch (random.nextInt(4)) {
+            case 0:
+                typeCodes.add("adyen-bankproof");
+                break;
+            case 1:
+                typeCodes.add("adyen-individual-photoid" + (random.nextBoolean() ? "" : "-rear"));
+                break;
+            default:
+                typeCodes.add("adyen-ubo" + (random.nextInt(maxUbos) + 1) + "-photoid" + (random.nextBoolean() ? "" : "-rear"));
+            }
+        }
+    }
+
+    @Benchmark
+    public void equalsIgnoreCasePerUbo(Blackhole blackhole) {
+        for (String typeCode : typeCodes) {
+            for (Integer uboNumber = 1; uboNumber <= maxUbos; uboNumber++) {
+                String entityName = "ubo" + uboNumber;
+                blackhole.consume(typeCode.equalsIgnoreCase("adyen-" + entityName + "-photoid"));
+                blackhole.consume(typeCode.equalsIgnoreCase("adyen-" + entityName + "-photoid-rear"));
+            }
+            blackhole.consume(typeCode.equalsIgnoreCase("adyen-individual-photoid"));
+            blackhole.consume(typeCode.equalsIgnoreCase("adyen-individual-photoid-rear"));
+        }
+    }
+
+    @Benchmark
+    public void classifier(Blackhole blackhole) {
+        for (String typeCode : typeCodes) {
+            blackhole.consume(documentTypeCodeClassifier.classify(typeCode));
+        }
+    }
+}
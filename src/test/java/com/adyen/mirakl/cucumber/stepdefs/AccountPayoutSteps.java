@@ -41,7 +41,6 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import com.adyen.mirakl.cucumber.stepdefs.helpers.stepshelper.StepDefsHelper;
-import com.adyen.mirakl.domain.AdyenPayoutError;
 import com.adyen.mirakl.web.rest.AdyenNotificationResource;
 import com.adyen.mirakl.web.rest.MiraklNotificationsResource;
 import com.adyen.mirakl.web.rest.TestUtil;
@@ -165,7 +164,7 @@ public class AccountPayoutSteps extends StepDefsHelper {
         final String csvFile = Resources.toString(url, Charsets.UTF_8);
         String csv = csvFile.replaceAll("\\$shopId\\$", shop.getId());
         MockMultipartFile mockMultipartFile = new MockMultipartFile("file", paymentVoucher, "text/plain", csv.getBytes());
-        restUserMockMvc.perform(MockMvcRequestBuilders.fileUpload("/api/mirakl-notifications/payout").file(mockMultipartFile)).andExpect(status().is(200));
+        restUserMockMvc.perform(MockMvcRequestBuilders.fileUpload("/api/mirakl-notifications/payout").file(mockMultipartFile)).andExpect(status().is(202));
     }
 
     @Then("^adyen will send the (.*) notification$")
@@ -221,7 +220,7 @@ public class AccountPayoutSteps extends StepDefsHelper {
 
     @And("^the failed payout record is removed from the Connector database$")
     public void theFailedPayoutRecordIsRemovedFromTheConnectorDatabase() {
-        List<AdyenPayoutError> byAccountHolderCode = adyenPayoutErrorRepository.findByAccountHolderCode(accountHolderCode);
+        List<Long> byAccountHolderCode = adyenPayoutErrorRepository.findIdsByAccountHolderCode(accountHolderCode);
         Assertions.assertThat(byAccountHolderCode).isEmpty();
     }
 
@@ -22,8 +22,9 @@
 
 package com.adyen.mirakl.listeners;
 
-import com.adyen.mirakl.service.DocService;
 import com.adyen.mirakl.service.MailTemplateService;
+import com.adyen.mirakl.service.MiraklMediaDeletionService;
+import com.adyen.mirakl.service.NotificationMetricsService;
 import com.adyen.mirakl.domain.AdyenNotification;
 import com.adyen.mirakl.events.AdyenNotifcationEvent;
 import com.adyen.mirakl.repository.AdyenNotificationRepository;
@@ -33,10 +34,12 @@ import com.adyen.model.Name;
 import com.adyen.model.marketpay.GetAccountHolderRequest;
 import com.adyen.model.marketpay.GetAccountHolderResponse;
 import com.adyen.model.marketpay.ShareholderContact;
+import com.adyen.model.marketpay.notification.AccountHolderVerificationNotification;
 import com.adyen.notification.NotificationHandler;
 import com.adyen.service.Account;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Resources;
 import com.mirakl.client.mmp.domain.shop.MiraklShop;
 import com.mirakl.client.mmp.domain.shop.MiraklShops;
@@ -54,8 +57,15 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -89,17 +99,25 @@ public class AdyenNotificationListenerTest {
     @Mock
     private RetryPayoutService retryPayoutService;
     @Mock
-    private DocService docServiceMock;
+    private MiraklMediaDeletionService miraklMediaDeletionServiceMock;
     @Mock
     private ShopService shopServiceMock;
+    @Mock
+    private VerificationNotificationCoalescer verificationNotificationCoalescerMock;
+    @Mock
+    private NotificationMetricsService notificationMetricsServiceMock;
     @Captor
     private ArgumentCaptor<MiraklGetShopsRequest> miraklShopsRequestCaptor;
     @Captor
     private ArgumentCaptor<GetAccountHolderRequest> accountHolderRequestCaptor;
+    @Captor
+    private ArgumentCaptor<AccountHolderVerificationNotification> verificationNotificationCaptor;
+    @Captor
+    private ArgumentCaptor<VerificationNotificationCoalescer.GroupHandler> groupHandlerCaptor;
 
     @Before
     public void setup(){
-        adyenNotificationListener = new AdyenNotificationListener(new NotificationHandler(), adyenNotificationRepositoryMock, mailTemplateServiceMock, miraklMarketplacePlatformOperatorApiClient, adyenAccountServiceMock, retryPayoutService, docServiceMock, shopServiceMock);
+        adyenNotificationListener = new AdyenNotificationListener(new NotificationHandler(), adyenNotificationRepositoryMock, mailTemplateServiceMock, miraklMarketplacePlatformOperatorApiClient, adyenAccountServiceMock, retryPayoutService, miraklMediaDeletionServiceMock, shopServiceMock, verificationNotificationCoalescerMock, notificationMetricsServiceMock);
         when(eventMock.getDbId()).thenReturn(1L);
         when(adyenNotificationRepositoryMock.findOneById(1L)).thenReturn(adyenNotificationMock);
     }
@@ -122,6 +140,17 @@ public class AdyenNotificationListenerTest {
     }
 
 
+    @Test
+    public void shouldMarkNotificationFailedWhenItCannotBeParsed() {
+        when(adyenNotificationMock.getRawAdyenNotification()).thenReturn("{");
+
+        adyenNotificationListener.handleContextRefresh(eventMock);
+
+        verify(adyenNotificationRepositoryMock, never()).delete(1L);
+        verify(adyenNotificationRepositoryMock).markProcessed(1L);
+        verify(notificationMetricsServiceMock).failed(eq(1L), any(Exception.class));
+    }
+
     @Test
     public void shouldSendEmailForShareholderIdentityVerificationAwaitingData() throws Exception {
         URL url = Resources.getResource("adyenRequests/ACCOUNT_HOLDER_VERIFICATION_AWAITING_DATA.json");
@@ -359,7 +388,7 @@ public class AdyenNotificationListenerTest {
 
         final GetAccountHolderRequest requestCaptorValue = accountHolderRequestCaptor.getValue();
         Assertions.assertThat(requestCaptorValue.getAccountHolderCode()).isEqualTo("11141");
-        verify(docServiceMock).removeMiraklMediaForShareHolder("c6adfbe1-4794-4e31-9861-9f69dee3a60e");
+        verify(miraklMediaDeletionServiceMock).enqueue("11141", ImmutableSet.of("c6adfbe1-4794-4e31-9861-9f69dee3a60e"), false, false);
     }
 
     @Test
@@ -375,6 +404,72 @@ public class AdyenNotificationListenerTest {
 
         final GetAccountHolderRequest requestCaptorValue = accountHolderRequestCaptor.getValue();
         Assertions.assertThat(requestCaptorValue.getAccountHolderCode()).isEqualTo("22057");
-        verify(docServiceMock).removeMiraklMediaForIndividual("22057");
+        verify(miraklMediaDeletionServiceMock).enqueue("22057", ImmutableSet.of(), true, false);
+    }
+
+    @Test
+    public void shouldCombineCoalescedVerificationNotificationsForIndividual() throws Exception {
+        final String identityJson = Resources.toString(Resources.getResource("adyenRequests/INDIVIDUAL_IDENTITY_VERIFICATION_AWAITING_DATA.json"), Charsets.UTF_8);
+        final String passportJson = Resources.toString(Resources.getResource("adyenRequests/INDIVIDUAL_PASSPORT_VERIFICATION_AWAITING_DATA.json"), Charsets.UTF_8);
+        when(adyenNotificationMock.getRawAdyenNotification()).thenReturn(identityJson, passportJson);
+        when(verificationNotificationCoalescerMock.isEnabled()).thenReturn(true);
+        when(adyenAccountServiceMock.getAccountHolder(accountHolderRequestCaptor.capture())).thenReturn(getAccountHolderResponseMock);
+        when(getAccountHolderResponseMock.getLegalEntity()).thenReturn(GetAccountHolderResponse.LegalEntityEnum.INDIVIDUAL);
+        when(getAccountHolderResponseMock.getAccountHolderDetails().getIndividualDetails().getName()).thenReturn(shareholderNameMock);
+        when(getAccountHolderResponseMock.getAccountHolderDetails().getEmail()).thenReturn("mockEmail");
+
+        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.handleContextRefresh(eventMock);
+
+        verify(verificationNotificationCoalescerMock, times(2)).add(eq("22058"), eq(1L), verificationNotificationCaptor.capture(), groupHandlerCaptor.capture());
+        verify(adyenNotificationRepositoryMock, never()).delete(anyLong());
+
+        final Map<Long, AccountHolderVerificationNotification> group = new LinkedHashMap<>();
+        group.put(1L, verificationNotificationCaptor.getAllValues().get(0));
+        group.put(2L, verificationNotificationCaptor.getAllValues().get(1));
+        groupHandlerCaptor.getValue().handle("22058", group);
+
+        verify(adyenAccountServiceMock).getAccountHolder(any(GetAccountHolderRequest.class));
+        Assertions.assertThat(accountHolderRequestCaptor.getValue().getAccountHolderCode()).isEqualTo("22058");
+        verify(mailTemplateServiceMock).sendShareholderVerificationSummaryEmail(shareholderNameMock,
+                                                                                "22058",
+                                                                                Locale.getDefault(),
+                                                                                ImmutableList.of("email.account.verification.awaiting.id.title", "email.account.verification.awaiting.passport.title"),
+                                                                                "mockEmail");
+        verify(mailTemplateServiceMock, never()).sendShareholderEmailFromTemplate(any(), any(), any(), any(), any(), any());
+        verify(adyenNotificationRepositoryMock).delete(1L);
+        verify(adyenNotificationRepositoryMock).delete(2L);
+    }
+
+    @Test
+    public void shouldOnlyFailCoalescedNotificationsOfUnknownShareholder() throws Exception {
+        final String identityJson = Resources.toString(Resources.getResource("adyenRequests/ACCOUNT_HOLDER_VERIFICATION_AWAITING_DATA.json"), Charsets.UTF_8);
+        final String passportJson = Resources.toString(Resources.getResource("adyenRequests/PASSPORT_VERIFICATION_AWAITING_DATA.json"), Charsets.UTF_8)
+                                             .replace("24610d08-9d80-4a93-85f3-78d475274e08", "unknownShareholderCode");
+        when(adyenNotificationMock.getRawAdyenNotification()).thenReturn(identityJson, passportJson);
+        when(verificationNotificationCoalescerMock.isEnabled()).thenReturn(true);
+        when(adyenAccountServiceMock.getAccountHolder(any(GetAccountHolderRequest.class))).thenReturn(getAccountHolderResponseMock);
+        when(getAccountHolderResponseMock.getAccountHolderDetails().getBusinessDetails().getShareholders()).thenReturn(ImmutableList.of(shareholderMock1, shareholderMock2));
+        when(getAccountHolderResponseMock.getLegalEntity()).thenReturn(GetAccountHolderResponse.LegalEntityEnum.BUSINESS);
+        when(shareholderMock1.getShareholderCode()).thenReturn("invalidShareholderCode");
+        when(shareholderMock2.getShareholderCode()).thenReturn("24610d08-9d80-4a93-85f3-78d475274e08");
+        when(shareholderMock2.getName()).thenReturn(shareholderNameMock);
+        when(shareholderMock2.getEmail()).thenReturn("mockEmail");
+
+        adyenNotificationListener.handleContextRefresh(eventMock);
+        adyenNotificationListener.handleContextRefresh(eventMock);
+        verify(verificationNotificationCoalescerMock, times(2)).add(eq("8255"), eq(1L), verificationNotificationCaptor.capture(), groupHandlerCaptor.capture());
+
+        final Map<Long, AccountHolderVerificationNotification> group = new LinkedHashMap<>();
+        group.put(1L, verificationNotificationCaptor.getAllValues().get(0));
+        group.put(2L, verificationNotificationCaptor.getAllValues().get(1));
+        groupHandlerCaptor.getValue().handle("8255", group);
+
+        verify(mailTemplateServiceMock).sendShareholderEmailFromTemplate(shareholderNameMock, "8255", Locale.getDefault(), "accountHolderAwaitingIdentityEmail", "email.account.verification.awaiting.id.title", "mockEmail");
+        verify(adyenNotificationRepositoryMock).delete(1L);
+        verify(adyenNotificationRepositoryMock, never()).delete(2L);
+        verify(adyenNotificationRepositoryMock).markProcessed(2L);
+        verify(adyenNotificationRepositoryMock, never()).markProcessed(1L);
+        verify(notificationMetricsServiceMock).failed(eq(2L), any(IllegalStateException.class));
     }
 }
@@ -0,0 +1,54 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.load;
+
+/**
+ * The environment the connector needs to start, filled with placeholders for the load tests unless it is set already
+ */
+final class LoadTestEnvironment {
+
+    private static final String[] PLACEHOLDERS = {"ADYEN_USER_NAME", "ADYEN_PASS", "ADYEN_NOTIFY_URL", "ADYEN_LIABLE_ACCOUNT_CODE", "ADYEN_PAL_USERNAME",
+        "ADYEN_PAL_PASSWORD", "ADYEN_PAL_MERCHANT_ACCOUNT", "MIRAKL_API_OPERATOR_KEY", "MIRAKL_API_FRONT_KEY", "MIRAKL_OPERATOR_EMAIL", "MIRAKL_TIMEZONE",
+        "MAIL_HOST", "MAIL_PORT", "MAIL_USER", "MAIL_PASS", "MAILTRAP_API_TOKEN", "MAILTRAP_INBOX_ID", "REQUESTBIN_URL"};
+
+    private LoadTestEnvironment() {
+        //utility class
+    }
+
+    static void setDefaults(final String miraklUrl) {
+        System.setProperty("miraklOperator.miraklEnvUrl", miraklUrl);
+        setDefault("MIRAKL_ENV_URL", miraklUrl);
+        setDefault("ADYEN_ENV", "TEST");
+        setDefault("MIRAKL_TIMEZONE", "UTC");
+        setDefault("MAIL_PORT", "25");
+        for (String name : PLACEHOLDERS) {
+            setDefault(name, "load");
+        }
+    }
+
+    private static void setDefault(final String name, final String value) {
+        if (System.getenv(name) == null && System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.load;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.embedded.LocalServerPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import com.adyen.Client;
+import com.adyen.mirakl.AdyenMiraklConnectorApp;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.service.MailService;
+import com.adyen.mirakl.service.MetricsService;
+import com.adyen.mirakl.startup.AdyenStartupValidator;
+import com.adyen.mirakl.startup.MiraklStartupValidator;
+import com.google.common.base.Splitter;
+
+/**
+ * Replays the notification fixtures against /api/adyen-notifications while Adyen and Mirakl are replaced by local stubs.
+ * Not part of the regular test run, start it with: ./gradlew notificationLoadTest -Pload.rate=50 -Pload.durationSeconds=60
+ *
+ * Settings (system properties):
+ * load.rate, load.durationSeconds, load.senderThreads, load.drainTimeoutSeconds,
+ * load.mix (fixture=weight,... e.g. ACCOUNT_HOLDER_STATUS_CHANGE_ALLOW_PAYOUT=3,COMPANY_VERIFICATION_PASSED=1),
+ * load.adyenLatencyMillis, load.adyenErrorRate, load.miraklLatencyMillis, load.miraklErrorRate
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AdyenMiraklConnectorApp.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class NotificationLoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationLoadTest.class);
+
+    private static final String DEFAULT_MIX = "ACCOUNT_HOLDER_STATUS_CHANGE_ALLOW_PAYOUT=3,"
+        + "ACCOUNT_HOLDER_STATUS_CHANGE_NOT_ALLOW_PAYOUT=2,"
+        + "ACCOUNT_HOLDER_VERIFICATION_AWAITING_DATA=2,"
+        + "COMPANY_VERIFICATION_PASSED=1,"
+        + "INDIVIDUAL_VERIFICATION_PASSED=1,"
+        + "COMPENSATE_NEGATIVE_BALANCE=1";
+
+    private static final String ACCOUNT_HOLDER_RESPONSE = "{\"pspReference\":\"load\",\"accountHolderCode\":\"8278\",\"legalEntity\":\"Individual\","
+        + "\"accountHolderDetails\":{\"email\":\"load@example.com\",\"individualDetails\":{\"name\":{\"firstName\":\"Load\",\"lastName\":\"Test\",\"gender\":\"UNKNOWN\"}},"
+        + "\"bankAccountDetails\":[]},\"accountHolderStatus\":{\"status\":\"Active\"}}";
+
+    private static final String SHOPS_RESPONSE = "{\"total_count\":1,\"shops\":[{\"shop_id\":\"8278\",\"currency_iso_code\":\"EUR\","
+        + "\"contact_informations\":{\"email\":\"load@example.com\",\"firstname\":\"Load\",\"lastname\":\"Test\",\"civility\":\"Mr\"},\"shop_additional_fields\":[]}]}";
+
+    private static StubServer adyenStub;
+    private static StubServer miraklStub;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private Client adyenClient;
+
+    @Autowired
+    private MetricsService metricsService;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @MockBean
+    private AdyenStartupValidator adyenStartupValidator;
+
+    @MockBean
+    private MiraklStartupValidator miraklStartupValidator;
+
+    @MockBean
+    private MailService mailService;
+
+    @BeforeClass
+    public static void startStubs() throws Exception {
+        adyenStub = new StubServer("Adyen MarketPay", Long.getLong("load.adyenLatencyMillis", 100), Double.parseDouble(System.getProperty("load.adyenErrorRate", "0")));
+        adyenStub.stub("/getAccountHolder", ACCOUNT_HOLDER_RESPONSE);
+        adyenStub.start();
+
+        miraklStub = new StubServer("Mirakl", Long.getLong("load.miraklLatencyMillis", 150), Double.parseDouble(System.getProperty("load.miraklErrorRate", "0")));
+        miraklStub.stub("/api/shops", SHOPS_RESPONSE).stub("/api/shops/documents", "{\"total_count\":0,\"shop_documents\":[]}");
+        miraklStub.start();
+
+        LoadTestEnvironment.setDefaults(miraklStub.getUrl());
+    }
+
+    @AfterClass
+    public static void stopStubs() {
+        adyenStub.stop();
+        miraklStub.stop();
+    }
+
+    @Before
+    public void pointAdyenClientToStub() {
+        adyenClient.getConfig().setMarketPayEndpoint(adyenStub.getUrl() + "/cal/services");
+    }
+
+    @Test
+    public void replayNotifications() throws Exception {
+        final int rate = Integer.getInteger("load.rate", 20);
+        final int durationSeconds = Integer.getInteger("load.durationSeconds", 30);
+        final NotificationReplayGenerator generator = new NotificationReplayGenerator("http://127.0.0.1:" + port + "/api/adyen-notifications",
+                                                                                      applicationProperties.getBasicUsername(),
+                                                                                      applicationProperties.getBasicPassword(),
+                                                                                      parseMix(System.getProperty("load.mix", DEFAULT_MIX)));
+
+        final long start = System.nanoTime();
+        final long sent = generator.run(rate, durationSeconds, Integer.getInteger("load.senderThreads", 32));
+        final long sendMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        final long drainMillis = waitForBacklogToDrain(TimeUnit.SECONDS.toMillis(Integer.getInteger("load.drainTimeoutSeconds", 120)));
+
+        final List<Long> ackLatencies = generator.getAckLatenciesMillis();
+        Collections.sort(ackLatencies);
+        final StringBuilder report = new StringBuilder("\nNotification load report\n");
+        report.append(String.format("sent: %d in %d ms (%.1f/s), failed posts: %d%n", sent, sendMillis, sent * 1000.0 / sendMillis, generator.getFailedPosts()));
+        report.append(String.format("ack latency ms: p50=%d p95=%d p99=%d max=%d%n",
+                                    percentile(ackLatencies, 0.50),
+                                    percentile(ackLatencies, 0.95),
+                                    percentile(ackLatencies, 0.99),
+                                    percentile(ackLatencies, 1)));
+        report.append(String.format("backlog drained %d ms after the last post, end to end throughput: %.1f/s%n", drainMillis, sent * 1000.0 / (sendMillis + drainMillis)));
+        report.append(String.format("stub calls: %s=%d (errors %d), %s=%d (errors %d)%n",
+                                    adyenStub.getName(),
+                                    adyenStub.getRequests(),
+                                    adyenStub.getErrors(),
+                                    miraklStub.getName(),
+                                    miraklStub.getRequests(),
+                                    miraklStub.getErrors()));
+        metricsService.metrics()
+                      .stream()
+                      .filter(metric -> metric.getName().startsWith("histogram.notifications.latency.") || metric.getName().startsWith("counter.notifications.failures."))
+                      .sorted((a, b) -> a.getName().compareTo(b.getName()))
+                      .forEach(metric -> report.append(metric.getName()).append('=').append(metric.getValue()).append('\n'));
+        log.info(report.toString());
+    }
+
+    private long waitForBacklogToDrain(final long timeoutMillis) throws InterruptedException {
+        final long start = System.currentTimeMillis();
+        while (getBacklog() > 0 && System.currentTimeMillis() - start < timeoutMillis) {
+            Thread.sleep(200);
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    private long getBacklog() {
+        return metricsService.metrics()
+                             .stream()
+                             .filter(metric -> "gauge.notifications.backlog".equals(metric.getName()))
+                             .map(Metric::getValue)
+                             .mapToLong(Number::longValue)
+                             .findFirst()
+                             .orElse(0);
+    }
+
+    private static Map<String, Integer> parseMix(final String mix) {
+        return Splitter.on(',')
+                       .trimResults()
+                       .omitEmptyStrings()
+                       .withKeyValueSeparator('=')
+                       .split(mix)
+                       .entrySet()
+                       .stream()
+                       .collect(Collectors.toMap(Map.Entry::getKey, entry -> Integer.parseInt(entry.getValue()), (a, b) -> b, LinkedHashMap::new));
+    }
+
+    private static long percentile(final List<Long> sorted, final double quantile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        return sorted.get(Math.max(0, (int) Math.ceil(quantile * sorted.size()) - 1));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.load;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Resources;
+
+/**
+ * Posts the notification fixtures to the connector at a fixed rate, picking the fixtures according to the configured
+ * mix and giving every replay its own pspReference
+ */
+public class NotificationReplayGenerator {
+
+    private static final String FIXTURE_FOLDER = "adyenRequests/";
+
+    private final String notificationUrl;
+    private final String authorization;
+    private final List<String> weightedFixtures = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Long> ackLatenciesMillis = new ConcurrentLinkedQueue<>();
+    private final LongAdder failedPosts = new LongAdder();
+
+    public NotificationReplayGenerator(final String notificationUrl, final String username, final String password, final Map<String, Integer> mix) throws IOException {
+        this.notificationUrl = notificationUrl;
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            final String fixture = Resources.toString(Resources.getResource(FIXTURE_FOLDER + entry.getKey() + ".json"), StandardCharsets.UTF_8);
+            for (int i = 0; i < entry.getValue(); i++) {
+                weightedFixtures.add(fixture);
+            }
+        }
+    }
+
+    /**
+     * Send notifications at the given rate for the given duration, the latency is measured from the moment a request was
+     * scheduled so a slow connector does not hide its own backlog
+     *
+     * @return the number of notifications sent
+     */
+    public long run(final int ratePerSecond, final int durationSeconds, final int senderThreads) throws InterruptedException {
+        final long total = (long) ratePerSecond * durationSeconds;
+        final LongAdder scheduled = new LongAdder();
+        final ExecutorService senders = Executors.newFixedThreadPool(senderThreads);
+        final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        ticker.scheduleAtFixedRate(() -> {
+            if (scheduled.sum() >= total) {
+                return;
+            }
+            scheduled.increment();
+            final long scheduledAt = System.nanoTime();
+            senders.execute(() -> send(nextNotification(), scheduledAt));
+        }, 0, TimeUnit.SECONDS.toNanos(1) / ratePerSecond, TimeUnit.NANOSECONDS);
+
+        while (scheduled.sum() < total) {
+            Thread.sleep(100);
+        }
+        ticker.shutdownNow();
+        senders.shutdown();
+        senders.awaitTermination(1, TimeUnit.MINUTES);
+        return total;
+    }
+
+    public List<Long> getAckLatenciesMillis() {
+        return new ArrayList<>(ackLatenciesMillis);
+    }
+
+    public long getFailedPosts() {
+        return failedPosts.sum();
+    }
+
+    private String nextNotification() {
+        final String fixture = weightedFixtures.get(ThreadLocalRandom.current().nextInt(weightedFixtures.size()));
+        return fixture.replaceFirst("\"pspReference\"\\s*:\\s*\"[^\"]*\"", "\"pspReference\": \"" + UUID.randomUUID() + "\"");
+    }
+
+    private void send(final String notification, final long scheduledAt) {
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(notificationUrl).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Authorization", authorization);
+            connection.setRequestProperty("Content-Type", "application/json;charset=UTF-8");
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(notification.getBytes(StandardCharsets.UTF_8));
+            }
+            final int status = connection.getResponseCode();
+            if (status >= 400) {
+                failedPosts.increment();
+            } else {
+                ByteStreams.exhaust(connection.getInputStream());
+            }
+            ackLatenciesMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scheduledAt));
+        } catch (IOException e) {
+            failedPosts.increment();
+        }
+    }
+}
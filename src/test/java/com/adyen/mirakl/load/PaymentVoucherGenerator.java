@@ -0,0 +1,96 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.load;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import com.google.common.base.Splitter;
+import com.google.common.io.Resources;
+
+/**
+ * Writes synthetic payment voucher files shaped like the Mirakl ones: the columns and a template row come from the
+ * subscription fixture, every row gets its own shop, invoice, currency and amounts, and every other row a subscription
+ */
+public class PaymentVoucherGenerator {
+
+    private static final String FIXTURE = "paymentvouchers/PaymentVoucher_Subscription.csv";
+    private static final String[] CURRENCIES = {"EUR", "EUR", "GBP", "USD"};
+
+    private final String header;
+    private final List<String> columns;
+    private final String[] template;
+
+    public PaymentVoucherGenerator() throws IOException {
+        final List<String> lines = Resources.readLines(Resources.getResource(FIXTURE), StandardCharsets.UTF_8);
+        header = lines.get(0);
+        columns = Splitter.on(';').splitToList(header);
+        template = Splitter.on(';').splitToList(lines.get(1)).toArray(new String[0]);
+    }
+
+    /**
+     * @param rows   the number of voucher entries
+     * @param shops  the number of shops the entries are spread over, shop ids are load-shop-0 and up
+     * @param iban   the IBAN of every entry, it has to be one of the bank accounts of the stubbed account holder
+     */
+    public File generate(final int rows, final int shops, final String iban, final long seed) throws IOException {
+        final Random random = new Random(seed);
+        final File file = File.createTempFile("payment-voucher-" + rows + "-", ".csv");
+        file.deleteOnExit();
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(header);
+            writer.newLine();
+            for (int i = 0; i < rows; i++) {
+                final String[] row = Arrays.copyOf(template, template.length);
+                final String shopId = "load-shop-" + random.nextInt(shops);
+                set(row, "shop-id", shopId);
+                set(row, "shop-name", shopId);
+                set(row, "invoice-number", String.valueOf(1000000 + i));
+                set(row, "currency-iso-code", CURRENCIES[random.nextInt(CURRENCIES.length)]);
+                set(row, "payment-info-ibantype-iban", iban);
+                set(row, "transfer-amount", amount(random, 10000));
+                set(row, "subscription-amount", i % 2 == 0 ? amount(random, 50) : "0");
+                set(row, "total-charged-amount", amount(random, 100));
+                set(row, "total-charged-amount-vat", amount(random, 20));
+                writer.write(String.join(";", row));
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+
+    private void set(final String[] row, final String column, final String value) {
+        row[columns.indexOf(column)] = value;
+    }
+
+    private static String amount(final Random random, final int max) {
+        return BigDecimal.valueOf(1 + random.nextInt(max * 100)).divide(BigDecimal.valueOf(100), 2, RoundingMode.UNNECESSARY).toPlainString();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.load;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.embedded.LocalServerPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+import com.adyen.Client;
+import com.adyen.mirakl.AdyenMiraklConnectorApp;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.service.MailService;
+import com.adyen.mirakl.startup.AdyenStartupValidator;
+import com.adyen.mirakl.startup.MiraklStartupValidator;
+import com.google.common.base.Splitter;
+
+/**
+ * Uploads synthetic payment voucher files of growing size to /api/mirakl-notifications/payout while Adyen is replaced by
+ * a local stub, and follows every payout job until it is done. Reports per file the rows stored per second, the payouts
+ * per second, the end to end duration and the heap high-water mark. Not part of the regular test run, start it with:
+ * ./gradlew payoutLoadTest -Pload.payoutRows=1000,10000,100000 -Pload.adyenLatencyMillis=20
+ *
+ * Settings (system properties):
+ * load.payoutRows, load.payoutShops, load.adyenLatencyMillis, load.adyenErrorRate, load.payoutTimeoutSeconds;
+ * the payout settings of the connector itself can be overridden too, e.g. -Dapplication.payoutThreads=8
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AdyenMiraklConnectorApp.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class PayoutLoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PayoutLoadTest.class);
+
+    private static final String IBAN = "GB26TEST40051512347366";
+
+    private static final String ACCOUNT_HOLDER_RESPONSE = "{\"pspReference\":\"load\",\"accountHolderCode\":\"load-shop\",\"legalEntity\":\"Individual\","
+        + "\"accountHolderDetails\":{\"email\":\"load@example.com\",\"bankAccountDetails\":[{\"bankAccountUUID\":\"load-bank-account\",\"iban\":\"" + IBAN + "\"}]},"
+        + "\"accounts\":[{\"accountCode\":\"load-account\"}],\"accountHolderStatus\":{\"status\":\"Active\"}}";
+
+    private static StubServer adyenStub;
+    private static StubServer miraklStub;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private Client adyenClient;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @MockBean
+    private AdyenStartupValidator adyenStartupValidator;
+
+    @MockBean
+    private MiraklStartupValidator miraklStartupValidator;
+
+    @MockBean
+    private MailService mailService;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    @BeforeClass
+    public static void startStubs() throws Exception {
+        adyenStub = new StubServer("Adyen MarketPay", Long.getLong("load.adyenLatencyMillis", 20), Double.parseDouble(System.getProperty("load.adyenErrorRate", "0")));
+        adyenStub.stub("/getAccountHolder", ACCOUNT_HOLDER_RESPONSE)
+                 .stub("/transferFunds", "{\"pspReference\":\"load\",\"resultCode\":\"Received\"}")
+                 .stub("/payoutAccountHolder", "{\"pspReference\":\"load\",\"merchantReference\":\"load\"}");
+        adyenStub.start();
+
+        miraklStub = new StubServer("Mirakl", 0, 0);
+        miraklStub.start();
+
+        LoadTestEnvironment.setDefaults(miraklStub.getUrl());
+    }
+
+    @AfterClass
+    public static void stopStubs() {
+        adyenStub.stop();
+        miraklStub.stop();
+    }
+
+    @Before
+    public void pointAdyenClientToStub() {
+        adyenClient.getConfig().setMarketPayEndpoint(adyenStub.getUrl() + "/cal/services");
+    }
+
+    @Test
+    public void payOutVoucherFiles() throws Exception {
+        final List<Integer> sizes = Splitter.on(',')
+                                            .trimResults()
+                                            .omitEmptyStrings()
+                                            .splitToList(System.getProperty("load.payoutRows", "1000,10000,100000"))
+                                            .stream()
+                                            .map(Integer::valueOf)
+                                            .collect(Collectors.toList());
+        final int shops = Integer.getInteger("load.payoutShops", 100);
+        final PaymentVoucherGenerator generator = new PaymentVoucherGenerator();
+
+        final StringBuilder report = new StringBuilder("\nPayout load report (Adyen latency ").append(Long.getLong("load.adyenLatencyMillis", 20))
+                                                                                            .append(" ms, ")
+                                                                                            .append(shops)
+                                                                                            .append(" shops)\n");
+        for (int rows : sizes) {
+            final File file = generator.generate(rows, shops, IBAN, rows);
+            report.append(payOut(file, rows)).append('\n');
+            if (! file.delete()) {
+                log.warn("Could not delete {}", file);
+            }
+        }
+        log.info(report.toString());
+    }
+
+    private String payOut(final File file, final int rows) throws InterruptedException {
+        final long adyenCallsBefore = adyenStub.getRequests();
+        System.gc();
+        final long heapBefore = usedHeap();
+        heapPools().forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        final long start = System.nanoTime();
+        final Map<?, ?> accepted = upload(file);
+        final long acceptedMillis = millisSince(start);
+        final String statusUrl = "http://127.0.0.1:" + port + "/api/mirakl-notifications/payout/" + accepted.get("id");
+
+        final long timeoutMillis = TimeUnit.SECONDS.toMillis(Integer.getInteger("load.payoutTimeoutSeconds", 1800));
+        long storedMillis = -1;
+        Map<?, ?> progress = accepted;
+        while (! "DONE".equals(progress.get("status")) && ! "FAILED".equals(progress.get("status")) && millisSince(start) < timeoutMillis) {
+            Thread.sleep(200);
+            progress = get(statusUrl);
+            if (storedMillis < 0 && ! "RECEIVED".equals(progress.get("status")) && ! "PARSING".equals(progress.get("status"))) {
+                storedMillis = millisSince(start);
+            }
+        }
+        final long totalMillis = millisSince(start);
+
+        return String.format("%,d rows: status %s, accepted in %d ms, stored in %d ms (%.0f rows/s), submitted %s failed %s remaining %s (%s payouts/s), "
+                                 + "end to end %d ms (%.0f rows/s), heap high-water %d MB (%d MB before), Adyen calls %d",
+                             rows,
+                             progress.get("status"),
+                             acceptedMillis,
+                             storedMillis,
+                             rows * 1000.0 / Math.max(storedMillis, 1),
+                             progress.get("payoutsSubmitted"),
+                             progress.get("payoutsFailed"),
+                             progress.get("remaining"),
+                             progress.get("payoutsPerSecond"),
+                             totalMillis,
+                             rows * 1000.0 / Math.max(totalMillis, 1),
+                             heapHighWaterMark() >> 20,
+                             heapBefore >> 20,
+                             adyenStub.getRequests() - adyenCallsBefore);
+    }
+
+    private Map<?, ?> upload(final File file) {
+        final HttpHeaders headers = authorizationHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        final MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("file", new FileSystemResource(file));
+        return restTemplate.postForObject("http://127.0.0.1:" + port + "/api/mirakl-notifications/payout", new HttpEntity<>(body, headers), Map.class);
+    }
+
+    private Map<?, ?> get(final String url) {
+        final ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(authorizationHeaders()), Map.class);
+        return response.getBody();
+    }
+
+    private HttpHeaders authorizationHeaders() {
+        final HttpHeaders headers = new HttpHeaders();
+        final String credentials = applicationProperties.getBasicUsername() + ":" + applicationProperties.getBasicPassword();
+        headers.set(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+        return headers;
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream().filter(pool -> pool.getType() == MemoryType.HEAP).collect(Collectors.toList());
+    }
+
+    private static long usedHeap() {
+        return heapPools().stream().mapToLong(pool -> pool.getUsage().getUsed()).sum();
+    }
+
+    /**
+     * The sum of the peaks of the heap pools, an upper bound as the pools need not peak at the same time
+     */
+    private static long heapHighWaterMark() {
+        return heapPools().stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+    }
+
+    private static long millisSince(final long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
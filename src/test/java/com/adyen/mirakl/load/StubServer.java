@@ -0,0 +1,126 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.load;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP server standing in for the Adyen MarketPay or the Mirakl API, answering with canned JSON after a
+ * configurable latency and failing a configurable share of the calls
+ */
+public class StubServer {
+
+    private final String name;
+    private final long latencyMillis;
+    private final double errorRate;
+    private final Map<String, String> responsesByPathSuffix = new LinkedHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private HttpServer httpServer;
+    private ExecutorService executorService;
+
+    public StubServer(final String name, final long latencyMillis, final double errorRate) {
+        this.name = name;
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Answer requests of which the path ends with the given suffix with the given body, the first matching suffix wins
+     */
+    public StubServer stub(final String pathSuffix, final String responseBody) {
+        responsesByPathSuffix.put(pathSuffix, responseBody);
+        return this;
+    }
+
+    public void start() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executorService = Executors.newCachedThreadPool();
+        httpServer.setExecutor(executorService);
+        httpServer.createContext("/", this::handle);
+        httpServer.start();
+    }
+
+    public void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            executorService.shutdownNow();
+        }
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + httpServer.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        requests.increment();
+        ByteStreams.exhaust(exchange.getRequestBody());
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final boolean fail = ThreadLocalRandom.current().nextDouble() < errorRate;
+        final String path = exchange.getRequestURI().getPath();
+        final String body = fail ? "{\"status\":500,\"message\":\"stub error\"}" : responsesByPathSuffix.entrySet()
+                                                                                                         .stream()
+                                                                                                         .filter(entry -> path.endsWith(entry.getKey()))
+                                                                                                         .map(Map.Entry::getValue)
+                                                                                                         .findFirst()
+                                                                                                         .orElse("{}");
+        if (fail) {
+            errors.increment();
+        }
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(fail ? 500 : 200, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.AdyenPayoutError;
+import com.adyen.mirakl.domain.CommissionTotal;
+import com.adyen.mirakl.domain.MiraklVoucherEntry;
+import com.adyen.mirakl.domain.enumeration.VoucherEntryStatus;
+import com.adyen.mirakl.repository.AdyenPayoutErrorRepository;
+import com.adyen.mirakl.repository.CommissionTotalRepository;
+import com.adyen.mirakl.repository.MiraklVoucherEntryRepository;
+import com.google.common.collect.ImmutableList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CommissionServiceTest {
+
+    @InjectMocks
+    private CommissionService commissionService;
+
+    @Mock
+    private MiraklVoucherEntryRepository miraklVoucherEntryRepositoryMock;
+    @Mock
+    private CommissionTotalRepository commissionTotalRepositoryMock;
+    @Mock
+    private AdyenPayoutErrorRepository adyenPayoutErrorRepositoryMock;
+    @Mock
+    private ApplicationProperties applicationPropertiesMock;
+
+    @Captor
+    private ArgumentCaptor<CommissionTotal> commissionTotalCaptor;
+    @Captor
+    private ArgumentCaptor<Pageable> pageableCaptor;
+
+    @Before
+    public void setUp() {
+        when(applicationPropertiesMock.getCommissionPageSize()).thenReturn(500);
+        when(commissionTotalRepositoryMock.findOneByCurrencyIsoCode(anyString())).thenReturn(Optional.empty());
+    }
+
+    @Test
+    public void shouldSumCommissionExactlyPerCurrency() {
+        when(miraklVoucherEntryRepositoryMock.findCommissionsToCount(any(), pageableCaptor.capture())).thenReturn(ImmutableList.of(voucherEntry(1L, "EUR", "0.1", "0.2"),
+                                                                                                                                   voucherEntry(2L, "GBP", "10.00", "2.00"),
+                                                                                                                                   voucherEntry(3L, "EUR", "0.1", "0.2")));
+
+        assertThat(commissionService.countCommissionPage()).isEqualTo(3);
+
+        assertThat(pageableCaptor.getValue().getPageSize()).isEqualTo(500);
+        verify(commissionTotalRepositoryMock, times(2)).save(commissionTotalCaptor.capture());
+        assertThat(commissionTotalCaptor.getAllValues()).extracting(CommissionTotal::getCurrencyIsoCode).containsOnly("EUR", "GBP");
+        for (CommissionTotal total : commissionTotalCaptor.getAllValues()) {
+            assertThat(total.getAmount()).isEqualByComparingTo(new BigDecimal("EUR".equals(total.getCurrencyIsoCode()) ? "0.6" : "12.00"));
+        }
+        verify(miraklVoucherEntryRepositoryMock).markCommissionCounted(ImmutableList.of(1L, 2L, 3L));
+    }
+
+    @Test
+    public void shouldAddToTotalPersistedByAnEarlierPage() {
+        when(commissionTotalRepositoryMock.findOneByCurrencyIsoCode("EUR")).thenReturn(Optional.of(new CommissionTotal().currencyIsoCode("EUR").amount(new BigDecimal("99.99"))));
+        when(miraklVoucherEntryRepositoryMock.findCommissionsToCount(any(), any())).thenReturn(ImmutableList.of(voucherEntry(4L, "EUR", "0.01", "0")));
+
+        commissionService.countCommissionPage();
+
+        verify(commissionTotalRepositoryMock).save(commissionTotalCaptor.capture());
+        assertThat(commissionTotalCaptor.getValue().getAmount()).isEqualByComparingTo(new BigDecimal("100.00"));
+    }
+
+    @Test
+    public void shouldMarkEntriesWithInvalidAmountsCountedWithoutAddingThem() {
+        when(miraklVoucherEntryRepositoryMock.findCommissionsToCount(any(), any())).thenReturn(ImmutableList.of(voucherEntry(5L, "EUR", "abc", "1.00"),
+                                                                                                                  voucherEntry(6L, "EUR", null, "1.00")));
+
+        assertThat(commissionService.countCommissionPage()).isEqualTo(2);
+
+        verify(commissionTotalRepositoryMock, never()).save(any(CommissionTotal.class));
+        verify(miraklVoucherEntryRepositoryMock).markCommissionCounted(ImmutableList.of(5L, 6L));
+    }
+
+    @Test
+    public void shouldStopWhenNoEntryIsLeftToCount() {
+        when(miraklVoucherEntryRepositoryMock.findCommissionsToCount(any(), any())).thenReturn(ImmutableList.of());
+
+        assertThat(commissionService.countCommissionPage()).isEqualTo(0);
+
+        verify(miraklVoucherEntryRepositoryMock, never()).markCommissionCounted(any());
+    }
+
+    @Test
+    public void shouldKeepTheTotalsItHandsOut() {
+        final List<CommissionTotal> totals = ImmutableList.of(new CommissionTotal().currencyIsoCode("EUR").amount(BigDecimal.ONE));
+        when(commissionTotalRepositoryMock.findAll()).thenReturn(totals);
+
+        assertThat(commissionService.getTotals()).isEqualTo(totals);
+
+        verify(commissionTotalRepositoryMock, never()).delete(any(CommissionTotal.class));
+    }
+
+    @Test
+    public void shouldRemoveTotalOnceItsPayoutIsSettled() {
+        final CommissionTotal total = new CommissionTotal().currencyIsoCode("EUR").amount(new BigDecimal("10.00"));
+        when(commissionTotalRepositoryMock.findOneByCurrencyIsoCode("EUR")).thenReturn(Optional.of(total));
+
+        commissionService.settle("EUR", new BigDecimal("10.00"), null);
+
+        verify(commissionTotalRepositoryMock).delete(total);
+        verify(adyenPayoutErrorRepositoryMock, never()).save(any(AdyenPayoutError.class));
+    }
+
+    @Test
+    public void shouldStoreFailedPayoutAndDeductItsAmountOnly() {
+        final CommissionTotal total = new CommissionTotal().currencyIsoCode("EUR").amount(new BigDecimal("12.50"));
+        when(commissionTotalRepositoryMock.findOneByCurrencyIsoCode("EUR")).thenReturn(Optional.of(total));
+        final AdyenPayoutError failedPayout = new AdyenPayoutError();
+
+        commissionService.settle("EUR", new BigDecimal("10.00"), failedPayout);
+
+        verify(adyenPayoutErrorRepositoryMock).save(failedPayout);
+        verify(commissionTotalRepositoryMock).save(commissionTotalCaptor.capture());
+        assertThat(commissionTotalCaptor.getValue().getAmount()).isEqualByComparingTo(new BigDecimal("2.50"));
+    }
+
+    private static MiraklVoucherEntry voucherEntry(Long id, String currency, String totalChargedAmount, String totalChargedAmountVat) {
+        MiraklVoucherEntry miraklVoucherEntry = new MiraklVoucherEntry();
+        miraklVoucherEntry.setId(id);
+        miraklVoucherEntry.setStatus(VoucherEntryStatus.PAYOUT_SUBMITTED);
+        miraklVoucherEntry.setCurrencyIsoCode(currency);
+        miraklVoucherEntry.setTotalChargedAmount(totalChargedAmount);
+        miraklVoucherEntry.setTotalChargedAmountVat(totalChargedAmountVat);
+        return miraklVoucherEntry;
+    }
+}
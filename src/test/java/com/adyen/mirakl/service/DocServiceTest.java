@@ -23,12 +23,18 @@
 package com.adyen.mirakl.service;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.net.URL;
+import java.time.Duration;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.assertj.core.api.Assertions;
 import org.junit.Before;
 import org.junit.Test;
@@ -38,6 +44,7 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
 import com.adyen.mirakl.config.ApplicationProperties;
 import com.adyen.mirakl.config.Constants;
 import com.adyen.mirakl.domain.DocError;
@@ -46,6 +53,7 @@ import com.adyen.mirakl.domain.ShareholderMapping;
 import com.adyen.mirakl.repository.DocErrorRepository;
 import com.adyen.mirakl.repository.DocRetryRepository;
 import com.adyen.mirakl.repository.ShareholderMappingRepository;
+import com.adyen.mirakl.service.dto.DocumentDTO;
 import com.adyen.mirakl.service.dto.UboDocumentDTO;
 import com.adyen.model.marketpay.AccountHolderDetails;
 import com.adyen.model.marketpay.BankAccountDetail;
@@ -55,17 +63,21 @@ import com.adyen.model.marketpay.UploadDocumentRequest;
 import com.adyen.model.marketpay.UploadDocumentResponse;
 import com.adyen.service.Account;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
 import com.google.common.io.Resources;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.mirakl.client.mmp.domain.common.FileWrapper;
 import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
 import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
 import com.mirakl.client.mmp.request.shop.document.MiraklDeleteShopDocumentRequest;
 import com.mirakl.client.mmp.request.shop.document.MiraklGetShopDocumentsRequest;
-import static com.google.common.io.Files.toByteArray;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.isA;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -107,7 +119,15 @@ public class DocServiceTest {
     @Mock
     private DocRetry docRetryMock1;
     @Mock
+    private DocRetry docRetryMock2;
+    @Mock
     private ApplicationProperties applicationProperties;
+    @Mock
+    private StreamingDocumentUploader streamingDocumentUploaderMock;
+    @Mock
+    private DocUploadLedgerService docUploadLedgerServiceMock;
+    @Mock
+    private DocumentImageOptimizer documentImageOptimizerMock;
 
     @Captor
     private ArgumentCaptor<UploadDocumentRequest> uploadDocumentRequestCaptor;
@@ -119,10 +139,19 @@ public class DocServiceTest {
     private ArgumentCaptor<DocRetry> docRetryCaptor;
     @Captor
     private ArgumentCaptor<DocError> docErrorCaptor;
+    @Captor
+    private ArgumentCaptor<File> fileCaptor;
 
     @Before
     public void setUp() {
         setField(docService, "environment", "TEST");
+        setField(docService, "docDownloadExecutor", MoreExecutors.directExecutor());
+        setField(docService, "docUploadExecutor", MoreExecutors.directExecutor());
+        setField(docService, "documentTypeCodeClassifier", new DocumentTypeCodeClassifier(4));
+        when(applicationProperties.getDocTransfersPerShop()).thenReturn(1);
+        when(applicationProperties.getDocRetryBaseDelaySeconds()).thenReturn(60);
+        when(applicationProperties.getDocRetryMaxDelaySeconds()).thenReturn(3600);
+        when(documentImageOptimizerMock.optimize(any())).thenAnswer(invocation -> invocation.getArguments()[0]);
     }
 
     @Test
@@ -153,7 +182,7 @@ public class DocServiceTest {
         when(fileWrapper.getFile()).thenReturn(file);
         when(fileWrapper.getFilename()).thenReturn(file.getName());
         when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getAccountHolderResponse);
-        when(adyenAccountServiceMock.uploadDocument(uploadDocumentRequestCaptor.capture())).thenReturn(responseMock);
+        when(streamingDocumentUploaderMock.uploadDocument(uploadDocumentRequestCaptor.capture(), eq(file))).thenReturn(responseMock);
         when(docRetryRepositoryMock.findOneByDocId("docId")).thenReturn(Optional.of(docRetryMock1));
 
         docService.processUpdatedDocuments();
@@ -162,7 +191,7 @@ public class DocServiceTest {
         assertEquals("1234", uploadDocumentRequest.getAccountHolderCode());
         assertEquals("uuid", uploadDocumentRequest.getBankAccountUUID());
         assertEquals(file.getName(), uploadDocumentRequest.getDocumentDetail().getFilename());
-        assertEquals(Base64.getEncoder().encodeToString(toByteArray(file)), uploadDocumentRequest.getDocumentContent());
+        assertEquals(null, uploadDocumentRequest.getDocumentContent());
         assertEquals(DocumentDetail.DocumentTypeEnum.BANK_STATEMENT, uploadDocumentRequest.getDocumentDetail().getDocumentType());
         verify(deltaServiceMock).getDocumentDelta();
     }
@@ -186,14 +215,14 @@ public class DocServiceTest {
         when(miraklMarketplacePlatformOperatorApiClientMock.downloadShopsDocuments(any())).thenReturn(fileWrapperMock);
         when(fileWrapperMock.getFile()).thenReturn(file);
         when(fileWrapperMock.getFilename()).thenReturn("fileName");
-        when(adyenAccountServiceMock.uploadDocument(any())).thenReturn(responseMock);
+        when(streamingDocumentUploaderMock.uploadDocument(any(), any())).thenReturn(responseMock);
 
         when(miraklShopDocumentMock.getId()).thenReturn("docId");
         when(docRetryRepositoryMock.findOneByDocId("docId")).thenReturn(Optional.of(docRetryMock1));
 
         docService.processUpdatedDocuments();
 
-        verify(adyenAccountServiceMock).uploadDocument(uploadDocumentRequestCaptor.capture());
+        verify(streamingDocumentUploaderMock).uploadDocument(uploadDocumentRequestCaptor.capture(), eq(file));
         UploadDocumentRequest uploadDocumentRequest = uploadDocumentRequestCaptor.getValue();
         Assertions.assertThat(uploadDocumentRequest.getDocumentDetail().getShareholderCode()).isEqualTo("shareholderCode");
         Assertions.assertThat(uploadDocumentRequest.getDocumentDetail().getAccountHolderCode()).isEqualTo("shopId");
@@ -203,33 +232,42 @@ public class DocServiceTest {
     }
 
     @Test
-    public void shouldRemoveShareHolderMedia() {
+    public void shouldRemoveShareHolderAndBankProofMediaWithSingleDocumentRetrieval() {
         when(shareholderMappingRepositoryMock.findOneByAdyenShareholderCode("shareHolderCode")).thenReturn(Optional.of(shareholderMappingMock));
-        when(shareholderMappingMock.getMiraklShopId()).thenReturn("miraklShopID");
         when(shareholderMappingMock.getMiraklUboNumber()).thenReturn(2);
 
         when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(miraklGetShopDocumentsRequestCaptor.capture())).thenReturn(ImmutableList.of(miraklShopDocumentMock1,
                                                                                                                                                          miraklShopDocumentMock2,
                                                                                                                                                          miraklShopDocumentMock3));
-        //ignored as we're looking to delete only ubo 2 documents
         when(miraklShopDocumentMock1.getTypeCode()).thenReturn("adyen-ubo1-photoid");
-
-        //will delete both these documents
         when(miraklShopDocumentMock2.getTypeCode()).thenReturn("adyen-ubo2-photoid");
         when(miraklShopDocumentMock2.getId()).thenReturn("ubo2DocId1");
-        when(miraklShopDocumentMock3.getTypeCode()).thenReturn("adyen-ubo2-photoid-rear");
-        when(miraklShopDocumentMock3.getId()).thenReturn("ubo2DocId2");
+        when(miraklShopDocumentMock3.getTypeCode()).thenReturn(Constants.BANKPROOF);
+        when(miraklShopDocumentMock3.getId()).thenReturn("bankProofDocId");
 
-        docService.removeMiraklMediaForShareHolder("shareHolderCode");
+        docService.removeMiraklMedia("miraklShopID", ImmutableSet.of("shareHolderCode"), false, true);
 
+        verify(miraklMarketplacePlatformOperatorApiClientMock).getShopDocuments(any());
         verify(miraklMarketplacePlatformOperatorApiClientMock, times(2)).deleteShopDocument(miraklDeleteShopDocumentRequestCaptor.capture());
+        Assertions.assertThat(miraklGetShopDocumentsRequestCaptor.getValue().getShopIds()).containsOnly("miraklShopID");
+        Assertions.assertThat(miraklDeleteShopDocumentRequestCaptor.getAllValues()).extracting(MiraklDeleteShopDocumentRequest::getDocumentId).containsExactly("ubo2DocId1", "bankProofDocId");
+    }
 
-        final MiraklGetShopDocumentsRequest getShopsRequest = miraklGetShopDocumentsRequestCaptor.getValue();
-        Assertions.assertThat(getShopsRequest.getShopIds()).containsOnly("miraklShopID");
+    @Test
+    public void shouldSkipUnmappedShareHolderAndRemoveMediaOfTheOthers() {
+        when(shareholderMappingRepositoryMock.findOneByAdyenShareholderCode("unknownShareHolderCode")).thenReturn(Optional.empty());
+        when(shareholderMappingRepositoryMock.findOneByAdyenShareholderCode("shareHolderCode")).thenReturn(Optional.of(shareholderMappingMock));
+        when(shareholderMappingMock.getMiraklUboNumber()).thenReturn(2);
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(miraklShopDocumentMock1, miraklShopDocumentMock2));
+        when(miraklShopDocumentMock1.getTypeCode()).thenReturn("adyen-ubo1-photoid");
+        when(miraklShopDocumentMock2.getTypeCode()).thenReturn("adyen-ubo2-photoid");
+        when(miraklShopDocumentMock2.getId()).thenReturn("ubo2DocId1");
+
+        final Set<String> unmapped = docService.removeMiraklMedia("miraklShopID", ImmutableSet.of("unknownShareHolderCode", "shareHolderCode"), false, false);
 
-        final List<MiraklDeleteShopDocumentRequest> deleteRequests = miraklDeleteShopDocumentRequestCaptor.getAllValues();
-        Assertions.assertThat(deleteRequests.get(0).getDocumentId()).isEqualTo("ubo2DocId1");
-        Assertions.assertThat(deleteRequests.get(1).getDocumentId()).isEqualTo("ubo2DocId2");
+        Assertions.assertThat(unmapped).containsOnly("unknownShareHolderCode");
+        verify(miraklMarketplacePlatformOperatorApiClientMock).deleteShopDocument(miraklDeleteShopDocumentRequestCaptor.capture());
+        Assertions.assertThat(miraklDeleteShopDocumentRequestCaptor.getValue().getDocumentId()).isEqualTo("ubo2DocId1");
     }
 
     @Test
@@ -278,8 +316,9 @@ public class DocServiceTest {
     public void shouldFilterShopDocsById() {
 
         when(applicationProperties.getMaxDocRetries()).thenReturn(10);
+        when(applicationProperties.getDocRetryPageSize()).thenReturn(100);
 
-        when(docRetryRepositoryMock.findByTimesFailedLessThanEqual(isA(Integer.class))).thenReturn(ImmutableList.of(docRetryMock1));
+        when(docRetryRepositoryMock.findDueBefore(any(ZonedDateTime.class), isA(Integer.class), any(Pageable.class))).thenReturn(ImmutableList.of(docRetryMock1));
         when(docRetryMock1.getDocId()).thenReturn("docId1");
         when(docRetryMock1.getShopId()).thenReturn("shopId1");
 
@@ -301,4 +340,260 @@ public class DocServiceTest {
         verify(uboDocumentServiceMock).extractDocuments(ImmutableList.of(miraklShopDocumentMock1));
         verify(individualDocumentServiceMock).extractDocuments(ImmutableList.of(miraklShopDocumentMock1));
     }
+
+    @Test
+    public void shouldRemoveRetryOfDocumentNoLongerInMirakl() {
+        when(applicationProperties.getMaxDocRetries()).thenReturn(10);
+        when(applicationProperties.getDocRetryPageSize()).thenReturn(100);
+        final DocRetry docRetry1 = new DocRetry().docId("docId1").shopId("shopId1").timesFailed(1);
+        docRetry1.setId(1L);
+        final DocRetry docRetry2 = new DocRetry().docId("docId2").shopId("shopId1").timesFailed(1);
+        docRetry2.setId(2L);
+        when(docRetryRepositoryMock.findDueBefore(any(ZonedDateTime.class), eq(10), any(Pageable.class))).thenReturn(ImmutableList.of(docRetry1, docRetry2));
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(miraklShopDocumentMock1));
+        when(miraklShopDocumentMock1.getId()).thenReturn("docId1");
+        when(miraklShopDocumentMock1.getShopId()).thenReturn("shopId1");
+
+        docService.retryFailedDocuments();
+
+        verify(docRetryRepositoryMock).delete(2L);
+        verify(docRetryRepositoryMock, never()).delete(1L);
+        verify(uboDocumentServiceMock).extractDocuments(ImmutableList.of(miraklShopDocumentMock1));
+    }
+
+    @Test
+    public void shouldRetryDocumentsOfSyncedShopsInOnePass() {
+        final DocRetry docRetry1 = new DocRetry().docId("docId1").shopId("shopId1").timesFailed(1);
+        final DocRetry docRetry2 = new DocRetry().docId("docId2").shopId("shopId2").timesFailed(1);
+        when(docRetryRepositoryMock.findByShopIdIn(ImmutableList.of("shopId1", "shopId2", "shopId3"))).thenReturn(ImmutableList.of(docRetry1, docRetry2));
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(miraklGetShopDocumentsRequestCaptor.capture())).thenReturn(ImmutableList.of(miraklShopDocumentMock1,
+                                                                                                                                                         miraklShopDocumentMock2,
+                                                                                                                                                         miraklShopDocumentMock3));
+        when(miraklShopDocumentMock1.getId()).thenReturn("docId1");
+        when(miraklShopDocumentMock2.getId()).thenReturn("docId2");
+        when(miraklShopDocumentMock3.getId()).thenReturn("docId3");
+
+        docService.retryDocumentsForShops(ImmutableList.of("shopId1", "shopId2", "shopId3", "shopId1"));
+
+        Assertions.assertThat(miraklGetShopDocumentsRequestCaptor.getAllValues()).hasSize(1);
+        Assertions.assertThat(miraklGetShopDocumentsRequestCaptor.getValue().getShopIds()).containsOnly("shopId1", "shopId2");
+        verify(uboDocumentServiceMock).extractDocuments(ImmutableList.of(miraklShopDocumentMock1, miraklShopDocumentMock2));
+        verify(individualDocumentServiceMock).extractDocuments(ImmutableList.of(miraklShopDocumentMock1, miraklShopDocumentMock2));
+    }
+
+    @Test
+    public void shouldRescheduleDueRetriesPageByPage() {
+        when(applicationProperties.getMaxDocRetries()).thenReturn(10);
+        when(applicationProperties.getDocRetryPageSize()).thenReturn(1);
+        final DocRetry docRetry1 = new DocRetry().docId("docId1").shopId("shopId1").timesFailed(1);
+        final DocRetry docRetry2 = new DocRetry().docId("docId2").shopId("shopId2").timesFailed(3);
+        when(docRetryRepositoryMock.findDueBefore(any(ZonedDateTime.class), eq(10), any(Pageable.class))).thenReturn(ImmutableList.of(docRetry1))
+                                                                                                          .thenReturn(ImmutableList.of(docRetry2))
+                                                                                                          .thenReturn(ImmutableList.of());
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(miraklGetShopDocumentsRequestCaptor.capture())).thenReturn(ImmutableList.of());
+
+        final ZonedDateTime beforeRetry = ZonedDateTime.now();
+        docService.retryFailedDocuments();
+
+        verify(docRetryRepositoryMock, times(3)).findDueBefore(any(ZonedDateTime.class), eq(10), any(Pageable.class));
+        final List<MiraklGetShopDocumentsRequest> requestsToMirakl = miraklGetShopDocumentsRequestCaptor.getAllValues();
+        Assertions.assertThat(requestsToMirakl).hasSize(2);
+        Assertions.assertThat(requestsToMirakl.get(0).getShopIds()).containsOnly("shopId1");
+        Assertions.assertThat(requestsToMirakl.get(1).getShopIds()).containsOnly("shopId2");
+        Assertions.assertThat(Duration.between(beforeRetry, docRetry1.getNextRetryAt()).getSeconds()).isBetween(59L, 61L);
+        Assertions.assertThat(Duration.between(beforeRetry, docRetry2.getNextRetryAt()).getSeconds()).isBetween(239L, 241L);
+    }
+
+    @Test
+    public void shouldUploadEveryDocumentAndOnlyRetryTheFailedOnes() throws Exception {
+        URL url = Resources.getResource("fileuploads/BankStatement.png");
+        File file = new File(url.getPath());
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(miraklShopDocumentMock1, miraklShopDocumentMock2));
+        when(miraklShopDocumentMock1.getTypeCode()).thenReturn("typeCode");
+        when(miraklShopDocumentMock1.getId()).thenReturn("docId1");
+        when(miraklShopDocumentMock1.getShopId()).thenReturn("shopId");
+        when(miraklShopDocumentMock2.getTypeCode()).thenReturn("typeCode");
+        when(miraklShopDocumentMock2.getId()).thenReturn("docId2");
+        when(miraklShopDocumentMock2.getShopId()).thenReturn("shopId");
+
+        final UboDocumentDTO uboDocument1 = new UboDocumentDTO();
+        uboDocument1.setMiraklShopDocument(miraklShopDocumentMock1);
+        uboDocument1.setDocumentTypeEnum(DocumentDetail.DocumentTypeEnum.ID_CARD);
+        uboDocument1.setShareholderCode("shareholderCode1");
+        final UboDocumentDTO uboDocument2 = new UboDocumentDTO();
+        uboDocument2.setMiraklShopDocument(miraklShopDocumentMock2);
+        uboDocument2.setDocumentTypeEnum(DocumentDetail.DocumentTypeEnum.PASSPORT);
+        uboDocument2.setShareholderCode("shareholderCode2");
+        when(uboDocumentServiceMock.extractDocuments(any())).thenReturn(ImmutableList.of(uboDocument1, uboDocument2));
+        when(individualDocumentServiceMock.extractDocuments(any())).thenReturn(Collections.emptyList());
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.downloadShopsDocuments(any())).thenReturn(fileWrapperMock);
+        when(fileWrapperMock.getFile()).thenReturn(file);
+        when(streamingDocumentUploaderMock.uploadDocument(any(), any())).thenAnswer(invocation -> {
+            final UploadDocumentRequest request = (UploadDocumentRequest) invocation.getArguments()[0];
+            if ("shareholderCode2".equals(request.getShareholderCode())) {
+                throw new IllegalStateException("upload failed");
+            }
+            return responseMock;
+        });
+        when(docRetryRepositoryMock.findOneByDocId("docId1")).thenReturn(Optional.of(docRetryMock1));
+        when(docRetryMock1.getId()).thenReturn(11L);
+        when(docRetryRepositoryMock.findOneByDocId("docId2")).thenReturn(Optional.empty());
+
+        docService.processUpdatedDocuments();
+
+        verify(streamingDocumentUploaderMock, times(2)).uploadDocument(any(), eq(file));
+        verify(docRetryRepositoryMock).delete(11L);
+        verify(docRetryRepositoryMock).saveAndFlush(docRetryCaptor.capture());
+        Assertions.assertThat(docRetryCaptor.getValue().getDocId()).isEqualTo("docId2");
+        Assertions.assertThat(docRetryCaptor.getValue().getShopId()).isEqualTo("shopId");
+        Assertions.assertThat(docRetryCaptor.getValue().getNextRetryAt().isAfter(ZonedDateTime.now().plusSeconds(30))).isTrue();
+    }
+
+    @Test
+    public void shouldCarryOnWithTheShopsNextDocumentWhenOneCannotBeSettled() throws Exception {
+        URL url = Resources.getResource("fileuploads/BankStatement.png");
+        File file = new File(url.getPath());
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(miraklShopDocumentMock1, miraklShopDocumentMock2));
+        when(miraklShopDocumentMock1.getTypeCode()).thenReturn("typeCode");
+        when(miraklShopDocumentMock1.getId()).thenReturn("docId1");
+        when(miraklShopDocumentMock1.getShopId()).thenReturn("shopId");
+        when(miraklShopDocumentMock2.getTypeCode()).thenReturn("typeCode");
+        when(miraklShopDocumentMock2.getId()).thenReturn("docId2");
+        when(miraklShopDocumentMock2.getShopId()).thenReturn("shopId");
+
+        final DocumentDTO document1 = new DocumentDTO();
+        document1.setMiraklShopDocument(miraklShopDocumentMock1);
+        document1.setDocumentTypeEnum(DocumentDetail.DocumentTypeEnum.ID_CARD_FRONT);
+        final DocumentDTO document2 = new DocumentDTO();
+        document2.setMiraklShopDocument(miraklShopDocumentMock2);
+        document2.setDocumentTypeEnum(DocumentDetail.DocumentTypeEnum.ID_CARD_BACK);
+        when(uboDocumentServiceMock.extractDocuments(any())).thenReturn(Collections.emptyList());
+        when(individualDocumentServiceMock.extractDocuments(any())).thenReturn(ImmutableList.of(document1, document2));
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.downloadShopsDocuments(any())).thenReturn(fileWrapperMock);
+        when(fileWrapperMock.getFile()).thenReturn(file);
+        when(streamingDocumentUploaderMock.uploadDocument(any(), any())).thenReturn(responseMock);
+        when(docRetryRepositoryMock.findOneByDocId("docId1")).thenThrow(new IllegalStateException("database unavailable"));
+        when(docRetryRepositoryMock.findOneByDocId("docId2")).thenReturn(Optional.of(docRetryMock2));
+        when(docRetryMock2.getId()).thenReturn(22L);
+
+        docService.processUpdatedDocuments();
+
+        verify(streamingDocumentUploaderMock, times(2)).uploadDocument(any(), eq(file));
+        verify(docRetryRepositoryMock).delete(22L);
+    }
+
+    @Test
+    public void shouldSkipUploadWhenSameContentWasAlreadyUploaded() throws Exception {
+        URL url = Resources.getResource("fileuploads/BankStatement.png");
+        File file = new File(url.getPath());
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(miraklShopDocumentMock));
+        when(miraklShopDocumentMock.getTypeCode()).thenReturn("typeCode");
+        when(miraklShopDocumentMock.getId()).thenReturn("docId");
+        when(miraklShopDocumentMock.getShopId()).thenReturn("shopId");
+        when(uboDocumentServiceMock.extractDocuments(any())).thenReturn(ImmutableList.of(uboDocumentDTOMock));
+        when(uboDocumentDTOMock.getMiraklShopDocument()).thenReturn(miraklShopDocumentMock);
+        when(uboDocumentDTOMock.getDocumentTypeEnum()).thenReturn(DocumentDetail.DocumentTypeEnum.ID_CARD);
+        when(uboDocumentDTOMock.getShareholderCode()).thenReturn("shareholderCode");
+        when(individualDocumentServiceMock.extractDocuments(any())).thenReturn(Collections.emptyList());
+        when(miraklMarketplacePlatformOperatorApiClientMock.downloadShopsDocuments(any())).thenReturn(fileWrapperMock);
+        when(fileWrapperMock.getFile()).thenReturn(file);
+
+        when(docUploadLedgerServiceMock.hash(file)).thenReturn("hash");
+        when(docUploadLedgerServiceMock.isAlreadyUploaded("shopId", "shareholderCode", DocumentDetail.DocumentTypeEnum.ID_CARD, "hash")).thenReturn(true);
+        when(docRetryRepositoryMock.findOneByDocId("docId")).thenReturn(Optional.of(docRetryMock1));
+        when(docRetryMock1.getId()).thenReturn(11L);
+
+        docService.processUpdatedDocuments();
+
+        verify(streamingDocumentUploaderMock, never()).uploadDocument(any(), any());
+        verify(docUploadLedgerServiceMock, never()).recordUpload(any(), any(), any(), any());
+        verify(docRetryRepositoryMock).delete(11L);
+    }
+
+    @Test
+    public void shouldUploadOptimisedImageAndDeleteItAfterwards() throws Exception {
+        URL url = Resources.getResource("fileuploads/BankStatement.png");
+        File file = new File(url.getPath());
+        final File optimisedFile = File.createTempFile("optimised", ".png");
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(miraklShopDocumentMock));
+        when(miraklShopDocumentMock.getTypeCode()).thenReturn("typeCode");
+        when(miraklShopDocumentMock.getId()).thenReturn("docId");
+        when(miraklShopDocumentMock.getShopId()).thenReturn("shopId");
+        when(uboDocumentServiceMock.extractDocuments(any())).thenReturn(ImmutableList.of(uboDocumentDTOMock));
+        when(uboDocumentDTOMock.getMiraklShopDocument()).thenReturn(miraklShopDocumentMock);
+        when(uboDocumentDTOMock.getDocumentTypeEnum()).thenReturn(DocumentDetail.DocumentTypeEnum.ID_CARD);
+        when(uboDocumentDTOMock.getShareholderCode()).thenReturn("shareholderCode");
+        when(individualDocumentServiceMock.extractDocuments(any())).thenReturn(Collections.emptyList());
+        when(miraklMarketplacePlatformOperatorApiClientMock.downloadShopsDocuments(any())).thenReturn(fileWrapperMock);
+        when(fileWrapperMock.getFile()).thenReturn(file);
+        when(fileWrapperMock.getFilename()).thenReturn(file.getName());
+        when(documentImageOptimizerMock.optimize(file)).thenReturn(optimisedFile);
+        when(streamingDocumentUploaderMock.uploadDocument(any(), any())).thenReturn(responseMock);
+        when(docRetryRepositoryMock.findOneByDocId("docId")).thenReturn(Optional.empty());
+
+        docService.processUpdatedDocuments();
+
+        verify(streamingDocumentUploaderMock).uploadDocument(uploadDocumentRequestCaptor.capture(), eq(optimisedFile));
+        Assertions.assertThat(uploadDocumentRequestCaptor.getValue().getDocumentDetail().getFilename()).isEqualTo(file.getName());
+        Assertions.assertThat(optimisedFile.exists()).isFalse();
+        Assertions.assertThat(file.exists()).isTrue();
+    }
+
+    @Test
+    public void shouldDownloadDocumentsOfAShopAtOnceInBatchMode() throws Exception {
+        final File zip = File.createTempFile("documents", ".zip");
+        zip.deleteOnExit();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(zip))) {
+            zipOutputStream.putNextEntry(new ZipEntry("shopId/front.png"));
+            zipOutputStream.write("front".getBytes(StandardCharsets.UTF_8));
+            zipOutputStream.putNextEntry(new ZipEntry("shopId/back.png"));
+            zipOutputStream.write("back".getBytes(StandardCharsets.UTF_8));
+        }
+        when(applicationProperties.isBatchDocumentDownload()).thenReturn(true);
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(miraklShopDocumentMock1, miraklShopDocumentMock2));
+        when(miraklShopDocumentMock1.getTypeCode()).thenReturn("typeCode");
+        when(miraklShopDocumentMock1.getId()).thenReturn("docId1");
+        when(miraklShopDocumentMock1.getShopId()).thenReturn("shopId");
+        when(miraklShopDocumentMock1.getFileName()).thenReturn("front.png");
+        when(miraklShopDocumentMock2.getTypeCode()).thenReturn("typeCode");
+        when(miraklShopDocumentMock2.getId()).thenReturn("docId2");
+        when(miraklShopDocumentMock2.getShopId()).thenReturn("shopId");
+        when(miraklShopDocumentMock2.getFileName()).thenReturn("back.png");
+
+        final DocumentDTO front = new DocumentDTO();
+        front.setMiraklShopDocument(miraklShopDocumentMock1);
+        front.setDocumentTypeEnum(DocumentDetail.DocumentTypeEnum.ID_CARD_FRONT);
+        final DocumentDTO back = new DocumentDTO();
+        back.setMiraklShopDocument(miraklShopDocumentMock2);
+        back.setDocumentTypeEnum(DocumentDetail.DocumentTypeEnum.ID_CARD_BACK);
+        when(uboDocumentServiceMock.extractDocuments(any())).thenReturn(Collections.emptyList());
+        when(individualDocumentServiceMock.extractDocuments(any())).thenReturn(ImmutableList.of(front, back));
+
+        when(miraklMarketplacePlatformOperatorApiClientMock.downloadShopsDocuments(any())).thenReturn(fileWrapperMock);
+        when(fileWrapperMock.getFile()).thenReturn(zip);
+        when(docRetryRepositoryMock.findOneByDocId(any())).thenReturn(Optional.empty());
+
+        docService.processUpdatedDocuments();
+
+        verify(miraklMarketplacePlatformOperatorApiClientMock).downloadShopsDocuments(any());
+        verify(streamingDocumentUploaderMock, times(2)).uploadDocument(uploadDocumentRequestCaptor.capture(), fileCaptor.capture());
+        // the extracted entries and the downloaded zip are removed
+        Assertions.assertThat(fileCaptor.getAllValues()).extracting(File::exists).containsOnly(false);
+        Assertions.assertThat(zip.exists()).isFalse();
+        Assertions.assertThat(uploadDocumentRequestCaptor.getAllValues()).extracting(request -> request.getDocumentDetail().getFilename()).containsExactly("front.png", "back.png");
+        Assertions.assertThat(uploadDocumentRequestCaptor.getAllValues())
+                  .extracting(request -> request.getDocumentDetail().getDocumentType())
+                  .containsExactly(DocumentDetail.DocumentTypeEnum.ID_CARD_FRONT, DocumentDetail.DocumentTypeEnum.ID_CARD_BACK);
+        // hashed while extracted, not read again
+        verify(docUploadLedgerServiceMock).isAlreadyUploaded("shopId", null, DocumentDetail.DocumentTypeEnum.ID_CARD_FRONT, Hashing.sha256().hashString("front", StandardCharsets.UTF_8).toString());
+        verify(docUploadLedgerServiceMock, never()).hash(any());
+        verify(docRetryRepositoryMock, never()).saveAndFlush(any(DocRetry.class));
+    }
 }
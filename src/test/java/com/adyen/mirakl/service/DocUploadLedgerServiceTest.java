@@ -0,0 +1,132 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+import com.adyen.mirakl.domain.DocUpload;
+import com.adyen.mirakl.repository.DocUploadRepository;
+import com.adyen.model.marketpay.DocumentDetail;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
+import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
+import static com.google.common.io.Files.toByteArray;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DocUploadLedgerServiceTest {
+
+    @InjectMocks
+    private DocUploadLedgerService docUploadLedgerService;
+
+    @Mock
+    private DocUploadRepository docUploadRepositoryMock;
+    @Mock
+    private MetricsService metricsServiceMock;
+    @Mock
+    private MiraklShopDocument miraklShopDocumentMock;
+
+    @Captor
+    private ArgumentCaptor<DocUpload> docUploadCaptor;
+
+    @Test
+    public void shouldHashFileContent() throws Exception {
+        final File file = new File(Resources.getResource("fileuploads/BankStatement.png").getPath());
+
+        assertThat(docUploadLedgerService.hash(file)).isEqualTo(Hashing.sha256().hashBytes(toByteArray(file)).toString());
+    }
+
+    @Test
+    public void shouldHashContentWhileWritingIt() throws Exception {
+        final File target = File.createTempFile("document", ".tmp");
+        target.deleteOnExit();
+        final byte[] content = "document content".getBytes(StandardCharsets.UTF_8);
+
+        final String contentHash = DocUploadLedgerService.copyAndHash(new ByteArrayInputStream(content), target);
+
+        assertThat(toByteArray(target)).isEqualTo(content);
+        assertThat(contentHash).isEqualTo(Hashing.sha256().hashBytes(content).toString());
+    }
+
+    @Test
+    public void shouldOnlyMatchSameContentForSameTarget() {
+        final DocUpload docUpload = new DocUpload().contentHash("hash");
+        when(docUploadRepositoryMock.findOneByAccountHolderCodeAndShareholderCodeAndDocumentType("shopId", "shareholderCode", "PASSPORT")).thenReturn(Optional.of(docUpload));
+        when(docUploadRepositoryMock.findOneByAccountHolderCodeAndShareholderCodeAndDocumentType("shopId", "shareholderCode", "ID_CARD")).thenReturn(Optional.empty());
+
+        assertThat(docUploadLedgerService.isAlreadyUploaded("shopId", "shareholderCode", DocumentDetail.DocumentTypeEnum.PASSPORT, "hash")).isTrue();
+        assertThat(docUploadLedgerService.isAlreadyUploaded("shopId", "shareholderCode", DocumentDetail.DocumentTypeEnum.PASSPORT, "otherHash")).isFalse();
+        assertThat(docUploadLedgerService.isAlreadyUploaded("shopId", "shareholderCode", DocumentDetail.DocumentTypeEnum.ID_CARD, "hash")).isFalse();
+
+        verify(metricsServiceMock).increment("documents.ledger.hits");
+        verify(metricsServiceMock, times(2)).increment("documents.ledger.misses");
+    }
+
+    @Test
+    public void shouldReplaceLastUploadOfSameTarget() {
+        final DocUpload existing = new DocUpload().accountHolderCode("shopId").shareholderCode("").documentType("BANK_STATEMENT").contentHash("oldHash");
+        when(docUploadRepositoryMock.findOneByAccountHolderCodeAndShareholderCodeAndDocumentType("shopId", "", "BANK_STATEMENT")).thenReturn(Optional.of(existing));
+        when(miraklShopDocumentMock.getShopId()).thenReturn("shopId");
+        when(miraklShopDocumentMock.getId()).thenReturn("docId");
+        when(miraklShopDocumentMock.getTypeCode()).thenReturn("adyen-bankproof");
+
+        docUploadLedgerService.recordUpload(miraklShopDocumentMock, null, DocumentDetail.DocumentTypeEnum.BANK_STATEMENT, "newHash");
+
+        verify(docUploadRepositoryMock).saveAndFlush(docUploadCaptor.capture());
+        final DocUpload saved = docUploadCaptor.getValue();
+        assertThat(saved).isSameAs(existing);
+        assertThat(saved.getContentHash()).isEqualTo("newHash");
+        assertThat(saved.getDocId()).isEqualTo("docId");
+        assertThat(saved.getTypeCode()).isEqualTo("adyen-bankproof");
+        assertThat(saved.getUploadedAt()).isNotNull();
+    }
+
+    @Test
+    public void shouldUpdateUploadInsertedConcurrently() {
+        final DocUpload concurrent = new DocUpload().accountHolderCode("shopId").shareholderCode("shareholderCode").documentType("PASSPORT").contentHash("oldHash");
+        when(docUploadRepositoryMock.findOneByAccountHolderCodeAndShareholderCodeAndDocumentType("shopId", "shareholderCode", "PASSPORT")).thenReturn(Optional.empty())
+                                                                                                                                        .thenReturn(Optional.of(concurrent));
+        when(docUploadRepositoryMock.saveAndFlush(any(DocUpload.class))).thenThrow(new DataIntegrityViolationException("ux_doc_upload_target")).thenReturn(concurrent);
+        when(miraklShopDocumentMock.getShopId()).thenReturn("shopId");
+
+        docUploadLedgerService.recordUpload(miraklShopDocumentMock, "shareholderCode", DocumentDetail.DocumentTypeEnum.PASSPORT, "newHash");
+
+        verify(docUploadRepositoryMock, times(2)).saveAndFlush(docUploadCaptor.capture());
+        assertThat(docUploadCaptor.getAllValues().get(1)).isSameAs(concurrent);
+        assertThat(concurrent.getContentHash()).isEqualTo("newHash");
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.google.common.util.concurrent.MoreExecutors;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DocumentImageOptimizerTest {
+
+    @InjectMocks
+    private DocumentImageOptimizer documentImageOptimizer;
+
+    @Mock
+    private ApplicationProperties applicationPropertiesMock;
+    @Mock
+    private MetricsService metricsServiceMock;
+
+    @Before
+    public void setUp() {
+        setField(documentImageOptimizer, "docImageExecutor", MoreExecutors.directExecutor());
+        when(applicationPropertiesMock.isDocImageOptimization()).thenReturn(true);
+        when(applicationPropertiesMock.getDocImageMaxDimension()).thenReturn(400);
+        when(applicationPropertiesMock.getDocImageMaxBytes()).thenReturn(1024 * 1024);
+        when(applicationPropertiesMock.getDocImageJpegQuality()).thenReturn(85);
+    }
+
+    @Test
+    public void shouldDownscaleOversizedJpeg() throws Exception {
+        final File file = writeImage(1200, 800, "jpeg");
+
+        final File optimized = documentImageOptimizer.optimize(file);
+
+        assertThat(optimized).isNotEqualTo(file);
+        assertThat(optimized.length()).isLessThan(file.length());
+        final BufferedImage image = ImageIO.read(optimized);
+        assertThat(image.getWidth()).isEqualTo(400);
+        assertThat(image.getHeight()).isEqualTo(267);
+        verify(metricsServiceMock).increment("documents.images.optimized");
+        verify(metricsServiceMock).increment(eq("documents.images.savedBytes"), anyLong());
+        optimized.deleteOnExit();
+    }
+
+    @Test
+    public void shouldKeepPngFormat() throws Exception {
+        final File file = writeImage(800, 1200, "png");
+
+        final File optimized = documentImageOptimizer.optimize(file);
+
+        assertThat(optimized).isNotEqualTo(file);
+        final BufferedImage image = ImageIO.read(optimized);
+        assertThat(image.getWidth()).isEqualTo(267);
+        assertThat(image.getHeight()).isEqualTo(400);
+        assertThat(ImageIO.getImageReaders(ImageIO.createImageInputStream(optimized)).next().getFormatName()).isEqualToIgnoringCase("png");
+        optimized.deleteOnExit();
+    }
+
+    @Test
+    public void shouldPassSmallImagesThrough() throws Exception {
+        final File file = writeImage(300, 200, "jpeg");
+
+        assertThat(documentImageOptimizer.optimize(file)).isEqualTo(file);
+        verify(metricsServiceMock, never()).increment("documents.images.optimized");
+    }
+
+    @Test
+    public void shouldPassPdfsThrough() throws Exception {
+        final File file = File.createTempFile("document", ".pdf");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "%PDF-1.4\n%%EOF".getBytes(StandardCharsets.US_ASCII));
+
+        assertThat(documentImageOptimizer.optimize(file)).isEqualTo(file);
+    }
+
+    @Test
+    public void shouldPassEverythingThroughWhenDisabled() throws Exception {
+        when(applicationPropertiesMock.isDocImageOptimization()).thenReturn(false);
+        final File file = writeImage(1200, 800, "jpeg");
+
+        assertThat(documentImageOptimizer.optimize(file)).isEqualTo(file);
+    }
+
+    @Test
+    public void shouldReadExifOrientation() {
+        final byte[] bigEndian = { 'E', 'x', 'i', 'f', 0, 0, 'M', 'M', 0, 42, 0, 0, 0, 8, 0, 1, 0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, 6, 0, 0 };
+        final byte[] littleEndian = { 'E', 'x', 'i', 'f', 0, 0, 'I', 'I', 42, 0, 8, 0, 0, 0, 1, 0, 0x12, 0x01, 3, 0, 1, 0, 0, 0, 8, 0, 0, 0 };
+
+        assertThat(DocumentImageOptimizer.exifOrientation(bigEndian)).isEqualTo(6);
+        assertThat(DocumentImageOptimizer.exifOrientation(littleEndian)).isEqualTo(8);
+        assertThat(DocumentImageOptimizer.exifOrientation(new byte[] { 'J', 'F', 'I', 'F' })).isEqualTo(1);
+    }
+
+    private static File writeImage(final int width, final int height, final String format) throws Exception {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Random random = new Random(42);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        final File file = File.createTempFile("document", "." + format);
+        file.deleteOnExit();
+        ImageIO.write(image, format, file);
+        return file;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import org.junit.Test;
+import com.adyen.mirakl.service.DocumentTypeCodeClassifier.DocumentTypeCode;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DocumentTypeCodeClassifierTest {
+
+    private final DocumentTypeCodeClassifier documentTypeCodeClassifier = new DocumentTypeCodeClassifier(4);
+
+    @Test
+    public void shouldClassifyPhotoIdsOfUbosAndIndividuals() {
+        final DocumentTypeCode uboFront = documentTypeCodeClassifier.classify("adyen-ubo4-photoid");
+        assertThat(uboFront.getEntityType()).isEqualTo("ubo");
+        assertThat(uboFront.getSequence()).isEqualTo(4);
+        assertThat(uboFront.getSide()).isEqualTo(DocumentTypeCodeClassifier.Side.FRONT);
+        assertThat(uboFront.getEntityName()).isEqualTo("ubo4");
+
+        final DocumentTypeCode individualRear = documentTypeCodeClassifier.classify("ADYEN-INDIVIDUAL-PHOTOID-REAR");
+        assertThat(individualRear.getEntityType()).isEqualTo("individual");
+        assertThat(individualRear.getSequence()).isNull();
+        assertThat(individualRear.getSide()).isEqualTo(DocumentTypeCodeClassifier.Side.REAR);
+        assertThat(individualRear.isEntity("individual", null)).isTrue();
+        assertThat(individualRear.isEntity("ubo", 1)).isFalse();
+    }
+
+    @Test
+    public void shouldNotClassifyOtherDocuments() {
+        assertThat(documentTypeCodeClassifier.classify("adyen-ubo5-photoid")).isNull();
+        assertThat(documentTypeCodeClassifier.classify("adyen-ubo1-photoidtype")).isNull();
+        assertThat(documentTypeCodeClassifier.classify("adyen-bankproof")).isNull();
+        assertThat(documentTypeCodeClassifier.classify(null)).isNull();
+    }
+}
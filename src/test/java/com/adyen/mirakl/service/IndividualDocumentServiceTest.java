@@ -23,6 +23,7 @@ package com.adyen.mirakl.service;
 
 import java.util.List;
 import org.assertj.core.api.Assertions;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
@@ -30,6 +31,7 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import com.adyen.mirakl.config.ApplicationProperties;
 import com.adyen.mirakl.domain.ShareholderMapping;
 import com.adyen.mirakl.repository.ShareholderMappingRepository;
 import com.adyen.mirakl.service.dto.DocumentDTO;
@@ -42,6 +44,7 @@ import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
 import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
 import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 @RunWith(MockitoJUnitRunner.class)
 public class IndividualDocumentServiceTest {
@@ -58,7 +61,7 @@ public class IndividualDocumentServiceTest {
     @Mock
     private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClientMock;
     @Mock
-    private MiraklShops miraklShops1, miraklShops2, miraklShops3;
+    private MiraklShops miraklShops;
     @Mock
     private MiraklShop miraklShop1, miraklShop2, miraklShop3;
     @Mock
@@ -67,6 +70,20 @@ public class IndividualDocumentServiceTest {
     @Captor
     private ArgumentCaptor<MiraklGetShopsRequest> miraklGetShopsRequestCaptor;
 
+    @Before
+    public void setUp() {
+        PhotoIdTypeCache photoIdTypeCache = new PhotoIdTypeCache();
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setPhotoIdTypeCacheTtlSeconds(300);
+        applicationProperties.setPhotoIdTypeCacheMaxShops(10000);
+        setField(photoIdTypeCache, "miraklMarketplacePlatformOperatorApiClient", miraklMarketplacePlatformOperatorApiClientMock);
+        setField(photoIdTypeCache, "applicationProperties", applicationProperties);
+        setField(photoIdTypeCache, "metricsService", new MetricsService());
+        photoIdTypeCache.init();
+        setField(individualDocumentService, "photoIdTypeCache", photoIdTypeCache);
+        setField(individualDocumentService, "documentTypeCodeClassifier", new DocumentTypeCodeClassifier(4));
+    }
+
     @Test
     public void shouldExtractMiraklDocumentsRelatedToUbos() {
         //shop 1
@@ -89,10 +106,12 @@ public class IndividualDocumentServiceTest {
         // 1 front id  & 1 back id                                          - shop 2
         // 1 front driving licence & 1 rear driving licence                 - shop 3
 
-        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShops1).thenReturn(miraklShops2).thenReturn(miraklShops3);
-        when(miraklShops1.getShops()).thenReturn(ImmutableList.of(miraklShop1));
-        when(miraklShops2.getShops()).thenReturn(ImmutableList.of(miraklShop2));
-        when(miraklShops3.getShops()).thenReturn(ImmutableList.of(miraklShop3));
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShops);
+        when(miraklShops.getShops()).thenReturn(ImmutableList.of(miraklShop1, miraklShop2, miraklShop3));
+        when(miraklShops.getTotalCount()).thenReturn(3L);
+        when(miraklShop1.getId()).thenReturn("shop1");
+        when(miraklShop2.getId()).thenReturn("shop2");
+        when(miraklShop3.getId()).thenReturn("shop3");
         when(miraklShop1.getAdditionalFieldValues()).thenReturn(ImmutableList.of(miraklAddtionalField1));
         when(miraklShop2.getAdditionalFieldValues()).thenReturn(ImmutableList.of(miraklAddtionalField2));
         when(miraklShop3.getAdditionalFieldValues()).thenReturn(ImmutableList.of(miraklAddtionalField3));
@@ -111,10 +130,8 @@ public class IndividualDocumentServiceTest {
                                                                                                                miraklShopDocument6));
 
         List<MiraklGetShopsRequest> requestsToMirakl = miraklGetShopsRequestCaptor.getAllValues();
-        Assertions.assertThat(requestsToMirakl.size()).isEqualTo(3);
-        Assertions.assertThat(requestsToMirakl.get(0).getShopIds()).containsOnly("shop1");
-        Assertions.assertThat(requestsToMirakl.get(1).getShopIds()).containsOnly("shop2");
-        Assertions.assertThat(requestsToMirakl.get(2).getShopIds()).containsOnly("shop3");
+        Assertions.assertThat(requestsToMirakl.size()).isEqualTo(1);
+        Assertions.assertThat(requestsToMirakl.get(0).getShopIds()).containsOnly("shop1", "shop2", "shop3");
         Assertions.assertThat(result.size()).isEqualTo(5);
         Assertions.assertThat(result.get(0).getMiraklShopDocument().getShopId()).isEqualTo("shop1");
         Assertions.assertThat(result.get(0).getMiraklShopDocument().getTypeCode()).isEqualTo("adyen-individual-photoid");
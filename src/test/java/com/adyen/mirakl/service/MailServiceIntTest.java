@@ -27,7 +27,6 @@ import javax.mail.Multipart;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
-import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -39,26 +38,34 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.MessageSource;
 import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.retry.backoff.BackOffPolicy;
-import org.springframework.retry.backoff.NoBackOffPolicy;
-import org.springframework.retry.support.RetryTemplate;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
 import org.thymeleaf.spring4.SpringTemplateEngine;
 import com.adyen.mirakl.AdyenMiraklConnectorApp;
 import com.adyen.mirakl.config.MiraklOperatorConfiguration;
+import com.adyen.mirakl.domain.ProcessEmail;
+import com.adyen.mirakl.domain.enumeration.EmailState;
+import com.adyen.mirakl.events.EmailQueuedEvent;
 import com.adyen.mirakl.exceptions.UnexpectedMailFailureException;
+import com.adyen.mirakl.repository.ProcessEmailRepository;
 import io.github.jhipster.config.JHipsterProperties;
+import liquibase.util.MD5Util;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = AdyenMiraklConnectorApp.class)
+@Transactional
 public class MailServiceIntTest {
 
     @Autowired
@@ -70,14 +77,11 @@ public class MailServiceIntTest {
     @Autowired
     private SpringTemplateEngine templateEngine;
 
-    //cannot use @SpyBean as spring AOP makes JavaMailSender methods final and stops: doNothing().when(..)
     @Autowired
-    private RetryTemplate taskRetryTemplate;
-    @Autowired
-    private BackOffPolicy exponentialBackOffPolicy;
+    private MiraklOperatorConfiguration miraklOperatorConfiguration;
 
     @Autowired
-    private MiraklOperatorConfiguration miraklOperatorConfiguration;
+    private ProcessEmailRepository processEmailRepository;
 
     @SpyBean
     private JavaMailSender javaMailSender;
@@ -90,25 +94,37 @@ public class MailServiceIntTest {
 
     private MailService mailService;
 
+    private ApplicationEventPublisher applicationEventPublisher;
+
     @Before
     public void setup() {
-        taskRetryTemplate.setBackOffPolicy(new NoBackOffPolicy());
-
         doNothing().when(javaMailSender).send(any(MimeMessage.class));
         MockitoAnnotations.initMocks(this);
         mailService = new MailService(jHipsterProperties, javaMailSender);
         mailService.setBccEmail("bccEmail");
+        applicationEventPublisher = mock(ApplicationEventPublisher.class);
+        ReflectionTestUtils.setField(mailService, "processEmailRepository", processEmailRepository);
+        ReflectionTestUtils.setField(mailService, "applicationEventPublisher", applicationEventPublisher);
     }
 
-    //See comments on RetryTemplate
-    @After
-    public void resetBackoffPolicyForOtherTests() {
-        taskRetryTemplate.setBackOffPolicy(exponentialBackOffPolicy);
+    @Test
+    public void testQueueEmail() {
+        mailService.sendEmail("john.doe@example.com", "testSubject", "testContent", false, true);
+        mailService.sendEmail("john.doe@example.com", "testSubject", "testContent", false, true);
+
+        final ProcessEmail queued = processEmailRepository.findOneByEmailIdentifier(MD5Util.computeMD5("john.doe@example.comtestSubjecttestContentfalsetrue")).orElse(null);
+        assertThat(queued).isNotNull();
+        assertThat(queued.getState()).isEqualTo(EmailState.PENDING);
+        assertThat(queued.getAttempts()).isEqualTo(0);
+        assertThat(queued.getNextAttemptAt()).isNotNull();
+        assertThat(queued.isHtml()).isTrue();
+        verify(applicationEventPublisher).publishEvent(any(EmailQueuedEvent.class));
+        verify(javaMailSender, never()).send(any(MimeMessage.class));
     }
 
     @Test
     public void testSendEmail() throws Exception {
-        mailService.sendEmail("john.doe@example.com", "testSubject", "testContent", false, false);
+        mailService.deliverEmail(email(false, false));
         verify(javaMailSender).send((MimeMessage) messageCaptor.capture());
         MimeMessage message = (MimeMessage) messageCaptor.getValue();
         assertThat(message.getSubject()).isEqualTo("testSubject");
@@ -121,7 +137,7 @@ public class MailServiceIntTest {
 
     @Test
     public void testSendHtmlEmail() throws Exception {
-        mailService.sendEmail("john.doe@example.com", "testSubject", "testContent", false, true);
+        mailService.deliverEmail(email(false, true));
         verify(javaMailSender).send((MimeMessage) messageCaptor.capture());
         MimeMessage message = (MimeMessage) messageCaptor.getValue();
         assertThat(message.getSubject()).isEqualTo("testSubject");
@@ -134,7 +150,7 @@ public class MailServiceIntTest {
 
     @Test
     public void testSendMultipartEmail() throws Exception {
-        mailService.sendEmail("john.doe@example.com", "testSubject", "testContent", true, false);
+        mailService.deliverEmail(email(true, false));
         verify(javaMailSender).send((MimeMessage) messageCaptor.capture());
         MimeMessage message = (MimeMessage) messageCaptor.getValue();
         MimeMultipart mp = (MimeMultipart) message.getContent();
@@ -151,7 +167,7 @@ public class MailServiceIntTest {
 
     @Test
     public void testSendMultipartHtmlEmail() throws Exception {
-        mailService.sendEmail("john.doe@example.com", "testSubject", "testContent", true, true);
+        mailService.deliverEmail(email(true, true));
         verify(javaMailSender).send((MimeMessage) messageCaptor.capture());
         MimeMessage message = (MimeMessage) messageCaptor.getValue();
         MimeMultipart mp = (MimeMultipart) message.getContent();
@@ -170,7 +186,11 @@ public class MailServiceIntTest {
     public void testSendEmailWithException() {
         thrown.expect(UnexpectedMailFailureException.class);
         doThrow(MailSendException.class).when(javaMailSender).send(any(MimeMessage.class));
-        mailService.sendEmail("john.doe@example.com", "testSubject", "testContent", false, false);
+        mailService.deliverEmail(email(false, false));
+    }
+
+    private ProcessEmail email(boolean isMultipart, boolean isHtml) {
+        return new ProcessEmail().to("john.doe@example.com").subject("testSubject").content("testContent").multipart(isMultipart).html(isHtml);
     }
 
 }
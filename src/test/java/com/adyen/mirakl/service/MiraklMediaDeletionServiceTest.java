@@ -0,0 +1,176 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.MiraklMediaDeletion;
+import com.adyen.mirakl.repository.MiraklMediaDeletionRepository;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MiraklMediaDeletionServiceTest {
+
+    @InjectMocks
+    private MiraklMediaDeletionService miraklMediaDeletionService;
+
+    @Mock
+    private MiraklMediaDeletionRepository miraklMediaDeletionRepositoryMock;
+    @Mock
+    private DocService docServiceMock;
+    @Mock
+    private ApplicationProperties applicationPropertiesMock;
+    @Mock
+    private MetricsService metricsServiceMock;
+
+    @Captor
+    private ArgumentCaptor<MiraklMediaDeletion> miraklMediaDeletionCaptor;
+
+    @Before
+    public void setUp() {
+        setField(miraklMediaDeletionService, "mediaDeletionExecutor", MoreExecutors.directExecutor());
+        when(applicationPropertiesMock.getMediaDeletionPageSize()).thenReturn(50);
+        when(applicationPropertiesMock.getMediaDeletionMaxPagesPerRun()).thenReturn(10);
+        when(applicationPropertiesMock.getMediaDeletionMaxAttempts()).thenReturn(10);
+        when(applicationPropertiesMock.getMediaDeletionBaseDelaySeconds()).thenReturn(60);
+        when(applicationPropertiesMock.getMediaDeletionMaxDelaySeconds()).thenReturn(3600);
+    }
+
+    @Test
+    public void shouldQueueDeletionWithoutCallingMirakl() {
+        miraklMediaDeletionService.enqueue("shopId", ImmutableSet.of("shareholder1", "shareholder2"), false, true);
+
+        verify(miraklMediaDeletionRepositoryMock).save(miraklMediaDeletionCaptor.capture());
+        final MiraklMediaDeletion deletion = miraklMediaDeletionCaptor.getValue();
+        assertThat(deletion.getShopId()).isEqualTo("shopId");
+        assertThat(deletion.getShareholderCodes()).isEqualTo("shareholder1,shareholder2");
+        assertThat(deletion.isIndividual()).isFalse();
+        assertThat(deletion.isBankProof()).isTrue();
+        assertThat(deletion.getAttempts()).isEqualTo(0);
+        verify(docServiceMock, never()).removeMiraklMedia(any(), anySetOf(String.class), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    public void shouldDeleteQueuedMediaOncePerShop() {
+        final MiraklMediaDeletion deletion1 = deletion("shop1", "shareholder1", false, false);
+        final MiraklMediaDeletion deletion2 = deletion("shop2", "", true, false);
+        final MiraklMediaDeletion deletion3 = deletion("shop1", "shareholder2", false, true);
+        when(miraklMediaDeletionRepositoryMock.findDueBefore(any(ZonedDateTime.class), eq(10), any(Pageable.class))).thenReturn(ImmutableList.of(deletion1, deletion2, deletion3));
+
+        miraklMediaDeletionService.processDueDeletions();
+
+        verify(docServiceMock).removeMiraklMedia("shop1", ImmutableSet.of("shareholder1", "shareholder2"), false, true);
+        verify(docServiceMock).removeMiraklMedia("shop2", ImmutableSet.of(), true, false);
+        verify(miraklMediaDeletionRepositoryMock).delete(ImmutableList.of(deletion1, deletion3));
+        verify(miraklMediaDeletionRepositoryMock).delete(ImmutableList.of(deletion2));
+    }
+
+    @Test
+    public void shouldCompleteDeletionWithUnmappedShareholder() {
+        final MiraklMediaDeletion deletion = deletion("shop1", "unknownShareholder,shareholder1", false, false);
+        when(miraklMediaDeletionRepositoryMock.findDueBefore(any(ZonedDateTime.class), eq(10), any(Pageable.class))).thenReturn(ImmutableList.of(deletion));
+        when(docServiceMock.removeMiraklMedia("shop1", ImmutableSet.of("unknownShareholder", "shareholder1"), false, false)).thenReturn(ImmutableSet.of("unknownShareholder"));
+
+        miraklMediaDeletionService.processDueDeletions();
+
+        verify(miraklMediaDeletionRepositoryMock).delete(ImmutableList.of(deletion));
+        verify(metricsServiceMock).increment("media.deletion.unmappedShareholders", 1);
+        assertThat(deletion.getAttempts()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRescheduleFailedDeletions() {
+        final MiraklMediaDeletion deletion = deletion("shop1", "shareholder1", false, false);
+        when(miraklMediaDeletionRepositoryMock.findDueBefore(any(ZonedDateTime.class), eq(10), any(Pageable.class))).thenReturn(ImmutableList.of(deletion));
+        doThrow(new IllegalStateException("Mirakl unavailable")).when(docServiceMock).removeMiraklMedia("shop1", ImmutableSet.of("shareholder1"), false, false);
+
+        final ZonedDateTime beforeRun = ZonedDateTime.now();
+        miraklMediaDeletionService.processDueDeletions();
+
+        verify(miraklMediaDeletionRepositoryMock).save(ImmutableList.of(deletion));
+        verify(miraklMediaDeletionRepositoryMock, never()).delete(ImmutableList.of(deletion));
+        assertThat(deletion.getAttempts()).isEqualTo(1);
+        assertThat(deletion.getLastError()).isEqualTo("java.lang.IllegalStateException: Mirakl unavailable");
+        assertThat(deletion.getNextAttemptAt().isBefore(beforeRun.plusSeconds(60))).isFalse();
+    }
+
+    @Test
+    public void shouldHandOffDueDeletionsOnceWhileARunIsWaiting() {
+        final List<Runnable> handedOff = new ArrayList<>();
+        setField(miraklMediaDeletionService, "mediaDeletionWorkerExecutor", (Executor) handedOff::add);
+
+        miraklMediaDeletionService.deleteDueMedia();
+        miraklMediaDeletionService.deleteDueMedia();
+
+        assertThat(handedOff).hasSize(1);
+        verify(miraklMediaDeletionRepositoryMock, never()).findDueBefore(any(ZonedDateTime.class), any(), any(Pageable.class));
+
+        handedOff.get(0).run();
+        miraklMediaDeletionService.deleteDueMedia();
+
+        assertThat(handedOff).hasSize(2);
+    }
+
+    @Test
+    public void shouldStopAfterTheMaximumPagesOfARun() {
+        when(applicationPropertiesMock.getMediaDeletionPageSize()).thenReturn(1);
+        when(applicationPropertiesMock.getMediaDeletionMaxPagesPerRun()).thenReturn(2);
+        when(miraklMediaDeletionRepositoryMock.findDueBefore(any(ZonedDateTime.class), eq(10), any(Pageable.class))).thenReturn(ImmutableList.of(deletion("shop1", "", true, false)))
+                                                                                                                      .thenReturn(ImmutableList.of(deletion("shop2", "", true, false)))
+                                                                                                                      .thenReturn(ImmutableList.of(deletion("shop3", "", true, false)));
+
+        miraklMediaDeletionService.processDueDeletions();
+
+        verify(docServiceMock).removeMiraklMedia("shop1", ImmutableSet.of(), true, false);
+        verify(docServiceMock).removeMiraklMedia("shop2", ImmutableSet.of(), true, false);
+        verify(docServiceMock, never()).removeMiraklMedia("shop3", ImmutableSet.of(), true, false);
+    }
+
+    private static MiraklMediaDeletion deletion(String shopId, String shareholderCodes, boolean individual, boolean bankProof) {
+        return new MiraklMediaDeletion().shopId(shopId).shareholderCodes(shareholderCodes).individual(individual).bankProof(bankProof).attempts(0);
+    }
+}
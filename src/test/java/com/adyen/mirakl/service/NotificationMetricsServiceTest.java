@@ -0,0 +1,93 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+public class NotificationMetricsServiceTest {
+
+    private NotificationMetricsService notificationMetricsService;
+
+    private MetricsService metricsService;
+
+    @Before
+    public void setup() {
+        metricsService = new MetricsService();
+        notificationMetricsService = new NotificationMetricsService();
+        setField(notificationMetricsService, "metricsService", metricsService);
+        notificationMetricsService.registerGauges();
+    }
+
+    @Test
+    public void shouldRecordLatenciesPerEventType() {
+        notificationMetricsService.received(1L);
+        notificationMetricsService.received(2L);
+
+        assertThat(getMetrics().get("gauge.notifications.backlog")).isEqualTo(2);
+
+        final long startedAt = notificationMetricsService.started(1L, "ACCOUNT_HOLDER_PAYOUT");
+        notificationMetricsService.completed(1L, "ACCOUNT_HOLDER_PAYOUT", startedAt);
+
+        final Map<String, Number> metrics = getMetrics();
+        assertThat(metrics.get("histogram.notifications.latency.ingestToStartMs.ACCOUNT_HOLDER_PAYOUT.count")).isEqualTo(1L);
+        assertThat(metrics.get("histogram.notifications.latency.processingMs.ACCOUNT_HOLDER_PAYOUT.count")).isEqualTo(1L);
+        assertThat(metrics.get("histogram.notifications.latency.endToEndMs.ACCOUNT_HOLDER_PAYOUT.count")).isEqualTo(1L);
+        assertThat(metrics.get("gauge.notifications.backlog")).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCountFailuresByExceptionClass() {
+        notificationMetricsService.received(1L);
+        notificationMetricsService.started(1L, "TRANSFER_FUNDS");
+
+        notificationMetricsService.failed(1L, new IllegalStateException("failed"));
+
+        final Map<String, Number> metrics = getMetrics();
+        assertThat(metrics.get("counter.notifications.failures.IllegalStateException")).isEqualTo(1L);
+        assertThat(metrics.get("gauge.notifications.backlog")).isEqualTo(0);
+        assertThat(metrics.get("gauge.notifications.oldestUnprocessedAgeMs")).isEqualTo(0L);
+    }
+
+    @Test
+    public void shouldCalculatePercentilesOverRecordedSamples() {
+        for (long i = 1; i <= 100; i++) {
+            metricsService.record("test", i);
+        }
+
+        final Map<String, Number> metrics = getMetrics();
+        assertThat(metrics.get("histogram.test.count")).isEqualTo(100L);
+        assertThat(metrics.get("histogram.test.max")).isEqualTo(100L);
+        assertThat(metrics.get("histogram.test.p50")).isEqualTo(50L);
+        assertThat(metrics.get("histogram.test.p99")).isEqualTo(99L);
+    }
+
+    private Map<String, Number> getMetrics() {
+        return metricsService.metrics().stream().collect(Collectors.toMap(Metric::getName, Metric::getValue));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.repository.AdyenNotificationRepository;
+import com.google.common.collect.ImmutableList;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationRetentionServiceTest {
+
+    @InjectMocks
+    private NotificationRetentionService notificationRetentionService;
+
+    @Mock
+    private AdyenNotificationRepository adyenNotificationRepositoryMock;
+    @Mock
+    private ApplicationProperties applicationPropertiesMock;
+    @Mock
+    private MetricsService metricsServiceMock;
+
+    @Before
+    public void setup() {
+        when(applicationPropertiesMock.getNotificationRetentionDays()).thenReturn(30);
+        when(applicationPropertiesMock.getNotificationRetentionChunkSize()).thenReturn(2);
+    }
+
+    @Test
+    public void shouldPurgeInChunksUntilNothingIsLeft() {
+        final List<Long> firstChunk = ImmutableList.of(1L, 2L);
+        final List<Long> secondChunk = ImmutableList.of(3L);
+        when(adyenNotificationRepositoryMock.findProcessedIdsCreatedBefore(any(ZonedDateTime.class), any(Pageable.class))).thenReturn(firstChunk, secondChunk);
+        when(adyenNotificationRepositoryMock.sumStoredSizeByIdIn(firstChunk)).thenReturn(300L);
+        when(adyenNotificationRepositoryMock.sumStoredSizeByIdIn(secondChunk)).thenReturn(100L);
+        when(adyenNotificationRepositoryMock.deleteByIdIn(firstChunk)).thenReturn(2);
+        when(adyenNotificationRepositoryMock.deleteByIdIn(secondChunk)).thenReturn(1);
+
+        notificationRetentionService.purgeExpiredNotifications();
+
+        verify(adyenNotificationRepositoryMock, times(2)).findProcessedIdsCreatedBefore(any(ZonedDateTime.class), any(Pageable.class));
+        verify(adyenNotificationRepositoryMock).deleteByIdIn(firstChunk);
+        verify(adyenNotificationRepositoryMock).deleteByIdIn(secondChunk);
+        verify(metricsServiceMock).increment("notifications.retention.purgedRows", 3L);
+        verify(metricsServiceMock).increment("notifications.retention.purgedBytes", 400L);
+        verify(metricsServiceMock).submit(eq("notifications.retention.lastPurgeDurationMs"), anyLong());
+    }
+
+    @Test
+    public void shouldNotDeleteWhenNothingExpired() {
+        when(adyenNotificationRepositoryMock.findProcessedIdsCreatedBefore(any(ZonedDateTime.class), any(Pageable.class))).thenReturn(Collections.emptyList());
+
+        notificationRetentionService.purgeExpiredNotifications();
+
+        verify(adyenNotificationRepositoryMock, never()).deleteByIdIn(any());
+        verify(metricsServiceMock).increment("notifications.retention.purgedRows", 0L);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.MiraklVoucherEntry;
+import com.google.common.collect.ImmutableList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PayoutEngineTest {
+
+    @InjectMocks
+    private PayoutEngine payoutEngine;
+
+    @Mock
+    private ApplicationProperties applicationPropertiesMock;
+    @Mock
+    private MetricsService metricsServiceMock;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        setField(payoutEngine, "payoutExecutor", executor);
+        when(applicationPropertiesMock.getPayoutFundRequestsPerSecond()).thenReturn(1000d);
+        payoutEngine.createFundApiRateLimiter();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldKeepTheOrderOfEntriesPerShop() {
+        final List<MiraklVoucherEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            entries.add(voucherEntry("shop" + i % 5, "invoice" + i));
+        }
+        final Map<String, List<String>> paidOut = new ConcurrentHashMap<>();
+
+        final int failures = payoutEngine.run(entries, shopId -> entry -> {
+            paidOut.computeIfAbsent(entry.getShopId(), shopId -> Collections.synchronizedList(new ArrayList<>())).add(entry.getInvoiceNumber());
+            return true;
+        });
+
+        assertThat(failures).isEqualTo(0);
+        assertThat(paidOut).hasSize(5);
+        assertThat(paidOut.get("shop3")).containsExactly("invoice3", "invoice8", "invoice13", "invoice18", "invoice23", "invoice28", "invoice33", "invoice38", "invoice43", "invoice48");
+        verify(metricsServiceMock).increment("payout.run.entries", 50);
+        verify(metricsServiceMock).increment("payout.run.failures", 0);
+        verify(metricsServiceMock).record(eq("payout.run.duration"), anyLong());
+    }
+
+    @Test
+    public void shouldCountFailedEntries() {
+        final List<MiraklVoucherEntry> entries = ImmutableList.of(voucherEntry("shop1", "ok"), voucherEntry("shop1", "failed"), voucherEntry("shop2", "failed"));
+
+        final int failures = payoutEngine.run(entries, shopId -> entry -> "ok".equals(entry.getInvoiceNumber()));
+
+        assertThat(failures).isEqualTo(2);
+        verify(metricsServiceMock).increment("payout.run.failures", 2);
+    }
+
+    @Test
+    public void shouldSkipRemainingEntriesOfAShopWhenAPayoutThrows() {
+        final List<MiraklVoucherEntry> entries = ImmutableList.of(voucherEntry("shop1", "first"),
+                                                                  voucherEntry("shop1", "throws"),
+                                                                  voucherEntry("shop1", "last"),
+                                                                  voucherEntry("shop2", "other"));
+        final List<String> paidOut = Collections.synchronizedList(new ArrayList<>());
+
+        final int failures = payoutEngine.run(entries, shopId -> entry -> {
+            if ("throws".equals(entry.getInvoiceNumber())) {
+                throw new IllegalStateException("database down");
+            }
+            paidOut.add(entry.getInvoiceNumber());
+            return true;
+        });
+
+        assertThat(failures).isEqualTo(2);
+        assertThat(paidOut).containsOnly("first", "other");
+    }
+
+    @Test
+    public void shouldPrepareThePayoutOfEveryShopOnce() {
+        final List<MiraklVoucherEntry> entries = ImmutableList.of(voucherEntry("shop1", "1"), voucherEntry("shop2", "2"), voucherEntry("shop1", "3"));
+        final List<String> preparedShops = Collections.synchronizedList(new ArrayList<>());
+
+        final int failures = payoutEngine.run(entries, shopId -> {
+            preparedShops.add(shopId);
+            if ("shop2".equals(shopId)) {
+                throw new IllegalStateException("lookup failed");
+            }
+            return entry -> true;
+        });
+
+        assertThat(failures).isEqualTo(1);
+        assertThat(preparedShops).containsOnly("shop1", "shop2").hasSize(2);
+    }
+
+    private static MiraklVoucherEntry voucherEntry(final String shopId, final String invoiceNumber) {
+        final MiraklVoucherEntry miraklVoucherEntry = new MiraklVoucherEntry();
+        miraklVoucherEntry.setShopId(shopId);
+        miraklVoucherEntry.setInvoiceNumber(invoiceNumber);
+        return miraklVoucherEntry;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mock.web.MockMultipartFile;
+import com.adyen.mirakl.domain.PayoutJob;
+import com.adyen.mirakl.domain.enumeration.PayoutJobStatus;
+import com.adyen.mirakl.domain.enumeration.VoucherEntryStatus;
+import com.adyen.mirakl.repository.MiraklVoucherEntryRepository;
+import com.adyen.mirakl.repository.PayoutJobRepository;
+import com.adyen.mirakl.service.dto.PayoutJobDTO;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PayoutJobServiceTest {
+
+    @InjectMocks
+    private PayoutJobService payoutJobService;
+
+    @Mock
+    private PayoutJobRepository payoutJobRepositoryMock;
+    @Mock
+    private MiraklVoucherEntryRepository miraklVoucherEntryRepositoryMock;
+    @Mock
+    private PayoutService payoutServiceMock;
+    @Mock
+    private MetricsService metricsServiceMock;
+
+    private PayoutJob payoutJob;
+
+    @Before
+    public void setUp() {
+        setField(payoutJobService, "payoutJobExecutor", MoreExecutors.directExecutor());
+        payoutJob = new PayoutJob().fileName("vouchers.csv").status(PayoutJobStatus.RECEIVED);
+        payoutJob.setId(3L);
+        when(payoutJobRepositoryMock.save(any(PayoutJob.class))).thenAnswer(invocation -> invocation.getArguments()[0]);
+        when(payoutJobRepositoryMock.findOne(3L)).thenReturn(payoutJob);
+    }
+
+    @Test
+    public void shouldStoreTheEntriesOfTheFileThenPayThemOut() throws Exception {
+        when(payoutServiceMock.parseMiraklCsv(any(Reader.class), eq(3L))).thenReturn(10);
+        when(miraklVoucherEntryRepositoryMock.countByStatusForPayoutJob(3L)).thenReturn(ImmutableList.<Object[]>of(new Object[] { VoucherEntryStatus.FAILED, 2L }));
+
+        payoutJobService.run(3L, voucherFile());
+
+        verify(payoutServiceMock).processMiraklVoucherEntries();
+        assertThat(payoutJob.getStatus()).isEqualTo(PayoutJobStatus.DONE);
+        assertThat(payoutJob.getRowsParsed()).isEqualTo(10);
+        assertThat(payoutJob.getPayoutsSubmitted()).isEqualTo(8);
+        assertThat(payoutJob.getPayoutsFailed()).isEqualTo(2);
+        assertThat(payoutJob.getFinishedAt()).isNotNull();
+    }
+
+    @Test
+    public void shouldFailJobWhoseFileCannotBeRead() throws Exception {
+        when(payoutServiceMock.parseMiraklCsv(any(Reader.class), eq(3L))).thenThrow(new IllegalArgumentException("Payment voucher file has no column shop-id"));
+        final File file = voucherFile();
+
+        payoutJobService.run(3L, file);
+
+        verify(payoutServiceMock, never()).processMiraklVoucherEntries();
+        assertThat(payoutJob.getStatus()).isEqualTo(PayoutJobStatus.FAILED);
+        assertThat(payoutJob.getError()).contains("no column shop-id");
+        assertThat(file).doesNotExist();
+    }
+
+    @Test
+    public void shouldFailJobWhosePayoutRunFails() throws Exception {
+        payoutJob.status(PayoutJobStatus.PAYING_OUT).rowsParsed(10).payoutStartedAt(ZonedDateTime.now());
+        doThrow(new IllegalStateException("database down")).when(payoutServiceMock).processMiraklVoucherEntries();
+
+        payoutJobService.payOut(payoutJob);
+
+        assertThat(payoutJob.getStatus()).isEqualTo(PayoutJobStatus.FAILED);
+        assertThat(payoutJob.getError()).contains("database down");
+    }
+
+    @Test
+    public void shouldReportProgressOfRunningJobFromItsEntries() {
+        payoutJob.status(PayoutJobStatus.PAYING_OUT).rowsParsed(10).payoutStartedAt(ZonedDateTime.now().minusSeconds(2));
+        when(miraklVoucherEntryRepositoryMock.countByStatusForPayoutJob(3L)).thenReturn(ImmutableList.of(new Object[] { VoucherEntryStatus.RECEIVED, 4L },
+                                                                                                         new Object[] { VoucherEntryStatus.SUBSCRIPTION_DONE, 1L },
+                                                                                                         new Object[] { VoucherEntryStatus.PAYOUT_SUBMITTED, 4L },
+                                                                                                         new Object[] { VoucherEntryStatus.FAILED, 1L }));
+
+        final PayoutJobDTO progress = payoutJobService.getProgress(3L).get();
+
+        assertThat(progress.getStatus()).isEqualTo(PayoutJobStatus.PAYING_OUT);
+        assertThat(progress.getRowsParsed()).isEqualTo(10);
+        assertThat(progress.getRemaining()).isEqualTo(5);
+        assertThat(progress.getPayoutsFailed()).isEqualTo(1);
+        assertThat(progress.getPayoutsSubmitted()).isEqualTo(4);
+        assertThat(progress.getPayoutsPerSecond()).isGreaterThan(0d).isLessThanOrEqualTo(2.5d);
+    }
+
+    @Test
+    public void shouldCountStoredEntriesWhileParsing() {
+        payoutJob.status(PayoutJobStatus.PARSING);
+        when(miraklVoucherEntryRepositoryMock.countByStatusForPayoutJob(3L)).thenReturn(ImmutableList.<Object[]>of(new Object[] { VoucherEntryStatus.RECEIVED, 500L }));
+
+        final PayoutJobDTO progress = payoutJobService.getProgress(3L).get();
+
+        assertThat(progress.getRowsParsed()).isEqualTo(500);
+        assertThat(progress.getRemaining()).isEqualTo(500);
+        assertThat(progress.getPayoutsSubmitted()).isEqualTo(0);
+        assertThat(progress.getPayoutsPerSecond()).isNull();
+    }
+
+    @Test
+    public void shouldQueueUploadedFileAndReturnStraightAway() throws Exception {
+        final List<Runnable> queued = new ArrayList<>();
+        setField(payoutJobService, "payoutJobExecutor", (Executor) queued::add);
+        when(payoutJobRepositoryMock.save(any(PayoutJob.class))).thenAnswer(invocation -> {
+            final PayoutJob saved = (PayoutJob) invocation.getArguments()[0];
+            if (saved.getId() == null) {
+                saved.setId(4L);
+            }
+            return saved;
+        });
+
+        final PayoutJob submitted = payoutJobService.submit(new MockMultipartFile("file", "vouchers.csv", "text/plain", "shop-id;".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(submitted.getId()).isEqualTo(4L);
+        assertThat(submitted.getStatus()).isEqualTo(PayoutJobStatus.RECEIVED);
+        assertThat(submitted.getFileName()).isEqualTo("vouchers.csv");
+        verify(payoutServiceMock, never()).parseMiraklCsv(any(Reader.class), any());
+        assertThat(queued).hasSize(1);
+
+        when(payoutJobRepositoryMock.findOne(4L)).thenReturn(submitted);
+        queued.get(0).run();
+        verify(payoutServiceMock).parseMiraklCsv(any(Reader.class), eq(4L));
+    }
+
+    @Test
+    public void shouldResumeJobsInterruptedWhilePayingOutAndFailTheOthers() {
+        final PayoutJob parsing = new PayoutJob().status(PayoutJobStatus.PARSING);
+        payoutJob.status(PayoutJobStatus.PAYING_OUT).rowsParsed(1).payoutStartedAt(ZonedDateTime.now());
+        when(payoutJobRepositoryMock.findByStatusIn(any())).thenReturn(ImmutableList.of(parsing, payoutJob));
+        when(miraklVoucherEntryRepositoryMock.countByStatusForPayoutJob(3L)).thenReturn(ImmutableList.of());
+
+        payoutJobService.resumeInterruptedJobs();
+
+        assertThat(parsing.getStatus()).isEqualTo(PayoutJobStatus.FAILED);
+        verify(payoutServiceMock).processMiraklVoucherEntries();
+        assertThat(payoutJob.getStatus()).isEqualTo(PayoutJobStatus.DONE);
+    }
+
+    private static File voucherFile() throws IOException {
+        final File file = File.createTempFile("payout-job-test", ".csv");
+        Files.write(file.toPath(), "shop-id;\n".getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
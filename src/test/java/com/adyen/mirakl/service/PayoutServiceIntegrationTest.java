@@ -23,6 +23,7 @@
 package com.adyen.mirakl.service;
 
 
+import java.io.Reader;
 import java.net.URL;
 import java.util.List;
 import org.assertj.core.api.Assertions;
@@ -91,8 +92,9 @@ public class PayoutServiceIntegrationTest {
     @Test
     public void testParseMiraklCsv() throws Exception {
         URL url = Resources.getResource("paymentvouchers/PaymentVoucher_PayoutShop01.csv");
-        final String csvFile = Resources.toString(url, Charsets.UTF_8);
-        payoutService.parseMiraklCsv(csvFile);
+        try (Reader csvFile = Resources.asCharSource(url, Charsets.UTF_8).openStream()) {
+            assertEquals(1, payoutService.parseMiraklCsv(csvFile));
+        }
 
         List<MiraklVoucherEntry> all = miraklVoucherEntryRepository.findAll();
         assertEquals(1, all.size());
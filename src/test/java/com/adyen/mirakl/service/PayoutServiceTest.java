@@ -22,16 +22,25 @@
 
 package com.adyen.mirakl.service;
 
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import com.adyen.mirakl.domain.AdyenPayoutError;
+import com.adyen.mirakl.domain.CommissionTotal;
 import com.adyen.mirakl.domain.MiraklVoucherEntry;
+import com.adyen.mirakl.domain.enumeration.VoucherEntryStatus;
 import com.adyen.mirakl.repository.AdyenPayoutErrorRepository;
+import com.adyen.mirakl.repository.MiraklVoucherEntryRepository;
 import com.adyen.model.marketpay.AccountHolderDetails;
 import com.adyen.model.marketpay.BankAccountDetail;
 import com.adyen.model.marketpay.GetAccountHolderRequest;
@@ -42,12 +51,19 @@ import com.adyen.model.marketpay.TransferFundsRequest;
 import com.adyen.service.Account;
 import com.adyen.service.Fund;
 import com.adyen.service.exception.ApiException;
+import com.google.common.collect.ImmutableList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 @RunWith(MockitoJUnitRunner.class)
 public class PayoutServiceTest {
@@ -64,6 +80,15 @@ public class PayoutServiceTest {
     @Mock
     private AdyenPayoutErrorRepository adyenPayoutErrorRepository;
 
+    @Mock
+    private MiraklVoucherEntryRepository miraklVoucherEntryRepositoryMock;
+
+    @Mock
+    private PayoutEngine payoutEngineMock;
+
+    @Mock
+    private CommissionService commissionServiceMock;
+
     @Captor
     private ArgumentCaptor<GetAccountHolderRequest> accountHolderRequestCaptor;
 
@@ -73,6 +98,9 @@ public class PayoutServiceTest {
     @Captor
     private ArgumentCaptor<PayoutAccountHolderRequest> payoutAccountHolderRequestCaptor;
 
+    @Captor
+    private ArgumentCaptor<List<MiraklVoucherEntry>> voucherEntriesCaptor;
+
     @Test
     public void testGetBankAccountUUID() {
         GetAccountHolderResponse getAccountHolderResponse = getResponseWithBankDetails();
@@ -107,6 +135,258 @@ public class PayoutServiceTest {
         assertEquals("1111", request.getMerchantReference());
     }
 
+    @Test
+    public void shouldInsertVoucherEntriesInBatches() throws Exception {
+        setField(payoutService, "voucherInsertBatchSize", 2);
+        final String csv = "currency-iso-code;shop-id;shop-name;transfer-amount;invoice-number;payment-info-ibantype-iban;subscription-amount;total-charged-amount;total-charged-amount-vat\n"
+            + "EUR;1;shop 1;10.25;1111;GB29NWBK60161331926819;0;1.55;0.31\n"
+            + "EUR;2;shop 2;20.50;2222;GB26TEST40051512347366;5;2.00;0.40\n"
+            + "GBP;3;shop 3;30.75;3333;GB26MIDL40051512345674;0;0;0\n";
+
+        final int stored = payoutService.parseMiraklCsv(new StringReader(csv));
+
+        assertEquals(3, stored);
+        verify(miraklVoucherEntryRepositoryMock, times(2)).insertAll(voucherEntriesCaptor.capture());
+        final List<MiraklVoucherEntry> firstBatch = voucherEntriesCaptor.getAllValues().get(0);
+        final List<MiraklVoucherEntry> secondBatch = voucherEntriesCaptor.getAllValues().get(1);
+        assertEquals(2, firstBatch.size());
+        assertEquals(1, secondBatch.size());
+        final MiraklVoucherEntry entry = firstBatch.get(1);
+        assertEquals("2", entry.getShopId());
+        assertEquals("shop 2", entry.getShopName());
+        assertEquals("20.50", entry.getTransferAmount());
+        assertEquals("EUR", entry.getCurrencyIsoCode());
+        assertEquals("2222", entry.getInvoiceNumber());
+        assertEquals("GB26TEST40051512347366", entry.getIban());
+        assertEquals("5", entry.getSubscriptionAmount());
+        assertEquals("2.00", entry.getTotalChargedAmount());
+        assertEquals("0.40", entry.getTotalChargedAmountVat());
+        assertEquals("GBP", secondBatch.get(0).getCurrencyIsoCode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectVoucherFileWithoutRequiredColumn() throws Exception {
+        setField(payoutService, "voucherInsertBatchSize", 2);
+
+        payoutService.parseMiraklCsv(new StringReader("shop-id;shop-name\n1;shop 1\n"));
+    }
+
+    @Test
+    public void shouldStoreStatusBeforeAndAfterEveryCall() throws Exception {
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getResponseWithBankDetails());
+        PayoutAccountHolderResponse payoutAccountHolderResponse = new PayoutAccountHolderResponse();
+        payoutAccountHolderResponse.setPspReference("pspReference");
+        when(adyenFundServiceMock.payoutAccountHolder(any())).thenReturn(payoutAccountHolderResponse);
+        MiraklVoucherEntry miraklVoucherEntry = voucherEntry(7L, VoucherEntryStatus.RECEIVED);
+
+        assertTrue(payOut(miraklVoucherEntry));
+
+        InOrder inOrder = inOrder(adyenFundServiceMock, miraklVoucherEntryRepositoryMock);
+        inOrder.verify(miraklVoucherEntryRepositoryMock).updateStatus(7L, VoucherEntryStatus.SUBSCRIPTION_IN_FLIGHT);
+        inOrder.verify(adyenFundServiceMock).transferFunds(any());
+        inOrder.verify(miraklVoucherEntryRepositoryMock).updateStatus(7L, VoucherEntryStatus.SUBSCRIPTION_DONE);
+        inOrder.verify(miraklVoucherEntryRepositoryMock).updateStatus(7L, VoucherEntryStatus.PAYOUT_IN_FLIGHT);
+        inOrder.verify(adyenFundServiceMock).payoutAccountHolder(any());
+        inOrder.verify(miraklVoucherEntryRepositoryMock).updateStatus(7L, VoucherEntryStatus.PAYOUT_SUBMITTED);
+        assertEquals(VoucherEntryStatus.PAYOUT_SUBMITTED, miraklVoucherEntry.getStatus());
+    }
+
+    @Test
+    public void shouldNotRepeatSubscriptionTransferOfResumedEntry() throws Exception {
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getResponseWithBankDetails());
+        when(adyenFundServiceMock.payoutAccountHolder(any())).thenReturn(new PayoutAccountHolderResponse());
+
+        assertTrue(payOut(voucherEntry(7L, VoucherEntryStatus.SUBSCRIPTION_DONE)));
+
+        verify(adyenFundServiceMock, never()).transferFunds(any());
+        verify(adyenFundServiceMock).payoutAccountHolder(any());
+        verify(miraklVoucherEntryRepositoryMock).updateStatus(7L, VoucherEntryStatus.PAYOUT_SUBMITTED);
+    }
+
+    @Test
+    public void shouldMarkEntryFailedWhenPayoutFails() throws Exception {
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getResponseWithBankDetails());
+        when(adyenFundServiceMock.payoutAccountHolder(any())).thenThrow(new ApiException("error", 403));
+        final AdyenPayoutError adyenPayoutError = new AdyenPayoutError();
+        adyenPayoutError.setId(3L);
+        when(adyenPayoutErrorRepository.save(any(AdyenPayoutError.class))).thenReturn(adyenPayoutError);
+
+        assertFalse(payOut(voucherEntry(7L, VoucherEntryStatus.SUBSCRIPTION_DONE)));
+
+        verify(adyenPayoutErrorRepository).save(any(AdyenPayoutError.class));
+        verify(miraklVoucherEntryRepositoryMock).updateStatusAndPayoutError(7L, VoucherEntryStatus.FAILED, 3L);
+    }
+
+    @Test
+    public void shouldOnlyResumeUnfinishedStepsAndFinishPaidOutEntries() {
+        setField(payoutService, "payoutToLiableAccountByVoucher", false);
+        MiraklVoucherEntry received = voucherEntry(1L, VoucherEntryStatus.RECEIVED);
+        MiraklVoucherEntry payoutSubmitted = voucherEntry(2L, VoucherEntryStatus.PAYOUT_SUBMITTED);
+        when(miraklVoucherEntryRepositoryMock.findByStatusInOrderByIdAsc(ImmutableList.of(VoucherEntryStatus.RECEIVED,
+                                                                                          VoucherEntryStatus.SUBSCRIPTION_DONE,
+                                                                                          VoucherEntryStatus.PAYOUT_SUBMITTED))).thenReturn(ImmutableList.of(received, payoutSubmitted));
+
+        payoutService.processMiraklVoucherEntries();
+
+        verify(payoutEngineMock).run(eq(ImmutableList.of(received)), any());
+        verify(miraklVoucherEntryRepositoryMock).updateStatusByIdIn(ImmutableList.of(2L), VoucherEntryStatus.DONE);
+        verify(miraklVoucherEntryRepositoryMock).deleteByStatus(VoucherEntryStatus.DONE);
+    }
+
+    @Test
+    public void shouldMarkInterruptedEntriesUnconfirmedAndRemoveResolvedFailures() {
+        setField(payoutService, "payoutToLiableAccountByVoucher", false);
+        when(miraklVoucherEntryRepositoryMock.findByStatusInOrderByIdAsc(ImmutableList.of(VoucherEntryStatus.SUBSCRIPTION_IN_FLIGHT,
+                                                                                          VoucherEntryStatus.PAYOUT_IN_FLIGHT))).thenReturn(ImmutableList.of(voucherEntry(4L, VoucherEntryStatus.PAYOUT_IN_FLIGHT)));
+
+        payoutService.processMiraklVoucherEntries();
+
+        verify(miraklVoucherEntryRepositoryMock).updateStatusByIdIn(ImmutableList.of(4L), VoucherEntryStatus.UNCONFIRMED);
+        verify(miraklVoucherEntryRepositoryMock).deleteResolvedByStatus(VoucherEntryStatus.FAILED);
+        verify(payoutEngineMock, never()).run(any(), any());
+        verify(adyenFundServiceMock, never()).payoutAccountHolder(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldLookUpAccountHolderOncePerShopAndRun() throws Exception {
+        setField(payoutService, "payoutToLiableAccountByVoucher", false);
+        final List<MiraklVoucherEntry> entries = ImmutableList.of(voucherEntry(1L, VoucherEntryStatus.RECEIVED), voucherEntry(2L, VoucherEntryStatus.RECEIVED));
+        when(miraklVoucherEntryRepositoryMock.findByStatusInOrderByIdAsc(ImmutableList.of(VoucherEntryStatus.RECEIVED,
+                                                                                          VoucherEntryStatus.SUBSCRIPTION_DONE,
+                                                                                          VoucherEntryStatus.PAYOUT_SUBMITTED))).thenReturn(entries);
+        when(payoutEngineMock.run(eq(entries), any())).thenAnswer(invocation -> {
+            final Predicate<MiraklVoucherEntry> payout = ((Function<String, Predicate<MiraklVoucherEntry>>) invocation.getArguments()[1]).apply("shop-id");
+            entries.forEach(payout::test);
+            return 0;
+        });
+        when(adyenAccountServiceMock.getAccountHolder(accountHolderRequestCaptor.capture())).thenReturn(getResponseWithBankDetails());
+        when(adyenFundServiceMock.payoutAccountHolder(any())).thenReturn(new PayoutAccountHolderResponse());
+
+        payoutService.processMiraklVoucherEntries();
+
+        verify(adyenAccountServiceMock).getAccountHolder(any());
+        assertEquals("shop-id", accountHolderRequestCaptor.getValue().getAccountHolderCode());
+        verify(adyenFundServiceMock, times(2)).payoutAccountHolder(any());
+        verify(miraklVoucherEntryRepositoryMock).updateStatusByIdIn(ImmutableList.of(1L, 2L), VoucherEntryStatus.DONE);
+    }
+
+    @Test
+    public void shouldFailEntriesOfShopWithoutAccountHolder() throws Exception {
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenThrow(new ApiException("not found", 422));
+
+        assertFalse(payOut(voucherEntry(7L, VoucherEntryStatus.RECEIVED)));
+
+        verify(adyenFundServiceMock, never()).transferFunds(any());
+        verify(adyenFundServiceMock, never()).payoutAccountHolder(any());
+        verify(miraklVoucherEntryRepositoryMock).updateStatusAndPayoutError(7L, VoucherEntryStatus.FAILED, null);
+    }
+
+    @Test
+    public void shouldResolveLiableAccountHolderOnceUntilACommissionPayoutFails() throws Exception {
+        setField(payoutService, "payoutToLiableAccountByVoucher", true);
+        setField(payoutService, "liableAccountCode", "liableAccountCode");
+        GetAccountHolderResponse liableAccountHolder = new GetAccountHolderResponse();
+        liableAccountHolder.setAccountHolderCode("liableAccountHolderCode");
+        when(adyenAccountServiceMock.getAccountHolder(accountHolderRequestCaptor.capture())).thenReturn(liableAccountHolder);
+        when(adyenFundServiceMock.payoutAccountHolder(payoutAccountHolderRequestCaptor.capture())).thenReturn(new PayoutAccountHolderResponse())
+                                                                                                  .thenThrow(new ApiException("error", 403))
+                                                                                                  .thenReturn(new PayoutAccountHolderResponse());
+
+        payoutService.resolveLiableAccountHolder();
+        payoutService.processCommissions(commissionTotal("EUR", "10"));
+        verify(adyenAccountServiceMock).getAccountHolder(any());
+        assertEquals("liableAccountCode", accountHolderRequestCaptor.getValue().getAccountCode());
+        assertEquals("liableAccountHolderCode", payoutAccountHolderRequestCaptor.getValue().getAccountHolderCode());
+
+        payoutService.processCommissions(commissionTotal("EUR", "10"));
+        verify(adyenAccountServiceMock).getAccountHolder(any());
+
+        payoutService.processCommissions(commissionTotal("EUR", "10"));
+        verify(adyenAccountServiceMock, times(2)).getAccountHolder(any());
+    }
+
+    @Test
+    public void shouldPayOutCommissionOncePerCurrencyAfterCountingAllEntries() throws Exception {
+        setField(payoutService, "payoutToLiableAccountByVoucher", true);
+        setField(payoutService, "liableAccountCode", "liableAccountCode");
+        when(miraklVoucherEntryRepositoryMock.findByStatusInOrderByIdAsc(ImmutableList.of(VoucherEntryStatus.RECEIVED,
+                                                                                          VoucherEntryStatus.SUBSCRIPTION_DONE,
+                                                                                          VoucherEntryStatus.PAYOUT_SUBMITTED))).thenReturn(ImmutableList.of(voucherEntry(1L, VoucherEntryStatus.PAYOUT_SUBMITTED)));
+        when(commissionServiceMock.countCommissionPage()).thenReturn(500, 20, 0);
+        when(commissionServiceMock.getTotals()).thenReturn(ImmutableList.of(commissionTotal("EUR", "0.300000"), commissionTotal("GBP", "12.340000"), commissionTotal("USD", "0")));
+        GetAccountHolderResponse liableAccountHolder = new GetAccountHolderResponse();
+        liableAccountHolder.setAccountHolderCode("liableAccountHolderCode");
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(liableAccountHolder);
+        when(adyenFundServiceMock.payoutAccountHolder(payoutAccountHolderRequestCaptor.capture())).thenReturn(new PayoutAccountHolderResponse());
+
+        payoutService.processMiraklVoucherEntries();
+
+        verify(commissionServiceMock, times(3)).countCommissionPage();
+        final List<PayoutAccountHolderRequest> commissionPayouts = payoutAccountHolderRequestCaptor.getAllValues();
+        assertEquals(2, commissionPayouts.size());
+        assertEquals("EUR", commissionPayouts.get(0).getAmount().getCurrency());
+        assertEquals(30L, (long) commissionPayouts.get(0).getAmount().getValue());
+        assertEquals("GBP", commissionPayouts.get(1).getAmount().getCurrency());
+        assertEquals(1234L, (long) commissionPayouts.get(1).getAmount().getValue());
+        InOrder inOrder = inOrder(commissionServiceMock, adyenFundServiceMock, miraklVoucherEntryRepositoryMock);
+        inOrder.verify(commissionServiceMock).getTotals();
+        inOrder.verify(adyenFundServiceMock).payoutAccountHolder(any());
+        inOrder.verify(commissionServiceMock).settle("EUR", new BigDecimal("0.300000"), null);
+        inOrder.verify(adyenFundServiceMock).payoutAccountHolder(any());
+        inOrder.verify(commissionServiceMock).settle("GBP", new BigDecimal("12.340000"), null);
+        inOrder.verify(miraklVoucherEntryRepositoryMock).deleteByStatus(VoucherEntryStatus.DONE);
+        verify(commissionServiceMock, never()).settle(eq("USD"), any(), any());
+    }
+
+    @Test
+    public void shouldSettleFailedCommissionPayoutWithItsRetry() throws Exception {
+        setField(payoutService, "liableAccountCode", "liableAccountCode");
+        GetAccountHolderResponse liableAccountHolder = new GetAccountHolderResponse();
+        liableAccountHolder.setAccountHolderCode("liableAccountHolderCode");
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(liableAccountHolder);
+        when(adyenFundServiceMock.payoutAccountHolder(any())).thenThrow(new ApiException("error", 403));
+
+        payoutService.processCommissions(commissionTotal("EUR", "10"));
+
+        verify(commissionServiceMock).settle(eq("EUR"), eq(new BigDecimal("10")), any(AdyenPayoutError.class));
+        verify(adyenPayoutErrorRepository, never()).save(any(AdyenPayoutError.class));
+    }
+
+    @Test
+    public void shouldKeepCommissionTotalWhenThePayoutWasNotMade() throws Exception {
+        setField(payoutService, "liableAccountCode", "liableAccountCode");
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenThrow(new ApiException("error", 403));
+
+        payoutService.processCommissions(commissionTotal("EUR", "10"));
+
+        verify(adyenFundServiceMock, never()).payoutAccountHolder(any());
+        verify(commissionServiceMock, never()).settle(any(), any(), any());
+    }
+
+    /**
+     * Pays out an entry the way a run does, through the payout of its shop
+     */
+    private boolean payOut(MiraklVoucherEntry miraklVoucherEntry) {
+        return payoutService.shopPayout(miraklVoucherEntry.getShopId()).test(miraklVoucherEntry);
+    }
+
+    private static CommissionTotal commissionTotal(String currencyIsoCode, String amount) {
+        return new CommissionTotal().currencyIsoCode(currencyIsoCode).amount(new BigDecimal(amount));
+    }
+
+    private static MiraklVoucherEntry voucherEntry(Long id, VoucherEntryStatus status) {
+        MiraklVoucherEntry miraklVoucherEntry = new MiraklVoucherEntry();
+        miraklVoucherEntry.setId(id);
+        miraklVoucherEntry.setStatus(status);
+        miraklVoucherEntry.setShopId("shop-id");
+        miraklVoucherEntry.setTransferAmount("10.00");
+        miraklVoucherEntry.setSubscriptionAmount("20.00");
+        miraklVoucherEntry.setCurrencyIsoCode("EUR");
+        miraklVoucherEntry.setIban("GB29NWBK60161331926819");
+        return miraklVoucherEntry;
+    }
+
     public GetAccountHolderResponse getResponseWithBankDetails() {
         BankAccountDetail bankAccountDetail = new BankAccountDetail();
         bankAccountDetail.setBankAccountUUID("7ea30ecb-8ec9-4012-9c6c-c1abf7c4f90a");
@@ -158,7 +438,7 @@ public class PayoutServiceTest {
         miraklVoucherEntry.setShopName("shop-name");
         miraklVoucherEntry.setSubscriptionAmount("0.00");
 
-        payoutService.processMiraklVoucherEntry(miraklVoucherEntry);
+        payOut(miraklVoucherEntry);
 
         verify(adyenFundServiceMock, never()).transferFunds(any());
 
@@ -167,7 +447,7 @@ public class PayoutServiceTest {
 
         miraklVoucherEntry.setSubscriptionAmount("20.00");
 
-        payoutService.processMiraklVoucherEntry(miraklVoucherEntry);
+        payOut(miraklVoucherEntry);
         payoutAccountHolderRequest = payoutAccountHolderRequestCaptor.getValue();
         assertEquals(1000L, payoutAccountHolderRequest.getAmount().getValue().longValue());
 
@@ -185,7 +465,7 @@ public class PayoutServiceTest {
         miraklVoucherEntry.setIban("GB29NWBK60161331926819");
         miraklVoucherEntry.setTransferAmount("10.00");
         miraklVoucherEntry.setCurrencyIsoCode("EUR");
-        payoutService.processMiraklVoucherEntry(miraklVoucherEntry);
+        payOut(miraklVoucherEntry);
 
         // We shouldn't retry on HTTP 500 (Internal Server Error) from Adyen
         verify(adyenPayoutErrorRepository, never()).save(any(AdyenPayoutError.class));
@@ -0,0 +1,169 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.google.common.collect.ImmutableList;
+import com.mirakl.client.mmp.domain.common.MiraklAdditionalFieldValue;
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+import com.mirakl.client.mmp.domain.shop.MiraklShops;
+import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
+import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PhotoIdTypeCacheTest {
+
+    @InjectMocks
+    private PhotoIdTypeCache photoIdTypeCache;
+
+    @Mock
+    private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClientMock;
+    @Mock
+    private ApplicationProperties applicationPropertiesMock;
+    @Mock
+    private MetricsService metricsServiceMock;
+    @Mock
+    private MiraklShop miraklShop1, miraklShop2;
+
+    @Captor
+    private ArgumentCaptor<MiraklGetShopsRequest> miraklGetShopsRequestCaptor;
+
+    @Before
+    public void setUp() {
+        when(applicationPropertiesMock.getPhotoIdTypeCacheTtlSeconds()).thenReturn(300);
+        when(applicationPropertiesMock.getPhotoIdTypeCacheMaxShops()).thenReturn(10);
+        photoIdTypeCache.init();
+        when(miraklShop1.getId()).thenReturn("shop1");
+        when(miraklShop1.getAdditionalFieldValues()).thenReturn(ImmutableList.of(field("adyen-individual-photoidtype", "PASSPORT"), field("adyen-legalentity", "Individual")));
+        when(miraklShop2.getId()).thenReturn("shop2");
+        when(miraklShop2.getAdditionalFieldValues()).thenReturn(ImmutableList.of(field("adyen-ubo1-photoidtype", "ID_CARD")));
+    }
+
+    @Test
+    public void shouldFetchAllShopsOfABatchAtOnce() {
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(shops(2L, miraklShop1, miraklShop2));
+
+        photoIdTypeCache.prefetch(ImmutableList.of("shop1", "shop2", "shop1"));
+
+        assertThat(photoIdTypeCache.getPhotoIdType("shop1", "adyen-individual-photoidtype")).isEqualTo("PASSPORT");
+        assertThat(photoIdTypeCache.getPhotoIdType("shop1", "adyen-legalentity")).isNull();
+        assertThat(photoIdTypeCache.getPhotoIdType("shop2", "ADYEN-UBO1-PHOTOIDTYPE")).isEqualTo("ID_CARD");
+        assertThat(photoIdTypeCache.getPhotoIdType("shop2", "adyen-ubo2-photoidtype")).isNull();
+        assertThat(miraklGetShopsRequestCaptor.getAllValues()).hasSize(1);
+        assertThat(miraklGetShopsRequestCaptor.getValue().getShopIds()).containsOnly("shop1", "shop2");
+    }
+
+    @Test
+    public void shouldFollowPagesAndOnlyRequestShopsNotCachedYet() {
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(shops(2L, miraklShop1))
+                                                                                                           .thenReturn(shops(2L, miraklShop2))
+                                                                                                           .thenReturn(shops(0L));
+
+        photoIdTypeCache.prefetch(ImmutableList.of("shop1", "shop2"));
+        photoIdTypeCache.prefetch(ImmutableList.of("shop1", "shop2", "shop3"));
+        assertThat(photoIdTypeCache.getPhotoIdType("shop3", "adyen-individual-photoidtype")).isNull();
+
+        final List<MiraklGetShopsRequest> requests = miraklGetShopsRequestCaptor.getAllValues();
+        assertThat(requests).hasSize(3);
+        assertThat(requests.get(0).getOffset()).isEqualTo(0);
+        assertThat(requests.get(1).getOffset()).isEqualTo(1);
+        assertThat(requests.get(2).getShopIds()).containsOnly("shop3");
+    }
+
+    @Test
+    public void shouldFetchAgainOnceExpired() {
+        when(applicationPropertiesMock.getPhotoIdTypeCacheTtlSeconds()).thenReturn(0);
+        photoIdTypeCache.init();
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(any(MiraklGetShopsRequest.class))).thenReturn(shops(1L, miraklShop1));
+
+        photoIdTypeCache.getPhotoIdType("shop1", "adyen-individual-photoidtype");
+        photoIdTypeCache.getPhotoIdType("shop1", "adyen-individual-photoidtype");
+
+        verify(miraklMarketplacePlatformOperatorApiClientMock, times(2)).getShops(any(MiraklGetShopsRequest.class));
+    }
+
+    @Test
+    public void shouldUseRefreshedShopWithoutCallingMirakl() {
+        photoIdTypeCache.refresh(miraklShop2);
+
+        assertThat(photoIdTypeCache.getPhotoIdType("shop2", "adyen-ubo1-photoidtype")).isEqualTo("ID_CARD");
+        verify(miraklMarketplacePlatformOperatorApiClientMock, times(0)).getShops(any(MiraklGetShopsRequest.class));
+    }
+
+    @Test
+    public void shouldFetchAgainOnceEvicted() {
+        when(applicationPropertiesMock.getPhotoIdTypeCacheMaxShops()).thenReturn(1);
+        photoIdTypeCache.init();
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(any(MiraklGetShopsRequest.class))).thenReturn(shops(1L, miraklShop1));
+
+        photoIdTypeCache.getPhotoIdType("shop1", "adyen-individual-photoidtype");
+        photoIdTypeCache.refresh(miraklShop2);
+        assertThat(photoIdTypeCache.getPhotoIdType("shop1", "adyen-individual-photoidtype")).isEqualTo("PASSPORT");
+
+        verify(miraklMarketplacePlatformOperatorApiClientMock, times(2)).getShops(any(MiraklGetShopsRequest.class));
+    }
+
+    @Test
+    public void shouldHandOutTheWholeBatchWhenItIsLargerThanTheCache() {
+        when(applicationPropertiesMock.getPhotoIdTypeCacheMaxShops()).thenReturn(1);
+        photoIdTypeCache.init();
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(any(MiraklGetShopsRequest.class))).thenReturn(shops(2L, miraklShop1, miraklShop2));
+
+        final Map<String, Map<String, String>> photoIdTypes = photoIdTypeCache.prefetch(ImmutableList.of("shop1", "shop2", "shop3"));
+
+        assertThat(photoIdTypes).containsOnlyKeys("shop1", "shop2", "shop3");
+        assertThat(photoIdTypes.get("shop1")).containsEntry("adyen-individual-photoidtype", "PASSPORT");
+        assertThat(photoIdTypes.get("shop2")).containsEntry("adyen-ubo1-photoidtype", "ID_CARD");
+        assertThat(photoIdTypes.get("shop3")).isEmpty();
+        verify(miraklMarketplacePlatformOperatorApiClientMock, times(1)).getShops(any(MiraklGetShopsRequest.class));
+    }
+
+    private static MiraklShops shops(Long totalCount, MiraklShop... shops) {
+        MiraklShops miraklShops = new MiraklShops();
+        miraklShops.setShops(ImmutableList.copyOf(shops));
+        miraklShops.setTotalCount(totalCount);
+        return miraklShops;
+    }
+
+    private static MiraklAdditionalFieldValue field(String code, String value) {
+        MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue field = new MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue();
+        field.setCode(code);
+        field.setValue(value);
+        return field;
+    }
+}
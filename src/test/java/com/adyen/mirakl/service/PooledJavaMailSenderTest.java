@@ -0,0 +1,133 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mail.MailSendException;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PooledJavaMailSenderTest {
+
+    private final Deque<Transport> transports = new ArrayDeque<>();
+    private MetricsService metricsService;
+    private PooledJavaMailSender sender;
+
+    @Before
+    public void setup() {
+        metricsService = new MetricsService();
+        sender = new PooledJavaMailSender(1, 2, 60, metricsService) {
+            @Override
+            protected Transport connectTransport() {
+                return transports.removeFirst();
+            }
+        };
+    }
+
+    @Test
+    public void shouldReuseSessionForNextMessages() throws Exception {
+        final Transport transport = connectedTransport();
+
+        sender.send(message("a@example.com"));
+        sender.send(message("b@example.com"));
+
+        verify(transport, times(2)).sendMessage(any(Message.class), any(Address[].class));
+        assertThat(metricsService.getCount("mail.sessions.opened")).isEqualTo(1);
+        assertThat(metricsService.getCount("mail.sessions.reused")).isEqualTo(1);
+        assertThat(metricsService.getCount("mail.sent")).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldReplaceSessionAfterMaxMessages() throws Exception {
+        final Transport first = connectedTransport();
+        final Transport second = connectedTransport();
+
+        sender.send(message("a@example.com"), message("b@example.com"), message("c@example.com"));
+
+        verify(first, times(2)).sendMessage(any(Message.class), any(Address[].class));
+        verify(first).close();
+        verify(second).sendMessage(any(Message.class), any(Address[].class));
+        assertThat(metricsService.getCount("mail.sessions.opened")).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldReconnectWhenSessionWasDropped() throws Exception {
+        final Transport dropped = connectedTransport();
+        final Transport fresh = connectedTransport();
+        sender.send(message("a@example.com"));
+        doThrow(new MessagingException("connection reset")).when(dropped).sendMessage(any(Message.class), any(Address[].class));
+        when(dropped.isConnected()).thenReturn(true, false);
+
+        sender.send(message("b@example.com"));
+
+        verify(dropped).close();
+        verify(fresh).sendMessage(any(Message.class), any(Address[].class));
+        assertThat(metricsService.getCount("mail.sessions.reconnected")).isEqualTo(1);
+        assertThat(metricsService.getCount("mail.sent")).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldKeepSessionWhenMessageIsRejected() throws Exception {
+        final Transport transport = connectedTransport();
+        doThrow(new MessagingException("550 mailbox unavailable")).when(transport).sendMessage(any(Message.class), any(Address[].class));
+
+        try {
+            sender.send(message("a@example.com"));
+            fail("rejected message should fail");
+        } catch (MailSendException e) {
+            assertThat(e.getFailedMessages()).hasSize(1);
+        }
+
+        assertThat(metricsService.getCount("mail.sessions.opened")).isEqualTo(1);
+        assertThat(metricsService.getCount("mail.sessions.closed")).isEqualTo(0);
+        assertThat(metricsService.getCount("mail.failed")).isEqualTo(1);
+    }
+
+    private Transport connectedTransport() {
+        final Transport transport = mock(Transport.class);
+        when(transport.isConnected()).thenReturn(true);
+        transports.add(transport);
+        return transport;
+    }
+
+    private MimeMessage message(final String to) throws MessagingException {
+        final MimeMessage message = sender.createMimeMessage();
+        message.setRecipients(Message.RecipientType.TO, to);
+        message.setText("content");
+        return message;
+    }
+}
@@ -26,23 +26,27 @@ import com.adyen.mirakl.AdyenMiraklConnectorApp;
 import com.adyen.mirakl.domain.EmailError;
 import com.adyen.mirakl.domain.ProcessEmail;
 import com.adyen.mirakl.domain.enumeration.EmailState;
+import com.adyen.mirakl.exceptions.UnexpectedMailFailureException;
 import com.adyen.mirakl.repository.EmailErrorsRepository;
 import com.adyen.mirakl.repository.ProcessEmailRepository;
 import liquibase.util.MD5Util;
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.ZonedDateTime;
 import java.util.List;
 
-import static org.mockito.Matchers.anyBoolean;
-import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 @RunWith(SpringRunner.class)
@@ -63,26 +67,50 @@ public class RetryEmailServiceTest {
     private MailService mailService;
 
     @Test
-    public void shouldRetryWithOnlyFailures(){
+    public void shouldSendOnlyDueEmails(){
         createProcessEmail("to1", "subject", "content", false, false, EmailState.PROCESSING);
         createProcessEmail("to2", "subject", "content", false, false, EmailState.FAILED);
         createProcessEmail("to3", "subject", "content", false, false, EmailState.SENT);
         createProcessEmail("to4", "subject", "content", false, false, EmailState.FAILED);
+        createProcessEmail("to5", "subject", "content", false, false, EmailState.FAILED, ZonedDateTime.now().plusMinutes(5));
+        createProcessEmail("to6", "subject", "content", false, false, EmailState.PENDING);
 
-        retryEmailService.retryFailedEmails();
+        final int sent = retryEmailService.processDueEmails();
 
-        verify(mailService, never()).sendEmail("to1", "subject", "content", false, false);
-        verify(mailService).sendEmail("to2", "subject", "content", false, false);
-        verify(mailService, never()).sendEmail("to3", "subject", "content", false, false);
-        verify(mailService).sendEmail("to4", "subject", "content", false, false);
-        verify(mailService, never()).sendEmail("to5", "subject", "content", false, false);
+        final ArgumentCaptor<ProcessEmail> emailCaptor = ArgumentCaptor.forClass(ProcessEmail.class);
+        verify(mailService, times(3)).deliverEmail(emailCaptor.capture());
+        Assertions.assertThat(emailCaptor.getAllValues()).extracting(ProcessEmail::getTo).containsExactlyInAnyOrder("to2", "to4", "to6");
+        Assertions.assertThat(sent).isEqualTo(3);
+        Assertions.assertThat(emailCaptor.getAllValues()).extracting(ProcessEmail::getState).containsOnly(EmailState.SENT);
+        Assertions.assertThat(emailCaptor.getAllValues()).extracting(ProcessEmail::getNextAttemptAt).containsOnly((ZonedDateTime) null);
+    }
+
+    @Test
+    public void shouldRescheduleFailedEmail(){
+        final ProcessEmail processEmail = createProcessEmail("to1", "subject", "content", false, false, EmailState.PENDING);
+        doThrow(new UnexpectedMailFailureException("Failure to send email", new IllegalStateException("smtp down"))).when(mailService).deliverEmail(any(ProcessEmail.class));
+
+        final ZonedDateTime before = ZonedDateTime.now();
+        Assertions.assertThat(retryEmailService.processDueEmails()).isZero();
+
+        final ProcessEmail failed = processEmailRepository.findOne(processEmail.getId());
+        Assertions.assertThat(failed.getState()).isEqualTo(EmailState.FAILED);
+        Assertions.assertThat(failed.getAttempts()).isEqualTo(1);
+        Assertions.assertThat(failed.getNextAttemptAt()).isGreaterThan(before);
+        final List<EmailError> errors = emailErrorsRepository.findAll();
+        Assertions.assertThat(errors).extracting(EmailError::getError).containsExactly("Failure to send email");
+        Assertions.assertThat(errors.get(0).getProcessEmail().getId()).isEqualTo(processEmail.getId());
+
+        // not due until its next attempt
+        Assertions.assertThat(retryEmailService.processDueEmails()).isZero();
+        verify(mailService, times(1)).deliverEmail(any(ProcessEmail.class));
     }
 
     @Test
     public void shouldNotRetry(){
-        retryEmailService.retryFailedEmails();
+        retryEmailService.processDueEmails();
 
-        verify(mailService, never()).sendEmail(anyString(), anyString(), anyString(), anyBoolean(), anyBoolean());
+        verify(mailService, never()).deliverEmail(any(ProcessEmail.class));
     }
 
     @Test
@@ -141,6 +169,10 @@ public class RetryEmailServiceTest {
 
 
     public ProcessEmail createProcessEmail(String to, String subject, String content, boolean isMultipart, boolean isHtml, EmailState emailState){
+        return createProcessEmail(to, subject, content, isMultipart, isHtml, emailState, emailState != EmailState.SENT ? ZonedDateTime.now().minusSeconds(1) : null);
+    }
+
+    public ProcessEmail createProcessEmail(String to, String subject, String content, boolean isMultipart, boolean isHtml, EmailState emailState, ZonedDateTime nextAttemptAt){
         final ProcessEmail processEmail = new ProcessEmail();
         processEmail.setTo(to);
         processEmail.setSubject(subject);
@@ -148,6 +180,7 @@ public class RetryEmailServiceTest {
         processEmail.setMultipart(isMultipart);
         processEmail.setHtml(isHtml);
         processEmail.setState(emailState);
+        processEmail.setNextAttemptAt(nextAttemptAt);
         processEmail.setEmailIdentifier(MD5Util.computeMD5(to + subject + content + isMultipart + isHtml));
         return processEmailRepository.saveAndFlush(processEmail);
     }
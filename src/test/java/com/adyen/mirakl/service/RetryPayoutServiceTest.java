@@ -22,25 +22,26 @@
 
 package com.adyen.mirakl.service;
 
+import java.time.ZonedDateTime;
 import java.util.List;
 import org.assertj.core.api.Assertions;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
-import org.springframework.transaction.annotation.Transactional;
 import com.adyen.Util.Util;
 import com.adyen.mirakl.AdyenMiraklConnectorApp;
 import com.adyen.mirakl.domain.AdyenPayoutError;
 import com.adyen.mirakl.repository.AdyenPayoutErrorRepository;
 import com.adyen.model.Amount;
 import com.adyen.model.marketpay.PayoutAccountHolderRequest;
+import com.google.common.collect.ImmutableList;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = AdyenMiraklConnectorApp.class)
-@Transactional
 public class RetryPayoutServiceTest {
 
     @Autowired
@@ -53,6 +54,7 @@ public class RetryPayoutServiceTest {
     private RetryPayoutService retryPayoutService;
 
     @Before
+    @After
     public void removeExistingTestAdyenPayoutErrors() {
         final List<AdyenPayoutError> all = adyenPayoutErrorRepository.findAll();
         adyenPayoutErrorRepository.delete(all);
@@ -80,6 +82,12 @@ public class RetryPayoutServiceTest {
         Assertions.assertThat(all.get(1).getRawRequest()).isEqualTo(PayoutService.GSON.toJson(payoutAccountHolderRequestSecond));
         Assertions.assertThat(all.get(1).getRetry()).isEqualTo(1);
 
+        // nothing is due until the backoff passed
+        Assertions.assertThat(all.get(0).getNextRetryAt()).isGreaterThan(ZonedDateTime.now().plusSeconds(200));
+        retryPayoutService.retryFailedPayouts();
+        Assertions.assertThat(adyenPayoutErrorRepository.findAll().get(0).getRetry()).isEqualTo(1);
+        all.forEach(adyenPayoutError -> adyenPayoutErrorRepository.save(adyenPayoutError.nextRetryAt(ZonedDateTime.now())));
+
         // retry failed payouts
         retryPayoutService.retryFailedPayouts();
         all = adyenPayoutErrorRepository.findAll();
@@ -88,22 +96,107 @@ public class RetryPayoutServiceTest {
 
         Assertions.assertThat(all.get(1).getRawRequest()).isEqualTo(PayoutService.GSON.toJson(payoutAccountHolderRequestSecond));
         Assertions.assertThat(all.get(1).getRetry()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldReleaseExpiredLeasesOnly() {
+        payoutService.storeAdyenPayoutError(createFailedPayout("1"), null, null);
+        payoutService.storeAdyenPayoutError(createFailedPayout("2"), null, null);
+        List<AdyenPayoutError> all = adyenPayoutErrorRepository.findAll();
+        adyenPayoutErrorRepository.save(all.get(0).processing(true).leaseOwner("other-node").leaseExpiresAt(ZonedDateTime.now().minusMinutes(1)));
+        adyenPayoutErrorRepository.save(all.get(1).processing(true).leaseOwner("other-node").leaseExpiresAt(ZonedDateTime.now().plusMinutes(10)));
 
-        // if retry is set to 2 then there should be no failed payouts left
-        List<AdyenPayoutError> failedPayouts = adyenPayoutErrorRepository.findByRetry(2);
-        Assertions.assertThat(failedPayouts.size()).isEqualTo(0);
+        Assertions.assertThat(retryPayoutService.releaseExpiredLeases()).isEqualTo(1);
+
+        all = adyenPayoutErrorRepository.findAll();
+        Assertions.assertThat(all.get(0).isProcessing()).isFalse();
+        Assertions.assertThat(all.get(0).getLeaseOwner()).isNull();
+        Assertions.assertThat(all.get(1).isProcessing()).isTrue();
+        Assertions.assertThat(all.get(1).getLeaseOwner()).isEqualTo("other-node");
     }
 
-    public void retry() {
-        String accountHolderCode = "1000";
-        // add 2 failed payouts
-        PayoutAccountHolderRequest payoutAccountHolderRequestFirst = createFailedPayout("", accountHolderCode);
-        payoutService.storeAdyenPayoutError(payoutAccountHolderRequestFirst, null, null);
-        retryPayoutService.retryFailedPayoutsForAccountHolder(accountHolderCode);
+    @Test
+    public void shouldNotRetryPayoutsLeasedByAnotherNode() {
+        payoutService.storeAdyenPayoutError(createFailedPayout("1"), null, null);
+        payoutService.storeAdyenPayoutError(createFailedPayout("2"), null, null);
+        AdyenPayoutError leased = adyenPayoutErrorRepository.findAll().get(1);
+        adyenPayoutErrorRepository.save(leased.processing(true).leaseOwner("other-node").leaseExpiresAt(ZonedDateTime.now().plusMinutes(10)));
 
-        List<AdyenPayoutError> all = adyenPayoutErrorRepository.findByAccountHolderCode(accountHolderCode);
-        Assertions.assertThat(all.get(0).getRawRequest()).isEqualTo(PayoutService.GSON.toJson(payoutAccountHolderRequestFirst));
-        Assertions.assertThat(all.get(0).getRetry()).isEqualTo(2);
+        retryPayoutService.retryFailedPayouts();
+
+        List<AdyenPayoutError> all = adyenPayoutErrorRepository.findAll();
+        Assertions.assertThat(all.get(0).getRetry()).isEqualTo(1);
+        Assertions.assertThat(all.get(0).isProcessing()).isFalse();
+        Assertions.assertThat(all.get(0).getLeaseOwner()).isNull();
+        Assertions.assertThat(all.get(1).getRetry()).isEqualTo(0);
+        Assertions.assertThat(all.get(1).getLeaseOwner()).isEqualTo("other-node");
+    }
+
+    @Test
+    public void shouldClaimUnderATokenOfItsOwn() {
+        payoutService.storeAdyenPayoutError(createFailedPayout("1"), null, null);
+        payoutService.storeAdyenPayoutError(createFailedPayout("2"), null, null);
+        List<AdyenPayoutError> all = adyenPayoutErrorRepository.findAll();
+
+        List<AdyenPayoutError> first = retryPayoutService.claim(ImmutableList.of(all.get(0).getId()));
+        List<AdyenPayoutError> second = retryPayoutService.claim(ImmutableList.of(all.get(0).getId(), all.get(1).getId()));
+
+        Assertions.assertThat(first).extracting(AdyenPayoutError::getId).containsExactly(all.get(0).getId());
+        Assertions.assertThat(second).extracting(AdyenPayoutError::getId).containsExactly(all.get(1).getId());
+        Assertions.assertThat(second.get(0).getLeaseOwner()).isNotEqualTo(first.get(0).getLeaseOwner());
+        Assertions.assertThat(second.get(0).getLeaseExpiresAt()).isGreaterThan(ZonedDateTime.now().plusSeconds(599));
+    }
+
+    @Test
+    public void shouldSkipPayoutsWhoseLeaseWasLost() {
+        payoutService.storeAdyenPayoutError(createFailedPayout("1"), null, null);
+        payoutService.storeAdyenPayoutError(createFailedPayout("2"), null, null);
+        List<AdyenPayoutError> all = adyenPayoutErrorRepository.findAll();
+        List<AdyenPayoutError> claimed = retryPayoutService.claim(ImmutableList.of(all.get(0).getId(), all.get(1).getId()));
+        // the lease of the second expired, it was released and claimed by another retry
+        adyenPayoutErrorRepository.save(adyenPayoutErrorRepository.findOne(all.get(1).getId()).leaseOwner("other-claim"));
+
+        retryPayoutService.processFailedPayout(claimed);
+
+        all = adyenPayoutErrorRepository.findAll();
+        Assertions.assertThat(all.get(0).getRetry()).isEqualTo(1);
+        Assertions.assertThat(all.get(1).getRetry()).isEqualTo(0);
+        Assertions.assertThat(all.get(1).getLeaseOwner()).isEqualTo("other-claim");
+    }
+
+    @Test
+    public void shouldLeavePayoutTakenOverDuringItsRetryAlone() {
+        payoutService.storeAdyenPayoutError(createFailedPayout("1"), null, null);
+        final AdyenPayoutError claimed = retryPayoutService.claim(ImmutableList.of(adyenPayoutErrorRepository.findAll().get(0).getId())).get(0);
+        // the lease expired during the Adyen call, it was released and claimed by another retry
+        adyenPayoutErrorRepository.save(adyenPayoutErrorRepository.findOne(claimed.getId()).leaseOwner("other-claim").retry(5));
+
+        retryPayoutService.updateFailedPayout(claimed, null, null);
+
+        final AdyenPayoutError stored = adyenPayoutErrorRepository.findOne(claimed.getId());
+        Assertions.assertThat(stored.getRetry()).isEqualTo(5);
+        Assertions.assertThat(stored.isProcessing()).isTrue();
+        Assertions.assertThat(stored.getLeaseOwner()).isEqualTo("other-claim");
+    }
+
+    @Test
+    public void shouldExtendTheLeaseByTheTimeAPageWaitsForTheRateLimit() {
+        // 600 seconds lease, 1000 fund API requests per second
+        Assertions.assertThat(retryPayoutService.claimLeaseSeconds(100)).isEqualTo(601);
+        Assertions.assertThat(retryPayoutService.claimLeaseSeconds(2000)).isEqualTo(604);
+    }
+
+    @Test
+    public void shouldRetryAccountHolderStraightAwayAndStartItsScheduleOver() {
+        payoutService.storeAdyenPayoutError(createFailedPayout("1"), null, null);
+        AdyenPayoutError scheduled = adyenPayoutErrorRepository.findAll().get(0);
+        adyenPayoutErrorRepository.save(scheduled.retry(9).nextRetryAt(ZonedDateTime.now().plusHours(6)));
+
+        retryPayoutService.retryFailedPayoutsForAccountHolder(scheduled.getAccountHolderCode());
+
+        AdyenPayoutError retried = adyenPayoutErrorRepository.findAll().get(0);
+        Assertions.assertThat(retried.getRetry()).isEqualTo(1);
+        Assertions.assertThat(retried.getNextRetryAt()).isLessThan(ZonedDateTime.now().plusSeconds(301));
     }
 
     public PayoutAccountHolderRequest createFailedPayout(String prefix) {
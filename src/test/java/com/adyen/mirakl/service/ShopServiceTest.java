@@ -100,6 +100,8 @@ public class ShopServiceTest {
     private ShareholderContact shareHolderMock1, shareHolderMock2, shareHolderMock3, shareHolderMock4, shareHolderMockUS;
     @Mock
     private DocService docServiceMock;
+    @Mock
+    private PhotoIdTypeCache photoIdTypeCacheMock;
 
     @Captor
     private ArgumentCaptor<CreateAccountHolderRequest> createAccountHolderRequestCaptor;
@@ -275,14 +277,13 @@ public class ShopServiceTest {
         verify(shareholderMappingService).updateShareholderMapping(updateAccountHolderResponseMock, shop);
         verify(shareholderMappingService).updateShareholderMapping(updateAccountHolderResponseMock, miraklShopUS);
 
-        verify(docServiceMock).retryDocumentsForShop("id");
         assertEquals("id", genericRequest.getAccountHolderCode());
         assertEquals("Different from legalBusinessName", genericRequest.getAccountHolderDetails().getBusinessDetails().getDoingBusinessAs());
         final List<ShareholderContact> shareholders = genericRequest.getAccountHolderDetails().getBusinessDetails().getShareholders();
         Assertions.assertThat(shareholders).containsExactlyInAnyOrder(shareHolderMock1, shareHolderMock2, shareHolderMock3, shareHolderMock4);
 
         verify(adyenAccountServiceMock).updateAccountHolder(USRequest);
-        verify(docServiceMock).retryDocumentsForShop("1");
+        verify(docServiceMock).retryDocumentsForShops(ImmutableList.of("id", "1"));
         assertEquals("1", USRequest.getAccountHolderCode());
         assertEquals("Different from legalBusinessName", USRequest.getAccountHolderDetails().getBusinessDetails().getDoingBusinessAs());
         final List<ShareholderContact> shareHoldersUS = USRequest.getAccountHolderDetails().getBusinessDetails().getShareholders();
@@ -0,0 +1,80 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.junit.Test;
+import com.adyen.model.marketpay.DocumentDetail;
+import com.adyen.model.marketpay.UploadDocumentRequest;
+import com.adyen.service.exception.ApiException;
+import com.google.common.io.Resources;
+import com.google.gson.Gson;
+import static com.google.common.io.Files.toByteArray;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StreamingDocumentUploaderTest {
+
+    @Test
+    public void shouldWriteSameRequestAsInMemoryEncoding() throws Exception {
+        final File file = new File(Resources.getResource("fileuploads/BankStatement.png").getPath());
+        final UploadDocumentRequest request = new UploadDocumentRequest();
+        request.setAccountHolderCode("shopId");
+        request.setBankAccountUUID("uuid");
+        final DocumentDetail documentDetail = new DocumentDetail();
+        documentDetail.setFilename(file.getName());
+        documentDetail.setDocumentType(DocumentDetail.DocumentTypeEnum.BANK_STATEMENT);
+        documentDetail.setAccountHolderCode("shopId");
+        request.setDocumentDetail(documentDetail);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        StreamingDocumentUploader.writeRequest(request, file, outputStream);
+
+        final UploadDocumentRequest written = new Gson().fromJson(new String(outputStream.toByteArray(), StandardCharsets.UTF_8), UploadDocumentRequest.class);
+        assertThat(written.getDocumentContent()).isEqualTo(Base64.getEncoder().encodeToString(toByteArray(file)));
+        assertThat(written.getAccountHolderCode()).isEqualTo("shopId");
+        assertThat(written.getBankAccountUUID()).isEqualTo("uuid");
+        assertThat(written.getDocumentDetail().getDocumentType()).isEqualTo(DocumentDetail.DocumentTypeEnum.BANK_STATEMENT);
+        assertThat(written.getDocumentDetail().getFilename()).isEqualTo(file.getName());
+    }
+
+    @Test
+    public void shouldParseErrorResponseIntoApiError() {
+        final ApiException apiException = StreamingDocumentUploader.apiException("{\"status\":422,\"errorCode\":\"10_081\",\"message\":\"Invalid document\",\"errorType\":\"validation\"}", 422);
+
+        assertThat(apiException.getStatusCode()).isEqualTo(422);
+        assertThat(apiException.getError().getErrorCode()).isEqualTo("10_081");
+        assertThat(apiException.getError().getMessage()).isEqualTo("Invalid document");
+    }
+
+    @Test
+    public void shouldKeepNonJsonErrorResponseInMessage() {
+        final ApiException apiException = StreamingDocumentUploader.apiException("<html>Bad Gateway</html>", 502);
+
+        assertThat(apiException.getStatusCode()).isEqualTo(502);
+        assertThat(apiException.getError()).isNull();
+        assertThat(apiException.getMessage()).isEqualTo("<html>Bad Gateway</html>");
+    }
+}
@@ -21,6 +21,7 @@
 
 package com.adyen.mirakl.service;
 
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Optional;
 import org.junit.Before;
@@ -31,6 +32,7 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import com.adyen.mirakl.config.ApplicationProperties;
 import com.adyen.mirakl.domain.DocError;
 import com.adyen.mirakl.domain.DocRetry;
 import com.adyen.mirakl.domain.ShareholderMapping;
@@ -52,6 +54,7 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 @RunWith(MockitoJUnitRunner.class)
 public class UboDocumentServiceTest {
@@ -65,6 +68,8 @@ public class UboDocumentServiceTest {
     private DocRetryRepository docRetryRepositoryMock;
     @Mock
     private ShareholderMappingRepository shareholderMappingRepositoryMock;
+    @Mock
+    private ApplicationProperties applicationPropertiesMock;
 
     @Mock
     private ShareholderMapping shareholderMappingMock1, shareholderMappingMock2, shareholderMappingMock3;
@@ -73,7 +78,7 @@ public class UboDocumentServiceTest {
     @Mock
     private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClientMock;
     @Mock
-    private MiraklShops miraklShops1, miraklShops2;
+    private MiraklShops miraklShops;
     @Mock
     private MiraklShop miraklShop1, miraklShop2;
     @Mock
@@ -83,10 +88,21 @@ public class UboDocumentServiceTest {
     private ArgumentCaptor<MiraklGetShopsRequest> miraklGetShopsRequestCaptor;
     @Captor
     private ArgumentCaptor<String> docRetryRepositoryDocIdCaptor;
+    @Captor
+    private ArgumentCaptor<DocRetry> docRetryCaptor;
 
     @Before
     public void setUp() {
-        uboDocumentService.setMaxUbos(4);
+        setField(uboDocumentService, "documentTypeCodeClassifier", new DocumentTypeCodeClassifier(4));
+        PhotoIdTypeCache photoIdTypeCache = new PhotoIdTypeCache();
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setPhotoIdTypeCacheTtlSeconds(300);
+        applicationProperties.setPhotoIdTypeCacheMaxShops(10000);
+        setField(photoIdTypeCache, "miraklMarketplacePlatformOperatorApiClient", miraklMarketplacePlatformOperatorApiClientMock);
+        setField(photoIdTypeCache, "applicationProperties", applicationProperties);
+        setField(photoIdTypeCache, "metricsService", new MetricsService());
+        photoIdTypeCache.init();
+        setField(uboDocumentService, "photoIdTypeCache", photoIdTypeCache);
 
         //shop 1
         when(miraklShopDocument1.getTypeCode()).thenReturn("adyen-ubo1-photoid");//front passport used
@@ -114,9 +130,11 @@ public class UboDocumentServiceTest {
         // 1 front id  & 1 back id                                          - shop 2 ubo 1
         // 1 front driving licence & 1 rear driving licence                 - shop 2 ubo 2
 
-        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShops1).thenReturn(miraklShops2);
-        when(miraklShops1.getShops()).thenReturn(ImmutableList.of(miraklShop1));
-        when(miraklShops2.getShops()).thenReturn(ImmutableList.of(miraklShop2));
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShops);
+        when(miraklShops.getShops()).thenReturn(ImmutableList.of(miraklShop1, miraklShop2));
+        when(miraklShops.getTotalCount()).thenReturn(2L);
+        when(miraklShop1.getId()).thenReturn("shop1");
+        when(miraklShop2.getId()).thenReturn("shop2");
         when(miraklShop1.getAdditionalFieldValues()).thenReturn(ImmutableList.of(miraklAddtionalField1));
         when(miraklShop2.getAdditionalFieldValues()).thenReturn(ImmutableList.of(miraklAddtionalField2, miraklAddtionalField3));
         when(miraklAddtionalField1.getCode()).thenReturn("adyen-ubo1-photoidtype");
@@ -144,9 +162,8 @@ public class UboDocumentServiceTest {
                                                                                                  miraklShopDocument6));
 
         List<MiraklGetShopsRequest> requestsToMirakl = miraklGetShopsRequestCaptor.getAllValues();
-        assertThat(requestsToMirakl.size()).isEqualTo(3);
-        assertThat(requestsToMirakl.get(0).getShopIds()).containsOnly("shop1");
-        assertThat(requestsToMirakl.get(1).getShopIds()).containsOnly("shop2");
+        assertThat(requestsToMirakl.size()).isEqualTo(1);
+        assertThat(requestsToMirakl.get(0).getShopIds()).containsOnly("shop1", "shop2");
         assertThat(result.size()).isEqualTo(5);
         assertThat(result.get(0).getShareholderCode()).isEqualTo("shareholderCode1");
         assertThat(result.get(0).getMiraklShopDocument().getShopId()).isEqualTo("shop1");
@@ -181,7 +198,10 @@ public class UboDocumentServiceTest {
         when(shareholderMappingRepositoryMock.findOneByMiraklShopIdAndMiraklUboNumber("shop2", 2)).thenReturn(Optional.empty());
 
         when(docRetryRepositoryMock.findOneByDocId(docRetryRepositoryDocIdCaptor.capture())).thenReturn(Optional.empty());
-        when(docRetryRepositoryMock.saveAndFlush(any(DocRetry.class))).thenReturn(null);
+        when(docRetryRepositoryMock.saveAndFlush(docRetryCaptor.capture())).thenReturn(null);
+        when(applicationPropertiesMock.getDocRetryBaseDelaySeconds()).thenReturn(60);
+        when(applicationPropertiesMock.getDocRetryMaxDelaySeconds()).thenReturn(3600);
+        final ZonedDateTime beforeExtraction = ZonedDateTime.now();
         when(docErrorRepositoryMock.saveAndFlush(any(DocError.class))).thenReturn(null);
 
         final List<UboDocumentDTO> result = uboDocumentService.extractDocuments(ImmutableList.of(miraklShopDocument1,
@@ -202,6 +222,7 @@ public class UboDocumentServiceTest {
         verify(docRetryRepositoryMock, times(5)).findOneByDocId(anyString());
         verify(docRetryRepositoryMock, times(5)).saveAndFlush(any(DocRetry.class));
         verify(docErrorRepositoryMock, times(5)).saveAndFlush(any(DocError.class));
+        docRetryCaptor.getAllValues().forEach(docRetry -> assertThat(docRetry.getNextRetryAt().isBefore(beforeExtraction.plusSeconds(60))).isFalse());
     }
 
 }
@@ -0,0 +1,56 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service.util;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import org.junit.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BackoffUtilTest {
+
+    private static final ZonedDateTime NOW = ZonedDateTime.of(2026, 10, 18, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    @Test
+    public void shouldDoubleTheDelayForEveryFailure() {
+        assertThat(BackoffUtil.nextAttemptAt(NOW, 1, 60, 3600)).isEqualTo(NOW.plusSeconds(60));
+        assertThat(BackoffUtil.nextAttemptAt(NOW, 2, 60, 3600)).isEqualTo(NOW.plusSeconds(120));
+        assertThat(BackoffUtil.nextAttemptAt(NOW, 4, 60, 3600)).isEqualTo(NOW.plusSeconds(480));
+    }
+
+    @Test
+    public void shouldCapTheDelay() {
+        assertThat(BackoffUtil.nextAttemptAt(NOW, 7, 60, 3600)).isEqualTo(NOW.plusSeconds(3600));
+        assertThat(BackoffUtil.nextAttemptAt(NOW, 1000, 60, 3600)).isEqualTo(NOW.plusSeconds(3600));
+        assertThat(BackoffUtil.nextAttemptAt(NOW, 0, 0, 3600)).isEqualTo(NOW.plusSeconds(1));
+    }
+
+    @Test
+    public void shouldTakeAtMostTheJitterOffTheDelay() {
+        for (int i = 0; i < 100; i++) {
+            assertThat(BackoffUtil.nextAttemptAt(NOW, 2, 60, 3600, 0.25)).isGreaterThanOrEqualTo(NOW.plusSeconds(90)).isLessThanOrEqualTo(NOW.plusSeconds(120));
+        }
+        assertThat(BackoffUtil.nextAttemptAt(NOW, 2, 60, 3600, 0)).isEqualTo(NOW.plusSeconds(120));
+        assertThat(BackoffUtil.nextAttemptAt(NOW, 0, 0, 3600, 1)).isEqualTo(NOW.plusSeconds(1));
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service.util;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import com.google.common.base.Strings;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GzipUtilTest {
+
+    @Test
+    public void shouldRestoreCompressedPayload() {
+        final String payload = "{\"live\":\"false\",\"notificationItems\":[" + Strings.repeat("{\"eventCode\":\"ACCOUNT_HOLDER_VERIFICATION\"},", 50) + "]}";
+
+        final byte[] compressed = GzipUtil.compress(payload);
+
+        assertThat(compressed.length).isLessThan(payload.getBytes(StandardCharsets.UTF_8).length);
+        assertThat(GzipUtil.decompress(compressed)).isEqualTo(payload);
+    }
+
+    @Test
+    public void shouldKeepNonAsciiCharacters() {
+        assertThat(GzipUtil.decompress(GzipUtil.compress("Straße ünïcödé €"))).isEqualTo("Straße ünïcödé €");
+    }
+}
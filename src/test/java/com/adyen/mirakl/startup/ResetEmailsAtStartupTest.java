@@ -38,6 +38,9 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.context.event.ContextRefreshedEvent;
 
+import java.time.ZonedDateTime;
+
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -65,8 +68,10 @@ public class ResetEmailsAtStartupTest {
         testObj.onApplicationEvent(eventMock);
 
         verify(emailMock1).setState(EmailState.FAILED);
+        verify(emailMock1).setNextAttemptAt(any(ZonedDateTime.class));
         verify(emailMock1).addEmailError(emailErrorCaptor1.capture());
         verify(emailMock2).setState(EmailState.FAILED);
+        verify(emailMock2).setNextAttemptAt(any(ZonedDateTime.class));
         verify(emailMock2).addEmailError(emailErrorCaptor2.capture());
 
         final EmailError error1 = emailErrorCaptor1.getValue();
@@ -42,6 +42,8 @@ import org.springframework.transaction.annotation.Transactional;
 import com.adyen.mirakl.AdyenMiraklConnectorApp;
 import com.adyen.mirakl.domain.AdyenNotification;
 import com.adyen.mirakl.repository.AdyenNotificationRepository;
+import com.adyen.mirakl.service.MetricsService;
+import com.adyen.mirakl.service.NotificationMetricsService;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
 import static com.adyen.mirakl.web.rest.TestUtil.createFormattingConversionService;
@@ -70,6 +72,12 @@ public class AdyenNotificationResourceIntTest {
     @Autowired
     private PageableHandlerMethodArgumentResolver pageableArgumentResolver;
 
+    @Autowired
+    private MetricsService metricsService;
+
+    @Autowired
+    private NotificationMetricsService notificationMetricsService;
+
     @Mock
     private ApplicationEventPublisher publisherMock;
 
@@ -81,7 +89,7 @@ public class AdyenNotificationResourceIntTest {
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        final AdyenNotificationResource adyenNotificationResource = new AdyenNotificationResource(adyenNotificationRepository, publisherMock);
+        final AdyenNotificationResource adyenNotificationResource = new AdyenNotificationResource(adyenNotificationRepository, publisherMock, metricsService, notificationMetricsService);
         this.restAdyenNotificationMockMvc = MockMvcBuilders.standaloneSetup(adyenNotificationResource)
                                                            .addFilter(springSecurityFilterChain)
                                                            .setCustomArgumentResolvers(pageableArgumentResolver)
@@ -111,6 +119,7 @@ public class AdyenNotificationResourceIntTest {
         AdyenNotification testAdyenNotification = adyenNotificationList.get(adyenNotificationList.size() - 1);
         assertThat(testAdyenNotification.getRawAdyenNotification()).isEqualTo(adyenRequestJson);
         assertThat(testAdyenNotification.isProcessed()).isFalse();
+        assertThat(testAdyenNotification.getStoredSize()).isLessThan(adyenRequestJson.length());
 
         verify(publisherMock).publishEvent(any());
     }